@@ -0,0 +1,53 @@
+package com.yanapure.app.auth.cleanup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/** Session-level PostgreSQL advisory locks electing one node for housekeeping jobs */
+final class AdvisoryLocks {
+
+  /** Expired row cleanup ("yanapure" + "cleanup" in ASCII) */
+  static final long CLEANUP = 0x79616e61_636c6e75L;
+
+  /** Partition maintenance ("yanapure" + "partitions" in ASCII) */
+  static final long PARTITIONS = 0x79616e61_70617274L;
+
+  private AdvisoryLocks() {}
+
+  static boolean isPostgres(Connection connection) throws SQLException {
+    return "PostgreSQL".equalsIgnoreCase(connection.getMetaData().getDatabaseProductName());
+  }
+
+  /** Take the lock without waiting; it is held by the connection until {@link #unlock} */
+  static boolean tryLock(Connection connection, long key) throws SQLException {
+    return call(connection, "pg_try_advisory_lock", key);
+  }
+
+  static void unlock(Connection connection, long key) throws SQLException {
+    call(connection, "pg_advisory_unlock", key);
+  }
+
+  /** Whether {@code table} is a partitioned (parent) table */
+  static boolean isPartitioned(Connection connection, String table) throws SQLException {
+    try (PreparedStatement statement =
+        connection.prepareStatement(
+            "SELECT relkind = 'p' FROM pg_class WHERE oid = to_regclass(?)")) {
+      statement.setString(1, table);
+      try (ResultSet rs = statement.executeQuery()) {
+        return rs.next() && rs.getBoolean(1);
+      }
+    }
+  }
+
+  private static boolean call(Connection connection, String function, long key)
+      throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement("SELECT " + function + "(?)")) {
+      statement.setLong(1, key);
+      try (ResultSet rs = statement.executeQuery()) {
+        return rs.next() && rs.getBoolean(1);
+      }
+    }
+  }
+}
@@ -0,0 +1,266 @@
+package com.yanapure.app.auth.cleanup;
+
+import com.yanapure.app.auth.session.ShardedSessionStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Periodically deletes expired sessions and OTP challenges.
+ *
+ * <p>Rows are removed in bounded batches ({@code DELETE ... WHERE id IN (SELECT id ... LIMIT n)}),
+ * each committed on its own, with a pause in between so a large backlog never holds long locks or
+ * starves other writers. A run stops after a time budget and resumes on the next schedule. On
+ * PostgreSQL only the node holding the cleanup advisory lock does the work; other databases are
+ * assumed to be single-node. Tables whose expired rows are dropped a partition at a time are
+ * skipped once partitioned.
+ *
+ * <p>With sharded sessions ({@link ShardedSessionStore}) each shard's {@code user_sessions} is
+ * cleaned the same way after the primary, under the advisory lock of that shard and with its own
+ * time budget, and reported with a {@code database} tag of {@code shard-<n>}.
+ *
+ * <p>Must be called outside a transaction for the batches to commit individually.
+ */
+@Component
+public class ExpiredRowCleanup {
+
+  private static final Logger log = LoggerFactory.getLogger(ExpiredRowCleanup.class);
+
+  /** Tables with an {@code id} primary key and an indexed expiry column */
+  public enum Target {
+    /**
+     * Sessions end when their refresh token expires; the access expiry only moves on refresh.
+     * Refreshed sessions keep old partitions alive, so expired rows are still deleted one by one.
+     */
+    SESSIONS("user_sessions", "refresh_expires_at", false),
+    /** Left entirely to {@link PartitionMaintenance} once the table is partitioned */
+    OTP_CHALLENGES("otp_challenges", "expires_at", true);
+
+    private final String table;
+    private final String expiryColumn;
+    private final boolean partitionDropsExpired;
+
+    Target(String table, String expiryColumn, boolean partitionDropsExpired) {
+      this.table = table;
+      this.expiryColumn = expiryColumn;
+      this.partitionDropsExpired = partitionDropsExpired;
+    }
+
+    public String table() {
+      return table;
+    }
+
+    String deleteBatchSql() {
+      return "DELETE FROM "
+          + table
+          + " WHERE id IN (SELECT id FROM "
+          + table
+          + " WHERE "
+          + expiryColumn
+          + " < ? LIMIT ?)";
+    }
+  }
+
+  /** Outcome of cleaning one table of one database ({@code primary} or {@code shard-<n>}) */
+  public record Result(
+      String database, Target target, long deleted, int batches, Duration elapsed) {}
+
+  private static final String PRIMARY = "primary";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final MeterRegistry meterRegistry;
+  private final Supplier<List<DataSource>> shards;
+  private final boolean enabled;
+  private final int batchSize;
+  private final Duration pause;
+  private final Duration maxDuration;
+  private final AtomicBoolean running = new AtomicBoolean();
+
+  @Autowired
+  public ExpiredRowCleanup(
+      JdbcTemplate jdbcTemplate,
+      MeterRegistry meterRegistry,
+      ObjectProvider<ShardedSessionStore> shardedSessionStore,
+      @Value("${app.auth.cleanup.enabled:true}") boolean enabled,
+      @Value("${app.auth.cleanup.batch-size:5000}") int batchSize,
+      @Value("${app.auth.cleanup.pause:200ms}") Duration pause,
+      @Value("${app.auth.cleanup.max-duration:2m}") Duration maxDuration) {
+    this(
+        jdbcTemplate,
+        meterRegistry,
+        () -> {
+          ShardedSessionStore store = shardedSessionStore.getIfAvailable();
+          return store != null ? store.shardDataSources() : List.of();
+        },
+        enabled,
+        batchSize,
+        pause,
+        maxDuration);
+  }
+
+  /**
+   * @param shards session shard databases, cleaned of expired sessions after the primary
+   */
+  public ExpiredRowCleanup(
+      JdbcTemplate jdbcTemplate,
+      MeterRegistry meterRegistry,
+      Supplier<List<DataSource>> shards,
+      boolean enabled,
+      int batchSize,
+      Duration pause,
+      Duration maxDuration) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.meterRegistry = meterRegistry;
+    this.shards = shards;
+    this.enabled = enabled;
+    this.batchSize = batchSize;
+    this.pause = pause;
+    this.maxDuration = maxDuration;
+  }
+
+  @Scheduled(
+      initialDelayString = "${app.auth.cleanup.initial-delay:1m}",
+      fixedDelayString = "${app.auth.cleanup.interval:10m}")
+  public void scheduledRun() {
+    if (enabled) {
+      run();
+    }
+  }
+
+  /**
+   * Clean all tables, then every session shard, of each database whose cleanup lock this node wins.
+   *
+   * @return one result per cleaned table, or an empty list when another run holds the locks
+   */
+  public List<Result> run() {
+    if (!running.compareAndSet(false, true)) {
+      return List.of();
+    }
+    try {
+      List<Result> results =
+          new ArrayList<>(clean(jdbcTemplate, PRIMARY, List.of(Target.values())));
+      List<DataSource> shardDataSources = shards.get();
+      for (int i = 0; i < shardDataSources.size(); i++) {
+        results.addAll(
+            clean(
+                new JdbcTemplate(shardDataSources.get(i)), "shard-" + i, List.of(Target.SESSIONS)));
+      }
+      return results;
+    } finally {
+      running.set(false);
+    }
+  }
+
+  private List<Result> clean(JdbcTemplate database, String name, List<Target> targets) {
+    try {
+      List<Result> results =
+          database.execute(
+              (ConnectionCallback<List<Result>>) connection -> run(connection, name, targets));
+      return results != null ? results : List.of();
+    } catch (RuntimeException e) {
+      log.warn("Expired row cleanup failed on {}: {}", name, e.getMessage());
+      return List.of();
+    }
+  }
+
+  private List<Result> run(Connection connection, String database, List<Target> targets)
+      throws SQLException {
+    boolean postgres = AdvisoryLocks.isPostgres(connection);
+    if (postgres && !AdvisoryLocks.tryLock(connection, AdvisoryLocks.CLEANUP)) {
+      log.debug("Expired row cleanup of {} is running on another node", database);
+      return List.of();
+    }
+    try {
+      Instant deadline = Instant.now().plus(maxDuration);
+      List<Result> results = new ArrayList<>();
+      for (Target target : targets) {
+        if (postgres
+            && target.partitionDropsExpired
+            && AdvisoryLocks.isPartitioned(connection, target.table())) {
+          continue;
+        }
+        results.add(clean(connection, database, target, deadline));
+      }
+      return results;
+    } finally {
+      if (postgres) {
+        AdvisoryLocks.unlock(connection, AdvisoryLocks.CLEANUP);
+      }
+    }
+  }
+
+  private Result clean(Connection connection, String database, Target target, Instant deadline)
+      throws SQLException {
+    long started = System.nanoTime();
+    Timestamp cutoff = Timestamp.from(Instant.now());
+    long deleted = 0;
+    int batches = 0;
+
+    try (PreparedStatement delete = connection.prepareStatement(target.deleteBatchSql())) {
+      delete.setTimestamp(1, cutoff);
+      delete.setInt(2, batchSize);
+      int count;
+      do {
+        count = delete.executeUpdate();
+        deleted += count;
+        batches++;
+      } while (count == batchSize && Instant.now().isBefore(deadline) && pause());
+    }
+
+    Duration elapsed = Duration.ofNanos(System.nanoTime() - started);
+    Counter.builder("auth.cleanup.deleted")
+        .tag("database", database)
+        .tag("table", target.table())
+        .description("Expired rows deleted by the cleanup job")
+        .register(meterRegistry)
+        .increment(deleted);
+    Timer.builder("auth.cleanup.duration")
+        .tag("database", database)
+        .tag("table", target.table())
+        .description("Time spent deleting expired rows per run")
+        .register(meterRegistry)
+        .record(elapsed);
+    log.info(
+        "Deleted {} expired rows from {} of {} in {} batches ({} ms)",
+        deleted,
+        target.table(),
+        database,
+        batches,
+        elapsed.toMillis());
+    return new Result(database, target, deleted, batches, elapsed);
+  }
+
+  /** Sleep between batches; false when interrupted so the run stops early */
+  private boolean pause() {
+    if (pause.isZero()) {
+      return true;
+    }
+    try {
+      Thread.sleep(pause.toMillis());
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+}
@@ -0,0 +1,251 @@
+package com.yanapure.app.auth.cleanup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the time-partitioned auth tables (migration V6) in shape: creates partitions ahead of time
+ * so inserts never run out of range, and drops partitions whose rows have all expired. A drop is a
+ * metadata operation and leaves nothing for vacuum, unlike deleting rows.
+ *
+ * <p>Only runs on PostgreSQL against tables that are actually partitioned, on the node holding the
+ * partition advisory lock. Partitions are named {@code <table>_pYYYYMMDD} after the UTC start of
+ * their range by the {@code ensure_time_partition} SQL function. Rows outside every dated partition
+ * go to {@code <table>_default} (migration V9); finding any there means this job has not kept up,
+ * which is logged as an error. Creating the partition of their range moves them out.
+ */
+@Component
+public class PartitionMaintenance {
+
+  private static final Logger log = LoggerFactory.getLogger(PartitionMaintenance.class);
+
+  private static final DateTimeFormatter SUFFIX = DateTimeFormatter.BASIC_ISO_DATE;
+
+  private static final String LIST_PARTITIONS =
+      "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid "
+          + "WHERE i.inhparent = to_regclass(?)";
+
+  /** Partitioned tables, their period and the column that says when a row is dead */
+  public enum Table {
+    OTP_CHALLENGES("otp_challenges", "day", Duration.ofDays(1), "expires_at"),
+    SESSIONS("user_sessions", "week", Duration.ofDays(7), "refresh_expires_at");
+
+    private final String name;
+    private final String period;
+    private final Duration length;
+    private final String expiryColumn;
+
+    Table(String name, String period, Duration length, String expiryColumn) {
+      this.name = name;
+      this.period = period;
+      this.length = length;
+      this.expiryColumn = expiryColumn;
+    }
+
+    public String tableName() {
+      return name;
+    }
+
+    String defaultPartition() {
+      return name + "_default";
+    }
+
+    /** Start of the range covered by a partition of this table, or null for foreign names */
+    Instant partitionStart(String partition) {
+      String prefix = name + "_p";
+      if (!partition.startsWith(prefix)) {
+        return null;
+      }
+      try {
+        return LocalDate.parse(partition.substring(prefix.length()), SUFFIX)
+            .atStartOfDay(ZoneOffset.UTC)
+            .toInstant();
+      } catch (DateTimeParseException e) {
+        return null;
+      }
+    }
+
+    /** Whether a partition's range ended at least {@code retention} before {@code now} */
+    boolean isPastRetention(String partition, Instant now, Duration retention) {
+      Instant start = partitionStart(partition);
+      return start != null && !start.plus(length).plus(retention).isAfter(now);
+    }
+  }
+
+  /** Partitions created and dropped for one table */
+  public record Result(Table table, int created, List<String> dropped) {}
+
+  private final JdbcTemplate jdbcTemplate;
+  private final boolean enabled;
+  private final Duration ahead;
+  private final Duration otpRetention;
+
+  public PartitionMaintenance(
+      JdbcTemplate jdbcTemplate,
+      @Value("${app.auth.partitions.enabled:true}") boolean enabled,
+      @Value("${app.auth.partitions.ahead:14d}") Duration ahead,
+      @Value("${app.auth.partitions.otp-retention:2d}") Duration otpRetention) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.enabled = enabled;
+    this.ahead = ahead;
+    this.otpRetention = otpRetention;
+  }
+
+  @Scheduled(
+      initialDelayString = "${app.auth.partitions.initial-delay:10s}",
+      fixedDelayString = "${app.auth.partitions.interval:1h}")
+  public void scheduledRun() {
+    if (enabled) {
+      run();
+    }
+  }
+
+  /** Create upcoming and drop expired partitions; empty when not applicable on this node */
+  public List<Result> run() {
+    try {
+      List<Result> results = jdbcTemplate.execute((ConnectionCallback<List<Result>>) this::run);
+      return results != null ? results : List.of();
+    } catch (RuntimeException e) {
+      log.error("Partition maintenance failed: {}", e.getMessage());
+      return List.of();
+    }
+  }
+
+  private List<Result> run(Connection connection) throws SQLException {
+    if (!AdvisoryLocks.isPostgres(connection)
+        || !AdvisoryLocks.tryLock(connection, AdvisoryLocks.PARTITIONS)) {
+      return List.of();
+    }
+    try {
+      List<Result> results = new ArrayList<>();
+      for (Table table : Table.values()) {
+        if (AdvisoryLocks.isPartitioned(connection, table.tableName())) {
+          results.add(maintain(connection, table));
+        }
+      }
+      return results;
+    } finally {
+      AdvisoryLocks.unlock(connection, AdvisoryLocks.PARTITIONS);
+    }
+  }
+
+  private Result maintain(Connection connection, Table table) throws SQLException {
+    Instant now = Instant.now();
+    List<String> existing = partitions(connection, table);
+
+    int created = 0;
+    try (PreparedStatement ensure =
+        connection.prepareStatement("SELECT ensure_time_partition(?, ?, ?)")) {
+      for (Instant at = now; !at.isAfter(now.plus(ahead)); at = at.plus(table.length)) {
+        ensure.setString(1, table.tableName());
+        ensure.setString(2, table.period);
+        ensure.setTimestamp(3, Timestamp.from(at));
+        try (ResultSet rs = ensure.executeQuery()) {
+          if (rs.next() && !existing.contains(rs.getString(1))) {
+            created++;
+          }
+        }
+      }
+    }
+
+    Duration retention = table == Table.OTP_CHALLENGES ? otpRetention : Duration.ZERO;
+    List<String> dropped = new ArrayList<>();
+    for (String partition : existing) {
+      if (table.isPastRetention(partition, now, retention)
+          && !hasLiveRows(connection, table, partition)) {
+        try (Statement statement = connection.createStatement()) {
+          statement.execute("DROP TABLE IF EXISTS \"" + partition + "\"");
+        }
+        dropped.add(partition);
+      }
+    }
+
+    if (existing.contains(table.defaultPartition())) {
+      checkDefaultPartition(connection, table, retention);
+    }
+
+    if (created > 0 || !dropped.isEmpty()) {
+      log.info(
+          "Partitions of {}: created {}, dropped {} {}",
+          table.tableName(),
+          created,
+          dropped.size(),
+          dropped);
+    }
+    return new Result(table, created, dropped);
+  }
+
+  private static List<String> partitions(Connection connection, Table table) throws SQLException {
+    List<String> names = new ArrayList<>();
+    try (PreparedStatement statement = connection.prepareStatement(LIST_PARTITIONS)) {
+      statement.setString(1, table.tableName());
+      try (ResultSet rs = statement.executeQuery()) {
+        while (rs.next()) {
+          names.add(rs.getString(1));
+        }
+      }
+    }
+    return names;
+  }
+
+  /**
+   * Report rows that missed every dated partition, and delete the expired ones: expired OTP rows
+   * are otherwise only removed by dropping their partition, which the default one never is.
+   */
+  private static void checkDefaultPartition(Connection connection, Table table, Duration retention)
+      throws SQLException {
+    String partition = table.defaultPartition();
+    try (PreparedStatement delete =
+        connection.prepareStatement(
+            "DELETE FROM \"" + partition + "\" WHERE " + table.expiryColumn + " < ?")) {
+      delete.setTimestamp(1, Timestamp.from(Instant.now().minus(retention)));
+      delete.executeUpdate();
+    }
+    try (Statement statement = connection.createStatement();
+        ResultSet rs =
+            statement.executeQuery("SELECT count(*), min(created_at) FROM \"" + partition + "\"")) {
+      if (rs.next() && rs.getLong(1) > 0) {
+        log.error(
+            "{} rows of {} since {} are in its default partition: partitions are not being "
+                + "created ahead (is app.auth.partitions.enabled off or the job failing?)",
+            rs.getLong(1),
+            table.tableName(),
+            rs.getTimestamp(2).toInstant());
+      }
+    }
+  }
+
+  /** Rows that are still valid keep a partition alive, e.g. sessions refreshed since creation */
+  private static boolean hasLiveRows(Connection connection, Table table, String partition)
+      throws SQLException {
+    String sql =
+        "SELECT EXISTS (SELECT 1 FROM \""
+            + partition
+            + "\" WHERE "
+            + table.expiryColumn
+            + " >= now())";
+    try (Statement statement = connection.createStatement();
+        ResultSet rs = statement.executeQuery(sql)) {
+      return rs.next() && rs.getBoolean(1);
+    }
+  }
+}
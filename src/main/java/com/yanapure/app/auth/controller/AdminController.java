@@ -1,21 +1,30 @@
 package com.yanapure.app.auth.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.yanapure.app.auth.dto.AuthResponse;
 import com.yanapure.app.auth.service.AdminService;
-import com.yanapure.app.auth.service.AuthenticationService;
+import com.yanapure.app.auth.session.SessionFilter;
+import com.yanapure.app.auth.web.RequireAdmin;
 import com.yanapure.app.common.ApiException;
 import com.yanapure.app.users.User;
+import com.yanapure.app.util.IpRange;
+import java.io.IOException;
+import java.time.Instant;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 /** REST controller for admin operations */
 @RestController
+@RequireAdmin
 @RequestMapping("/api/admin")
 @CrossOrigin(origins = "${app.cors.origins:http://localhost:5173}")
 public class AdminController {
@@ -23,33 +32,20 @@ public class AdminController {
   private static final Logger log = LoggerFactory.getLogger(AdminController.class);
 
   private final AdminService adminService;
-  private final AuthenticationService authenticationService;
+  private final ObjectMapper objectMapper;
 
-  public AdminController(AdminService adminService, AuthenticationService authenticationService) {
+  public AdminController(AdminService adminService, ObjectMapper objectMapper) {
     this.adminService = adminService;
-    this.authenticationService = authenticationService;
+    this.objectMapper = objectMapper;
   }
 
   /** Create admin user */
   @PostMapping("/users")
-  public ResponseEntity<?> createAdminUser(
-      @RequestBody CreateAdminRequest request, @RequestHeader("Authorization") String authHeader) {
+  public ResponseEntity<?> createAdminUser(@RequestBody CreateAdminRequest request) {
 
     log.info("Create admin user request");
 
     try {
-      String token = extractTokenFromHeader(authHeader);
-      User currentUser = authenticationService.validateToken(token);
-
-      if (!currentUser.isAdmin()) {
-        return ResponseEntity.status(HttpStatus.FORBIDDEN)
-            .body(
-                Map.of(
-                    "success", false,
-                    "error", "INSUFFICIENT_PERMISSIONS",
-                    "message", "Admin access required"));
-      }
-
       User adminUser =
           adminService.createAdminUser(request.getPhone(), request.getName(), request.getEmail());
 
@@ -74,24 +70,11 @@ public class AdminController {
 
   /** Promote user to admin */
   @PutMapping("/users/{userId}/promote")
-  public ResponseEntity<?> promoteToAdmin(
-      @PathVariable UUID userId, @RequestHeader("Authorization") String authHeader) {
+  public ResponseEntity<?> promoteToAdmin(@PathVariable UUID userId) {
 
     log.info("Promote user to admin request: {}", userId);
 
     try {
-      String token = extractTokenFromHeader(authHeader);
-      User currentUser = authenticationService.validateToken(token);
-
-      if (!currentUser.isAdmin()) {
-        return ResponseEntity.status(HttpStatus.FORBIDDEN)
-            .body(
-                Map.of(
-                    "success", false,
-                    "error", "INSUFFICIENT_PERMISSIONS",
-                    "message", "Admin access required"));
-      }
-
       User promotedUser = adminService.promoteToAdmin(userId);
 
       return ResponseEntity.ok(
@@ -115,24 +98,11 @@ public class AdminController {
 
   /** Demote admin to user */
   @PutMapping("/users/{userId}/demote")
-  public ResponseEntity<?> demoteFromAdmin(
-      @PathVariable UUID userId, @RequestHeader("Authorization") String authHeader) {
+  public ResponseEntity<?> demoteFromAdmin(@PathVariable UUID userId) {
 
     log.info("Demote admin to user request: {}", userId);
 
     try {
-      String token = extractTokenFromHeader(authHeader);
-      User currentUser = authenticationService.validateToken(token);
-
-      if (!currentUser.isAdmin()) {
-        return ResponseEntity.status(HttpStatus.FORBIDDEN)
-            .body(
-                Map.of(
-                    "success", false,
-                    "error", "INSUFFICIENT_PERMISSIONS",
-                    "message", "Admin access required"));
-      }
-
       User demotedUser = adminService.demoteFromAdmin(userId);
 
       return ResponseEntity.ok(
@@ -156,84 +126,144 @@ public class AdminController {
 
   /** Get all admin users */
   @GetMapping("/users")
-  public ResponseEntity<?> getAllAdmins(@RequestHeader("Authorization") String authHeader) {
+  public ResponseEntity<?> getAllAdmins() {
 
     log.info("Get all admin users request");
 
-    try {
-      String token = extractTokenFromHeader(authHeader);
-      User currentUser = authenticationService.validateToken(token);
-
-      if (!currentUser.isAdmin()) {
-        return ResponseEntity.status(HttpStatus.FORBIDDEN)
-            .body(
-                Map.of(
-                    "success", false,
-                    "error", "INSUFFICIENT_PERMISSIONS",
-                    "message", "Admin access required"));
-      }
+    List<User> admins = adminService.getAllAdmins();
+    List<AuthResponse.UserDto> adminDtos = admins.stream().map(AuthResponse.UserDto::new).toList();
 
-      List<User> admins = adminService.getAllAdmins();
-      List<AuthResponse.UserDto> adminDtos =
-          admins.stream().map(AuthResponse.UserDto::new).toList();
-
-      return ResponseEntity.ok(Map.of("admins", adminDtos));
-    } catch (ApiException e) {
-      log.warn("Get all admin users failed: {}", e.getMessage());
-      return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-          .body(
-              Map.of(
-                  "success", false,
-                  "error", e.code(),
-                  "message", e.getMessage()));
-    }
+    return ResponseEntity.ok(Map.of("admins", adminDtos));
   }
 
   /** Get admin statistics */
   @GetMapping("/stats")
-  public ResponseEntity<?> getAdminStats(@RequestHeader("Authorization") String authHeader) {
+  public ResponseEntity<?> getAdminStats() {
 
     log.info("Get admin statistics request");
 
+    AdminService.AdminStats stats = adminService.getAdminStats();
+
+    return ResponseEntity.ok(
+        Map.of(
+            "totalUsers", stats.getTotalUsers(),
+            "adminCount", stats.getAdminCount(),
+            "userCount", stats.getUserCount(),
+            "usersWithEmail", stats.getUsersWithEmail(),
+            "recentUsers", stats.getRecentUsers()));
+  }
+
+  /**
+   * Revoke sessions in bulk by user list, IP range and/or creation window. The response is NDJSON:
+   * one line of running totals per chunk, then a final line with the count. Revocation carries on
+   * if the client disconnects.
+   */
+  @PostMapping("/sessions/revoke")
+  public ResponseEntity<StreamingResponseBody> revokeSessions(
+      @RequestBody BulkRevokeRequest request) {
+
+    log.info("Bulk session revocation request");
+
+    SessionFilter filter;
     try {
-      String token = extractTokenFromHeader(authHeader);
-      User currentUser = authenticationService.validateToken(token);
+      filter = request.toFilter();
+    } catch (IllegalArgumentException e) {
+      log.warn("Bulk session revocation rejected: {}", e.getMessage());
+      throw new ApiException("INVALID_FILTER", e.getMessage());
+    }
 
-      if (!currentUser.isAdmin()) {
-        return ResponseEntity.status(HttpStatus.FORBIDDEN)
-            .body(
+    StreamingResponseBody body =
+        out -> {
+          boolean[] connected = {true};
+          Consumer<Map<String, Object>> send =
+              line -> {
+                if (!connected[0]) {
+                  return;
+                }
+                try {
+                  out.write(objectMapper.writeValueAsBytes(line));
+                  out.write('\n');
+                  out.flush();
+                } catch (IOException e) {
+                  connected[0] = false;
+                }
+              };
+          try {
+            long revoked =
+                adminService.revokeSessions(
+                    filter,
+                    progress ->
+                        send.accept(
+                            Map.of(
+                                "chunk", progress.chunks(),
+                                "revoked", progress.revoked())));
+            send.accept(Map.of("done", true, "revoked", revoked));
+          } catch (RuntimeException e) {
+            log.error("Bulk session revocation failed", e);
+            send.accept(
                 Map.of(
-                    "success", false,
-                    "error", "INSUFFICIENT_PERMISSIONS",
-                    "message", "Admin access required"));
+                    "done",
+                    false,
+                    "error",
+                    "BULK_REVOKE_FAILED",
+                    "message",
+                    String.valueOf(e.getMessage())));
+          }
+        };
+    return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+  }
+
+  /** Request DTO for bulk session revocation; unset criteria match everything */
+  public static class BulkRevokeRequest {
+    private List<UUID> userIds;
+    private String ipRange;
+    private Instant createdFrom;
+    private Instant createdTo;
+
+    public BulkRevokeRequest() {}
+
+    SessionFilter toFilter() {
+      if (userIds != null && userIds.contains(null)) {
+        throw new IllegalArgumentException("userIds must not contain null");
       }
+      return new SessionFilter(
+          userIds != null ? Set.copyOf(userIds) : null,
+          ipRange != null && !ipRange.isBlank() ? IpRange.parse(ipRange) : null,
+          createdFrom,
+          createdTo);
+    }
 
-      AdminService.AdminStats stats = adminService.getAdminStats();
+    public List<UUID> getUserIds() {
+      return userIds;
+    }
 
-      return ResponseEntity.ok(
-          Map.of(
-              "totalUsers", stats.getTotalUsers(),
-              "adminCount", stats.getAdminCount(),
-              "userCount", stats.getUserCount(),
-              "usersWithEmail", stats.getUsersWithEmail(),
-              "recentUsers", stats.getRecentUsers()));
-    } catch (ApiException e) {
-      log.warn("Get admin statistics failed: {}", e.getMessage());
-      return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-          .body(
-              Map.of(
-                  "success", false,
-                  "error", e.code(),
-                  "message", e.getMessage()));
+    public void setUserIds(List<UUID> userIds) {
+      this.userIds = userIds;
+    }
+
+    public String getIpRange() {
+      return ipRange;
+    }
+
+    public void setIpRange(String ipRange) {
+      this.ipRange = ipRange;
+    }
+
+    public Instant getCreatedFrom() {
+      return createdFrom;
+    }
+
+    public void setCreatedFrom(Instant createdFrom) {
+      this.createdFrom = createdFrom;
+    }
+
+    public Instant getCreatedTo() {
+      return createdTo;
     }
-  }
 
-  /** Extract token from Authorization header */
-  private String extractTokenFromHeader(String authHeader) {
-    if (authHeader == null || !authHeader.startsWith("Bearer ")) {
-      throw new ApiException("INVALID_AUTH_HEADER", "Invalid authorization header");
+    public void setCreatedTo(Instant createdTo) {
+      this.createdTo = createdTo;
     }
-    return authHeader.substring(7);
   }
 
   /** Request DTO for creating admin user */
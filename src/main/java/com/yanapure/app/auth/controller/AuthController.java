@@ -4,15 +4,23 @@ import com.yanapure.app.auth.dto.AuthRequest;
 import com.yanapure.app.auth.dto.AuthResponse;
 import com.yanapure.app.auth.dto.UserSessionDto;
 import com.yanapure.app.auth.service.AuthenticationService;
+import com.yanapure.app.auth.service.RefreshCoalescer;
+import com.yanapure.app.auth.session.UserAgentDictionary;
+import com.yanapure.app.auth.token.TokenPrincipal;
+import com.yanapure.app.auth.web.CurrentUser;
+import com.yanapure.app.auth.web.SessionEventDispatcher;
 import com.yanapure.app.common.ApiException;
+import com.yanapure.app.users.User;
 import jakarta.servlet.http.HttpServletRequest;
 import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 /** REST controller for authentication operations */
 @RestController
@@ -23,12 +31,22 @@ public class AuthController {
   private static final Logger log = LoggerFactory.getLogger(AuthController.class);
 
   private final AuthenticationService authenticationService;
+  private final RefreshCoalescer refreshCoalescer;
+  private final UserAgentDictionary userAgents;
+  private final SessionEventDispatcher sessionEvents;
 
   @Value("${app.auth.access-token-expiry-hours:1}")
   private int accessTokenExpiryHours;
 
-  public AuthController(AuthenticationService authenticationService) {
+  public AuthController(
+      AuthenticationService authenticationService,
+      RefreshCoalescer refreshCoalescer,
+      UserAgentDictionary userAgents,
+      SessionEventDispatcher sessionEvents) {
     this.authenticationService = authenticationService;
+    this.refreshCoalescer = refreshCoalescer;
+    this.userAgents = userAgents;
+    this.sessionEvents = sessionEvents;
   }
 
   /** Send OTP to phone number */
@@ -113,7 +131,7 @@ public class AuthController {
 
     try {
       AuthenticationService.AuthResult result =
-          authenticationService.refreshToken(request.getRefreshToken(), clientIp);
+          refreshCoalescer.refresh(request.getRefreshToken(), clientIp);
 
       long expiresIn = accessTokenExpiryHours * 3600; // Convert to seconds
 
@@ -166,15 +184,12 @@ public class AuthController {
 
   /** Logout from all devices */
   @PostMapping("/logout-all")
-  public ResponseEntity<Map<String, Object>> logoutAll(
-      @RequestHeader("Authorization") String authHeader) {
+  public ResponseEntity<Map<String, Object>> logoutAll(@CurrentUser TokenPrincipal principal) {
 
     log.info("Logout all devices request");
 
     try {
-      String token = extractTokenFromHeader(authHeader);
-      var user = authenticationService.validateToken(token);
-      authenticationService.logoutAllDevices(user.getId());
+      authenticationService.logoutAllDevices(principal.userId());
 
       return ResponseEntity.ok(
           Map.of("success", true, "message", "Logged out from all devices successfully"));
@@ -191,53 +206,37 @@ public class AuthController {
 
   /** Get current user info */
   @GetMapping("/me")
-  public ResponseEntity<?> getCurrentUser(
-      @RequestHeader(value = "Authorization", required = false) String authHeader) {
+  public ResponseEntity<?> getCurrentUser(@CurrentUser User user) {
 
     log.info("Get current user request");
 
-    try {
-      if (authHeader == null) {
-        throw new ApiException("MISSING_AUTH_HEADER", "Authorization header is required");
-      }
-
-      String token = extractTokenFromHeader(authHeader);
-      var user = authenticationService.validateToken(token);
-
-      return ResponseEntity.ok(new AuthResponse.UserDto(user));
-    } catch (ApiException e) {
-      log.warn("Get current user failed: {}", e.getMessage());
-      return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-          .body(
-              Map.of(
-                  "success", false,
-                  "error", e.code(),
-                  "message", e.getMessage()));
-    }
+    return ResponseEntity.ok(new AuthResponse.UserDto(user));
   }
 
   /** Get user sessions */
   @GetMapping("/sessions")
-  public ResponseEntity<?> getUserSessions(@RequestHeader("Authorization") String authHeader) {
+  public ResponseEntity<?> getUserSessions(@CurrentUser TokenPrincipal principal) {
 
     log.info("Get user sessions request");
 
-    try {
-      String token = extractTokenFromHeader(authHeader);
-      var user = authenticationService.validateToken(token);
-      var sessions = authenticationService.getUserSessions(user.getId());
+    var sessions = authenticationService.getUserSessions(principal.userId());
 
-      return ResponseEntity.ok(
-          Map.of("sessions", sessions.stream().map(UserSessionDto::new).toList()));
-    } catch (ApiException e) {
-      log.warn("Get user sessions failed: {}", e.getMessage());
-      return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
-          .body(
-              Map.of(
-                  "success", false,
-                  "error", e.code(),
-                  "message", e.getMessage()));
-    }
+    return ResponseEntity.ok(
+        Map.of(
+            "sessions",
+            sessions.stream()
+                .map(s -> new UserSessionDto(s, userAgents.resolve(s.getUserAgentId())))
+                .toList()));
+  }
+
+  /**
+   * Server-sent events for the caller's session: {@code session-revoked}, {@code session-evicted},
+   * {@code revoked} (all sessions) and {@code role-changed}. The stream closes after such an event;
+   * {@code resync} asks the client to check its session once because events may have been missed.
+   */
+  @GetMapping(path = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public SseEmitter events(@CurrentUser TokenPrincipal principal) {
+    return sessionEvents.subscribe(principal.userId(), principal.sessionId());
   }
 
   /** Extract client IP from request */
@@ -0,0 +1,34 @@
+package com.yanapure.app.auth.controller;
+
+import com.yanapure.app.auth.service.JwtService;
+import java.time.Duration;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Publishes the public JWT verification keys so gateways and downstream services can verify tokens
+ * locally. Empty when tokens are signed with the shared HMAC secret.
+ */
+@RestController
+public class JwksController {
+
+  private final JwtService jwtService;
+  private final Duration maxAge;
+
+  public JwksController(
+      JwtService jwtService, @Value("${app.jwt.jwks-max-age:15m}") Duration maxAge) {
+    this.jwtService = jwtService;
+    this.maxAge = maxAge;
+  }
+
+  @GetMapping("/.well-known/jwks.json")
+  public ResponseEntity<Map<String, Object>> jwks() {
+    return ResponseEntity.ok()
+        .cacheControl(CacheControl.maxAge(maxAge).cachePublic())
+        .body(jwtService.getKeyRing().toJwks());
+  }
+}
@@ -1,6 +1,7 @@
 package com.yanapure.app.auth.dto;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.yanapure.app.auth.session.UserAgentDictionary;
 import com.yanapure.app.auth.session.UserSession;
 import java.time.Instant;
 import java.util.UUID;
@@ -32,10 +33,14 @@ public class UserSessionDto {
   // Constructors
   public UserSessionDto() {}
 
-  public UserSessionDto(UserSession session) {
+  /**
+   * @param userAgent header text the session's user agent id resolves to, see {@link
+   *     UserAgentDictionary#resolve}
+   */
+  public UserSessionDto(UserSession session, String userAgent) {
     this.id = session.getId();
     this.clientIp = session.getClientIp();
-    this.userAgent = session.getUserAgent();
+    this.userAgent = userAgent;
     this.active = session.getActive();
     this.createdAt = session.getCreatedAt();
     this.lastUsedAt = session.getLastUsedAt();
@@ -3,6 +3,8 @@ package com.yanapure.app.auth.otp;
 import jakarta.persistence.*;
 import java.time.Instant;
 import java.util.UUID;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 
 @Entity
 @Table(
@@ -22,6 +24,8 @@ public class OtpChallenge {
 
   private Instant consumedAt;
 
+  /** {@code inet} on PostgreSQL */
+  @JdbcTypeCode(SqlTypes.INET)
   @Column(length = 45)
   private String requestIp;
 
@@ -31,7 +35,8 @@ public class OtpChallenge {
   @Column(nullable = false)
   private boolean verified = false;
 
-  @Column(nullable = false)
+  /** Partition key on PostgreSQL, never changed after insert */
+  @Column(nullable = false, updatable = false)
   private Instant createdAt = Instant.now();
 
   public boolean isExpired() {
@@ -5,7 +5,8 @@ import java.util.*;
 import org.springframework.data.jpa.repository.*;
 import org.springframework.data.repository.query.Param;
 
-public interface OtpChallengeRepository extends JpaRepository<OtpChallenge, UUID> {
+public interface OtpChallengeRepository
+    extends JpaRepository<OtpChallenge, UUID>, OtpChallengeRepositoryCustom {
 
   /** Find the latest active OTP challenge for a phone number */
   Optional<OtpChallenge> findTopByPhoneAndConsumedAtIsNullOrderByCreatedAtDesc(String phone);
@@ -37,12 +38,4 @@ public interface OtpChallengeRepository extends JpaRepository<OtpChallenge, UUID
   @Query(
       "SELECT c FROM OtpChallenge c WHERE c.attemptCount >= :minAttempts AND c.consumedAt IS NULL")
   List<OtpChallenge> findHighAttemptChallenges(@Param("minAttempts") int minAttempts);
-
-  /** Delete expired OTP challenges (cleanup) */
-  @Modifying
-  @Query("DELETE FROM OtpChallenge c WHERE c.expiresAt < :expiresBefore")
-  int deleteExpiredChallenges(@Param("expiresBefore") Instant expiresBefore);
-
-  /** Find OTP challenges by request IP (for rate limiting) */
-  List<OtpChallenge> findByRequestIpAndCreatedAtAfter(String requestIp, Instant since);
 }
@@ -0,0 +1,14 @@
+package com.yanapure.app.auth.otp;
+
+import com.yanapure.app.util.IpRange;
+import java.time.Instant;
+
+/** OTP challenge queries that need plain SQL */
+public interface OtpChallengeRepositoryCustom {
+
+  /**
+   * Count challenges requested from any address in {@code range} since the given instant. On
+   * PostgreSQL this is one {@code <<=} match on the inet column, served by its GiST index.
+   */
+  long countByRequestIpInRangeSince(IpRange range, Instant since);
+}
@@ -0,0 +1,54 @@
+package com.yanapure.app.auth.otp;
+
+import com.yanapure.app.util.IpRange;
+import java.sql.DatabaseMetaData;
+import java.sql.Timestamp;
+import java.time.Instant;
+import javax.sql.DataSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+
+/**
+ * JDBC implementation of {@link OtpChallengeRepositoryCustom}. Other databases store the address as
+ * text, so there the recent addresses are read and matched in Java.
+ */
+class OtpChallengeRepositoryImpl implements OtpChallengeRepositoryCustom {
+
+  private static final String COUNT_IN_RANGE =
+      "SELECT COUNT(*) FROM otp_challenges "
+          + "WHERE request_ip <<= CAST(? AS cidr) AND created_at >= ?";
+
+  private static final String SELECT_RECENT_IPS =
+      "SELECT request_ip FROM otp_challenges WHERE created_at >= ? AND request_ip IS NOT NULL";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final boolean postgres;
+
+  OtpChallengeRepositoryImpl(JdbcTemplate jdbcTemplate, DataSource dataSource) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.postgres = isPostgres(dataSource);
+  }
+
+  @Override
+  public long countByRequestIpInRangeSince(IpRange range, Instant since) {
+    Timestamp from = Timestamp.from(since);
+    if (postgres) {
+      Long count = jdbcTemplate.queryForObject(COUNT_IN_RANGE, Long.class, range.cidr(), from);
+      return count != null ? count : 0;
+    }
+    return jdbcTemplate.queryForList(SELECT_RECENT_IPS, String.class, from).stream()
+        .filter(range::contains)
+        .count();
+  }
+
+  private static boolean isPostgres(DataSource dataSource) {
+    try {
+      String product =
+          JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName);
+      return "PostgreSQL".equalsIgnoreCase(product);
+    } catch (MetaDataAccessException e) {
+      return false;
+    }
+  }
+}
@@ -1,5 +1,9 @@
 package com.yanapure.app.auth.service;
 
+import com.yanapure.app.auth.session.SessionFilter;
+import com.yanapure.app.auth.session.SessionInvalidation;
+import com.yanapure.app.auth.session.SessionInvalidationBus;
+import com.yanapure.app.auth.session.SessionStore;
 import com.yanapure.app.common.ApiException;
 import com.yanapure.app.users.Role;
 import com.yanapure.app.users.User;
@@ -8,9 +12,12 @@ import com.yanapure.app.util.PhoneUtils;
 import java.time.Instant;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 /** Service for admin-specific operations */
@@ -22,10 +29,21 @@ public class AdminService {
 
   private final UserRepository userRepository;
   private final UserService userService;
+  private final SessionInvalidationBus invalidationBus;
+  private final SessionStore sessionStore;
 
-  public AdminService(UserRepository userRepository, UserService userService) {
+  @Value("${app.auth.bulk-revoke.chunk-size:1000}")
+  private int bulkRevokeChunkSize = 1000;
+
+  public AdminService(
+      UserRepository userRepository,
+      UserService userService,
+      SessionInvalidationBus invalidationBus,
+      SessionStore sessionStore) {
     this.userRepository = userRepository;
     this.userService = userService;
+    this.invalidationBus = invalidationBus;
+    this.sessionStore = sessionStore;
   }
 
   /** Create admin user */
@@ -70,6 +88,7 @@ public class AdminService {
     user.setUpdatedAt(Instant.now());
 
     User updatedUser = userRepository.save(user);
+    invalidationBus.publishAll(SessionInvalidation.forRoleChange(userId));
     log.info("Promoted user to admin: {} (ID: {})", user.getName(), userId);
 
     return updatedUser;
@@ -93,6 +112,7 @@ public class AdminService {
     user.setUpdatedAt(Instant.now());
 
     User updatedUser = userRepository.save(user);
+    invalidationBus.publishAll(SessionInvalidation.forRoleChange(userId));
     log.info("Demoted admin to user: {} (ID: {})", user.getName(), userId);
 
     return updatedUser;
@@ -115,6 +135,49 @@ public class AdminService {
     return new AdminStats(totalUsers, adminCount, userCount, usersWithEmail, recentUsers);
   }
 
+  /**
+   * Revoke every active session matching {@code filter}. Sessions are deactivated a chunk per
+   * UPDATE outside any transaction, so each chunk is committed and its sessions invalidated on all
+   * nodes before the next one starts. A chunk's invalidations are published together; when the
+   * filter takes every session of its users, they go out per user rather than per session.
+   *
+   * @param progress told the running totals after each chunk
+   * @return number of sessions revoked
+   */
+  @Transactional(propagation = Propagation.NOT_SUPPORTED)
+  public long revokeSessions(SessionFilter filter, Consumer<BulkRevokeProgress> progress) {
+    log.info(
+        "Bulk session revocation: {} users, IP range {}, created {} - {}",
+        filter.hasUserIds() ? filter.userIds().size() : "any",
+        filter.ipRange() != null ? filter.ipRange() : "any",
+        filter.createdFrom(),
+        filter.createdTo());
+
+    int[] chunks = {0};
+    long[] revoked = {0};
+    long total =
+        sessionStore.revokeMatching(
+            filter,
+            bulkRevokeChunkSize,
+            chunk -> {
+              invalidationBus.publishAll(
+                  filter.isWholeUsers()
+                      ? chunk.userIds().stream().map(SessionInvalidation::userRevoked).toList()
+                      : chunk.sessionIds().stream()
+                          .map(SessionInvalidation::sessionRevoked)
+                          .toList());
+              chunks[0]++;
+              revoked[0] += chunk.revoked();
+              progress.accept(new BulkRevokeProgress(chunks[0], revoked[0]));
+            });
+
+    log.info("Bulk session revocation revoked {} sessions in {} chunks", total, chunks[0]);
+    return total;
+  }
+
+  /** Running totals of a bulk revocation */
+  public record BulkRevokeProgress(int chunks, long revoked) {}
+
   /** Admin statistics DTO */
   public static class AdminStats {
     private final long totalUsers;
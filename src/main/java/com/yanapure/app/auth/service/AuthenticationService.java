@@ -1,12 +1,27 @@
 package com.yanapure.app.auth.service;
 
+import com.yanapure.app.auth.session.SessionActivityRecorder;
+import com.yanapure.app.auth.session.SessionCache;
+import com.yanapure.app.auth.session.SessionInvalidation;
+import com.yanapure.app.auth.session.SessionInvalidationBus;
+import com.yanapure.app.auth.session.SessionLookup;
+import com.yanapure.app.auth.session.SessionRevocations;
+import com.yanapure.app.auth.session.SessionStore;
+import com.yanapure.app.auth.session.UserAgentDictionary;
 import com.yanapure.app.auth.session.UserSession;
-import com.yanapure.app.auth.session.UserSessionRepository;
+import com.yanapure.app.auth.session.UserSessionRepositoryCustom;
+import com.yanapure.app.auth.token.OpaqueTokens;
+import com.yanapure.app.auth.token.TokenDigest;
+import com.yanapure.app.auth.token.TokenDigestCache;
+import com.yanapure.app.auth.token.TokenPrincipal;
 import com.yanapure.app.common.ApiException;
 import com.yanapure.app.users.Role;
 import com.yanapure.app.users.User;
 import com.yanapure.app.users.UserRepository;
+import com.yanapure.app.util.IpRange;
 import com.yanapure.app.util.PhoneUtils;
+import jakarta.annotation.PostConstruct;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
@@ -23,11 +38,17 @@ import org.springframework.transaction.annotation.Transactional;
 public class AuthenticationService {
 
   private static final Logger log = LoggerFactory.getLogger(AuthenticationService.class);
+  private static final int REJECTED_ENTRY_WEIGHT = 128;
 
   private final UserRepository userRepository;
-  private final UserSessionRepository userSessionRepository;
   private final OtpService otpService;
   private final JwtService jwtService;
+  private final SessionRevocations revocations;
+  private final SessionActivityRecorder sessionActivity;
+  private final SessionCache sessionCache;
+  private final SessionInvalidationBus invalidationBus;
+  private final SessionStore sessionStore;
+  private final UserAgentDictionary userAgents;
 
   @Value("${app.auth.access-token-expiry-hours:1}")
   private int accessTokenExpiryHours;
@@ -38,15 +59,63 @@ public class AuthenticationService {
   @Value("${app.auth.max-sessions-per-user:5}")
   private int maxSessionsPerUser;
 
+  /** jwt (self-contained signed tokens) or opaque (random reference tokens) */
+  @Value("${app.auth.token-mode:jwt}")
+  private String tokenMode = "jwt";
+
+  /**
+   * Trust a verified, session-bound JWT without reading user_sessions; revocation is enforced by
+   * {@link SessionRevocations}
+   */
+  @Value("${app.auth.stateless-validation:false}")
+  private boolean statelessValidation;
+
+  @Value("${app.auth.rejected-token-cache.max-entries:10000}")
+  private int rejectedTokenCacheMaxEntries = 10000;
+
+  @Value("${app.auth.rejected-token-cache.ttl:5m}")
+  private Duration rejectedTokenCacheTtl = Duration.ofMinutes(5);
+
+  /** Digests of tokens rejected recently, so replayed garbage never reaches the database */
+  private TokenDigestCache<Rejection> rejectedTokens;
+
+  private boolean opaqueTokens;
+
   public AuthenticationService(
       UserRepository userRepository,
-      UserSessionRepository userSessionRepository,
       OtpService otpService,
-      JwtService jwtService) {
+      JwtService jwtService,
+      SessionRevocations revocations,
+      SessionActivityRecorder sessionActivity,
+      SessionCache sessionCache,
+      SessionInvalidationBus invalidationBus,
+      SessionStore sessionStore,
+      UserAgentDictionary userAgents) {
     this.userRepository = userRepository;
-    this.userSessionRepository = userSessionRepository;
     this.otpService = otpService;
     this.jwtService = jwtService;
+    this.revocations = revocations;
+    this.sessionActivity = sessionActivity;
+    this.sessionCache = sessionCache;
+    this.invalidationBus = invalidationBus;
+    this.sessionStore = sessionStore;
+    this.userAgents = userAgents;
+  }
+
+  @PostConstruct
+  void init() {
+    this.rejectedTokens =
+        new TokenDigestCache<>(
+            rejectedTokenCacheMaxEntries, rejectedTokenCacheMaxEntries * REJECTED_ENTRY_WEIGHT);
+    this.opaqueTokens =
+        switch (tokenMode.trim().toLowerCase()) {
+          case "jwt" -> false;
+          case "opaque" -> true;
+          default -> throw new IllegalStateException("Unsupported token mode: " + tokenMode);
+        };
+    if (opaqueTokens) {
+      log.info("Issuing opaque reference tokens");
+    }
   }
 
   /** Initiate phone-based authentication by sending OTP */
@@ -75,16 +144,19 @@ public class AuthenticationService {
     // Find or create user
     User user = findOrCreateUser(normalizedPhone);
 
-    // Update last login
+    // Update last login; it leaves the version alone, other nodes drop their now stale copy
     user.setLastLoginAt(Instant.now());
     userRepository.save(user);
+    invalidationBus.publish(SessionInvalidation.userChanged(user.getId()));
 
-    // Generate tokens
-    String accessToken = jwtService.generateAccessToken(user);
-    String refreshToken = jwtService.generateRefreshToken(user);
+    // Generate tokens bound to the session id they will be stored under
+    UUID sessionId = sessionStore.newSessionId(user.getId());
+    String accessToken = newAccessToken(user, sessionId);
+    String refreshToken = newRefreshToken(user, sessionId);
 
     // Create session with tokens
-    UserSession session = createUserSession(user, accessToken, refreshToken, clientIp, userAgent);
+    UserSession session =
+        createUserSession(sessionId, user, accessToken, refreshToken, clientIp, userAgent);
 
     log.info(
         "User authenticated successfully: {} (ID: {})",
@@ -94,110 +166,293 @@ public class AuthenticationService {
     return new AuthResult(user, accessToken, refreshToken, session.getId());
   }
 
-  /** Refresh access token using refresh token */
+  /**
+   * Refresh access token using refresh token. The session is matched, checked and rotated by a
+   * single update; the user normally comes from the second-level cache.
+   */
   public AuthResult refreshToken(String refreshToken, String clientIp) {
     log.info("Refreshing token for client IP: {}", clientIp);
 
-    // Find session by refresh token
-    Optional<UserSession> sessionOpt = userSessionRepository.findByRefreshToken(refreshToken);
-    if (sessionOpt.isEmpty()) {
-      throw new ApiException("INVALID_REFRESH_TOKEN", "Invalid refresh token");
+    // Reject forged, expired or mistyped tokens before touching the database
+    CheckedToken checked = verifyBeforeLookup(refreshToken, TokenPrincipal.REFRESH);
+
+    // JWTs embed the user and session, so both are needed before minting; opaque tokens are not
+    UUID sessionId = checked.sessionId();
+    User user = null;
+    if (checked.principal() != null) {
+      if (sessionId == null) {
+        // Issued before tokens carried a sid claim
+        sessionId =
+            findSession(checked, true)
+                .map(UserSession::getId)
+                .orElseThrow(() -> reject(checked.digest(), Rejection.INVALID_REFRESH_TOKEN));
+      }
+      user = requireUser(checked.principal().userId());
     }
 
-    UserSession session = sessionOpt.get();
-
-    // Check if session is still valid
-    if (!session.getActive() || session.isRefreshExpired()) {
-      throw new ApiException("REFRESH_TOKEN_EXPIRED", "Refresh token has expired");
+    // Generate new tokens
+    String newAccessToken = newAccessToken(user, sessionId);
+    String newRefreshToken = newRefreshToken(user, sessionId);
+
+    // Swap them in, provided the session is still active and unexpired
+    Instant now = Instant.now();
+    Optional<UserSessionRepositoryCustom.SessionKey> rotated =
+        sessionStore.rotate(
+            sessionId,
+            checked.digest(),
+            newAccessToken,
+            newRefreshToken,
+            now.plusSeconds(accessTokenExpiryHours * 3600),
+            now.plusSeconds(refreshTokenExpiryDays * 24 * 3600));
+    if (rotated.isEmpty()) {
+      // Only failures pay for telling an unknown token from an ended session
+      boolean known = findSession(checked, true).isPresent();
+      throw reject(
+          checked.digest(),
+          known ? Rejection.REFRESH_TOKEN_EXPIRED : Rejection.INVALID_REFRESH_TOKEN);
     }
 
-    // Get user
-    Optional<User> userOpt = userRepository.findById(session.getUserId());
-    if (userOpt.isEmpty()) {
-      throw new ApiException("USER_NOT_FOUND", "User not found");
+    UserSessionRepositoryCustom.SessionKey session = rotated.get();
+    if (user == null) {
+      user = requireUser(session.userId());
     }
-
-    User user = userOpt.get();
-
-    // Generate new tokens
-    String newAccessToken = jwtService.generateAccessToken(user);
-    String newRefreshToken = jwtService.generateRefreshToken(user);
-
-    // Update session
-    session.setAccessToken(newAccessToken);
-    session.setRefreshToken(newRefreshToken);
-    session.setExpiresAt(Instant.now().plusSeconds(accessTokenExpiryHours * 3600));
-    session.setRefreshExpiresAt(Instant.now().plusSeconds(refreshTokenExpiryDays * 24 * 3600));
-    session.updateLastUsed();
-    userSessionRepository.save(session);
+    invalidationBus.publish(SessionInvalidation.sessionChanged(session.sessionId()));
 
     log.info("Token refreshed successfully for user: {}", user.getId());
 
-    return new AuthResult(user, newAccessToken, newRefreshToken, session.getId());
+    return new AuthResult(user, newAccessToken, newRefreshToken, session.sessionId());
   }
 
   /** Logout user (deactivate session) */
   public void logout(String accessToken) {
     log.info("Logging out user");
 
-    Optional<UserSession> sessionOpt =
-        userSessionRepository.findByAccessTokenAndActiveTrue(accessToken);
-    if (sessionOpt.isPresent()) {
-      UserSession session = sessionOpt.get();
-      session.deactivate();
-      userSessionRepository.save(session);
-      log.info("User logged out successfully: {}", session.getUserId());
-    } else {
+    CheckedToken checked;
+    try {
+      checked = verifyBeforeLookup(accessToken, TokenPrincipal.ACCESS);
+    } catch (ApiException e) {
+      throw Rejection.INVALID_TOKEN.toException();
+    }
+
+    Optional<UserSessionRepositoryCustom.SessionKey> revoked =
+        sessionStore.revoke(checked.sessionId(), checked.digest());
+    if (revoked.isEmpty()) {
       throw new ApiException("INVALID_TOKEN", "Invalid or expired token");
     }
+    invalidationBus.publish(SessionInvalidation.sessionRevoked(revoked.get().sessionId()));
+    log.info("User logged out successfully: {}", revoked.get().userId());
   }
 
   /** Logout from all devices */
   public void logoutAllDevices(UUID userId) {
     log.info("Logging out user from all devices: {}", userId);
 
-    int deactivated = userSessionRepository.deactivateAllSessionsForUser(userId);
+    int deactivated = sessionStore.revokeAll(userId);
+    invalidationBus.publish(SessionInvalidation.userRevoked(userId));
     log.info("Deactivated {} sessions for user: {}", deactivated, userId);
   }
 
   /** Validate access token and return user */
+  @Transactional(readOnly = true)
   public User validateToken(String accessToken) {
-    Optional<UserSession> sessionOpt =
-        userSessionRepository.findByAccessTokenAndActiveTrue(accessToken);
+    // Reject forged, expired or mistyped tokens before touching the database
+    CheckedToken checked = verifyBeforeLookup(accessToken, TokenPrincipal.ACCESS);
+
+    TokenPrincipal trusted = trustedPrincipal(checked);
+    if (trusted != null) {
+      return requireUser(trusted.userId());
+    }
+
+    SessionCache.Entry resolved = resolveSession(checked);
+
+    // Update last used (written behind, in batches)
+    sessionActivity.touch(resolved.session());
+
+    return resolved.user();
+  }
+
+  /**
+   * Authenticate an access token and return who it belongs to. Use this instead of {@link
+   * #validateToken} when only the identity and role are needed: in stateless mode a session-bound
+   * JWT is answered from its claims and the revocation set without any database access, and
+   * otherwise the session is read through the {@link SessionStore} without loading entities (unless
+   * the session cache is on, which holds entities).
+   */
+  @Transactional(readOnly = true)
+  public TokenPrincipal authenticate(String accessToken) {
+    CheckedToken checked = verifyBeforeLookup(accessToken, TokenPrincipal.ACCESS);
+
+    TokenPrincipal trusted = trustedPrincipal(checked);
+    if (trusted != null) {
+      return trusted;
+    }
+    if (!sessionCache.isEnabled()) {
+      return lookupPrincipal(checked);
+    }
+
+    SessionCache.Entry resolved = resolveSession(checked);
+    UserSession session = resolved.session();
+    User user = resolved.user();
+
+    sessionActivity.touch(session);
+
+    return new TokenPrincipal(
+        user.getId(),
+        user.getPhone(),
+        user.getRole(),
+        TokenPrincipal.ACCESS,
+        session.getExpiresAt(),
+        session.getId(),
+        checked.principal() != null ? checked.principal().issuedAt() : null);
+  }
+
+  /** Get user sessions */
+  public List<UserSession> getUserSessions(UUID userId) {
+    return sessionStore.findActiveByUser(userId);
+  }
+
+  /**
+   * The verified claims of a session-bound JWT when stateless validation is on and the token has
+   * not been revoked on this node; null when the session table has to be consulted
+   */
+  private TokenPrincipal trustedPrincipal(CheckedToken checked) {
+    TokenPrincipal principal = checked.principal();
+    if (!statelessValidation || principal == null || principal.sessionId() == null) {
+      return null;
+    }
+    if (revocations.isRevoked(principal)) {
+      throw reject(checked.digest(), Rejection.INVALID_TOKEN);
+    }
+    return principal;
+  }
+
+  /** Session and user of an access token, from the node-local cache when possible */
+  private SessionCache.Entry resolveSession(CheckedToken checked) {
+    SessionCache.Entry cached = sessionCache.get(checked.digest());
+    if (cached != null) {
+      return cached;
+    }
+    UserSession session = requireSession(checked);
+    User user = requireUser(session.getUserId());
+    sessionCache.put(checked.digest(), session, user);
+    return new SessionCache.Entry(session, user);
+  }
+
+  /** Identity behind an access token from a single session/user join */
+  private TokenPrincipal lookupPrincipal(CheckedToken checked) {
+    SessionLookup.ActiveSession session =
+        sessionStore
+            .findActiveByAccessToken(checked.sessionId(), checked.digest())
+            .orElseThrow(() -> reject(checked.digest(), Rejection.INVALID_TOKEN));
+    if (session.isExpired()) {
+      throw reject(checked.digest(), Rejection.TOKEN_EXPIRED);
+    }
+
+    sessionActivity.touch(session.sessionId(), session.lastUsedAt());
+
+    return new TokenPrincipal(
+        session.userId(),
+        session.phone(),
+        session.role(),
+        TokenPrincipal.ACCESS,
+        session.expiresAt(),
+        session.sessionId(),
+        checked.principal() != null ? checked.principal().issuedAt() : null);
+  }
+
+  /** Active, unexpired session of an access token */
+  private UserSession requireSession(CheckedToken checked) {
+    Optional<UserSession> sessionOpt = findSession(checked, false);
     if (sessionOpt.isEmpty()) {
-      throw new ApiException("INVALID_TOKEN", "Invalid or expired token");
+      throw reject(checked.digest(), Rejection.INVALID_TOKEN);
     }
 
     UserSession session = sessionOpt.get();
     if (session.isExpired()) {
-      throw new ApiException("TOKEN_EXPIRED", "Token has expired");
+      throw reject(checked.digest(), Rejection.TOKEN_EXPIRED);
     }
+    return session;
+  }
 
-    Optional<User> userOpt = userRepository.findById(session.getUserId());
-    if (userOpt.isEmpty()) {
-      throw new ApiException("USER_NOT_FOUND", "User not found");
-    }
+  private User requireUser(UUID userId) {
+    return userRepository
+        .findById(userId)
+        .orElseThrow(() -> new ApiException("USER_NOT_FOUND", "User not found"));
+  }
 
-    // Update last used
-    session.updateLastUsed();
-    userSessionRepository.save(session);
+  private String newAccessToken(User user, UUID sessionId) {
+    return opaqueTokens ? OpaqueTokens.generate() : jwtService.generateAccessToken(user, sessionId);
+  }
 
-    return userOpt.get();
+  private String newRefreshToken(User user, UUID sessionId) {
+    return opaqueTokens
+        ? OpaqueTokens.generate()
+        : jwtService.generateRefreshToken(user, sessionId);
   }
 
-  /** Get user sessions */
-  public List<UserSession> getUserSessions(UUID userId) {
-    return userSessionRepository.findByUserIdAndActiveTrueOrderByCreatedAtDesc(userId);
+  /**
+   * Resolve the session a token belongs to. Tokens carrying a {@code sid} claim are a primary-key
+   * lookup followed by a constant-time digest comparison; opaque tokens and tokens minted before
+   * the claim existed go through the digest index.
+   */
+  private Optional<UserSession> findSession(CheckedToken token, boolean refresh) {
+    if (token.sessionId() != null) {
+      return sessionStore
+          .findById(token.sessionId())
+          .filter(
+              s ->
+                  refresh
+                      ? s.matchesRefreshToken(token.digest())
+                      : s.getActive() && s.matchesAccessToken(token.digest()));
+    }
+    return refresh
+        ? sessionStore.findByRefreshTokenDigest(token.digest())
+        : sessionStore.findByAccessTokenDigest(token.digest());
   }
 
-  /** Clean up expired sessions */
-  public int cleanupExpiredSessions() {
-    Instant cutoff = Instant.now();
+  /**
+   * In-memory token checks that run before any repository call: a recently rejected digest, the
+   * signature, {@code exp} and the {@code tokenType} claim. Opaque tokens only get a shape check;
+   * JWTs issued before switching to opaque mode are still verified until they expire.
+   *
+   * @return the token digest and, for JWTs, the verified principal
+   */
+  private CheckedToken verifyBeforeLookup(String token, String expectedType) {
+    boolean refresh = TokenPrincipal.REFRESH.equals(expectedType);
+    Rejection invalid = refresh ? Rejection.INVALID_REFRESH_TOKEN : Rejection.INVALID_TOKEN;
+    if (token == null || token.isBlank()) {
+      throw invalid.toException();
+    }
 
-    int deleted = userSessionRepository.deleteExpiredSessions(cutoff);
-    log.info("Cleaned up {} expired sessions", deleted);
+    TokenDigest digest = TokenDigest.of(token);
+    Rejection rejected = rejectedTokens.get(digest);
+    if (rejected != null) {
+      throw rejected.toException();
+    }
+    if (opaqueTokens && OpaqueTokens.isWellFormed(token)) {
+      return new CheckedToken(digest, null);
+    }
 
-    return deleted;
+    TokenPrincipal principal;
+    try {
+      principal = jwtService.verify(token);
+    } catch (ApiException e) {
+      if (!"TOKEN_EXPIRED".equals(e.code())) {
+        throw reject(digest, invalid);
+      }
+      throw reject(digest, refresh ? Rejection.REFRESH_TOKEN_EXPIRED : Rejection.TOKEN_EXPIRED);
+    }
+    if (!expectedType.equals(principal.tokenType())) {
+      throw reject(digest, invalid);
+    }
+    return new CheckedToken(digest, principal);
+  }
+
+  /** Remember a rejected token for a short while and return the exception to throw */
+  private ApiException reject(TokenDigest digest, Rejection rejection) {
+    rejectedTokens.put(
+        digest, rejection, Instant.now().plus(rejectedTokenCacheTtl), REJECTED_ENTRY_WEIGHT);
+    return rejection.toException();
   }
 
   /** Find or create user by phone number */
@@ -222,37 +477,62 @@ public class AuthenticationService {
     return savedUser;
   }
 
-  /** Create user session */
+  /** Create user session, deactivating the oldest ones beyond the per-user limit */
   private UserSession createUserSession(
-      User user, String accessToken, String refreshToken, String clientIp, String userAgent) {
-    // Check session limit
-    long activeSessions = userSessionRepository.countByUserIdAndActiveTrue(user.getId());
-    if (activeSessions >= maxSessionsPerUser) {
-      // Deactivate oldest session
-      List<UserSession> sessions =
-          userSessionRepository.findByUserIdAndActiveTrueOrderByCreatedAtDesc(user.getId());
-      if (!sessions.isEmpty()) {
-        UserSession oldestSession = sessions.get(sessions.size() - 1);
-        oldestSession.deactivate();
-        userSessionRepository.save(oldestSession);
-        log.info("Deactivated oldest session for user: {}", user.getId());
-      }
-    }
-
-    // Create new session
+      UUID sessionId,
+      User user,
+      String accessToken,
+      String refreshToken,
+      String clientIp,
+      String userAgent) {
     Instant expiresAt = Instant.now().plusSeconds(accessTokenExpiryHours * 3600);
     Instant refreshExpiresAt = Instant.now().plusSeconds(refreshTokenExpiryDays * 24 * 3600);
 
     UserSession session =
         new UserSession(
+            sessionId,
             user.getId(),
             accessToken,
             refreshToken,
             expiresAt,
             refreshExpiresAt,
-            clientIp,
-            userAgent);
-    return userSessionRepository.save(session);
+            IpRange.isAddress(clientIp) ? clientIp : null,
+            userAgents.intern(userAgent));
+    List<UUID> evicted = sessionStore.create(session, maxSessionsPerUser);
+    invalidationBus.publishAll(
+        evicted.stream().flatMap(id -> SessionInvalidation.forEviction(id).stream()).toList());
+    if (!evicted.isEmpty()) {
+      log.info("Deactivated {} oldest sessions for user: {}", evicted.size(), user.getId());
+    }
+    return session;
+  }
+
+  /** A token that passed the in-memory checks; {@code principal} is null for opaque tokens */
+  private record CheckedToken(TokenDigest digest, TokenPrincipal principal) {
+
+    UUID sessionId() {
+      return principal != null ? principal.sessionId() : null;
+    }
+  }
+
+  /** Token rejection reasons, cached by digest instead of exception instances */
+  private enum Rejection {
+    INVALID_TOKEN("INVALID_TOKEN", "Invalid or expired token"),
+    TOKEN_EXPIRED("TOKEN_EXPIRED", "Token has expired"),
+    INVALID_REFRESH_TOKEN("INVALID_REFRESH_TOKEN", "Invalid refresh token"),
+    REFRESH_TOKEN_EXPIRED("REFRESH_TOKEN_EXPIRED", "Refresh token has expired");
+
+    private final String code;
+    private final String message;
+
+    Rejection(String code, String message) {
+      this.code = code;
+      this.message = message;
+    }
+
+    ApiException toException() {
+      return new ApiException(code, message);
+    }
   }
 
   /** Result of authentication operation */
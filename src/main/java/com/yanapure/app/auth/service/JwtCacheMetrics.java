@@ -0,0 +1,55 @@
+package com.yanapure.app.auth.service;
+
+import com.yanapure.app.auth.token.TokenDigestCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.function.ToDoubleFunction;
+import org.springframework.stereotype.Component;
+
+/** Publishes verified-JWT cache counters using Micrometer's standard cache meter names */
+@Component
+public class JwtCacheMetrics implements MeterBinder {
+
+  private static final String CACHE_NAME = "verified-jwt";
+
+  private final JwtService jwtService;
+
+  public JwtCacheMetrics(JwtService jwtService) {
+    this.jwtService = jwtService;
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    if (jwtService.getVerifiedTokenCacheStats() == null) {
+      return;
+    }
+
+    FunctionCounter.builder("cache.gets", jwtService, stat(TokenDigestCache.Stats::hits))
+        .tags("cache", CACHE_NAME, "result", "hit")
+        .description("Verified JWT cache hits")
+        .register(registry);
+    FunctionCounter.builder("cache.gets", jwtService, stat(TokenDigestCache.Stats::misses))
+        .tags("cache", CACHE_NAME, "result", "miss")
+        .description("Verified JWT cache misses")
+        .register(registry);
+    FunctionCounter.builder("cache.evictions", jwtService, stat(TokenDigestCache.Stats::evictions))
+        .tags("cache", CACHE_NAME)
+        .description("Verified JWT cache evictions")
+        .register(registry);
+    Gauge.builder("cache.size", jwtService, stat(TokenDigestCache.Stats::size))
+        .tags("cache", CACHE_NAME)
+        .description("Verified JWT cache entries")
+        .register(registry);
+    Gauge.builder("cache.weight", jwtService, stat(TokenDigestCache.Stats::bytes))
+        .tags("cache", CACHE_NAME)
+        .baseUnit("bytes")
+        .description("Approximate verified JWT cache size")
+        .register(registry);
+  }
+
+  private static ToDoubleFunction<JwtService> stat(ToDoubleFunction<TokenDigestCache.Stats> f) {
+    return service -> f.applyAsDouble(service.getVerifiedTokenCacheStats());
+  }
+}
@@ -1,19 +1,28 @@
 package com.yanapure.app.auth.service;
 
+import com.yanapure.app.auth.token.HmacTokenMinter;
+import com.yanapure.app.auth.token.JwtKeyRing;
+import com.yanapure.app.auth.token.TokenDigest;
+import com.yanapure.app.auth.token.TokenDigestCache;
+import com.yanapure.app.auth.token.TokenPrincipal;
+import com.yanapure.app.common.ApiException;
 import com.yanapure.app.users.Role;
 import com.yanapure.app.users.User;
 import io.jsonwebtoken.*;
-import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
+import java.security.KeyPair;
+import java.security.PrivateKey;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
-import javax.crypto.SecretKey;
+import java.util.UUID;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
 
 /** Service for JWT token generation and validation */
 @Service
@@ -21,107 +30,214 @@ public class JwtService {
 
   private static final Logger log = LoggerFactory.getLogger(JwtService.class);
 
+  static final String CLAIM_USER_ID = "userId";
+  static final String CLAIM_PHONE = "phone";
+  static final String CLAIM_ROLE = "role";
+  static final String CLAIM_TOKEN_TYPE = "tokenType";
+  static final String CLAIM_SESSION_ID = "sid";
+
   @Value("${app.jwt.secret:yanapure-secret-key-change-in-production-very-long-and-secure}")
   private String jwtSecret;
 
+  /** HMAC (shared secret), ES256 or EdDSA */
+  @Value("${app.jwt.algorithm:HMAC}")
+  private String algorithm = "HMAC";
+
+  @Value("${app.jwt.key-id:}")
+  private String keyId;
+
+  @Value("${app.jwt.private-key:}")
+  private String privateKey;
+
+  @Value("${app.jwt.public-key:}")
+  private String publicKey;
+
+  /** Retired public keys still accepted during rotation, as comma-separated kid=base64 */
+  @Value("${app.jwt.previous-public-keys:}")
+  private String previousPublicKeys;
+
+  /** Keep accepting kid-less HMAC tokens after switching to asymmetric signing */
+  @Value("${app.jwt.accept-legacy-hmac:true}")
+  private boolean acceptLegacyHmac = true;
+
   @Value("${app.jwt.access-token-expiry-hours:1}")
   private int accessTokenExpiryHours;
 
   @Value("${app.jwt.refresh-token-expiry-days:7}")
   private int refreshTokenExpiryDays;
 
-  private SecretKey getSigningKey() {
-    return Keys.hmacShaKeyFor(jwtSecret.getBytes());
+  /** Mint HMAC tokens through the specialised writer instead of the generic jjwt builder */
+  @Value("${app.jwt.fast-minting:true}")
+  private boolean fastMinting = true;
+
+  @Value("${app.jwt.cache.enabled:false}")
+  private boolean cacheEnabled;
+
+  @Value("${app.jwt.cache.max-entries:10000}")
+  private int cacheMaxEntries;
+
+  @Value("${app.jwt.cache.max-size:16MB}")
+  private DataSize cacheMaxSize = DataSize.ofMegabytes(16);
+
+  private JwtKeyRing keyRing;
+  private JwtParser jwtParser;
+  private HmacTokenMinter minter;
+  private TokenDigestCache<Claims> verifiedTokenCache;
+
+  /** Derive the signing keys and build the (thread-safe) parser once at startup */
+  @PostConstruct
+  void init() {
+    this.keyRing = buildKeyRing();
+    this.jwtParser = Jwts.parser().keyLocator(keyRing).build();
+    this.minter =
+        fastMinting && !keyRing.isAsymmetric()
+            ? new HmacTokenMinter(keyRing.getHmacKey(), keyRing.getActiveKeyId())
+            : null;
+    if (cacheEnabled) {
+      this.verifiedTokenCache = new TokenDigestCache<>(cacheMaxEntries, cacheMaxSize.toBytes());
+      log.info(
+          "Verified JWT cache enabled (max {} entries, {} bytes)",
+          cacheMaxEntries,
+          cacheMaxSize.toBytes());
+    }
   }
 
   /** Generate access token for user */
   public String generateAccessToken(User user) {
-    Map<String, Object> claims = new HashMap<>();
-    claims.put("userId", user.getId().toString());
-    claims.put("phone", user.getPhone());
-    claims.put("role", user.getRole().name());
-    claims.put("tokenType", "access");
+    return generateAccessToken(user, null);
+  }
 
-    Instant now = Instant.now();
-    Instant expiry = now.plus(accessTokenExpiryHours, ChronoUnit.HOURS);
+  /** Generate access token for user, bound to a session through the {@code sid} claim */
+  public String generateAccessToken(User user, UUID sessionId) {
+    if (minter != null) {
+      long now = System.currentTimeMillis() / 1000;
+      return minter.mintAccessToken(
+          user.getId(),
+          user.getPhone(),
+          user.getRole().name(),
+          sessionId,
+          now,
+          now + accessTokenExpiryHours * 3600L);
+    }
 
-    return Jwts.builder()
-        .claims(claims)
-        .subject(user.getId().toString())
-        .issuedAt(Date.from(now))
-        .expiration(Date.from(expiry))
-        .signWith(getSigningKey())
-        .compact();
+    Map<String, Object> claims = new HashMap<>();
+    claims.put(CLAIM_USER_ID, user.getId().toString());
+    claims.put(CLAIM_PHONE, user.getPhone());
+    claims.put(CLAIM_ROLE, user.getRole().name());
+    claims.put(CLAIM_TOKEN_TYPE, TokenPrincipal.ACCESS);
+    if (sessionId != null) {
+      claims.put(CLAIM_SESSION_ID, sessionId.toString());
+    }
+
+    Instant expiry = Instant.now().plus(accessTokenExpiryHours, ChronoUnit.HOURS);
+    return buildToken(claims, user.getId().toString(), expiry);
   }
 
   /** Generate refresh token for user */
   public String generateRefreshToken(User user) {
+    return generateRefreshToken(user, null);
+  }
+
+  /** Generate refresh token for user, bound to a session through the {@code sid} claim */
+  public String generateRefreshToken(User user, UUID sessionId) {
+    if (minter != null) {
+      long now = System.currentTimeMillis() / 1000;
+      return minter.mintRefreshToken(
+          user.getId(), sessionId, now, now + refreshTokenExpiryDays * 86400L);
+    }
+
     Map<String, Object> claims = new HashMap<>();
-    claims.put("userId", user.getId().toString());
-    claims.put("tokenType", "refresh");
+    claims.put(CLAIM_USER_ID, user.getId().toString());
+    claims.put(CLAIM_TOKEN_TYPE, TokenPrincipal.REFRESH);
+    if (sessionId != null) {
+      claims.put(CLAIM_SESSION_ID, sessionId.toString());
+    }
 
-    Instant now = Instant.now();
-    Instant expiry = now.plus(refreshTokenExpiryDays, ChronoUnit.DAYS);
+    Instant expiry = Instant.now().plus(refreshTokenExpiryDays, ChronoUnit.DAYS);
+    return buildToken(claims, user.getId().toString(), expiry);
+  }
 
-    return Jwts.builder()
-        .claims(claims)
-        .subject(user.getId().toString())
-        .issuedAt(Date.from(now))
-        .expiration(Date.from(expiry))
-        .signWith(getSigningKey())
-        .compact();
+  /** Keys used to sign and verify tokens */
+  public JwtKeyRing getKeyRing() {
+    return keyRing;
   }
 
-  /** Validate and parse JWT token */
+  /**
+   * Validate and parse JWT token. When the verified-token cache is enabled, a token that already
+   * passed verification is served from the cache until its own expiry.
+   */
   public Claims validateAndParseToken(String token) {
+    if (verifiedTokenCache == null || token == null) {
+      return parseToken(token);
+    }
+
+    TokenDigest digest = TokenDigest.of(token);
+    Claims cached = verifiedTokenCache.get(digest);
+    if (cached != null) {
+      return cached;
+    }
+
+    Claims claims = parseToken(token);
+    if (claims.getExpiration() != null) {
+      verifiedTokenCache.put(
+          digest, claims, claims.getExpiration().toInstant(), estimateCacheWeight(token));
+    }
+    return claims;
+  }
+
+  /** Statistics of the verified-token cache, or null when it is disabled */
+  public TokenDigestCache.Stats getVerifiedTokenCacheStats() {
+    return verifiedTokenCache != null ? verifiedTokenCache.stats() : null;
+  }
+
+  private Claims parseToken(String token) {
     try {
-      return Jwts.parser()
-          .verifyWith(getSigningKey())
-          .build()
-          .parseSignedClaims(token)
-          .getPayload();
+      return jwtParser.parseSignedClaims(token).getPayload();
     } catch (ExpiredJwtException e) {
       log.warn("JWT token expired: {}", e.getMessage());
-      throw new RuntimeException("Token expired");
+      throw new ApiException("TOKEN_EXPIRED", "Token expired");
     } catch (UnsupportedJwtException e) {
       log.warn("Unsupported JWT token: {}", e.getMessage());
-      throw new RuntimeException("Unsupported token");
+      throw new ApiException("INVALID_TOKEN", "Unsupported token");
     } catch (MalformedJwtException e) {
       log.warn("Malformed JWT token: {}", e.getMessage());
-      throw new RuntimeException("Malformed token");
-    } catch (SecurityException e) {
+      throw new ApiException("INVALID_TOKEN", "Malformed token");
+    } catch (io.jsonwebtoken.security.SecurityException e) {
       log.warn("Invalid JWT signature: {}", e.getMessage());
-      throw new RuntimeException("Invalid token signature");
-    } catch (IllegalArgumentException e) {
+      throw new ApiException("INVALID_TOKEN", "Invalid token signature");
+    } catch (JwtException | IllegalArgumentException e) {
       log.warn("JWT token compact of handler are invalid: {}", e.getMessage());
-      throw new RuntimeException("Invalid token");
+      throw new ApiException("INVALID_TOKEN", "Invalid token");
     }
   }
 
+  /**
+   * Verify a token once (signature and expiry) and return its typed principal. Prefer this over the
+   * single-claim helpers below when more than one claim is needed.
+   */
+  public TokenPrincipal verify(String token) {
+    return toPrincipal(validateAndParseToken(token));
+  }
+
   /** Extract user ID from token */
   public String getUserIdFromToken(String token) {
-    Claims claims = validateAndParseToken(token);
-    return claims.getSubject();
+    return verify(token).userId().toString();
   }
 
   /** Extract phone number from token */
   public String getPhoneFromToken(String token) {
-    Claims claims = validateAndParseToken(token);
-    return claims.get("phone", String.class);
+    return verify(token).phone();
   }
 
   /** Extract role from token */
   public Role getRoleFromToken(String token) {
-    Claims claims = validateAndParseToken(token);
-    String roleStr = claims.get("role", String.class);
-    return Role.valueOf(roleStr);
+    return verify(token).role();
   }
 
   /** Check if token is expired */
   public boolean isTokenExpired(String token) {
     try {
-      Claims claims = validateAndParseToken(token);
-      return claims.getExpiration().before(new Date());
+      return !verify(token).expiresAt().isAfter(Instant.now());
     } catch (Exception e) {
       return true;
     }
@@ -129,15 +245,13 @@ public class JwtService {
 
   /** Get token expiration time */
   public Instant getTokenExpiration(String token) {
-    Claims claims = validateAndParseToken(token);
-    return claims.getExpiration().toInstant();
+    return verify(token).expiresAt();
   }
 
   /** Check if token is access token */
   public boolean isAccessToken(String token) {
     try {
-      Claims claims = validateAndParseToken(token);
-      return "access".equals(claims.get("tokenType", String.class));
+      return verify(token).isAccessToken();
     } catch (Exception e) {
       return false;
     }
@@ -146,10 +260,81 @@ public class JwtService {
   /** Check if token is refresh token */
   public boolean isRefreshToken(String token) {
     try {
-      Claims claims = validateAndParseToken(token);
-      return "refresh".equals(claims.get("tokenType", String.class));
+      return verify(token).isRefreshToken();
     } catch (Exception e) {
       return false;
     }
   }
+
+  private String buildToken(Map<String, Object> claims, String subject, Instant expiry) {
+    JwtBuilder builder =
+        Jwts.builder()
+            .claims(claims)
+            .subject(subject)
+            .issuedAt(new Date())
+            .expiration(Date.from(expiry));
+    if (keyRing.getActiveKeyId() != null) {
+      builder.header().keyId(keyRing.getActiveKeyId());
+    }
+    if (keyRing.isAsymmetric()) {
+      builder.signWith((PrivateKey) keyRing.getSigningKey(), keyRing.getSignatureAlgorithm());
+    } else {
+      builder.signWith(keyRing.getHmacKey());
+    }
+    return builder.compact();
+  }
+
+  private JwtKeyRing buildKeyRing() {
+    JwtKeyRing.Mode mode = JwtKeyRing.Mode.from(algorithm);
+    if (mode == JwtKeyRing.Mode.HMAC) {
+      return JwtKeyRing.hmac(jwtSecret, keyId);
+    }
+
+    KeyPair keyPair;
+    if (privateKey == null || privateKey.isBlank()) {
+      log.warn(
+          "No JWT private key configured for {}; generated an ephemeral key pair. Tokens will not"
+              + " survive a restart and other nodes cannot verify them.",
+          mode);
+      keyPair = JwtKeyRing.generateKeyPair(mode);
+    } else {
+      keyPair =
+          new KeyPair(
+              JwtKeyRing.parsePublicKey(mode, publicKey),
+              JwtKeyRing.parsePrivateKey(mode, privateKey));
+    }
+    JwtKeyRing ring =
+        JwtKeyRing.asymmetric(
+            mode,
+            keyId,
+            keyPair,
+            JwtKeyRing.parsePublicKeys(mode, previousPublicKeys),
+            acceptLegacyHmac ? jwtSecret : null);
+    log.info("JWT signing with {} (kid: {})", mode, ring.getActiveKeyId());
+    return ring;
+  }
+
+  /** Rough heap footprint of a cached claims map: decoded payload plus map/entry overhead */
+  private static int estimateCacheWeight(String token) {
+    return 512 + token.length() * 2;
+  }
+
+  /** Map verified claims to an immutable principal */
+  private TokenPrincipal toPrincipal(Claims claims) {
+    try {
+      String role = claims.get(CLAIM_ROLE, String.class);
+      String sessionId = claims.get(CLAIM_SESSION_ID, String.class);
+      return new TokenPrincipal(
+          UUID.fromString(claims.getSubject()),
+          claims.get(CLAIM_PHONE, String.class),
+          role != null ? Role.valueOf(role) : null,
+          claims.get(CLAIM_TOKEN_TYPE, String.class),
+          claims.getExpiration().toInstant(),
+          sessionId != null ? UUID.fromString(sessionId) : null,
+          claims.getIssuedAt() != null ? claims.getIssuedAt().toInstant() : null);
+    } catch (RuntimeException e) {
+      log.warn("JWT token carries invalid claims: {}", e.getMessage());
+      throw new ApiException("INVALID_TOKEN", "Invalid token");
+    }
+  }
 }
@@ -0,0 +1,289 @@
+package com.yanapure.app.auth.service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-process sliding-window limits for OTP requests, per phone number, client address and network
+ * block. It replaces the count queries against {@code otp_challenges}.
+ *
+ * <p>Each key keeps the times of its last {@code limit} accepted requests in a ring. A request is
+ * allowed when the oldest of them has left the window. The checks and the recording for all keys of
+ * one request run under their stripes' locks (taken in stripe order), so concurrent requests cannot
+ * both pass the last free slot and a rejected request consumes nothing. Keys are bounded per
+ * stripe: a full stripe drops its idle keys, and if every key in it is still active the request is
+ * rejected with {@link Rejection#CAPACITY}, since dropping a live window would reset that key's
+ * limit. Idle keys are also swept once their window has passed.
+ *
+ * <p>Limits are per node; {@link OtpService} counts the requests that pass against the challenges
+ * of all nodes as well.
+ */
+@Component
+public class OtpRateLimiter {
+
+  /** Limit a request ran into */
+  public enum Rejection {
+    PHONE_HOURLY,
+    PHONE_COOLDOWN,
+    IP,
+    SUBNET,
+    /** No room for a new key: its stripe is full of keys that are still limiting */
+    CAPACITY
+  }
+
+  private static final long HOUR = Duration.ofHours(1).toMillis();
+  private static final long MINUTE = Duration.ofMinutes(1).toMillis();
+
+  private final Stripe[] stripes;
+  private final int maxPerHour;
+  private final long cooldownMillis;
+  private final int maxPerIp;
+  private final int maxPerSubnet;
+  private final Clock clock;
+
+  @Autowired
+  public OtpRateLimiter(
+      @Value("${app.otp.max-per-hour:5}") int maxPerHour,
+      @Value("${app.otp.rate-limit-minutes:1}") int cooldownMinutes,
+      @Value("${app.otp.max-per-ip-per-minute:3}") int maxPerIp,
+      @Value("${app.otp.subnet.max-per-minute:10}") int maxPerSubnet,
+      @Value("${app.otp.rate-limiter.max-entries:100000}") int maxEntries,
+      @Value("${app.otp.rate-limiter.stripes:64}") int stripes) {
+    this(
+        maxPerHour,
+        Duration.ofMinutes(cooldownMinutes),
+        maxPerIp,
+        maxPerSubnet,
+        maxEntries,
+        stripes,
+        Clock.systemUTC());
+  }
+
+  public OtpRateLimiter(
+      int maxPerHour,
+      Duration cooldown,
+      int maxPerIp,
+      int maxPerSubnet,
+      int maxEntries,
+      int stripes,
+      Clock clock) {
+    if (maxPerHour <= 0 || maxPerIp <= 0 || maxPerSubnet <= 0 || maxEntries <= 0) {
+      throw new IllegalArgumentException("OTP rate limits must be positive");
+    }
+    // Power of two so the stripe is a mask of the key hash
+    int count = Integer.highestOneBit(Math.max(1, stripes));
+    this.stripes = new Stripe[count];
+    int perStripe = Math.max(1, (maxEntries + count - 1) / count);
+    for (int i = 0; i < count; i++) {
+      this.stripes[i] = new Stripe(perStripe);
+    }
+    this.maxPerHour = maxPerHour;
+    this.cooldownMillis = cooldown.toMillis();
+    this.maxPerIp = maxPerIp;
+    this.maxPerSubnet = maxPerSubnet;
+    this.clock = clock;
+  }
+
+  /**
+   * Check every limit for one OTP request and, if none is hit, record the request against all of
+   * them.
+   *
+   * @param ip client address, or null to skip the address limits
+   * @param subnet network block around the address (e.g. its CIDR), or null
+   * @return the first limit hit, in the order phone hourly, phone cooldown, address, network block,
+   *     then capacity; null if the request is allowed
+   */
+  public Rejection tryAcquire(String phone, String ip, String subnet) {
+    String phoneKey = "p:" + phone;
+    String ipKey = ip != null ? "i:" + ip : null;
+    String subnetKey = subnet != null ? "s:" + subnet : null;
+    Stripe[] locked = lock(phoneKey, ipKey, subnetKey);
+    try {
+      long now = clock.millis();
+      Window phoneWindow = stripeFor(phoneKey).windows.get(phoneKey);
+      if (phoneWindow != null) {
+        if (!phoneWindow.allows(now)) {
+          return Rejection.PHONE_HOURLY;
+        }
+        if (phoneWindow.last() > now - cooldownMillis) {
+          return Rejection.PHONE_COOLDOWN;
+        }
+      }
+      Window ipWindow = ipKey != null ? stripeFor(ipKey).windows.get(ipKey) : null;
+      if (ipWindow != null && !ipWindow.allows(now)) {
+        return Rejection.IP;
+      }
+      Window subnetWindow = subnetKey != null ? stripeFor(subnetKey).windows.get(subnetKey) : null;
+      if (subnetWindow != null && !subnetWindow.allows(now)) {
+        return Rejection.SUBNET;
+      }
+      if (!hasRoom(
+          now,
+          phoneWindow == null ? phoneKey : null,
+          ipWindow == null ? ipKey : null,
+          subnetWindow == null ? subnetKey : null)) {
+        return Rejection.CAPACITY;
+      }
+
+      record(phoneKey, phoneWindow, maxPerHour, HOUR, now);
+      if (ipKey != null) {
+        record(ipKey, ipWindow, maxPerIp, MINUTE, now);
+      }
+      if (subnetKey != null) {
+        record(subnetKey, subnetWindow, maxPerSubnet, MINUTE, now);
+      }
+      return null;
+    } finally {
+      for (int i = locked.length - 1; i >= 0; i--) {
+        if (locked[i] != null) {
+          locked[i].lock.unlock();
+        }
+      }
+    }
+  }
+
+  /** Drop keys whose window has passed; they no longer limit anything */
+  @Scheduled(fixedDelayString = "${app.otp.rate-limiter.sweep-interval:1m}")
+  public void evictIdle() {
+    long now = clock.millis();
+    for (Stripe stripe : stripes) {
+      stripe.lock.lock();
+      try {
+        stripe.evictIdle(now);
+      } finally {
+        stripe.lock.unlock();
+      }
+    }
+  }
+
+  /** Number of tracked keys */
+  public int size() {
+    int size = 0;
+    for (Stripe stripe : stripes) {
+      stripe.lock.lock();
+      try {
+        size += stripe.windows.size();
+      } finally {
+        stripe.lock.unlock();
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Whether the stripes of the given new keys can take them, dropping idle keys from a stripe that
+   * is full; null keys need no room
+   */
+  private boolean hasRoom(long now, String... newKeys) {
+    for (String key : newKeys) {
+      if (key == null) {
+        continue;
+      }
+      Stripe stripe = stripeFor(key);
+      int needed = 0;
+      for (String other : newKeys) {
+        if (other != null && stripeFor(other) == stripe) {
+          needed++;
+        }
+      }
+      if (stripe.windows.size() + needed > stripe.maxEntries) {
+        stripe.evictIdle(now);
+        if (stripe.windows.size() + needed > stripe.maxEntries) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private void record(String key, Window window, int limit, long length, long now) {
+    if (window == null) {
+      window = new Window(limit, length);
+      stripeFor(key).windows.put(key, window);
+    }
+    window.add(now);
+  }
+
+  /** Lock the distinct stripes of the given keys in index order; null keys are skipped */
+  private Stripe[] lock(String... keys) {
+    int[] indexes = new int[keys.length];
+    int n = 0;
+    for (String key : keys) {
+      if (key != null) {
+        indexes[n++] = indexOf(key);
+      }
+    }
+    Arrays.sort(indexes, 0, n);
+    Stripe[] locked = new Stripe[n];
+    for (int i = 0; i < n; i++) {
+      if (i == 0 || indexes[i] != indexes[i - 1]) {
+        locked[i] = stripes[indexes[i]];
+        locked[i].lock.lock();
+      }
+    }
+    return locked;
+  }
+
+  private Stripe stripeFor(String key) {
+    return stripes[indexOf(key)];
+  }
+
+  private int indexOf(String key) {
+    int h = key.hashCode();
+    return (h ^ (h >>> 16)) & (stripes.length - 1);
+  }
+
+  /** Keys of one lock, at most {@code maxEntries} of them */
+  private static final class Stripe {
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Window> windows = new HashMap<>();
+    private final int maxEntries;
+
+    Stripe(int maxEntries) {
+      this.maxEntries = maxEntries;
+    }
+
+    void evictIdle(long now) {
+      windows.values().removeIf(window -> window.isIdle(now));
+    }
+  }
+
+  /** Times of the last {@code limit} accepted requests of one key, oldest at {@code next} */
+  private static final class Window {
+    private final long[] times;
+    private final long length;
+    private int next;
+
+    Window(int limit, long length) {
+      this.times = new long[limit];
+      Arrays.fill(times, Long.MIN_VALUE);
+      this.length = length;
+    }
+
+    /** Fewer than {@code limit} requests in {@code (now - length, now]} */
+    boolean allows(long now) {
+      return times[next] <= now - length;
+    }
+
+    long last() {
+      return times[(next + times.length - 1) % times.length];
+    }
+
+    void add(long now) {
+      times[next] = now;
+      next = (next + 1) % times.length;
+    }
+
+    boolean isIdle(long now) {
+      return last() <= now - length;
+    }
+  }
+}
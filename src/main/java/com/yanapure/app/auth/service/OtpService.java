@@ -4,10 +4,10 @@ import com.yanapure.app.auth.otp.OtpChallenge;
 import com.yanapure.app.auth.otp.OtpChallengeRepository;
 import com.yanapure.app.common.ApiException;
 import com.yanapure.app.sms.SmsProvider;
+import com.yanapure.app.util.IpRange;
 import com.yanapure.app.util.PhoneUtils;
 import java.security.SecureRandom;
 import java.time.Instant;
-import java.util.List;
 import java.util.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,9 +22,11 @@ public class OtpService {
 
   private static final Logger log = LoggerFactory.getLogger(OtpService.class);
   private static final SecureRandom RANDOM = new SecureRandom();
+  private static final int MAX_RAW_IP_KEY = 64;
 
   private final OtpChallengeRepository otpChallengeRepository;
   private final SmsProvider smsProvider;
+  private final OtpRateLimiter rateLimiter;
 
   @Value("${app.otp.length:6}")
   private int otpLength;
@@ -35,15 +37,28 @@ public class OtpService {
   @Value("${app.otp.max-attempts:3}")
   private int maxAttempts;
 
-  @Value("${app.otp.rate-limit-minutes:1}")
-  private int rateLimitMinutes;
-
   @Value("${app.otp.max-per-hour:5}")
-  private int maxPerHour;
+  private int maxPerHour = 5;
+
+  @Value("${app.otp.max-per-ip-per-minute:3}")
+  private int maxPerIpPerMinute = 3;
+
+  @Value("${app.otp.subnet.max-per-minute:10}")
+  private int maxPerSubnetPerMinute = 10;
+
+  @Value("${app.otp.subnet.ipv4-prefix:24}")
+  private int subnetIpv4Prefix = 24;
 
-  public OtpService(OtpChallengeRepository otpChallengeRepository, SmsProvider smsProvider) {
+  @Value("${app.otp.subnet.ipv6-prefix:64}")
+  private int subnetIpv6Prefix = 64;
+
+  public OtpService(
+      OtpChallengeRepository otpChallengeRepository,
+      SmsProvider smsProvider,
+      OtpRateLimiter rateLimiter) {
     this.otpChallengeRepository = otpChallengeRepository;
     this.smsProvider = smsProvider;
+    this.rateLimiter = rateLimiter;
   }
 
   /** Generate and send OTP to phone number */
@@ -64,7 +79,8 @@ public class OtpService {
     challenge.setPhone(normalizedPhone);
     challenge.setCodeHash(codeHash);
     challenge.setExpiresAt(Instant.now().plusSeconds(otpExpiryMinutes * 60));
-    challenge.setRequestIp(clientIp);
+    // Stored as inet, so anything that is not an address is dropped
+    challenge.setRequestIp(IpRange.isAddress(clientIp) ? clientIp : null);
     challenge.setAttemptCount(0);
     challenge.setVerified(false);
 
@@ -162,50 +178,102 @@ public class OtpService {
         && challengeOpt.get().getAttemptCount() < maxAttempts;
   }
 
-  /** Clean up expired OTP challenges */
-  public int cleanupExpiredChallenges() {
-    Instant cutoff = Instant.now();
-
-    int deleted = otpChallengeRepository.deleteExpiredChallenges(cutoff);
-    log.info("Cleaned up {} expired OTP challenges", deleted);
-
-    return deleted;
-  }
-
   /** Check rate limiting for phone number */
   private void checkRateLimit(String phoneNumber, String clientIp) {
-    Instant oneHourAgo = Instant.now().minusSeconds(3600);
-    Instant oneMinuteAgo = Instant.now().minusSeconds(60);
+    // IP-based limits cover the address itself and its /24 (IPv4) or /64 (IPv6), since abusers
+    // rotate through neighbouring addresses
+    boolean address = IpRange.isAddress(clientIp);
+    IpRange subnet = address ? IpRange.around(clientIp, subnetIpv4Prefix, subnetIpv6Prefix) : null;
+    OtpRateLimiter.Rejection rejection =
+        rateLimiter.tryAcquire(
+            phoneNumber,
+            address ? IpRange.parse(clientIp).cidr() : rawIpKey(clientIp),
+            subnet != null ? subnet.cidr() : null);
+    if (rejection == null) {
+      checkClusterLimits(phoneNumber, address ? IpRange.parse(clientIp) : null, subnet);
+      return;
+    }
+    switch (rejection) {
+      case PHONE_HOURLY -> {
+        log.warn("Rate limit exceeded for phone: {}", PhoneUtils.maskPhone(phoneNumber));
+        throw new ApiException(
+            "RATE_LIMIT_EXCEEDED", "Too many verification requests. Please try again later.");
+      }
+      case PHONE_COOLDOWN -> {
+        log.warn("Recent request found for phone: {}", PhoneUtils.maskPhone(phoneNumber));
+        throw new ApiException(
+            "RATE_LIMIT_EXCEEDED", "Please wait before requesting another verification code.");
+      }
+      case IP -> {
+        log.warn("IP rate limit exceeded for IP: {}", clientIp);
+        throw new ApiException(
+            "RATE_LIMIT_EXCEEDED", "Too many requests from this IP. Please try again later.");
+      }
+      case SUBNET -> {
+        log.warn("Subnet rate limit exceeded for {}", subnet);
+        throw new ApiException(
+            "RATE_LIMIT_EXCEEDED", "Too many requests from this network. Please try again later.");
+      }
+      case CAPACITY -> {
+        log.warn("OTP rate limiter full, rejecting request from {}", clientIp);
+        throw new ApiException(
+            "RATE_LIMIT_EXCEEDED", "Too many verification requests. Please try again later.");
+      }
+    }
+  }
 
-    // Check per-phone rate limit
+  /**
+   * The in-memory limits are per node, so with several nodes a phone, address or network block
+   * could get the limit from each. A request that passed them is therefore also counted against the
+   * challenges stored by all nodes. This runs once per code actually sent, not per rejected flood.
+   *
+   * @param address client address, or null if it is not an IP literal (such values are not stored)
+   * @param subnet network block around it, or null
+   */
+  private void checkClusterLimits(String phoneNumber, IpRange address, IpRange subnet) {
+    Instant oneHourAgo = Instant.now().minusSeconds(3600);
     long recentCount =
         otpChallengeRepository.countByPhoneAndCreatedAtAfter(phoneNumber, oneHourAgo);
     if (recentCount >= maxPerHour) {
       log.warn(
-          "Rate limit exceeded for phone: {} ({} requests in last hour)",
+          "Rate limit exceeded for phone: {} ({} requests in last hour across nodes)",
           PhoneUtils.maskPhone(phoneNumber),
           recentCount);
       throw new ApiException(
           "RATE_LIMIT_EXCEEDED", "Too many verification requests. Please try again later.");
     }
-
-    // Check recent requests (1 minute cooldown)
-    long recentMinuteCount =
-        otpChallengeRepository.countByPhoneAndCreatedAtAfter(phoneNumber, oneMinuteAgo);
-    if (recentMinuteCount > 0) {
-      log.warn("Recent request found for phone: {}", PhoneUtils.maskPhone(phoneNumber));
-      throw new ApiException(
-          "RATE_LIMIT_EXCEEDED", "Please wait before requesting another verification code.");
+    if (address == null) {
+      return;
     }
-
-    // Check IP-based rate limiting
-    List<OtpChallenge> ipRecent =
-        otpChallengeRepository.findByRequestIpAndCreatedAtAfter(clientIp, oneMinuteAgo);
-    if (ipRecent.size() >= 3) { // Max 3 requests per IP per minute
-      log.warn("IP rate limit exceeded for IP: {}", clientIp);
+    Instant oneMinuteAgo = Instant.now().minusSeconds(60);
+    long ipCount = otpChallengeRepository.countByRequestIpInRangeSince(address, oneMinuteAgo);
+    if (ipCount >= maxPerIpPerMinute) {
+      log.warn("IP rate limit exceeded for IP: {} across nodes", address);
       throw new ApiException(
           "RATE_LIMIT_EXCEEDED", "Too many requests from this IP. Please try again later.");
     }
+    long subnetCount = otpChallengeRepository.countByRequestIpInRangeSince(subnet, oneMinuteAgo);
+    if (subnetCount >= maxPerSubnetPerMinute) {
+      log.warn(
+          "Subnet rate limit exceeded for {} ({} requests in last minute across nodes)",
+          subnet,
+          subnetCount);
+      throw new ApiException(
+          "RATE_LIMIT_EXCEEDED", "Too many requests from this network. Please try again later.");
+    }
+  }
+
+  /**
+   * Limit key for a client address that is not an IP literal (a forged or garbled forwarding
+   * header): the value itself, so repeating it is still limited. Capped so a long header cannot
+   * bloat the limiter; null when there is no value at all.
+   */
+  private static String rawIpKey(String clientIp) {
+    if (clientIp == null || clientIp.isBlank()) {
+      return null;
+    }
+    String trimmed = clientIp.trim();
+    return trimmed.length() > MAX_RAW_IP_KEY ? trimmed.substring(0, MAX_RAW_IP_KEY) : trimmed;
   }
 
   /** Generate random OTP code */
@@ -0,0 +1,130 @@
+package com.yanapure.app.auth.service;
+
+import com.yanapure.app.auth.session.SessionInvalidation;
+import com.yanapure.app.auth.session.SessionInvalidationListener;
+import com.yanapure.app.auth.token.TokenDigest;
+import com.yanapure.app.auth.token.TokenDigestCache;
+import com.yanapure.app.common.ApiException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+/**
+ * Coalesces refreshes of the same refresh token on this node.
+ *
+ * <p>Concurrent calls wait for the first one and share its rotation, and calls arriving within the
+ * grace window after it completed get the same token pair back instead of being rejected with the
+ * now-rotated token. Rotations run in their own transaction ({@link
+ * AuthenticationService#refreshToken}), so a result is only shared once it is committed. Results
+ * are keyed by token digest and dropped when the session or its user is revoked.
+ */
+@Component
+public class RefreshCoalescer implements SessionInvalidationListener {
+
+  private static final Logger log = LoggerFactory.getLogger(RefreshCoalescer.class);
+
+  /** Rough heap footprint of one result: two tokens, the user and map overhead */
+  private static final int ENTRY_WEIGHT = 2048;
+
+  private final AuthenticationService authenticationService;
+  private final Duration grace;
+  private final TokenDigestCache<AuthenticationService.AuthResult> recent;
+  private final ConcurrentMap<TokenDigest, CompletableFuture<AuthenticationService.AuthResult>>
+      inFlight = new ConcurrentHashMap<>();
+
+  public RefreshCoalescer(
+      @Lazy AuthenticationService authenticationService,
+      @Value("${app.auth.refresh-grace.window:10s}") Duration grace,
+      @Value("${app.auth.refresh-grace.max-entries:10000}") int maxEntries) {
+    this.authenticationService = authenticationService;
+    this.grace = grace;
+    this.recent =
+        grace.isZero()
+            ? null
+            : new TokenDigestCache<>(maxEntries, (long) maxEntries * ENTRY_WEIGHT);
+  }
+
+  /** Same contract as {@link AuthenticationService#refreshToken} */
+  public AuthenticationService.AuthResult refresh(String refreshToken, String clientIp) {
+    if (recent == null || refreshToken == null) {
+      return authenticationService.refreshToken(refreshToken, clientIp);
+    }
+
+    TokenDigest digest = TokenDigest.of(refreshToken);
+    AuthenticationService.AuthResult rotated = recent.get(digest);
+    if (rotated != null) {
+      log.debug("Refresh within grace window of session {}", rotated.getSessionId());
+      return rotated;
+    }
+
+    CompletableFuture<AuthenticationService.AuthResult> own = new CompletableFuture<>();
+    CompletableFuture<AuthenticationService.AuthResult> leader = inFlight.putIfAbsent(digest, own);
+    if (leader != null) {
+      return await(leader);
+    }
+    try {
+      AuthenticationService.AuthResult result =
+          authenticationService.refreshToken(refreshToken, clientIp);
+      recent.put(digest, result, Instant.now().plus(grace), ENTRY_WEIGHT);
+      own.complete(result);
+      return result;
+    } catch (RuntimeException e) {
+      own.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(digest, own);
+    }
+  }
+
+  private AuthenticationService.AuthResult await(
+      CompletableFuture<AuthenticationService.AuthResult> leader) {
+    try {
+      return leader.get(grace.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw new IllegalStateException(e.getCause());
+    } catch (TimeoutException e) {
+      throw new ApiException("REFRESH_IN_PROGRESS", "Token refresh is still in progress");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ApiException("REFRESH_IN_PROGRESS", "Token refresh was interrupted");
+    }
+  }
+
+  /**
+   * Drops shared results of revoked sessions and users. Plain session changes are ignored: the
+   * rotation itself publishes one, possibly after its result was stored.
+   */
+  @Override
+  public void onInvalidation(SessionInvalidation invalidation) {
+    if (recent == null) {
+      return;
+    }
+    switch (invalidation.kind()) {
+      case SESSION_REVOKED, SESSION_EVICTED ->
+          recent.invalidateIf(result -> invalidation.id().equals(result.getSessionId()));
+      case USER_REVOKED, ROLE_CHANGED ->
+          recent.invalidateIf(result -> invalidation.id().equals(result.getUser().getId()));
+      default -> {}
+    }
+  }
+
+  @Override
+  public void onReset() {
+    if (recent != null) {
+      recent.clear();
+    }
+  }
+}
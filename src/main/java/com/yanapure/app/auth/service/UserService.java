@@ -1,5 +1,7 @@
 package com.yanapure.app.auth.service;
 
+import com.yanapure.app.auth.session.SessionInvalidation;
+import com.yanapure.app.auth.session.SessionInvalidationBus;
 import com.yanapure.app.common.ApiException;
 import com.yanapure.app.users.Role;
 import com.yanapure.app.users.User;
@@ -21,9 +23,11 @@ public class UserService {
   private static final Logger log = LoggerFactory.getLogger(UserService.class);
 
   private final UserRepository userRepository;
+  private final SessionInvalidationBus invalidationBus;
 
-  public UserService(UserRepository userRepository) {
+  public UserService(UserRepository userRepository, SessionInvalidationBus invalidationBus) {
     this.userRepository = userRepository;
+    this.invalidationBus = invalidationBus;
   }
 
   /** Get user by ID */
@@ -65,7 +69,9 @@ public class UserService {
     }
 
     user.setUpdatedAt(Instant.now());
-    return userRepository.save(user);
+    User saved = userRepository.save(user);
+    invalidationBus.publish(SessionInvalidation.userChanged(userId));
+    return saved;
   }
 
   /** Update user role (admin only) */
@@ -76,7 +82,10 @@ public class UserService {
 
     log.info("Updated user role: {} -> {} (User ID: {})", user.getRole(), newRole, userId);
 
-    return userRepository.save(user);
+    User saved = userRepository.save(user);
+    // Tokens carry the role claim, so existing ones must not outlive the change
+    invalidationBus.publishAll(SessionInvalidation.forRoleChange(userId));
+    return saved;
   }
 
   /** Get all users (admin only) */
@@ -128,6 +137,7 @@ public class UserService {
     }
 
     userRepository.delete(user);
+    invalidationBus.publish(SessionInvalidation.userRevoked(userId));
     log.info("Deleted user: {} (ID: {})", PhoneUtils.maskPhone(user.getPhone()), userId);
   }
 
@@ -0,0 +1,94 @@
+package com.yanapure.app.auth.session;
+
+import com.yanapure.app.auth.token.TokenDigest;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/** {@link SessionStore} that goes straight to the database */
+public class DatabaseSessionStore implements SessionStore {
+
+  private final UserSessionRepository userSessionRepository;
+  private final SessionLookup sessionLookup;
+
+  public DatabaseSessionStore(
+      UserSessionRepository userSessionRepository, SessionLookup sessionLookup) {
+    this.userSessionRepository = userSessionRepository;
+    this.sessionLookup = sessionLookup;
+  }
+
+  @Override
+  public List<UUID> create(UserSession session, int maxActiveSessions) {
+    return userSessionRepository.insertWithinLimit(session, maxActiveSessions);
+  }
+
+  @Override
+  public Optional<UserSessionRepositoryCustom.SessionKey> rotate(
+      UUID sessionId,
+      TokenDigest refreshToken,
+      String newAccessToken,
+      String newRefreshToken,
+      Instant expiresAt,
+      Instant refreshExpiresAt) {
+    return userSessionRepository.rotateTokens(
+        sessionId,
+        refreshToken.toByteArray(),
+        newAccessToken,
+        newRefreshToken,
+        expiresAt,
+        refreshExpiresAt);
+  }
+
+  @Override
+  public Optional<UserSessionRepositoryCustom.SessionKey> revoke(
+      UUID sessionId, TokenDigest accessToken) {
+    return userSessionRepository.revokeByAccessToken(sessionId, accessToken.toByteArray());
+  }
+
+  @Override
+  public int revokeAll(UUID userId) {
+    return userSessionRepository.deactivateAllSessionsForUser(userId);
+  }
+
+  @Override
+  public long revokeMatching(
+      SessionFilter filter,
+      int chunkSize,
+      Consumer<UserSessionRepositoryCustom.RevokedChunk> onChunk) {
+    return userSessionRepository.revokeMatching(filter, chunkSize, onChunk);
+  }
+
+  @Override
+  public Optional<SessionLookup.ActiveSession> findActiveByAccessToken(
+      UUID sessionId, TokenDigest accessToken) {
+    return sessionLookup.findActiveByAccessToken(sessionId, accessToken);
+  }
+
+  @Override
+  public Optional<UserSession> findById(UUID sessionId) {
+    return userSessionRepository.findById(sessionId);
+  }
+
+  @Override
+  public Optional<UserSession> findByAccessTokenDigest(TokenDigest accessToken) {
+    return userSessionRepository.findByAccessTokenHashAndActiveTrue(accessToken.toByteArray());
+  }
+
+  @Override
+  public Optional<UserSession> findByRefreshTokenDigest(TokenDigest refreshToken) {
+    return userSessionRepository.findByRefreshTokenHash(refreshToken.toByteArray());
+  }
+
+  @Override
+  public List<UserSession> findActiveByUser(UUID userId) {
+    return userSessionRepository.findByUserIdAndActiveTrueOrderByCreatedAtDesc(userId);
+  }
+
+  @Override
+  public int updateLastUsed(Map<UUID, Instant> lastUsed) {
+    return userSessionRepository.updateLastUsed(lastUsed);
+  }
+}
@@ -0,0 +1,312 @@
+package com.yanapure.app.auth.session;
+
+import com.yanapure.app.auth.session.UserSessionRepositoryCustom.RevokedChunk;
+import com.yanapure.app.auth.session.UserSessionRepositoryCustom.SessionKey;
+import com.yanapure.app.auth.token.TokenDigest;
+import java.sql.DatabaseMetaData;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+import javax.sql.DataSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+
+/**
+ * The {@code user_sessions} statements shared by {@link UserSessionRepositoryImpl} and the shards
+ * of {@link ShardedSessionStore}. Callers own transactions and any locking around a login.
+ */
+final class JdbcSessionWriter {
+
+  /** The client IP placeholder becomes a cast on an inet column */
+  private static final String INSERT =
+      "INSERT INTO user_sessions (id, user_id, access_token_hash, refresh_token_hash, expires_at, "
+          + "refresh_expires_at, client_ip, user_agent_id, active, created_at, last_used_at) "
+          + "VALUES (?, ?, ?, ?, ?, ?, %s, ?, TRUE, ?, NULL)";
+
+  /** The new row is not visible to the UPDATE (same snapshot), so it keeps the newest N - 1 */
+  private static final String INSERT_AND_EVICT =
+      "WITH inserted AS ("
+          + INSERT
+          + " RETURNING id) "
+          + "UPDATE user_sessions s SET active = FALSE "
+          + "WHERE s.user_id = ? AND s.active AND s.id NOT IN ("
+          + "SELECT k.id FROM user_sessions k WHERE k.user_id = ? AND k.active "
+          + "ORDER BY k.created_at DESC, k.id DESC LIMIT ?) "
+          + "RETURNING s.id";
+
+  private static final String SELECT_BEYOND_LIMIT =
+      "SELECT id FROM user_sessions WHERE user_id = ? AND active "
+          + "ORDER BY created_at DESC, id DESC OFFSET ? ROWS";
+
+  private static final String DEACTIVATE = "UPDATE user_sessions SET active = FALSE WHERE id = ?";
+
+  private static final String REVOKE =
+      "UPDATE user_sessions SET active = FALSE WHERE access_token_hash = ? AND active";
+
+  private static final String ROTATE =
+      "UPDATE user_sessions SET access_token_hash = ?, refresh_token_hash = ?, expires_at = ?, "
+          + "refresh_expires_at = ?, last_used_at = ? "
+          + "WHERE refresh_token_hash = ? AND active AND refresh_expires_at > ?";
+
+  private static final String AND_ID = " AND id = ?";
+
+  private static final String RETURNING_KEY = " RETURNING id, user_id";
+
+  private static final String SELECT_KEY_BY_REFRESH_HASH =
+      "SELECT id, user_id FROM user_sessions WHERE refresh_token_hash = ?";
+
+  private static final String SELECT_ACTIVE_KEY_BY_ACCESS_HASH =
+      "SELECT id, user_id FROM user_sessions WHERE access_token_hash = ? AND active";
+
+  /**
+   * Same update as {@link UserSessionRepository#updateLastUsed}, never moving the time backwards
+   */
+  private static final String UPDATE_LAST_USED =
+      "UPDATE user_sessions SET last_used_at = ? WHERE id = ? "
+          + "AND (last_used_at IS NULL OR last_used_at < ?)";
+
+  private static final String SELECT_REVOKE_CANDIDATES =
+      "SELECT id, user_id, client_ip FROM user_sessions WHERE active = TRUE";
+
+  private static final String DEACTIVATE_ACTIVE =
+      "UPDATE user_sessions SET active = FALSE WHERE active = TRUE AND id IN (";
+
+  private static final RowMapper<Candidate> CANDIDATE =
+      (rs, rowNum) ->
+          new Candidate(
+              rs.getObject("id", UUID.class),
+              rs.getObject("user_id", UUID.class),
+              rs.getString("client_ip"));
+
+  private static final RowMapper<SessionKey> SESSION_KEY =
+      (rs, rowNum) ->
+          new SessionKey(rs.getObject("id", UUID.class), rs.getObject("user_id", UUID.class));
+
+  private final JdbcTemplate jdbcTemplate;
+  private final boolean postgres;
+  private final boolean inetClientIp;
+  private final String insert;
+  private final String insertAndEvict;
+
+  /**
+   * @param inetClientIp whether {@code client_ip} is a PostgreSQL {@code inet} column, which lets
+   *     IP ranges be matched in SQL
+   */
+  JdbcSessionWriter(JdbcTemplate jdbcTemplate, boolean postgres, boolean inetClientIp) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.postgres = postgres;
+    this.inetClientIp = postgres && inetClientIp;
+    String clientIpParameter = this.inetClientIp ? "CAST(? AS inet)" : "?";
+    this.insert = String.format(INSERT, clientIpParameter);
+    this.insertAndEvict = String.format(INSERT_AND_EVICT, clientIpParameter);
+  }
+
+  /** See {@link UserSessionRepositoryCustom#insertWithinLimit}; the caller serializes per user */
+  List<UUID> insertWithinLimit(UserSession session, int maxActiveSessions) {
+    int keep = Math.max(maxActiveSessions - 1, 0);
+    List<UUID> evicted;
+    if (postgres) {
+      evicted =
+          jdbcTemplate.queryForList(
+              insertAndEvict,
+              UUID.class,
+              insertParameters(session, session.getUserId(), session.getUserId(), keep));
+    } else {
+      evicted =
+          jdbcTemplate.queryForList(SELECT_BEYOND_LIMIT, UUID.class, session.getUserId(), keep);
+      jdbcTemplate.batchUpdate(DEACTIVATE, evicted.stream().map(id -> new Object[] {id}).toList());
+      jdbcTemplate.update(insert, insertParameters(session));
+    }
+    session.markNotNew();
+    return evicted;
+  }
+
+  /** See {@link UserSessionRepositoryCustom#revokeByAccessToken} */
+  Optional<SessionKey> revokeByAccessToken(UUID sessionId, byte[] accessTokenHash) {
+    Object[] parameters =
+        sessionId != null
+            ? new Object[] {accessTokenHash, sessionId}
+            : new Object[] {accessTokenHash};
+    String where = sessionId != null ? AND_ID : "";
+    if (postgres) {
+      return first(jdbcTemplate.query(REVOKE + where + RETURNING_KEY, SESSION_KEY, parameters));
+    }
+    Optional<SessionKey> key =
+        first(
+            jdbcTemplate.query(SELECT_ACTIVE_KEY_BY_ACCESS_HASH + where, SESSION_KEY, parameters));
+    if (key.isEmpty() || jdbcTemplate.update(REVOKE + where, parameters) == 0) {
+      return Optional.empty();
+    }
+    return key;
+  }
+
+  /** See {@link UserSessionRepositoryCustom#rotateTokens} */
+  Optional<SessionKey> rotateTokens(
+      UUID sessionId,
+      byte[] refreshTokenHash,
+      String newAccessToken,
+      String newRefreshToken,
+      Instant expiresAt,
+      Instant refreshExpiresAt) {
+    Timestamp now = Timestamp.from(Instant.now());
+    byte[] newRefreshHash = TokenDigest.sha256(newRefreshToken);
+    List<Object> parameters =
+        new ArrayList<>(
+            List.of(
+                TokenDigest.sha256(newAccessToken),
+                newRefreshHash,
+                Timestamp.from(expiresAt),
+                Timestamp.from(refreshExpiresAt),
+                now,
+                refreshTokenHash,
+                now));
+    String where = "";
+    if (sessionId != null) {
+      parameters.add(sessionId);
+      where = AND_ID;
+    }
+    if (postgres) {
+      return first(
+          jdbcTemplate.query(ROTATE + where + RETURNING_KEY, SESSION_KEY, parameters.toArray()));
+    }
+    if (jdbcTemplate.update(ROTATE + where, parameters.toArray()) == 0) {
+      return Optional.empty();
+    }
+    // The new refresh token is unique, so it identifies the row just written
+    return first(jdbcTemplate.query(SELECT_KEY_BY_REFRESH_HASH, SESSION_KEY, newRefreshHash));
+  }
+
+  /** See {@link UserSessionRepositoryCustom#updateLastUsed} */
+  int updateLastUsed(Map<UUID, Instant> lastUsed) {
+    List<Object[]> batch = new ArrayList<>(lastUsed.size());
+    lastUsed.forEach(
+        (id, usedAt) -> {
+          Timestamp timestamp = Timestamp.from(usedAt);
+          batch.add(new Object[] {timestamp, id, timestamp});
+        });
+    jdbcTemplate.batchUpdate(UPDATE_LAST_USED, batch);
+    return batch.size();
+  }
+
+  /** See {@link UserSessionRepositoryCustom#revokeMatching} */
+  long revokeMatching(SessionFilter filter, int chunkSize, Consumer<RevokedChunk> onChunk) {
+    long revoked = 0;
+    if (filter.hasUserIds()) {
+      List<UUID> users = new ArrayList<>(filter.userIds());
+      for (int from = 0; from < users.size(); from += chunkSize) {
+        List<UUID> chunk = users.subList(from, Math.min(from + chunkSize, users.size()));
+        StringBuilder sql =
+            new StringBuilder(SELECT_REVOKE_CANDIDATES)
+                .append(" AND user_id IN (")
+                .append(placeholders(chunk.size()))
+                .append(')');
+        List<Object> parameters = new ArrayList<>(chunk);
+        appendCriteria(sql, parameters, filter);
+        revoked +=
+            revokeCandidates(
+                jdbcTemplate.query(sql.toString(), CANDIDATE, parameters.toArray()),
+                filter,
+                onChunk);
+      }
+      return revoked;
+    }
+
+    // No user list: walk the active sessions in id order, one page per chunk
+    UUID after = null;
+    List<Candidate> page;
+    do {
+      StringBuilder sql = new StringBuilder(SELECT_REVOKE_CANDIDATES);
+      List<Object> parameters = new ArrayList<>();
+      if (after != null) {
+        sql.append(" AND id > ?");
+        parameters.add(after);
+      }
+      appendCriteria(sql, parameters, filter);
+      sql.append(" ORDER BY id LIMIT ?");
+      parameters.add(chunkSize);
+      page = jdbcTemplate.query(sql.toString(), CANDIDATE, parameters.toArray());
+      if (!page.isEmpty()) {
+        after = page.get(page.size() - 1).id();
+        revoked += revokeCandidates(page, filter, onChunk);
+      }
+    } while (page.size() == chunkSize);
+    return revoked;
+  }
+
+  private int revokeCandidates(
+      List<Candidate> candidates, SessionFilter filter, Consumer<RevokedChunk> onChunk) {
+    List<Candidate> matching =
+        candidates.stream().filter(c -> inetClientIp || filter.matchesIp(c.clientIp())).toList();
+    if (matching.isEmpty()) {
+      return 0;
+    }
+    List<UUID> ids = matching.stream().map(Candidate::id).toList();
+    int count =
+        jdbcTemplate.update(DEACTIVATE_ACTIVE + placeholders(ids.size()) + ")", ids.toArray());
+    onChunk.accept(
+        new RevokedChunk(ids, matching.stream().map(Candidate::userId).distinct().toList(), count));
+    return count;
+  }
+
+  /** Creation window, and on an inet column the IP range too */
+  private void appendCriteria(StringBuilder sql, List<Object> parameters, SessionFilter filter) {
+    if (inetClientIp && filter.ipRange() != null) {
+      sql.append(" AND client_ip <<= CAST(? AS cidr)");
+      parameters.add(filter.ipRange().cidr());
+    }
+    if (filter.createdFrom() != null) {
+      sql.append(" AND created_at >= ?");
+      parameters.add(Timestamp.from(filter.createdFrom()));
+    }
+    if (filter.createdTo() != null) {
+      sql.append(" AND created_at < ?");
+      parameters.add(Timestamp.from(filter.createdTo()));
+    }
+  }
+
+  private static String placeholders(int count) {
+    return String.join(", ", Collections.nCopies(count, "?"));
+  }
+
+  private static <T> Optional<T> first(List<T> rows) {
+    return rows.isEmpty() ? Optional.empty() : Optional.of(rows.get(0));
+  }
+
+  private static Object[] insertParameters(UserSession session, Object... extra) {
+    Object[] base = {
+      session.getId(),
+      session.getUserId(),
+      session.getAccessTokenHash(),
+      session.getRefreshTokenHash(),
+      Timestamp.from(session.getExpiresAt()),
+      Timestamp.from(session.getRefreshExpiresAt()),
+      session.getClientIp(),
+      session.getUserAgentId(),
+      Timestamp.from(session.getCreatedAt())
+    };
+    Object[] parameters = new Object[base.length + extra.length];
+    System.arraycopy(base, 0, parameters, 0, base.length);
+    System.arraycopy(extra, 0, parameters, base.length, extra.length);
+    return parameters;
+  }
+
+  private record Candidate(UUID id, UUID userId, String clientIp) {}
+
+  static boolean isPostgres(DataSource dataSource) {
+    try {
+      String product =
+          JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName);
+      return "PostgreSQL".equalsIgnoreCase(product);
+    } catch (MetaDataAccessException e) {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package com.yanapure.app.auth.session;
+
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * In-process bus for single-node deployments and tests. Listeners are notified immediately and,
+ * when called inside a transaction, once more after it commits, so a concurrent reader cannot
+ * re-cache the state that is being replaced.
+ */
+public class LocalSessionInvalidationBus implements SessionInvalidationBus {
+
+  private static final Logger log = LoggerFactory.getLogger(LocalSessionInvalidationBus.class);
+
+  private final List<SessionInvalidationListener> listeners;
+
+  public LocalSessionInvalidationBus(List<SessionInvalidationListener> listeners) {
+    this.listeners = List.copyOf(listeners);
+  }
+
+  @Override
+  public void publish(SessionInvalidation invalidation) {
+    dispatch(invalidation);
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+              dispatch(invalidation);
+            }
+          });
+    }
+  }
+
+  /** Notify local listeners only */
+  void dispatch(SessionInvalidation invalidation) {
+    for (SessionInvalidationListener listener : listeners) {
+      try {
+        listener.onInvalidation(invalidation);
+      } catch (RuntimeException e) {
+        log.warn("Session invalidation listener failed: {}", e.getMessage());
+      }
+    }
+  }
+
+  void reset() {
+    listeners.forEach(SessionInvalidationListener::onReset);
+  }
+}
@@ -0,0 +1,593 @@
+package com.yanapure.app.auth.session;
+
+import com.yanapure.app.users.Role;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Open-addressing hash table of access token digest to session, stored in a memory-mapped file.
+ *
+ * <p>The file holds a header, the primary table (digest to session id, user id, role, phone and
+ * expiry) and a secondary table (session id to primary slot) so a session can be dropped by id.
+ * Both use linear probing with backward-shift deletion, so there are no tombstones. A slot is live
+ * only when it carries the current generation; clearing the index just bumps the generation.
+ *
+ * <p>Lookups are optimistic reads under a {@link StampedLock} and allocate only the result; writes
+ * are serialised. Entries live off-heap, so the index adds no GC load however many sessions it
+ * holds. A cleanly closed file is reopened as is ({@link #reopenedFrom()} tells the caller from
+ * when it has to catch up); anything else, including a file left open by a crashed process, is
+ * cleared on open.
+ *
+ * <p>User invalidations are cutoffs kept on the heap and checked on lookup. The purge job and
+ * {@link #close()} delete the entries they cover from the file, so a reopened index never serves an
+ * entry from before a role change or revocation.
+ */
+final class MappedSessionIndex implements Closeable {
+
+  private static final long MAGIC = 0x5953455353494458L;
+  private static final int VERSION = 1;
+
+  private static final int HEADER = 64;
+  private static final int H_MAGIC = 0;
+  private static final int H_VERSION = 8;
+  private static final int H_CAPACITY = 12;
+  private static final int H_STATE = 16;
+  private static final int H_GENERATION = 20;
+  private static final int H_CLOSED_AT = 24;
+  private static final int H_SIZE = 32;
+  private static final int STATE_OPEN = 1;
+  private static final int STATE_CLEAN = 2;
+
+  /** Primary slot: generation, role, phone length, digest, session, user, expiry, indexed at */
+  private static final int SLOT = 104;
+
+  private static final int S_ROLE = 4;
+  private static final int S_PHONE_LENGTH = 5;
+  private static final int S_DIGEST = 8;
+  private static final int S_SESSION = 40;
+  private static final int S_USER = 56;
+  private static final int S_EXPIRES = 72;
+  private static final int S_INDEXED = 80;
+  private static final int S_PHONE = 88;
+  private static final int PHONE_MAX = 16;
+
+  /** Secondary slot: generation, session id, primary slot */
+  private static final int REF_SLOT = 32;
+
+  private static final int R_SESSION = 8;
+  private static final int R_PRIMARY = 24;
+
+  private static final int MAX_CHUNK_SLOTS = 1 << 20;
+  private static final int PURGE_SLICE = 1 << 16;
+  private static final Role[] ROLES = Role.values();
+
+  private final FileChannel channel;
+  private final MappedByteBuffer header;
+  private final MappedByteBuffer[] slots;
+  private final MappedByteBuffer[] refs;
+  private final int capacity;
+  private final int mask;
+  private final int chunkShift;
+  private final int chunkMask;
+  private final int maxEntries;
+  private final long staleAfterMillis;
+  private final Instant reopenedFrom;
+  private final StampedLock lock = new StampedLock();
+
+  /** User id to the epoch millisecond at or before which that user's entries are stale */
+  private final ConcurrentHashMap<UUID, Long> notBefore = new ConcurrentHashMap<>();
+
+  private int generation;
+  private int size;
+  private volatile long removals;
+  private boolean closed;
+
+  private MappedSessionIndex(
+      FileChannel channel, int capacity, int maxEntries, Duration entryLifetime, boolean reuse)
+      throws IOException {
+    this.channel = channel;
+    this.capacity = capacity;
+    this.mask = capacity - 1;
+    int chunkSlots = Math.min(capacity, MAX_CHUNK_SLOTS);
+    this.chunkShift = Integer.numberOfTrailingZeros(chunkSlots);
+    this.chunkMask = chunkSlots - 1;
+    this.maxEntries = maxEntries;
+    this.staleAfterMillis = entryLifetime.toMillis();
+
+    this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER);
+    int chunks = capacity / chunkSlots;
+    this.slots = new MappedByteBuffer[chunks];
+    this.refs = new MappedByteBuffer[chunks];
+    long refStart = HEADER + (long) capacity * SLOT;
+    for (int c = 0; c < chunks; c++) {
+      slots[c] =
+          channel.map(
+              FileChannel.MapMode.READ_WRITE,
+              HEADER + (long) c * chunkSlots * SLOT,
+              (long) chunkSlots * SLOT);
+      refs[c] =
+          channel.map(
+              FileChannel.MapMode.READ_WRITE,
+              refStart + (long) c * chunkSlots * REF_SLOT,
+              (long) chunkSlots * REF_SLOT);
+    }
+
+    if (reuse) {
+      this.generation = header.getInt(H_GENERATION);
+      this.size = header.getInt(H_SIZE);
+      this.reopenedFrom = Instant.ofEpochMilli(header.getLong(H_CLOSED_AT));
+    } else {
+      // Fresh or truncated file: every slot reads as generation 0, i.e. empty
+      header.putLong(H_MAGIC, MAGIC);
+      header.putInt(H_VERSION, VERSION);
+      header.putInt(H_CAPACITY, capacity);
+      this.generation = 1;
+      this.size = 0;
+      this.reopenedFrom = null;
+    }
+    header.putInt(H_GENERATION, generation);
+    header.putInt(H_STATE, STATE_OPEN);
+    header.force();
+  }
+
+  /**
+   * Open or create an index file sized for {@code maxEntries} live sessions.
+   *
+   * @param entryLifetime longest time an entry can stay unexpired, i.e. the access token lifetime
+   */
+  static MappedSessionIndex open(Path path, int maxEntries, Duration entryLifetime)
+      throws IOException {
+    int capacity = tableSizeFor(maxEntries + maxEntries / 3 + 1);
+    long fileSize = HEADER + (long) capacity * (SLOT + REF_SLOT);
+    Path parent = path.toAbsolutePath().getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+    FileChannel channel =
+        FileChannel.open(
+            path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      boolean reuse = channel.size() == fileSize && isCleanHeader(channel, capacity);
+      if (!reuse) {
+        // Truncating and re-extending zero-fills the file (sparse where the file system allows)
+        channel.truncate(0);
+      }
+      return new MappedSessionIndex(channel, capacity, maxEntries, entryLifetime, reuse);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  private static boolean isCleanHeader(FileChannel channel, int capacity) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER);
+    channel.read(buffer, 0);
+    return buffer.getLong(H_MAGIC) == MAGIC
+        && buffer.getInt(H_VERSION) == VERSION
+        && buffer.getInt(H_CAPACITY) == capacity
+        && buffer.getInt(H_STATE) == STATE_CLEAN;
+  }
+
+  private static int tableSizeFor(int entries) {
+    int size = Integer.highestOneBit(Math.max(entries, 1024) - 1) << 1;
+    if (size <= 0 || size > 1 << 30) {
+      throw new IllegalArgumentException("Session index too large: " + entries + " entries");
+    }
+    return size;
+  }
+
+  /** When the file was cleanly closed, or null if the index started empty */
+  Instant reopenedFrom() {
+    return reopenedFrom;
+  }
+
+  int capacity() {
+    return capacity;
+  }
+
+  int size() {
+    long stamp = lock.readLock();
+    try {
+      return size;
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Number of removals so far. A caller that reads a session from the database passes the value
+   * seen before the read to {@link #put}, which then refuses to store a row that may have been
+   * revoked in the meantime.
+   */
+  long removals() {
+    return removals;
+  }
+
+  /** Session of an access token digest, or null if absent or stale */
+  SessionLookup.ActiveSession find(byte[] digest) {
+    long d0 = word(digest, 0);
+    long d1 = word(digest, 1);
+    long d2 = word(digest, 2);
+    long d3 = word(digest, 3);
+
+    long stamp = lock.tryOptimisticRead();
+    if (stamp != 0) {
+      try {
+        SessionLookup.ActiveSession found = read(digest, d0, d1, d2, d3);
+        if (lock.validate(stamp)) {
+          return found;
+        }
+      } catch (RuntimeException e) {
+        // Torn read of a slot being rewritten; retry under the read lock
+      }
+    }
+    stamp = lock.readLock();
+    try {
+      return read(digest, d0, d1, d2, d3);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  private SessionLookup.ActiveSession read(byte[] digest, long d0, long d1, long d2, long d3) {
+    if (closed) {
+      return null;
+    }
+    int i = findPrimary(d0, d1, d2, d3);
+    if (i < 0) {
+      return null;
+    }
+    ByteBuffer b = slots[i >>> chunkShift];
+    int o = (i & chunkMask) * SLOT;
+    UUID userId = new UUID(b.getLong(o + S_USER), b.getLong(o + S_USER + 8));
+    Long cutoff = notBefore.get(userId);
+    if (cutoff != null && b.getLong(o + S_INDEXED) <= cutoff) {
+      return null;
+    }
+    byte[] phone = new byte[Math.min(b.get(o + S_PHONE_LENGTH), PHONE_MAX)];
+    b.get(o + S_PHONE, phone);
+    return new SessionLookup.ActiveSession(
+        new UUID(b.getLong(o + S_SESSION), b.getLong(o + S_SESSION + 8)),
+        userId,
+        digest.clone(),
+        Instant.ofEpochMilli(b.getLong(o + S_EXPIRES)),
+        null,
+        new String(phone, StandardCharsets.US_ASCII),
+        ROLES[b.get(o + S_ROLE)]);
+  }
+
+  /**
+   * Store a session under its access token digest, replacing any entry of the same session.
+   *
+   * @return false when something was removed since {@code expectedRemovals} was read, or the index
+   *     is full
+   */
+  boolean put(
+      long expectedRemovals, byte[] digest, SessionLookup.ActiveSession session, long nowMillis) {
+    byte[] phone = session.phone().getBytes(StandardCharsets.US_ASCII);
+    if (phone.length > PHONE_MAX) {
+      return false;
+    }
+    long d0 = word(digest, 0);
+    long d1 = word(digest, 1);
+    long d2 = word(digest, 2);
+    long d3 = word(digest, 3);
+
+    long stamp = lock.writeLock();
+    try {
+      if (closed || removals != expectedRemovals) {
+        return false;
+      }
+      removeSessionLocked(session.sessionId());
+      int existing = findPrimary(d0, d1, d2, d3);
+      if (existing >= 0) {
+        removeSessionLocked(sessionAt(existing));
+      }
+      if (size >= maxEntries) {
+        return false;
+      }
+      int i = home(d0);
+      while (isLive(slots, i, SLOT)) {
+        i = (i + 1) & mask;
+      }
+      size++;
+
+      ByteBuffer b = slots[i >>> chunkShift];
+      int o = (i & chunkMask) * SLOT;
+      b.put(o + S_ROLE, (byte) session.role().ordinal());
+      b.put(o + S_PHONE_LENGTH, (byte) phone.length);
+      b.putLong(o + S_DIGEST, d0);
+      b.putLong(o + S_DIGEST + 8, d1);
+      b.putLong(o + S_DIGEST + 16, d2);
+      b.putLong(o + S_DIGEST + 24, d3);
+      b.putLong(o + S_SESSION, session.sessionId().getMostSignificantBits());
+      b.putLong(o + S_SESSION + 8, session.sessionId().getLeastSignificantBits());
+      b.putLong(o + S_USER, session.userId().getMostSignificantBits());
+      b.putLong(o + S_USER + 8, session.userId().getLeastSignificantBits());
+      b.putLong(o + S_EXPIRES, session.expiresAt().toEpochMilli());
+      b.putLong(o + S_INDEXED, nowMillis);
+      b.put(o + S_PHONE, phone);
+      b.putInt(o, generation);
+
+      putRef(session.sessionId(), i);
+      return true;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /** Drop the entry of a session */
+  void removeSession(UUID sessionId) {
+    long stamp = lock.writeLock();
+    try {
+      removals++;
+      if (!closed) {
+        removeSessionLocked(sessionId);
+      }
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Treat every entry of a user written up to {@code nowMillis} as stale. The entries are deleted
+   * by the next {@link #purgeExpired} or {@link #close()}.
+   */
+  void invalidateUser(UUID userId, long nowMillis) {
+    long stamp = lock.writeLock();
+    try {
+      removals++;
+      notBefore.merge(userId, nowMillis, Math::max);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /** Drop every entry */
+  void clear() {
+    long stamp = lock.writeLock();
+    try {
+      removals++;
+      if (!closed) {
+        generation = generation == Integer.MAX_VALUE ? 1 : generation + 1;
+        size = 0;
+        header.putInt(H_GENERATION, generation);
+      }
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Delete entries whose access token expired or whose user was invalidated, one slice of the table
+   * per lock acquisition, and forget user invalidations that no longer cover any live entry.
+   *
+   * @return number of entries deleted
+   */
+  int purgeExpired(long nowMillis) {
+    notBefore.values().removeIf(cutoff -> cutoff + staleAfterMillis < nowMillis);
+    int purged = 0;
+    for (int start = 0; start < capacity; start += PURGE_SLICE) {
+      long stamp = lock.writeLock();
+      try {
+        if (closed) {
+          return purged;
+        }
+        purged += purgeLocked(start, Math.min(start + PURGE_SLICE, capacity), nowMillis);
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    }
+    return purged;
+  }
+
+  private int purgeLocked(int from, int to, long nowMillis) {
+    int purged = 0;
+    for (int i = from; i < to; i++) {
+      // Deleting shifts a later entry into slot i, so look at it again
+      while (isLive(slots, i, SLOT) && (expiresAt(i) <= nowMillis || isInvalidated(i))) {
+        removeSessionLocked(sessionAt(i));
+        purged++;
+      }
+    }
+    return purged;
+  }
+
+  private boolean isInvalidated(int i) {
+    if (notBefore.isEmpty()) {
+      return false;
+    }
+    ByteBuffer b = slots[i >>> chunkShift];
+    int o = (i & chunkMask) * SLOT;
+    Long cutoff = notBefore.get(new UUID(b.getLong(o + S_USER), b.getLong(o + S_USER + 8)));
+    return cutoff != null && b.getLong(o + S_INDEXED) <= cutoff;
+  }
+
+  /** Flush the tables and mark the file as cleanly closed so it can be reopened */
+  @Override
+  public void close() throws IOException {
+    long stamp = lock.writeLock();
+    try {
+      if (closed) {
+        return;
+      }
+      // The cutoffs do not survive the process, so the entries they cover must not either
+      if (!notBefore.isEmpty()) {
+        purgeLocked(0, capacity, System.currentTimeMillis());
+        notBefore.clear();
+      }
+      closed = true;
+      for (int c = 0; c < slots.length; c++) {
+        slots[c].force();
+        refs[c].force();
+      }
+      header.putInt(H_SIZE, size);
+      header.putLong(H_CLOSED_AT, System.currentTimeMillis());
+      header.putInt(H_STATE, STATE_CLEAN);
+      header.force();
+      channel.close();
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  private void removeSessionLocked(UUID sessionId) {
+    int r = findRef(sessionId);
+    if (r < 0) {
+      return;
+    }
+    int primary = refs[r >>> chunkShift].getInt((r & chunkMask) * REF_SLOT + R_PRIMARY);
+    deleteRef(r);
+    deletePrimary(primary);
+    size--;
+  }
+
+  private int findPrimary(long d0, long d1, long d2, long d3) {
+    int i = home(d0);
+    for (int probes = 0; probes < capacity && isLive(slots, i, SLOT); probes++) {
+      ByteBuffer b = slots[i >>> chunkShift];
+      int o = (i & chunkMask) * SLOT + S_DIGEST;
+      if (b.getLong(o) == d0
+          && b.getLong(o + 8) == d1
+          && b.getLong(o + 16) == d2
+          && b.getLong(o + 24) == d3) {
+        return i;
+      }
+      i = (i + 1) & mask;
+    }
+    return -1;
+  }
+
+  private int findRef(UUID sessionId) {
+    long msb = sessionId.getMostSignificantBits();
+    long lsb = sessionId.getLeastSignificantBits();
+    int i = refHome(msb, lsb);
+    for (int probes = 0; probes < capacity && isLive(refs, i, REF_SLOT); probes++) {
+      ByteBuffer b = refs[i >>> chunkShift];
+      int o = (i & chunkMask) * REF_SLOT;
+      if (b.getLong(o + R_SESSION) == msb && b.getLong(o + R_SESSION + 8) == lsb) {
+        return i;
+      }
+      i = (i + 1) & mask;
+    }
+    return -1;
+  }
+
+  private void putRef(UUID sessionId, int primary) {
+    long msb = sessionId.getMostSignificantBits();
+    long lsb = sessionId.getLeastSignificantBits();
+    int i = refHome(msb, lsb);
+    while (isLive(refs, i, REF_SLOT)) {
+      i = (i + 1) & mask;
+    }
+    ByteBuffer b = refs[i >>> chunkShift];
+    int o = (i & chunkMask) * REF_SLOT;
+    b.putLong(o + R_SESSION, msb);
+    b.putLong(o + R_SESSION + 8, lsb);
+    b.putInt(o + R_PRIMARY, primary);
+    b.putInt(o, generation);
+  }
+
+  /** Backward-shift deletion: pull later entries of the probe run into the gap */
+  private void deletePrimary(int gap) {
+    ByteBuffer gapBuffer = slots[gap >>> chunkShift];
+    gapBuffer.putInt((gap & chunkMask) * SLOT, 0);
+    int j = gap;
+    while (true) {
+      j = (j + 1) & mask;
+      if (!isLive(slots, j, SLOT)) {
+        return;
+      }
+      ByteBuffer b = slots[j >>> chunkShift];
+      int o = (j & chunkMask) * SLOT;
+      int home = home(b.getLong(o + S_DIGEST));
+      if (((j - home) & mask) >= ((j - gap) & mask)) {
+        copySlot(slots, j, gap, SLOT);
+        UUID moved = new UUID(b.getLong(o + S_SESSION), b.getLong(o + S_SESSION + 8));
+        int r = findRef(moved);
+        refs[r >>> chunkShift].putInt((r & chunkMask) * REF_SLOT + R_PRIMARY, gap);
+        b.putInt(o, 0);
+        gap = j;
+      }
+    }
+  }
+
+  private void deleteRef(int gap) {
+    refs[gap >>> chunkShift].putInt((gap & chunkMask) * REF_SLOT, 0);
+    int j = gap;
+    while (true) {
+      j = (j + 1) & mask;
+      if (!isLive(refs, j, REF_SLOT)) {
+        return;
+      }
+      ByteBuffer b = refs[j >>> chunkShift];
+      int o = (j & chunkMask) * REF_SLOT;
+      int home = refHome(b.getLong(o + R_SESSION), b.getLong(o + R_SESSION + 8));
+      if (((j - home) & mask) >= ((j - gap) & mask)) {
+        copySlot(refs, j, gap, REF_SLOT);
+        b.putInt(o, 0);
+        gap = j;
+      }
+    }
+  }
+
+  private void copySlot(MappedByteBuffer[] table, int from, int to, int slotSize) {
+    ByteBuffer source = table[from >>> chunkShift];
+    ByteBuffer target = table[to >>> chunkShift];
+    int so = (from & chunkMask) * slotSize;
+    int to0 = (to & chunkMask) * slotSize;
+    // Generation last, so a concurrent optimistic reader never sees a half-copied live slot
+    for (int k = 8; k < slotSize; k += 8) {
+      target.putLong(to0 + k, source.getLong(so + k));
+    }
+    target.putInt(to0 + 4, source.getInt(so + 4));
+    target.putInt(to0, source.getInt(so));
+  }
+
+  private boolean isLive(MappedByteBuffer[] table, int i, int slotSize) {
+    return table[i >>> chunkShift].getInt((i & chunkMask) * slotSize) == generation;
+  }
+
+  private long expiresAt(int i) {
+    return slots[i >>> chunkShift].getLong((i & chunkMask) * SLOT + S_EXPIRES);
+  }
+
+  private UUID sessionAt(int i) {
+    ByteBuffer b = slots[i >>> chunkShift];
+    int o = (i & chunkMask) * SLOT;
+    return new UUID(b.getLong(o + S_SESSION), b.getLong(o + S_SESSION + 8));
+  }
+
+  /** Digests are uniformly distributed, so their leading bits are a good hash */
+  private int home(long leadingWord) {
+    return (int) (leadingWord ^ (leadingWord >>> 32)) & mask;
+  }
+
+  private int refHome(long msb, long lsb) {
+    long h = msb ^ lsb;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    return (int) h & mask;
+  }
+
+  private static long word(byte[] digest, int index) {
+    long word = 0;
+    for (int k = index * 8; k < index * 8 + 8; k++) {
+      word = (word << 8) | (digest[k] & 0xff);
+    }
+    return word;
+  }
+}
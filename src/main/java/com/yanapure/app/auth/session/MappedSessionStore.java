@@ -0,0 +1,215 @@
+package com.yanapure.app.auth.session;
+
+import com.yanapure.app.auth.token.TokenDigest;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * {@link SessionStore} with a node-local {@link MappedSessionIndex} of access token digests in
+ * front of the database. Validation is a probe of the mapped file; misses are read through and
+ * indexed. Writes go to the database first and then drop the affected entries, as do {@link
+ * SessionInvalidation}s from other nodes.
+ *
+ * <p>On a restart the index is reopened rather than rebuilt. Changes made while the node was down
+ * are caught up with one query over sessions whose access token is still unexpired: sessions that
+ * were ended, rotated or used since the index was closed, and sessions whose user changed or no
+ * longer exists, are dropped before the index serves anything. A process that died without closing
+ * the index starts empty.
+ */
+public class MappedSessionStore implements SessionStore, SessionInvalidationListener {
+
+  private static final Logger log = LoggerFactory.getLogger(MappedSessionStore.class);
+
+  /** Allowance for clock differences between nodes when catching up after a restart */
+  private static final Duration CATCH_UP_SKEW = Duration.ofMinutes(1);
+
+  /** Sessions an index closed at ? may hold stale entries for */
+  private static final String CHANGED_SINCE =
+      "SELECT s.id FROM user_sessions s LEFT JOIN users u ON u.id = s.user_id "
+          + "WHERE s.expires_at > ? AND (s.active = FALSE OR s.last_used_at >= ? "
+          + "OR u.id IS NULL OR u.updated_at >= ?)";
+
+  private final SessionStore database;
+  private final MappedSessionIndex index;
+
+  public MappedSessionStore(
+      SessionStore database,
+      JdbcTemplate jdbcTemplate,
+      Path path,
+      int maxEntries,
+      Duration accessTokenLifetime) {
+    this.database = database;
+    try {
+      this.index = MappedSessionIndex.open(path, maxEntries, accessTokenLifetime);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot open session index " + path, e);
+    }
+    try {
+      catchUp(jdbcTemplate);
+    } catch (RuntimeException e) {
+      index.clear();
+      log.warn("Session index could not catch up, starting empty: {}", e.getMessage());
+    }
+    log.info("Session index {}: {} of {} slots in use", path, index.size(), index.capacity());
+  }
+
+  private void catchUp(JdbcTemplate jdbcTemplate) {
+    Instant closedAt = index.reopenedFrom();
+    if (closedAt == null || index.size() == 0) {
+      return;
+    }
+    Timestamp since = Timestamp.from(closedAt.minus(CATCH_UP_SKEW));
+    int[] dropped = {0};
+    jdbcTemplate.query(
+        CHANGED_SINCE,
+        rs -> {
+          index.removeSession(rs.getObject(1, UUID.class));
+          dropped[0]++;
+        },
+        Timestamp.from(Instant.now()),
+        since,
+        since);
+    log.info("Session index reopened from {}; dropped {} changed sessions", closedAt, dropped[0]);
+  }
+
+  @Override
+  public List<UUID> create(UserSession session, int maxActiveSessions) {
+    List<UUID> evicted = database.create(session, maxActiveSessions);
+    evicted.forEach(index::removeSession);
+    return evicted;
+  }
+
+  @Override
+  public Optional<UserSessionRepositoryCustom.SessionKey> rotate(
+      UUID sessionId,
+      TokenDigest refreshToken,
+      String newAccessToken,
+      String newRefreshToken,
+      Instant expiresAt,
+      Instant refreshExpiresAt) {
+    Optional<UserSessionRepositoryCustom.SessionKey> rotated =
+        database.rotate(
+            sessionId, refreshToken, newAccessToken, newRefreshToken, expiresAt, refreshExpiresAt);
+    rotated.ifPresent(key -> index.removeSession(key.sessionId()));
+    return rotated;
+  }
+
+  @Override
+  public Optional<UserSessionRepositoryCustom.SessionKey> revoke(
+      UUID sessionId, TokenDigest accessToken) {
+    Optional<UserSessionRepositoryCustom.SessionKey> revoked =
+        database.revoke(sessionId, accessToken);
+    revoked.ifPresent(key -> index.removeSession(key.sessionId()));
+    return revoked;
+  }
+
+  @Override
+  public int revokeAll(UUID userId) {
+    int revoked = database.revokeAll(userId);
+    index.invalidateUser(userId, System.currentTimeMillis());
+    return revoked;
+  }
+
+  @Override
+  public long revokeMatching(
+      SessionFilter filter,
+      int chunkSize,
+      Consumer<UserSessionRepositoryCustom.RevokedChunk> onChunk) {
+    return database.revokeMatching(
+        filter,
+        chunkSize,
+        chunk -> {
+          chunk.sessionIds().forEach(index::removeSession);
+          onChunk.accept(chunk);
+        });
+  }
+
+  @Override
+  public Optional<SessionLookup.ActiveSession> findActiveByAccessToken(
+      UUID sessionId, TokenDigest accessToken) {
+    byte[] digest = accessToken.toByteArray();
+    SessionLookup.ActiveSession indexed = index.find(digest);
+    if (indexed != null && (sessionId == null || sessionId.equals(indexed.sessionId()))) {
+      return Optional.of(indexed);
+    }
+
+    long removals = index.removals();
+    Optional<SessionLookup.ActiveSession> found =
+        database.findActiveByAccessToken(sessionId, accessToken);
+    found
+        .filter(session -> !session.isExpired())
+        .ifPresent(session -> index.put(removals, digest, session, System.currentTimeMillis()));
+    return found;
+  }
+
+  @Override
+  public Optional<UserSession> findById(UUID sessionId) {
+    return database.findById(sessionId);
+  }
+
+  @Override
+  public Optional<UserSession> findByAccessTokenDigest(TokenDigest accessToken) {
+    return database.findByAccessTokenDigest(accessToken);
+  }
+
+  @Override
+  public Optional<UserSession> findByRefreshTokenDigest(TokenDigest refreshToken) {
+    return database.findByRefreshTokenDigest(refreshToken);
+  }
+
+  @Override
+  public List<UserSession> findActiveByUser(UUID userId) {
+    return database.findActiveByUser(userId);
+  }
+
+  @Override
+  public int updateLastUsed(Map<UUID, Instant> lastUsed) {
+    return database.updateLastUsed(lastUsed);
+  }
+
+  @Override
+  public void onInvalidation(SessionInvalidation invalidation) {
+    if (invalidation.isSessionEvent()) {
+      index.removeSession(invalidation.id());
+    } else {
+      index.invalidateUser(invalidation.id(), System.currentTimeMillis());
+    }
+  }
+
+  @Override
+  public void onReset() {
+    index.clear();
+  }
+
+  /** Delete entries whose access token has expired */
+  @Scheduled(fixedDelayString = "${app.auth.session-index.purge-interval:1m}")
+  public void purgeExpired() {
+    int purged = index.purgeExpired(System.currentTimeMillis());
+    if (purged > 0) {
+      log.debug("Purged {} expired session index entries", purged);
+    }
+  }
+
+  /** Entries currently held */
+  public int size() {
+    return index.size();
+  }
+
+  /** Close the index file so the next start can reopen it */
+  public void close() throws IOException {
+    index.close();
+  }
+}
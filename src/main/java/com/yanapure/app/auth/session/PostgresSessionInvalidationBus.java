@@ -0,0 +1,137 @@
+package com.yanapure.app.auth.session;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import javax.sql.DataSource;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Cross-node bus over PostgreSQL {@code LISTEN/NOTIFY}. Publishing runs {@code pg_notify} on the
+ * caller's connection, so inside a transaction the notification is only delivered once it commits.
+ * Each node keeps one pooled connection listening on the channel and hands every notification,
+ * including its own, to the local listeners. After a lost connection the listeners are reset, since
+ * notifications sent in the meantime are gone.
+ */
+public class PostgresSessionInvalidationBus implements SessionInvalidationBus, SmartLifecycle {
+
+  private static final Logger log = LoggerFactory.getLogger(PostgresSessionInvalidationBus.class);
+
+  static final String CHANNEL = "session_invalidation";
+  private static final int POLL_TIMEOUT_MILLIS = 500;
+  private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+  private final DataSource dataSource;
+  private final JdbcTemplate jdbcTemplate;
+  private final LocalSessionInvalidationBus local;
+
+  private volatile boolean running;
+  private Thread listenerThread;
+
+  public PostgresSessionInvalidationBus(
+      DataSource dataSource, JdbcTemplate jdbcTemplate, LocalSessionInvalidationBus local) {
+    this.dataSource = dataSource;
+    this.jdbcTemplate = jdbcTemplate;
+    this.local = local;
+  }
+
+  @Override
+  public void publish(SessionInvalidation invalidation) {
+    // Evict here right away; the echoed notification evicts again after commit
+    local.dispatch(invalidation);
+    jdbcTemplate.query("SELECT pg_notify(?, ?)", rs -> null, CHANNEL, invalidation.encode());
+  }
+
+  /** One notification per invalidation, all sent by a single statement */
+  @Override
+  public void publishAll(List<SessionInvalidation> invalidations) {
+    if (invalidations.isEmpty()) {
+      return;
+    }
+    invalidations.forEach(local::dispatch);
+    Object[] payloads = invalidations.stream().map(SessionInvalidation::encode).toArray();
+    jdbcTemplate.query(
+        "SELECT pg_notify(?, payload) FROM unnest(?::text[]) AS payload",
+        statement -> {
+          statement.setString(1, CHANNEL);
+          statement.setArray(2, statement.getConnection().createArrayOf("text", payloads));
+        },
+        rs -> null);
+  }
+
+  @Override
+  public void start() {
+    running = true;
+    listenerThread = new Thread(this::listen, "session-invalidation-listener");
+    listenerThread.setDaemon(true);
+    listenerThread.start();
+  }
+
+  @Override
+  public void stop() {
+    running = false;
+    if (listenerThread != null) {
+      listenerThread.interrupt();
+      try {
+        listenerThread.join(POLL_TIMEOUT_MILLIS * 4L);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  @Override
+  public boolean isRunning() {
+    return running;
+  }
+
+  private void listen() {
+    long backoff = 1000;
+    while (running) {
+      try (Connection connection = dataSource.getConnection();
+          Statement statement = connection.createStatement()) {
+        statement.execute("LISTEN " + CHANNEL);
+        PGConnection pgConnection = connection.unwrap(PGConnection.class);
+        local.reset();
+        log.info("Listening for session invalidations on channel {}", CHANNEL);
+        backoff = 1000;
+
+        while (running) {
+          PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MILLIS);
+          if (notifications == null) {
+            continue;
+          }
+          for (PGNotification notification : notifications) {
+            receive(notification.getParameter());
+          }
+        }
+      } catch (SQLException | RuntimeException e) {
+        if (!running) {
+          return;
+        }
+        log.warn("Session invalidation listener lost its connection: {}", e.getMessage());
+        try {
+          Thread.sleep(backoff);
+        } catch (InterruptedException interrupted) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+      }
+    }
+  }
+
+  private void receive(String payload) {
+    try {
+      local.dispatch(SessionInvalidation.decode(payload));
+    } catch (IllegalArgumentException e) {
+      log.warn("Ignoring malformed session invalidation: {}", payload);
+    }
+  }
+}
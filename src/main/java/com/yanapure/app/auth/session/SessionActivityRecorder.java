@@ -0,0 +1,101 @@
+package com.yanapure.app.auth.session;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Write-behind buffer for {@code user_sessions.last_used_at}. Authenticated requests only record
+ * the time in memory; pending timestamps are written periodically in a single batch and drained on
+ * shutdown. A session whose stored timestamp is younger than the configured granularity is not
+ * recorded at all, so each session is written at most once per granularity window.
+ */
+@Component
+public class SessionActivityRecorder {
+
+  private static final Logger log = LoggerFactory.getLogger(SessionActivityRecorder.class);
+
+  private final SessionStore sessionStore;
+  private final Duration granularity;
+  private final Map<UUID, Instant> pending = new ConcurrentHashMap<>();
+
+  /** Last time recorded per session, for callers holding a cached (stale) session */
+  private final Map<UUID, Instant> recorded = new ConcurrentHashMap<>();
+
+  public SessionActivityRecorder(
+      SessionStore sessionStore,
+      @Value("${app.auth.last-used.granularity:1m}") Duration granularity) {
+    this.sessionStore = sessionStore;
+    this.granularity = granularity;
+  }
+
+  /** Record that a session was used now */
+  public void touch(UserSession session) {
+    touch(session.getId(), session.getLastUsedAt());
+  }
+
+  /** Record that a session whose stored last-used time is {@code lastUsedAt} was used now */
+  public void touch(UUID sessionId, Instant lastUsedAt) {
+    Instant now = Instant.now();
+    if (isRecent(lastUsedAt, now) || isRecent(recorded.get(sessionId), now)) {
+      return;
+    }
+    pending.put(sessionId, now);
+    recorded.put(sessionId, now);
+  }
+
+  private boolean isRecent(Instant lastUsed, Instant now) {
+    return lastUsed != null && lastUsed.plus(granularity).isAfter(now);
+  }
+
+  /** Number of sessions waiting to be written */
+  public int pendingCount() {
+    return pending.size();
+  }
+
+  /** Write all pending timestamps in one batch */
+  @Scheduled(fixedDelayString = "${app.auth.last-used.flush-interval:10s}")
+  public int flush() {
+    Instant now = Instant.now();
+    recorded.values().removeIf(lastUsed -> !isRecent(lastUsed, now));
+    if (pending.isEmpty()) {
+      return 0;
+    }
+
+    Map<UUID, Instant> batch = new HashMap<>();
+    for (UUID id : pending.keySet()) {
+      Instant usedAt = pending.remove(id);
+      if (usedAt != null) {
+        batch.put(id, usedAt);
+      }
+    }
+
+    try {
+      sessionStore.updateLastUsed(batch);
+      log.debug("Flushed last-used time of {} sessions", batch.size());
+      return batch.size();
+    } catch (RuntimeException e) {
+      // Keep the timestamps for the next run unless a newer one has been recorded meanwhile
+      batch.forEach(pending::putIfAbsent);
+      log.warn("Failed to flush last-used time of {} sessions: {}", batch.size(), e.getMessage());
+      return 0;
+    }
+  }
+
+  @PreDestroy
+  void drain() {
+    int flushed = flush();
+    if (flushed > 0) {
+      log.info("Flushed last-used time of {} sessions on shutdown", flushed);
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package com.yanapure.app.auth.session;
+
+import com.yanapure.app.auth.token.TokenDigest;
+import com.yanapure.app.auth.token.TokenDigestCache;
+import com.yanapure.app.users.User;
+import java.time.Duration;
+import java.time.Instant;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Node-local cache of the session and user behind an access token, keyed by the token digest.
+ * Entries live for a short TTL (never past the session's own expiry) and are evicted by {@link
+ * SessionInvalidation}s from any node. Cached entities are detached and must be treated as
+ * read-only.
+ */
+@Component
+public class SessionCache implements SessionInvalidationListener {
+
+  /** Rough heap footprint of one entry: two entities plus map overhead */
+  private static final int ENTRY_WEIGHT = 1024;
+
+  private final TokenDigestCache<Entry> cache;
+  private final Duration ttl;
+
+  public SessionCache(
+      @Value("${app.auth.session-cache.enabled:false}") boolean enabled,
+      @Value("${app.auth.session-cache.max-entries:10000}") int maxEntries,
+      @Value("${app.auth.session-cache.ttl:30s}") Duration ttl) {
+    this.cache =
+        enabled ? new TokenDigestCache<>(maxEntries, (long) maxEntries * ENTRY_WEIGHT) : null;
+    this.ttl = ttl;
+  }
+
+  public boolean isEnabled() {
+    return cache != null;
+  }
+
+  /** Cached session and user for a token, or null */
+  public Entry get(TokenDigest digest) {
+    return cache != null ? cache.get(digest) : null;
+  }
+
+  public void put(TokenDigest digest, UserSession session, User user) {
+    if (cache == null) {
+      return;
+    }
+    Instant expiresAt = Instant.now().plus(ttl);
+    if (session.getExpiresAt().isBefore(expiresAt)) {
+      expiresAt = session.getExpiresAt();
+    }
+    cache.put(digest, new Entry(session, user), expiresAt, ENTRY_WEIGHT);
+  }
+
+  /** Statistics of the cache, or null when it is disabled */
+  public TokenDigestCache.Stats stats() {
+    return cache != null ? cache.stats() : null;
+  }
+
+  @Override
+  public void onInvalidation(SessionInvalidation invalidation) {
+    if (cache == null) {
+      return;
+    }
+    if (invalidation.isSessionEvent()) {
+      cache.invalidateIf(entry -> invalidation.id().equals(entry.session().getId()));
+    } else {
+      cache.invalidateIf(entry -> invalidation.id().equals(entry.user().getId()));
+    }
+  }
+
+  @Override
+  public void onReset() {
+    if (cache != null) {
+      cache.clear();
+    }
+  }
+
+  /** A validated session together with its user */
+  public record Entry(UserSession session, User user) {}
+}
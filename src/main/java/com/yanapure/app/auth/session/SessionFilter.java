@@ -0,0 +1,51 @@
+package com.yanapure.app.auth.session;
+
+import com.yanapure.app.util.IpRange;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Which active sessions a bulk revocation ends. Every criterion that is set must match; at least
+ * one has to be set.
+ *
+ * @param userIds owners of the sessions, or null for any user
+ * @param ipRange block the session's client IP falls in, or null for any address
+ * @param createdFrom earliest creation time, inclusive, or null
+ * @param createdTo latest creation time, exclusive, or null
+ */
+public record SessionFilter(
+    Set<UUID> userIds, IpRange ipRange, Instant createdFrom, Instant createdTo) {
+
+  public SessionFilter {
+    userIds = userIds != null ? Set.copyOf(userIds) : null;
+    if ((userIds == null || userIds.isEmpty())
+        && ipRange == null
+        && createdFrom == null
+        && createdTo == null) {
+      throw new IllegalArgumentException("At least one criterion is required");
+    }
+    if (createdFrom != null && createdTo != null && !createdFrom.isBefore(createdTo)) {
+      throw new IllegalArgumentException("createdFrom must be before createdTo");
+    }
+  }
+
+  public boolean hasUserIds() {
+    return userIds != null && !userIds.isEmpty();
+  }
+
+  /** Whether every session of the listed users matches, i.e. no other criterion is set */
+  public boolean isWholeUsers() {
+    return hasUserIds() && ipRange == null && createdFrom == null && createdTo == null;
+  }
+
+  /** Same criteria restricted to the given users */
+  SessionFilter forUsers(List<UUID> users) {
+    return new SessionFilter(Set.copyOf(users), ipRange, createdFrom, createdTo);
+  }
+
+  boolean matchesIp(String clientIp) {
+    return ipRange == null || ipRange.contains(clientIp);
+  }
+}
@@ -0,0 +1,108 @@
+package com.yanapure.app.auth.session;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A change that makes cached session state stale. Revocations also end stateless access tokens;
+ * changes only evict cached copies.
+ *
+ * @param kind what happened
+ * @param id session id for session events, user id for user events
+ */
+public record SessionInvalidation(Kind kind, UUID id) {
+
+  public enum Kind {
+    /** Tokens of the session were rotated */
+    SESSION_CHANGED('s'),
+    /** The session was logged out or revoked by an admin */
+    SESSION_REVOKED('S'),
+    /** The session was deactivated by a newer login beyond the per-user limit */
+    SESSION_EVICTED('E'),
+    /** Profile data of the user changed */
+    USER_CHANGED('u'),
+    /** Every session of the user was ended, or the user no longer exists */
+    USER_REVOKED('U'),
+    /** The user's role changed; ends their access tokens like {@link #USER_REVOKED} */
+    ROLE_CHANGED('R');
+
+    private final char code;
+
+    Kind(char code) {
+      this.code = code;
+    }
+
+    static Kind fromCode(char code) {
+      for (Kind kind : values()) {
+        if (kind.code == code) {
+          return kind;
+        }
+      }
+      throw new IllegalArgumentException("Unknown invalidation kind: " + code);
+    }
+  }
+
+  public static SessionInvalidation sessionChanged(UUID sessionId) {
+    return new SessionInvalidation(Kind.SESSION_CHANGED, sessionId);
+  }
+
+  public static SessionInvalidation sessionRevoked(UUID sessionId) {
+    return new SessionInvalidation(Kind.SESSION_REVOKED, sessionId);
+  }
+
+  public static SessionInvalidation sessionEvicted(UUID sessionId) {
+    return new SessionInvalidation(Kind.SESSION_EVICTED, sessionId);
+  }
+
+  public static SessionInvalidation userChanged(UUID userId) {
+    return new SessionInvalidation(Kind.USER_CHANGED, userId);
+  }
+
+  public static SessionInvalidation userRevoked(UUID userId) {
+    return new SessionInvalidation(Kind.USER_REVOKED, userId);
+  }
+
+  public static SessionInvalidation roleChanged(UUID userId) {
+    return new SessionInvalidation(Kind.ROLE_CHANGED, userId);
+  }
+
+  /**
+   * What to publish for an eviction. Nodes of the previous release drop {@code E} as unknown, so it
+   * is followed by a plain session revocation they act on. On current nodes the eviction already
+   * closed the session's event streams and the revocation only repeats it. Publish the eviction
+   * alone once every node understands it.
+   */
+  public static List<SessionInvalidation> forEviction(UUID sessionId) {
+    return List.of(sessionEvicted(sessionId), sessionRevoked(sessionId));
+  }
+
+  /** What to publish for a role change; followed by a user revocation like {@link #forEviction} */
+  public static List<SessionInvalidation> forRoleChange(UUID userId) {
+    return List.of(roleChanged(userId), userRevoked(userId));
+  }
+
+  public boolean isSessionEvent() {
+    return kind == Kind.SESSION_CHANGED
+        || kind == Kind.SESSION_REVOKED
+        || kind == Kind.SESSION_EVICTED;
+  }
+
+  /** Whether tokens of the session or user stop being valid, rather than only going stale */
+  public boolean isRevocation() {
+    return kind != Kind.SESSION_CHANGED && kind != Kind.USER_CHANGED;
+  }
+
+  /** Compact wire form, e.g. {@code S:6f1c...} */
+  public String encode() {
+    return kind.code + ":" + id;
+  }
+
+  /** Parse the wire form produced by {@link #encode()} */
+  public static SessionInvalidation decode(String payload) {
+    if (payload == null || payload.length() < 3 || payload.charAt(1) != ':') {
+      throw new IllegalArgumentException("Malformed invalidation: " + payload);
+    }
+    return new SessionInvalidation(
+        Kind.fromCode(payload.charAt(0)), UUID.fromString(payload.substring(2)));
+  }
+}
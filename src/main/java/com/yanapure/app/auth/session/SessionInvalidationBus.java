@@ -0,0 +1,14 @@
+package com.yanapure.app.auth.session;
+
+import java.util.List;
+
+/** Publishes session invalidations to every node running the application */
+public interface SessionInvalidationBus {
+
+  void publish(SessionInvalidation invalidation);
+
+  /** Publish several invalidations; implementations may send them in one round trip */
+  default void publishAll(List<SessionInvalidation> invalidations) {
+    invalidations.forEach(this::publish);
+  }
+}
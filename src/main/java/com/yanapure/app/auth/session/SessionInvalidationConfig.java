@@ -0,0 +1,49 @@
+package com.yanapure.app.auth.session;
+
+import java.sql.DatabaseMetaData;
+import java.util.List;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+
+/** Picks the session invalidation bus: LISTEN/NOTIFY on PostgreSQL, in-process otherwise */
+@Configuration
+public class SessionInvalidationConfig {
+
+  private static final Logger log = LoggerFactory.getLogger(SessionInvalidationConfig.class);
+
+  @Bean
+  public SessionInvalidationBus sessionInvalidationBus(
+      DataSource dataSource,
+      JdbcTemplate jdbcTemplate,
+      List<SessionInvalidationListener> listeners,
+      @Value("${app.auth.session-cache.invalidation:auto}") String mode) {
+    LocalSessionInvalidationBus local = new LocalSessionInvalidationBus(listeners);
+    boolean postgres =
+        switch (mode.trim().toLowerCase()) {
+          case "postgres" -> true;
+          case "local" -> false;
+          case "auto" -> isPostgres(dataSource);
+          default -> throw new IllegalStateException("Unsupported invalidation mode: " + mode);
+        };
+    log.info("Session invalidations are {}", postgres ? "sent over LISTEN/NOTIFY" : "node-local");
+    return postgres ? new PostgresSessionInvalidationBus(dataSource, jdbcTemplate, local) : local;
+  }
+
+  private static boolean isPostgres(DataSource dataSource) {
+    try {
+      String product =
+          JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName);
+      return "PostgreSQL".equalsIgnoreCase(product);
+    } catch (MetaDataAccessException e) {
+      log.warn("Cannot determine database type, using node-local invalidation: {}", e.getMessage());
+      return false;
+    }
+  }
+}
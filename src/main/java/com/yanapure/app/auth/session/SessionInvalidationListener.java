@@ -0,0 +1,12 @@
+package com.yanapure.app.auth.session;
+
+/** Receives session invalidations published on this or any other node */
+public interface SessionInvalidationListener {
+
+  void onInvalidation(SessionInvalidation invalidation);
+
+  /**
+   * Invalidations may have been missed (e.g. after a reconnect); drop anything derived from them
+   */
+  default void onReset() {}
+}
@@ -0,0 +1,83 @@
+package com.yanapure.app.auth.session;
+
+import com.yanapure.app.auth.token.TokenDigest;
+import com.yanapure.app.users.Role;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+/**
+ * Read-only JDBC path for access token validation. Joins {@code user_sessions} and {@code users} in
+ * one statement and maps the row into an immutable {@link ActiveSession}, so answering "is this
+ * token valid and whose is it" never creates managed entities, snapshots or flushes.
+ */
+@Component
+public class SessionLookup {
+
+  private static final String SELECT =
+      "SELECT s.id, s.user_id, s.access_token_hash, s.expires_at, s.last_used_at, u.phone, u.role "
+          + "FROM user_sessions s JOIN users u ON u.id = s.user_id ";
+
+  private static final String BY_ID = SELECT + "WHERE s.id = ? AND s.active = TRUE";
+
+  private static final String BY_ACCESS_TOKEN_HASH =
+      SELECT + "WHERE s.access_token_hash = ? AND s.active = TRUE";
+
+  private static final RowMapper<ActiveSession> MAPPER = SessionLookup::map;
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public SessionLookup(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  /**
+   * Active session of an access token. With a {@code sid} claim this is a primary-key lookup
+   * followed by a constant-time digest comparison; otherwise the digest index is used.
+   */
+  public Optional<ActiveSession> findActiveByAccessToken(UUID sessionId, TokenDigest digest) {
+    if (sessionId != null) {
+      return first(jdbcTemplate.query(BY_ID, MAPPER, sessionId))
+          .filter(s -> digest.matches(s.accessTokenHash()));
+    }
+    return first(jdbcTemplate.query(BY_ACCESS_TOKEN_HASH, MAPPER, (Object) digest.toByteArray()));
+  }
+
+  private static Optional<ActiveSession> first(List<ActiveSession> rows) {
+    return rows.isEmpty() ? Optional.empty() : Optional.of(rows.get(0));
+  }
+
+  private static ActiveSession map(ResultSet rs, int rowNum) throws SQLException {
+    Timestamp lastUsed = rs.getTimestamp("last_used_at");
+    return new ActiveSession(
+        rs.getObject("id", UUID.class),
+        rs.getObject("user_id", UUID.class),
+        rs.getBytes("access_token_hash"),
+        rs.getTimestamp("expires_at").toInstant(),
+        lastUsed != null ? lastUsed.toInstant() : null,
+        rs.getString("phone"),
+        Role.valueOf(rs.getString("role")));
+  }
+
+  /** An active session joined with the identity of its user */
+  public record ActiveSession(
+      UUID sessionId,
+      UUID userId,
+      byte[] accessTokenHash,
+      Instant expiresAt,
+      Instant lastUsedAt,
+      String phone,
+      Role role) {
+
+    public boolean isExpired() {
+      return Instant.now().isAfter(expiresAt);
+    }
+  }
+}
@@ -0,0 +1,100 @@
+package com.yanapure.app.auth.session;
+
+import com.yanapure.app.auth.token.TokenPrincipal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Node-local revocation state for stateless access-token validation: revoked session ids and
+ * per-user "not-before" instants. An entry only needs to live as long as an access token issued
+ * before the revocation can still be valid, so both maps stay small and are pruned as they are
+ * written to.
+ */
+@Component
+public class SessionRevocations implements SessionInvalidationListener {
+
+  private static final long PURGE_INTERVAL_MILLIS = 60_000;
+
+  /** Revoked session id to the epoch second after which it can be forgotten */
+  private final ConcurrentHashMap<UUID, Long> revokedSessions = new ConcurrentHashMap<>();
+
+  /** User id to the epoch second at or before which that user's access tokens are rejected */
+  private final ConcurrentHashMap<UUID, Long> notBefore = new ConcurrentHashMap<>();
+
+  private final AtomicLong nextPurge = new AtomicLong();
+  private final Duration retention;
+  private final Clock clock;
+
+  @Autowired
+  public SessionRevocations(@Value("${app.jwt.access-token-expiry-hours:1}") int accessTokenHours) {
+    this(Duration.ofHours(accessTokenHours), Clock.systemUTC());
+  }
+
+  public SessionRevocations(Duration retention, Clock clock) {
+    this.retention = retention;
+    this.clock = clock;
+  }
+
+  /** Reject access tokens of a single session */
+  public void revokeSession(UUID sessionId) {
+    long now = clock.millis() / 1000;
+    revokedSessions.put(sessionId, now + retention.toSeconds());
+    purgeIfDue();
+  }
+
+  /**
+   * Reject every access token of a user issued up to now. Tokens minted within the same second are
+   * treated as revoked too; the client simply refreshes.
+   */
+  public void revokeUser(UUID userId) {
+    long now = clock.millis() / 1000;
+    notBefore.merge(userId, now, Math::max);
+    purgeIfDue();
+  }
+
+  /** Whether a verified access token has been revoked on this node */
+  public boolean isRevoked(TokenPrincipal principal) {
+    if (principal.sessionId() != null && revokedSessions.containsKey(principal.sessionId())) {
+      return true;
+    }
+    Long cutoff = notBefore.get(principal.userId());
+    if (cutoff == null) {
+      return false;
+    }
+    Instant issuedAt = principal.issuedAt();
+    return issuedAt == null || issuedAt.getEpochSecond() <= cutoff;
+  }
+
+  @Override
+  public void onInvalidation(SessionInvalidation invalidation) {
+    switch (invalidation.kind()) {
+      case SESSION_REVOKED, SESSION_EVICTED -> revokeSession(invalidation.id());
+      case USER_REVOKED, ROLE_CHANGED -> revokeUser(invalidation.id());
+      default -> {}
+    }
+  }
+
+  /** Number of entries currently held */
+  public int size() {
+    return revokedSessions.size() + notBefore.size();
+  }
+
+  private void purgeIfDue() {
+    long nowMillis = clock.millis();
+    long due = nextPurge.get();
+    if (nowMillis < due || !nextPurge.compareAndSet(due, nowMillis + PURGE_INTERVAL_MILLIS)) {
+      return;
+    }
+    long now = nowMillis / 1000;
+    long oldestRelevant = now - retention.toSeconds();
+    revokedSessions.values().removeIf(forgetAt -> forgetAt < now);
+    notBefore.values().removeIf(cutoff -> cutoff < oldestRelevant);
+  }
+}
@@ -0,0 +1,48 @@
+package com.yanapure.app.auth.session;
+
+import java.util.UUID;
+
+/**
+ * Maps users and sessions to one of N session shards. A user's shard is {@link UUID#hashCode()} of
+ * the user id modulo N, and every session id minted for that user carries the shard number in its
+ * top 16 bits (the version and variant bits of a random UUID are left intact). A session is
+ * therefore located from its id alone, without knowing the user, and the shard count must not
+ * change while sessions are alive.
+ */
+public final class SessionShards {
+
+  public static final int MAX_SHARDS = 1 << 16;
+
+  private final int count;
+
+  public SessionShards(int count) {
+    if (count < 1 || count > MAX_SHARDS) {
+      throw new IllegalArgumentException("Shard count must be between 1 and " + MAX_SHARDS);
+    }
+    this.count = count;
+  }
+
+  public int count() {
+    return count;
+  }
+
+  /** Shard holding the sessions of a user */
+  public int shardOfUser(UUID userId) {
+    return Math.floorMod(userId.hashCode(), count);
+  }
+
+  /** Random session id routed to the shard of {@code userId} */
+  public UUID newSessionId(UUID userId) {
+    UUID random = UUID.randomUUID();
+    long high =
+        (random.getMostSignificantBits() & 0x0000_FFFF_FFFF_FFFFL)
+            | ((long) shardOfUser(userId) << 48);
+    return new UUID(high, random.getLeastSignificantBits());
+  }
+
+  /** Shard encoded in a session id, or -1 when the id was not minted for this shard count */
+  public int shardOfSession(UUID sessionId) {
+    int shard = (int) (sessionId.getMostSignificantBits() >>> 48);
+    return shard < count ? shard : -1;
+  }
+}
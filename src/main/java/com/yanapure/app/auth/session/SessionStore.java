@@ -0,0 +1,65 @@
+package com.yanapure.app.auth.session;
+
+import com.yanapure.app.auth.token.TokenDigest;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Every session read and write made by authentication. The database is always the source of truth;
+ * implementations may keep a node-local index in front of it, which every write goes through, or
+ * spread sessions over several databases.
+ */
+public interface SessionStore {
+
+  /** Id for a new session of {@code userId}; stores that route by id encode the route in it */
+  default UUID newSessionId(UUID userId) {
+    return UUID.randomUUID();
+  }
+
+  /** See {@link UserSessionRepositoryCustom#insertWithinLimit} */
+  List<UUID> create(UserSession session, int maxActiveSessions);
+
+  /** See {@link UserSessionRepositoryCustom#rotateTokens} */
+  Optional<UserSessionRepositoryCustom.SessionKey> rotate(
+      UUID sessionId,
+      TokenDigest refreshToken,
+      String newAccessToken,
+      String newRefreshToken,
+      Instant expiresAt,
+      Instant refreshExpiresAt);
+
+  /** See {@link UserSessionRepositoryCustom#revokeByAccessToken} */
+  Optional<UserSessionRepositoryCustom.SessionKey> revoke(UUID sessionId, TokenDigest accessToken);
+
+  /** Deactivate every session of a user and return how many were active */
+  int revokeAll(UUID userId);
+
+  /** See {@link UserSessionRepositoryCustom#revokeMatching} */
+  long revokeMatching(
+      SessionFilter filter,
+      int chunkSize,
+      Consumer<UserSessionRepositoryCustom.RevokedChunk> onChunk);
+
+  /** See {@link SessionLookup#findActiveByAccessToken} */
+  Optional<SessionLookup.ActiveSession> findActiveByAccessToken(
+      UUID sessionId, TokenDigest accessToken);
+
+  /** Session by id, active or not */
+  Optional<UserSession> findById(UUID sessionId);
+
+  /** Active session by the digest of its access token, for tokens without a {@code sid} claim */
+  Optional<UserSession> findByAccessTokenDigest(TokenDigest accessToken);
+
+  /** Session by the digest of its refresh token, for tokens without a {@code sid} claim */
+  Optional<UserSession> findByRefreshTokenDigest(TokenDigest refreshToken);
+
+  /** Active sessions of a user, newest first */
+  List<UserSession> findActiveByUser(UUID userId);
+
+  /** See {@link UserSessionRepositoryCustom#updateLastUsed} */
+  int updateLastUsed(Map<UUID, Instant> lastUsed);
+}
@@ -0,0 +1,84 @@
+package com.yanapure.app.auth.session;
+
+import com.yanapure.app.users.UserRepository;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Picks the session store: database only, with the memory-mapped index in front of it, or sharded
+ * across several databases
+ */
+@Configuration
+public class SessionStoreConfig {
+
+  @Bean
+  @ConditionalOnExpression(
+      "!${app.auth.session-index.enabled:false} and !${app.auth.session-shards.enabled:false}")
+  public DatabaseSessionStore databaseSessionStore(
+      UserSessionRepository userSessionRepository, SessionLookup sessionLookup) {
+    return new DatabaseSessionStore(userSessionRepository, sessionLookup);
+  }
+
+  @Bean(destroyMethod = "close")
+  @ConditionalOnExpression(
+      "${app.auth.session-index.enabled:false} and !${app.auth.session-shards.enabled:false}")
+  public MappedSessionStore mappedSessionStore(
+      UserSessionRepository userSessionRepository,
+      SessionLookup sessionLookup,
+      JdbcTemplate jdbcTemplate,
+      @Value("${app.auth.session-index.path:data/session-index.bin}") Path path,
+      @Value("${app.auth.session-index.max-entries:1000000}") int maxEntries,
+      @Value("${app.auth.access-token-expiry-hours:1}") int accessTokenHours) {
+    return new MappedSessionStore(
+        new DatabaseSessionStore(userSessionRepository, sessionLookup),
+        jdbcTemplate,
+        path,
+        maxEntries,
+        Duration.ofHours(accessTokenHours));
+  }
+
+  @Bean(destroyMethod = "close")
+  @ConditionalOnProperty(name = "app.auth.session-shards.enabled", havingValue = "true")
+  public ShardedSessionStore shardedSessionStore(
+      UserRepository userRepository,
+      @Value("${app.auth.session-shards.urls:}") String[] urls,
+      @Value("${app.auth.session-shards.username:}") String username,
+      @Value("${app.auth.session-shards.password:}") String password,
+      @Value("${app.auth.session-index.enabled:false}") boolean indexEnabled,
+      @Value("${app.auth.token-mode:jwt}") String tokenMode) {
+    if (indexEnabled) {
+      throw new IllegalStateException("The session index cannot be combined with session shards");
+    }
+    if (!"jwt".equalsIgnoreCase(tokenMode.trim())) {
+      // Opaque tokens carry no session id to route by
+      throw new IllegalStateException("Session shards require token-mode jwt");
+    }
+    List<String> shardUrls =
+        Arrays.stream(urls).map(String::trim).filter(u -> !u.isEmpty()).toList();
+    if (shardUrls.isEmpty()) {
+      throw new IllegalStateException("app.auth.session-shards.urls lists no shard databases");
+    }
+    List<DataSource> dataSources =
+        shardUrls.stream()
+            .map(
+                url ->
+                    (DataSource)
+                        DataSourceBuilder.create()
+                            .url(url)
+                            .username(username)
+                            .password(password)
+                            .build())
+            .toList();
+    return new ShardedSessionStore(dataSources, userRepository);
+  }
+}
@@ -0,0 +1,292 @@
+package com.yanapure.app.auth.session;
+
+import com.yanapure.app.auth.token.TokenDigest;
+import com.yanapure.app.users.UserRepository;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Consumer;
+import javax.sql.DataSource;
+import org.flywaydb.core.Flyway;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * {@link SessionStore} that spreads {@code user_sessions} over several databases by user, as mapped
+ * by {@link SessionShards}. Users stay on the primary database and are read through the
+ * second-level cache.
+ *
+ * <p>Every operation touches exactly one shard: logins and {@code logoutAllDevices} go to the
+ * user's shard, everything else to the shard encoded in the session id. Only bulk revocation by IP
+ * range or time window visits every shard. Tokens without a {@code sid} claim cannot be routed and
+ * resolve to no session, so sharded mode needs session-bound JWTs. Shard writes commit on their
+ * own, independently of any transaction on the primary.
+ *
+ * <p>The shard schema in {@code db/shard} is migrated on every shard when the store is created.
+ */
+public class ShardedSessionStore implements SessionStore {
+
+  private static final String SELECT =
+      "SELECT id, user_id, access_token_hash, refresh_token_hash, expires_at, refresh_expires_at, "
+          + "client_ip, user_agent_id, active, created_at, last_used_at FROM user_sessions ";
+
+  private static final String BY_ID = SELECT + "WHERE id = ?";
+
+  private static final String ACTIVE_BY_USER =
+      SELECT + "WHERE user_id = ? AND active = TRUE ORDER BY created_at DESC";
+
+  private static final String REVOKE_ALL =
+      "UPDATE user_sessions SET active = FALSE WHERE user_id = ? AND active = TRUE";
+
+  /** Serializes logins of one user on PostgreSQL shards, which hold no users table to lock */
+  private static final String LOCK_USER = "SELECT pg_advisory_xact_lock(?)";
+
+  private static final String SCHEMA = "classpath:db/shard";
+
+  private static final RowMapper<UserSession> MAPPER = ShardedSessionStore::map;
+
+  private final SessionShards shards;
+  private final List<Shard> shardList;
+  private final UserRepository userRepository;
+
+  public ShardedSessionStore(List<DataSource> dataSources, UserRepository userRepository) {
+    for (DataSource dataSource : dataSources) {
+      Flyway.configure().dataSource(dataSource).locations(SCHEMA).load().migrate();
+    }
+    this.shards = new SessionShards(dataSources.size());
+    this.shardList = dataSources.stream().map(Shard::new).toList();
+    this.userRepository = userRepository;
+  }
+
+  @Override
+  public UUID newSessionId(UUID userId) {
+    return shards.newSessionId(userId);
+  }
+
+  @Override
+  public List<UUID> create(UserSession session, int maxActiveSessions) {
+    if (shards.shardOfSession(session.getId()) != shards.shardOfUser(session.getUserId())) {
+      throw new IllegalArgumentException("Session id was not minted for the user's shard");
+    }
+    Shard shard = userShard(session.getUserId());
+    return shard.transaction.execute(
+        status -> {
+          if (shard.postgres) {
+            UUID userId = session.getUserId();
+            long key = userId.getMostSignificantBits() ^ userId.getLeastSignificantBits();
+            shard.jdbcTemplate.query(LOCK_USER, rs -> {}, key);
+          }
+          return shard.writer.insertWithinLimit(session, maxActiveSessions);
+        });
+  }
+
+  @Override
+  public Optional<UserSessionRepositoryCustom.SessionKey> rotate(
+      UUID sessionId,
+      TokenDigest refreshToken,
+      String newAccessToken,
+      String newRefreshToken,
+      Instant expiresAt,
+      Instant refreshExpiresAt) {
+    Shard shard = sessionShard(sessionId);
+    if (shard == null) {
+      return Optional.empty();
+    }
+    return shard.transaction.execute(
+        status ->
+            shard.writer.rotateTokens(
+                sessionId,
+                refreshToken.toByteArray(),
+                newAccessToken,
+                newRefreshToken,
+                expiresAt,
+                refreshExpiresAt));
+  }
+
+  @Override
+  public Optional<UserSessionRepositoryCustom.SessionKey> revoke(
+      UUID sessionId, TokenDigest accessToken) {
+    Shard shard = sessionShard(sessionId);
+    if (shard == null) {
+      return Optional.empty();
+    }
+    return shard.transaction.execute(
+        status -> shard.writer.revokeByAccessToken(sessionId, accessToken.toByteArray()));
+  }
+
+  @Override
+  public int revokeAll(UUID userId) {
+    return userShard(userId).jdbcTemplate.update(REVOKE_ALL, userId);
+  }
+
+  /** A user list is split by shard; other criteria are applied on every shard in turn */
+  @Override
+  public long revokeMatching(
+      SessionFilter filter,
+      int chunkSize,
+      Consumer<UserSessionRepositoryCustom.RevokedChunk> onChunk) {
+    long revoked = 0;
+    if (filter.hasUserIds()) {
+      Map<Integer, List<UUID>> usersByShard = new TreeMap<>();
+      for (UUID userId : filter.userIds()) {
+        usersByShard
+            .computeIfAbsent(shards.shardOfUser(userId), s -> new ArrayList<>())
+            .add(userId);
+      }
+      for (Map.Entry<Integer, List<UUID>> entry : usersByShard.entrySet()) {
+        revoked +=
+            shardList
+                .get(entry.getKey())
+                .writer
+                .revokeMatching(filter.forUsers(entry.getValue()), chunkSize, onChunk);
+      }
+      return revoked;
+    }
+    for (Shard shard : shardList) {
+      revoked += shard.writer.revokeMatching(filter, chunkSize, onChunk);
+    }
+    return revoked;
+  }
+
+  @Override
+  public Optional<SessionLookup.ActiveSession> findActiveByAccessToken(
+      UUID sessionId, TokenDigest accessToken) {
+    Optional<UserSession> session =
+        findById(sessionId).filter(s -> s.getActive() && s.matchesAccessToken(accessToken));
+    if (session.isEmpty()) {
+      return Optional.empty();
+    }
+    UserSession s = session.get();
+    return userRepository
+        .findById(s.getUserId())
+        .map(
+            user ->
+                new SessionLookup.ActiveSession(
+                    s.getId(),
+                    s.getUserId(),
+                    s.getAccessTokenHash(),
+                    s.getExpiresAt(),
+                    s.getLastUsedAt(),
+                    user.getPhone(),
+                    user.getRole()));
+  }
+
+  @Override
+  public Optional<UserSession> findById(UUID sessionId) {
+    Shard shard = sessionShard(sessionId);
+    if (shard == null) {
+      return Optional.empty();
+    }
+    List<UserSession> rows = shard.jdbcTemplate.query(BY_ID, MAPPER, sessionId);
+    return rows.isEmpty() ? Optional.empty() : Optional.of(rows.get(0));
+  }
+
+  @Override
+  public Optional<UserSession> findByAccessTokenDigest(TokenDigest accessToken) {
+    return Optional.empty();
+  }
+
+  @Override
+  public Optional<UserSession> findByRefreshTokenDigest(TokenDigest refreshToken) {
+    return Optional.empty();
+  }
+
+  @Override
+  public List<UserSession> findActiveByUser(UUID userId) {
+    return userShard(userId).jdbcTemplate.query(ACTIVE_BY_USER, MAPPER, userId);
+  }
+
+  @Override
+  public int updateLastUsed(Map<UUID, Instant> lastUsed) {
+    Map<Shard, Map<UUID, Instant>> byShard = new HashMap<>();
+    lastUsed.forEach(
+        (id, usedAt) -> {
+          Shard shard = sessionShard(id);
+          if (shard != null) {
+            byShard.computeIfAbsent(shard, s -> new HashMap<>()).put(id, usedAt);
+          }
+        });
+    int written = 0;
+    for (Map.Entry<Shard, Map<UUID, Instant>> entry : byShard.entrySet()) {
+      written += entry.getKey().writer.updateLastUsed(entry.getValue());
+    }
+    return written;
+  }
+
+  /** Shard databases in shard order; expired sessions are deleted by {@code ExpiredRowCleanup} */
+  public List<DataSource> shardDataSources() {
+    return shardList.stream().map(shard -> shard.dataSource).toList();
+  }
+
+  /** Number of shards */
+  public int shardCount() {
+    return shardList.size();
+  }
+
+  /** Close the shard connection pools */
+  public void close() throws Exception {
+    for (Shard shard : shardList) {
+      if (shard.dataSource instanceof AutoCloseable pool) {
+        pool.close();
+      }
+    }
+  }
+
+  private Shard userShard(UUID userId) {
+    return shardList.get(shards.shardOfUser(userId));
+  }
+
+  private Shard sessionShard(UUID sessionId) {
+    if (sessionId == null) {
+      return null;
+    }
+    int shard = shards.shardOfSession(sessionId);
+    return shard >= 0 ? shardList.get(shard) : null;
+  }
+
+  private static UserSession map(ResultSet rs, int rowNum) throws SQLException {
+    UserSession session = new UserSession();
+    session.setId(rs.getObject("id", UUID.class));
+    session.setUserId(rs.getObject("user_id", UUID.class));
+    session.setTokenHashes(rs.getBytes("access_token_hash"), rs.getBytes("refresh_token_hash"));
+    session.setExpiresAt(rs.getTimestamp("expires_at").toInstant());
+    session.setRefreshExpiresAt(rs.getTimestamp("refresh_expires_at").toInstant());
+    session.setClientIp(rs.getString("client_ip"));
+    session.setUserAgentId(rs.getObject("user_agent_id", Integer.class));
+    session.setActive(rs.getBoolean("active"));
+    session.setCreatedAt(rs.getTimestamp("created_at").toInstant());
+    Timestamp lastUsed = rs.getTimestamp("last_used_at");
+    session.setLastUsedAt(lastUsed != null ? lastUsed.toInstant() : null);
+    session.markNotNew();
+    return session;
+  }
+
+  /** One session database with its own transactions */
+  private static final class Shard {
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction;
+    private final JdbcSessionWriter writer;
+    private final boolean postgres;
+
+    Shard(DataSource dataSource) {
+      this.dataSource = dataSource;
+      this.jdbcTemplate = new JdbcTemplate(dataSource);
+      this.transaction = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+      this.postgres = JdbcSessionWriter.isPostgres(dataSource);
+      // The shard schema keeps client_ip as text
+      this.writer = new JdbcSessionWriter(jdbcTemplate, postgres, false);
+    }
+  }
+}
@@ -0,0 +1,31 @@
+package com.yanapure.app.auth.session;
+
+import jakarta.persistence.*;
+
+/**
+ * One distinct {@code User-Agent} header. Sessions refer to it by id so each row carries a small
+ * integer instead of the header text. Rows are only ever added, through {@link
+ * UserAgentDictionary}.
+ */
+@Entity
+@Table(name = "user_agents")
+public class UserAgent {
+
+  /** Longest header kept; longer values are truncated before they are interned */
+  public static final int MAX_LENGTH = 500;
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Integer id;
+
+  @Column(nullable = false, unique = true, length = MAX_LENGTH)
+  private String userAgent;
+
+  public Integer getId() {
+    return id;
+  }
+
+  public String getUserAgent() {
+    return userAgent;
+  }
+}
@@ -0,0 +1,127 @@
+package com.yanapure.app.auth.session;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Interns {@code User-Agent} headers into the {@code user_agents} table and resolves their ids
+ * back. A few thousand distinct values cover millions of sessions, so both directions are cached in
+ * process; once the cache is full, further values are looked up in the table each time.
+ *
+ * <p>New values are inserted on the caller's connection, so a login interning a new header inside
+ * its transaction does not need a second pooled connection. Ids looked up or inserted inside a
+ * transaction are only cached once it commits, so the cache never holds an id whose row was rolled
+ * back. Ids live on the primary database and are shared by every session shard.
+ */
+@Component
+public class UserAgentDictionary {
+
+  private static final String SELECT_ID = "SELECT id FROM user_agents WHERE user_agent = ?";
+
+  private static final String SELECT_VALUE = "SELECT user_agent FROM user_agents WHERE id = ?";
+
+  private static final String INSERT = "INSERT INTO user_agents (user_agent) VALUES (?)";
+
+  private static final String ON_CONFLICT = " ON CONFLICT (user_agent) DO NOTHING";
+
+  private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<Integer, String> values = new ConcurrentHashMap<>();
+  private final JdbcTemplate jdbcTemplate;
+  private final boolean postgres;
+  private final int maxEntries;
+
+  public UserAgentDictionary(
+      JdbcTemplate jdbcTemplate,
+      DataSource dataSource,
+      @Value("${app.auth.user-agents.max-entries:10000}") int maxEntries) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.postgres = JdbcSessionWriter.isPostgres(dataSource);
+    this.maxEntries = maxEntries;
+  }
+
+  /** Id of a header, adding it to the table if it is new; null for a missing or blank header */
+  public Integer intern(String userAgent) {
+    if (userAgent == null || userAgent.isBlank()) {
+      return null;
+    }
+    String value =
+        userAgent.length() > UserAgent.MAX_LENGTH
+            ? userAgent.substring(0, UserAgent.MAX_LENGTH)
+            : userAgent;
+    Integer id = ids.get(value);
+    if (id != null) {
+      return id;
+    }
+    id = find(value);
+    if (id == null) {
+      id = insert(value);
+    }
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      Integer found = id;
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+              remember(found, value);
+            }
+          });
+    } else {
+      remember(id, value);
+    }
+    return id;
+  }
+
+  /** Header text of an interned id; null for a null or unknown id */
+  public String resolve(Integer id) {
+    if (id == null) {
+      return null;
+    }
+    String value = values.get(id);
+    if (value != null) {
+      return value;
+    }
+    List<String> rows = jdbcTemplate.queryForList(SELECT_VALUE, String.class, id);
+    if (rows.isEmpty()) {
+      return null;
+    }
+    remember(id, rows.get(0));
+    return rows.get(0);
+  }
+
+  /** Number of cached values */
+  public int size() {
+    return ids.size();
+  }
+
+  private Integer insert(String value) {
+    if (postgres) {
+      jdbcTemplate.update(INSERT + ON_CONFLICT, value);
+    } else {
+      try {
+        jdbcTemplate.update(INSERT, value);
+      } catch (DuplicateKeyException e) {
+        // Inserted concurrently by another node or thread
+      }
+    }
+    return find(value);
+  }
+
+  private Integer find(String value) {
+    List<Integer> rows = jdbcTemplate.queryForList(SELECT_ID, Integer.class, value);
+    return rows.isEmpty() ? null : rows.get(0);
+  }
+
+  private void remember(Integer id, String value) {
+    if (ids.size() < maxEntries) {
+      ids.put(value, id);
+      values.put(id, value);
+    }
+  }
+}
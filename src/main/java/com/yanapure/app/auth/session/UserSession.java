@@ -1,33 +1,38 @@
 package com.yanapure.app.auth.session;
 
+import com.yanapure.app.auth.token.TokenDigest;
 import jakarta.persistence.*;
 import java.time.Instant;
 import java.util.UUID;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+import org.springframework.data.domain.Persistable;
 
 /**
- * User session entity to track authentication state Stores JWT tokens, refresh tokens, and session
- * metadata
+ * User session entity to track authentication state. Stores SHA-256 digests of the access and
+ * refresh tokens (never the tokens themselves) and session metadata. The id is assigned before the
+ * tokens are minted so it can travel in their {@code sid} claim.
  */
 @Entity
 @Table(
     name = "user_sessions",
     indexes = {
       @Index(name = "idx_sessions_user", columnList = "userId"),
-      @Index(name = "idx_sessions_token", columnList = "accessToken"),
-      @Index(name = "idx_sessions_refresh", columnList = "refreshToken"),
+      @Index(name = "idx_sessions_token_hash", columnList = "accessTokenHash"),
+      @Index(name = "idx_sessions_refresh_hash", columnList = "refreshTokenHash"),
       @Index(name = "idx_sessions_expires", columnList = "expiresAt")
     })
-public class UserSession {
-  @Id @GeneratedValue private UUID id;
+public class UserSession implements Persistable<UUID> {
+  @Id private UUID id;
 
   @Column(nullable = false)
   private UUID userId;
 
-  @Column(nullable = false, length = 500)
-  private String accessToken;
+  @Column(nullable = false, length = 32)
+  private byte[] accessTokenHash;
 
-  @Column(nullable = false, length = 500)
-  private String refreshToken;
+  @Column(nullable = false, length = 32)
+  private byte[] refreshTokenHash;
 
   @Column(nullable = false)
   private Instant expiresAt;
@@ -35,20 +40,25 @@ public class UserSession {
   @Column(nullable = false)
   private Instant refreshExpiresAt;
 
+  /** {@code inet} on PostgreSQL */
+  @JdbcTypeCode(SqlTypes.INET)
   @Column(length = 45)
   private String clientIp;
 
-  @Column(length = 500)
-  private String userAgent;
+  /** Id in {@code user_agents}; see {@link UserAgentDictionary} */
+  private Integer userAgentId;
 
   @Column(nullable = false)
   private boolean active = true;
 
-  @Column(nullable = false)
+  /** Partition key on PostgreSQL, never changed after insert */
+  @Column(nullable = false, updatable = false)
   private Instant createdAt = Instant.now();
 
   private Instant lastUsedAt;
 
+  @Transient private boolean isNew = true;
+
   // Constructors
   public UserSession() {}
 
@@ -59,14 +69,35 @@ public class UserSession {
       Instant expiresAt,
       Instant refreshExpiresAt,
       String clientIp,
-      String userAgent) {
+      Integer userAgentId) {
+    this(
+        UUID.randomUUID(),
+        userId,
+        accessToken,
+        refreshToken,
+        expiresAt,
+        refreshExpiresAt,
+        clientIp,
+        userAgentId);
+  }
+
+  public UserSession(
+      UUID id,
+      UUID userId,
+      String accessToken,
+      String refreshToken,
+      Instant expiresAt,
+      Instant refreshExpiresAt,
+      String clientIp,
+      Integer userAgentId) {
+    this.id = id;
     this.userId = userId;
-    this.accessToken = accessToken;
-    this.refreshToken = refreshToken;
+    this.accessTokenHash = TokenDigest.sha256(accessToken);
+    this.refreshTokenHash = TokenDigest.sha256(refreshToken);
     this.expiresAt = expiresAt;
     this.refreshExpiresAt = refreshExpiresAt;
     this.clientIp = clientIp;
-    this.userAgent = userAgent;
+    this.userAgentId = userAgentId;
   }
 
   // Business methods
@@ -90,7 +121,29 @@ public class UserSession {
     this.lastUsedAt = Instant.now();
   }
 
+  /** Constant-time check of a presented access token against the stored digest */
+  public boolean matchesAccessToken(TokenDigest digest) {
+    return digest.matches(accessTokenHash);
+  }
+
+  /** Constant-time check of a presented refresh token against the stored digest */
+  public boolean matchesRefreshToken(TokenDigest digest) {
+    return digest.matches(refreshTokenHash);
+  }
+
+  @Override
+  public boolean isNew() {
+    return isNew;
+  }
+
+  @PostLoad
+  @PostPersist
+  void markNotNew() {
+    this.isNew = false;
+  }
+
   // Getters and Setters
+  @Override
   public UUID getId() {
     return id;
   }
@@ -107,20 +160,28 @@ public class UserSession {
     this.userId = userId;
   }
 
-  public String getAccessToken() {
-    return accessToken;
+  public byte[] getAccessTokenHash() {
+    return accessTokenHash;
   }
 
+  /** Store the digest of a newly issued access token */
   public void setAccessToken(String accessToken) {
-    this.accessToken = accessToken;
+    this.accessTokenHash = TokenDigest.sha256(accessToken);
+  }
+
+  /** Token digests of a row read outside JPA */
+  void setTokenHashes(byte[] accessTokenHash, byte[] refreshTokenHash) {
+    this.accessTokenHash = accessTokenHash;
+    this.refreshTokenHash = refreshTokenHash;
   }
 
-  public String getRefreshToken() {
-    return refreshToken;
+  public byte[] getRefreshTokenHash() {
+    return refreshTokenHash;
   }
 
+  /** Store the digest of a newly issued refresh token */
   public void setRefreshToken(String refreshToken) {
-    this.refreshToken = refreshToken;
+    this.refreshTokenHash = TokenDigest.sha256(refreshToken);
   }
 
   public Instant getExpiresAt() {
@@ -147,12 +208,12 @@ public class UserSession {
     this.clientIp = clientIp;
   }
 
-  public String getUserAgent() {
-    return userAgent;
+  public Integer getUserAgentId() {
+    return userAgentId;
   }
 
-  public void setUserAgent(String userAgent) {
-    this.userAgent = userAgent;
+  public void setUserAgentId(Integer userAgentId) {
+    this.userAgentId = userAgentId;
   }
 
   public boolean getActive() {
@@ -1,18 +1,30 @@
 package com.yanapure.app.auth.session;
 
+import com.yanapure.app.auth.token.TokenDigest;
 import java.time.Instant;
 import java.util.*;
 import org.springframework.data.jpa.repository.*;
 import org.springframework.data.repository.query.Param;
 
 /** Repository for managing user sessions */
-public interface UserSessionRepository extends JpaRepository<UserSession, UUID> {
+public interface UserSessionRepository
+    extends JpaRepository<UserSession, UUID>, UserSessionRepositoryCustom {
+
+  /** Find active session by SHA-256 digest of its access token */
+  Optional<UserSession> findByAccessTokenHashAndActiveTrue(byte[] accessTokenHash);
+
+  /** Find session by SHA-256 digest of its refresh token */
+  Optional<UserSession> findByRefreshTokenHash(byte[] refreshTokenHash);
 
   /** Find active session by access token */
-  Optional<UserSession> findByAccessTokenAndActiveTrue(String accessToken);
+  default Optional<UserSession> findByAccessTokenAndActiveTrue(String accessToken) {
+    return findByAccessTokenHashAndActiveTrue(TokenDigest.sha256(accessToken));
+  }
 
   /** Find session by refresh token */
-  Optional<UserSession> findByRefreshToken(String refreshToken);
+  default Optional<UserSession> findByRefreshToken(String refreshToken) {
+    return findByRefreshTokenHash(TokenDigest.sha256(refreshToken));
+  }
 
   /** Find all active sessions for a user */
   List<UserSession> findByUserIdAndActiveTrueOrderByCreatedAtDesc(UUID userId);
@@ -41,11 +53,6 @@ public interface UserSessionRepository extends JpaRepository<UserSession, UUID>
   @Query("UPDATE UserSession s SET s.lastUsedAt = :lastUsed WHERE s.id = :sessionId")
   int updateLastUsed(@Param("sessionId") UUID sessionId, @Param("lastUsed") Instant lastUsed);
 
-  /** Delete expired sessions (cleanup) */
-  @Modifying
-  @Query("DELETE FROM UserSession s WHERE s.expiresAt < :expiresBefore")
-  int deleteExpiredSessions(@Param("expiresBefore") Instant expiresBefore);
-
   /** Find sessions by client IP (for rate limiting) */
   List<UserSession> findByClientIpAndCreatedAtAfter(String clientIp, Instant since);
 
@@ -0,0 +1,74 @@
+package com.yanapure.app.auth.session;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/** Session writes that need plain SQL */
+public interface UserSessionRepositoryCustom {
+
+  /**
+   * Insert a new active session and deactivate the owner's oldest active sessions so that at most
+   * {@code maxActiveSessions} remain, including the new one. Logins of the same user are serialized
+   * on the user row, so the limit holds under concurrent logins. Must run inside a transaction.
+   *
+   * @return ids of the sessions that were deactivated
+   */
+  List<UUID> insertWithinLimit(UserSession session, int maxActiveSessions);
+
+  /**
+   * Deactivate the active session an access token belongs to, in one statement on PostgreSQL.
+   *
+   * @param sessionId the token's {@code sid} claim, or null to match on the digest alone
+   * @return the session that was deactivated, empty when no active session matched
+   */
+  Optional<SessionKey> revokeByAccessToken(UUID sessionId, byte[] accessTokenHash);
+
+  /**
+   * Replace the tokens of an active, unexpired session identified by its current refresh token, in
+   * one statement on PostgreSQL. Only the token digests, expiry times and last-used time are
+   * written.
+   *
+   * @param sessionId the token's {@code sid} claim, or null to match on the digest alone
+   * @return the session that was rotated, empty when no active unexpired session matched
+   */
+  Optional<SessionKey> rotateTokens(
+      UUID sessionId,
+      byte[] refreshTokenHash,
+      String newAccessToken,
+      String newRefreshToken,
+      Instant expiresAt,
+      Instant refreshExpiresAt);
+
+  /**
+   * Write last-used times in one JDBC batch. A stored time is never moved backwards.
+   *
+   * @return number of sessions in the batch
+   */
+  int updateLastUsed(Map<UUID, Instant> lastUsed);
+
+  /**
+   * Deactivate every active session matching {@code filter}, {@code chunkSize} sessions (or, with a
+   * user list, {@code chunkSize} users) per UPDATE. Run outside a transaction, each chunk commits
+   * on its own, so an interrupted run keeps what it revoked so far.
+   *
+   * @param onChunk told about each chunk after its UPDATE
+   * @return number of sessions deactivated
+   */
+  long revokeMatching(SessionFilter filter, int chunkSize, Consumer<RevokedChunk> onChunk);
+
+  /** Identity of a session touched by a single-statement write */
+  record SessionKey(UUID sessionId, UUID userId) {}
+
+  /**
+   * One chunk of a bulk revocation
+   *
+   * @param sessionIds sessions the UPDATE targeted
+   * @param userIds distinct owners of those sessions
+   * @param revoked how many of them were still active and got deactivated
+   */
+  record RevokedChunk(List<UUID> sessionIds, List<UUID> userIds, int revoked) {}
+}
@@ -0,0 +1,77 @@
+package com.yanapure.app.auth.session;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+import javax.sql.DataSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * JDBC implementation of {@link UserSessionRepositoryCustom}.
+ *
+ * <p>On PostgreSQL a login is two statements: lock the user row, then one data-modifying CTE that
+ * inserts the session and deactivates everything beyond the newest N. The lock is a separate
+ * statement because under READ COMMITTED each statement takes a fresh snapshot; that way the CTE
+ * sees sessions committed by a concurrent login that held the lock before. Other databases run the
+ * same steps as individual statements.
+ *
+ * <p>Logout and refresh are likewise a single {@code UPDATE ... RETURNING} on PostgreSQL that
+ * matches the token, checks the session is still valid and writes only the changed columns. The
+ * statements themselves live in {@link JdbcSessionWriter}.
+ */
+class UserSessionRepositoryImpl implements UserSessionRepositoryCustom {
+
+  private static final String LOCK_USER = "SELECT id FROM users WHERE id = ? FOR UPDATE";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final JdbcSessionWriter writer;
+
+  @PersistenceContext private EntityManager entityManager;
+
+  UserSessionRepositoryImpl(JdbcTemplate jdbcTemplate, DataSource dataSource) {
+    this.jdbcTemplate = jdbcTemplate;
+    boolean postgres = JdbcSessionWriter.isPostgres(dataSource);
+    // client_ip is inet on the primary database since V8
+    this.writer = new JdbcSessionWriter(jdbcTemplate, postgres, postgres);
+  }
+
+  @Override
+  public List<UUID> insertWithinLimit(UserSession session, int maxActiveSessions) {
+    // A user created in this transaction must be in the table before its row can be locked
+    entityManager.flush();
+    jdbcTemplate.query(LOCK_USER, rs -> {}, session.getUserId());
+    return writer.insertWithinLimit(session, maxActiveSessions);
+  }
+
+  @Override
+  public Optional<SessionKey> revokeByAccessToken(UUID sessionId, byte[] accessTokenHash) {
+    return writer.revokeByAccessToken(sessionId, accessTokenHash);
+  }
+
+  @Override
+  public Optional<SessionKey> rotateTokens(
+      UUID sessionId,
+      byte[] refreshTokenHash,
+      String newAccessToken,
+      String newRefreshToken,
+      Instant expiresAt,
+      Instant refreshExpiresAt) {
+    return writer.rotateTokens(
+        sessionId, refreshTokenHash, newAccessToken, newRefreshToken, expiresAt, refreshExpiresAt);
+  }
+
+  @Override
+  public int updateLastUsed(Map<UUID, Instant> lastUsed) {
+    return writer.updateLastUsed(lastUsed);
+  }
+
+  @Override
+  public long revokeMatching(SessionFilter filter, int chunkSize, Consumer<RevokedChunk> onChunk) {
+    return writer.revokeMatching(filter, chunkSize, onChunk);
+  }
+}
@@ -0,0 +1,277 @@
+package com.yanapure.app.auth.token;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.UUID;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
+
+/**
+ * Specialised HMAC JWT writer for the fixed access/refresh claim sets.
+ *
+ * <p>The header segment is encoded once, claims are written as JSON straight into a per-thread byte
+ * buffer and signed with a per-thread {@link Mac}, so minting a token allocates little more than
+ * the resulting string. The output is a regular compact JWS and is verified by the standard jjwt
+ * parser. The HMAC algorithm is picked from the key length exactly like jjwt's {@code
+ * signWith(SecretKey)} (HS512, HS384 or HS256), so both paths produce interchangeable tokens.
+ */
+public final class HmacTokenMinter {
+
+  private static final byte[] BASE64_URL =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_"
+          .getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+  private final SecretKey key;
+  private final String jcaAlgorithm;
+  private final String jwsAlgorithm;
+  private final byte[] headerSegment;
+  private final int macLength;
+  private final ThreadLocal<MintBuffers> buffers;
+
+  public HmacTokenMinter(SecretKey key, String keyId) {
+    int bits = key.getEncoded().length * 8;
+    this.jwsAlgorithm = bits >= 512 ? "HS512" : bits >= 384 ? "HS384" : "HS256";
+    this.key = key;
+    this.jcaAlgorithm = bits >= 512 ? "HmacSHA512" : bits >= 384 ? "HmacSHA384" : "HmacSHA256";
+    this.macLength = bits >= 512 ? 64 : bits >= 384 ? 48 : 32;
+
+    String header =
+        keyId == null
+            ? "{\"alg\":\"" + jwsAlgorithm + "\"}"
+            : "{\"kid\":\"" + escape(keyId) + "\",\"alg\":\"" + jwsAlgorithm + "\"}";
+    byte[] headerJson = header.getBytes(StandardCharsets.UTF_8);
+    this.headerSegment = new byte[encodedLength(headerJson.length)];
+    encode(headerJson, headerJson.length, headerSegment, 0);
+    this.buffers = ThreadLocal.withInitial(this::newBuffers);
+  }
+
+  /** JWS algorithm written into the header */
+  public String getAlgorithm() {
+    return jwsAlgorithm;
+  }
+
+  /**
+   * Mint an access token carrying userId, phone, role and tokenType claims, plus sid when {@code
+   * sessionId} is not null
+   */
+  public String mintAccessToken(
+      UUID userId,
+      String phone,
+      String role,
+      UUID sessionId,
+      long issuedAtSeconds,
+      long expiresAtSeconds) {
+    MintBuffers b = buffers.get();
+    b.json.reset();
+    b.json.raw("{\"userId\":\"").uuid(userId);
+    b.json.raw("\",\"phone\":").string(phone);
+    b.json.raw(",\"role\":").string(role);
+    b.json.raw(",\"tokenType\":\"access\"");
+    return finish(b, userId, sessionId, issuedAtSeconds, expiresAtSeconds);
+  }
+
+  /** Mint a refresh token carrying userId and tokenType claims, plus sid when known */
+  public String mintRefreshToken(
+      UUID userId, UUID sessionId, long issuedAtSeconds, long expiresAtSeconds) {
+    MintBuffers b = buffers.get();
+    b.json.reset();
+    b.json.raw("{\"userId\":\"").uuid(userId);
+    b.json.raw("\",\"tokenType\":\"refresh\"");
+    return finish(b, userId, sessionId, issuedAtSeconds, expiresAtSeconds);
+  }
+
+  private String finish(
+      MintBuffers b, UUID subject, UUID sessionId, long issuedAt, long expiresAt) {
+    JsonWriter json = b.json;
+    if (sessionId != null) {
+      json.raw(",\"sid\":\"").uuid(sessionId).raw("\"");
+    }
+    json.raw(",\"sub\":\"").uuid(subject);
+    json.raw("\",\"iat\":").number(issuedAt);
+    json.raw(",\"exp\":").number(expiresAt).raw("}");
+
+    int signingInputLength = headerSegment.length + 1 + encodedLength(json.length);
+    int total = signingInputLength + 1 + encodedLength(macLength);
+    byte[] out = b.ensureOut(total);
+
+    System.arraycopy(headerSegment, 0, out, 0, headerSegment.length);
+    out[headerSegment.length] = '.';
+    encode(json.bytes, json.length, out, headerSegment.length + 1);
+
+    try {
+      b.mac.update(out, 0, signingInputLength);
+      b.mac.doFinal(b.signature, 0);
+    } catch (ShortBufferException e) {
+      throw new IllegalStateException("HMAC output buffer too small", e);
+    }
+    out[signingInputLength] = '.';
+    encode(b.signature, macLength, out, signingInputLength + 1);
+
+    return new String(out, 0, total, StandardCharsets.ISO_8859_1);
+  }
+
+  private MintBuffers newBuffers() {
+    try {
+      Mac mac = Mac.getInstance(jcaAlgorithm);
+      mac.init(key);
+      return new MintBuffers(mac, new byte[macLength]);
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Cannot initialise " + jcaAlgorithm, e);
+    }
+  }
+
+  private static int encodedLength(int length) {
+    return (length * 4 + 2) / 3;
+  }
+
+  /** Unpadded base64url encoding of {@code src[0, length)} into {@code dst} at {@code offset} */
+  private static void encode(byte[] src, int length, byte[] dst, int offset) {
+    int i = 0;
+    int d = offset;
+    for (int whole = length - length % 3; i < whole; i += 3) {
+      int bits = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8 | (src[i + 2] & 0xff);
+      dst[d++] = BASE64_URL[bits >>> 18];
+      dst[d++] = BASE64_URL[(bits >>> 12) & 0x3f];
+      dst[d++] = BASE64_URL[(bits >>> 6) & 0x3f];
+      dst[d++] = BASE64_URL[bits & 0x3f];
+    }
+    int remaining = length - i;
+    if (remaining == 1) {
+      int bits = (src[i] & 0xff) << 16;
+      dst[d++] = BASE64_URL[bits >>> 18];
+      dst[d] = BASE64_URL[(bits >>> 12) & 0x3f];
+    } else if (remaining == 2) {
+      int bits = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8;
+      dst[d++] = BASE64_URL[bits >>> 18];
+      dst[d++] = BASE64_URL[(bits >>> 12) & 0x3f];
+      dst[d] = BASE64_URL[(bits >>> 6) & 0x3f];
+    }
+  }
+
+  private static String escape(String value) {
+    StringBuilder sb = new StringBuilder(value.length());
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        sb.append('\\').append(c);
+      } else if (c < 0x20) {
+        sb.append(String.format("\\u%04x", (int) c));
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+
+  /** Per-thread state: the Mac plus reusable JSON, output and signature buffers */
+  private static final class MintBuffers {
+    final Mac mac;
+    final byte[] signature;
+    final JsonWriter json = new JsonWriter();
+    byte[] out = new byte[768];
+
+    MintBuffers(Mac mac, byte[] signature) {
+      this.mac = mac;
+      this.signature = signature;
+    }
+
+    byte[] ensureOut(int length) {
+      if (out.length < length) {
+        out = new byte[Math.max(length, out.length * 2)];
+      }
+      return out;
+    }
+  }
+
+  /** Minimal growable JSON byte writer for the fixed claim set */
+  private static final class JsonWriter {
+    byte[] bytes = new byte[384];
+    int length;
+
+    void reset() {
+      length = 0;
+    }
+
+    JsonWriter raw(String ascii) {
+      ensure(ascii.length());
+      for (int i = 0; i < ascii.length(); i++) {
+        bytes[length++] = (byte) ascii.charAt(i);
+      }
+      return this;
+    }
+
+    JsonWriter uuid(UUID uuid) {
+      ensure(36);
+      hex(uuid.getMostSignificantBits() >>> 32, 8);
+      bytes[length++] = '-';
+      hex(uuid.getMostSignificantBits() >>> 16, 4);
+      bytes[length++] = '-';
+      hex(uuid.getMostSignificantBits(), 4);
+      bytes[length++] = '-';
+      hex(uuid.getLeastSignificantBits() >>> 48, 4);
+      bytes[length++] = '-';
+      hex(uuid.getLeastSignificantBits(), 12);
+      return this;
+    }
+
+    JsonWriter number(long value) {
+      if (value < 0) {
+        return raw(Long.toString(value));
+      }
+      ensure(20);
+      int start = length;
+      do {
+        bytes[length++] = (byte) ('0' + value % 10);
+        value /= 10;
+      } while (value > 0);
+      for (int i = start, j = length - 1; i < j; i++, j--) {
+        byte tmp = bytes[i];
+        bytes[i] = bytes[j];
+        bytes[j] = tmp;
+      }
+      return this;
+    }
+
+    JsonWriter string(String value) {
+      if (value == null) {
+        return raw("null");
+      }
+      ensure(value.length() + 2);
+      bytes[length++] = '"';
+      for (int i = 0; i < value.length(); i++) {
+        char c = value.charAt(i);
+        if (c >= 0x20 && c < 0x80 && c != '"' && c != '\\') {
+          ensure(1);
+          bytes[length++] = (byte) c;
+        } else if (c < 0x80) {
+          raw(c == '"' ? "\\\"" : c == '\\' ? "\\\\" : String.format("\\u%04x", (int) c));
+        } else {
+          // Rare non-ASCII input: let the JDK encode the remainder as UTF-8
+          byte[] utf8 = escape(value.substring(i)).getBytes(StandardCharsets.UTF_8);
+          ensure(utf8.length);
+          System.arraycopy(utf8, 0, bytes, length, utf8.length);
+          length += utf8.length;
+          break;
+        }
+      }
+      ensure(1);
+      bytes[length++] = '"';
+      return this;
+    }
+
+    private void hex(long value, int digits) {
+      for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+        bytes[length++] = HEX[(int) (value >>> shift) & 0xf];
+      }
+    }
+
+    private void ensure(int extra) {
+      if (length + extra > bytes.length) {
+        bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+      }
+    }
+  }
+}
@@ -0,0 +1,256 @@
+package com.yanapure.app.auth.token;
+
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.LocatorAdapter;
+import io.jsonwebtoken.UnsupportedJwtException;
+import io.jsonwebtoken.security.Jwks;
+import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.PublicJwk;
+import io.jsonwebtoken.security.SignatureAlgorithm;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.crypto.SecretKey;
+
+/**
+ * Signing and verification keys for JWTs.
+ *
+ * <p>In {@link Mode#HMAC} mode the ring holds the shared secret only (the algorithm is chosen from
+ * the key length, HS256/384/512). In {@link Mode#ES256} and {@link Mode#EDDSA} mode it holds one
+ * active private key, identified by a {@code kid}, plus any number of public keys that are still
+ * accepted for verification during a rotation. Tokens are matched to keys by their {@code kid}
+ * header. Tokens without a {@code kid} that were signed with an HS algorithm are verified against
+ * the shared secret when one is configured, so switching from HMAC to asymmetric signing does not
+ * log everybody out.
+ */
+public final class JwtKeyRing extends LocatorAdapter<Key> {
+
+  /** Supported signing modes */
+  public enum Mode {
+    HMAC,
+    ES256,
+    EDDSA;
+
+    public static Mode from(String value) {
+      return switch (value.trim().toUpperCase()) {
+        case "HMAC", "HS256", "HS384", "HS512" -> HMAC;
+        case "ES256" -> ES256;
+        case "EDDSA", "ED25519" -> EDDSA;
+        default -> throw new IllegalArgumentException("Unsupported JWT algorithm: " + value);
+      };
+    }
+
+    SignatureAlgorithm algorithm() {
+      return switch (this) {
+        case ES256 -> Jwts.SIG.ES256;
+        case EDDSA -> Jwts.SIG.EdDSA;
+        case HMAC -> throw new IllegalStateException("HMAC algorithm depends on the key length");
+      };
+    }
+
+    String keyFactoryAlgorithm() {
+      return this == ES256 ? "EC" : "Ed25519";
+    }
+  }
+
+  private final Mode mode;
+  private final String activeKeyId;
+  private final Key signingKey;
+  private final SecretKey hmacKey;
+  private final Map<String, PublicKey> publicKeys;
+
+  private JwtKeyRing(
+      Mode mode,
+      String activeKeyId,
+      Key signingKey,
+      SecretKey hmacKey,
+      Map<String, PublicKey> publicKeys) {
+    this.mode = mode;
+    this.activeKeyId = activeKeyId;
+    this.signingKey = signingKey;
+    this.hmacKey = hmacKey;
+    this.publicKeys = Collections.unmodifiableMap(publicKeys);
+  }
+
+  /** Shared-secret ring; {@code keyId} may be blank */
+  public static JwtKeyRing hmac(String secret, String keyId) {
+    SecretKey key = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+    return new JwtKeyRing(Mode.HMAC, blankToNull(keyId), key, key, Map.of());
+  }
+
+  /**
+   * Asymmetric ring.
+   *
+   * @param keyId kid of the active key pair; derived from the JWK thumbprint when blank
+   * @param previousPublicKeys kid to public key of retired keys still accepted for verification
+   * @param legacySecret shared secret accepted for kid-less HS tokens, may be blank
+   */
+  public static JwtKeyRing asymmetric(
+      Mode mode,
+      String keyId,
+      KeyPair keyPair,
+      Map<String, PublicKey> previousPublicKeys,
+      String legacySecret) {
+    if (mode == Mode.HMAC) {
+      throw new IllegalArgumentException("Use JwtKeyRing.hmac for shared-secret signing");
+    }
+    String kid = blankToNull(keyId);
+    if (kid == null) {
+      kid = Jwks.builder().key(keyPair.getPublic()).idFromThumbprint().build().getId();
+    }
+    Map<String, PublicKey> keys = new LinkedHashMap<>();
+    keys.put(kid, keyPair.getPublic());
+    previousPublicKeys.forEach(keys::putIfAbsent);
+
+    SecretKey legacy =
+        legacySecret == null || legacySecret.isBlank()
+            ? null
+            : Keys.hmacShaKeyFor(legacySecret.getBytes(StandardCharsets.UTF_8));
+    return new JwtKeyRing(mode, kid, keyPair.getPrivate(), legacy, keys);
+  }
+
+  /** Fresh in-memory key pair for the given mode (development only) */
+  public static KeyPair generateKeyPair(Mode mode) {
+    try {
+      KeyPairGenerator generator = KeyPairGenerator.getInstance(mode.keyFactoryAlgorithm());
+      if (mode == Mode.ES256) {
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+      }
+      return generator.generateKeyPair();
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Cannot generate " + mode + " key pair", e);
+    }
+  }
+
+  /** Parse a base64 (optionally PEM-armoured) PKCS#8 private key */
+  public static PrivateKey parsePrivateKey(Mode mode, String encoded) {
+    try {
+      return KeyFactory.getInstance(mode.keyFactoryAlgorithm())
+          .generatePrivate(new PKCS8EncodedKeySpec(decodePem(encoded)));
+    } catch (GeneralSecurityException | IllegalArgumentException e) {
+      throw new IllegalStateException("Invalid " + mode + " private key", e);
+    }
+  }
+
+  /** Parse a base64 (optionally PEM-armoured) X.509 public key */
+  public static PublicKey parsePublicKey(Mode mode, String encoded) {
+    try {
+      return KeyFactory.getInstance(mode.keyFactoryAlgorithm())
+          .generatePublic(new X509EncodedKeySpec(decodePem(encoded)));
+    } catch (GeneralSecurityException | IllegalArgumentException e) {
+      throw new IllegalStateException("Invalid " + mode + " public key", e);
+    }
+  }
+
+  /** Parse comma-separated {@code kid=base64} public key entries */
+  public static Map<String, PublicKey> parsePublicKeys(Mode mode, String entries) {
+    Map<String, PublicKey> keys = new LinkedHashMap<>();
+    if (entries == null || entries.isBlank()) {
+      return keys;
+    }
+    for (String entry : entries.split(",")) {
+      int separator = entry.indexOf('=');
+      if (separator <= 0) {
+        throw new IllegalStateException("Verification keys must be formatted as kid=base64");
+      }
+      keys.put(
+          entry.substring(0, separator).trim(),
+          parsePublicKey(mode, entry.substring(separator + 1)));
+    }
+    return keys;
+  }
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  public boolean isAsymmetric() {
+    return mode != Mode.HMAC;
+  }
+
+  /** kid written into the header of newly signed tokens, or null */
+  public String getActiveKeyId() {
+    return activeKeyId;
+  }
+
+  /** Key used to sign new tokens: the HMAC secret or the active private key */
+  public Key getSigningKey() {
+    return signingKey;
+  }
+
+  /** Shared secret, or null when no HMAC key is configured */
+  public SecretKey getHmacKey() {
+    return hmacKey;
+  }
+
+  /** Explicit signature algorithm for asymmetric modes */
+  public SignatureAlgorithm getSignatureAlgorithm() {
+    return mode.algorithm();
+  }
+
+  /** Public verification keys as a JWK set document; empty in HMAC mode */
+  public Map<String, Object> toJwks() {
+    List<Map<String, Object>> keys = new ArrayList<>();
+    String alg = isAsymmetric() ? mode.algorithm().getId() : null;
+    publicKeys.forEach(
+        (kid, publicKey) -> {
+          PublicJwk<?> jwk = Jwks.builder().key(publicKey).id(kid).publicKeyUse("sig").build();
+          Map<String, Object> json = new LinkedHashMap<>(jwk);
+          json.put("alg", alg);
+          keys.add(json);
+        });
+    return Map.of("keys", keys);
+  }
+
+  @Override
+  protected Key locate(JwsHeader header) {
+    String kid = header.getKeyId();
+    if (kid != null) {
+      Key key = mode == Mode.HMAC ? keyIdMatches(kid) : publicKeys.get(kid);
+      if (key == null) {
+        throw new UnsupportedJwtException("Unknown JWT key id: " + kid);
+      }
+      return key;
+    }
+    if (header.getAlgorithm() != null && header.getAlgorithm().startsWith("HS")) {
+      if (hmacKey == null) {
+        throw new UnsupportedJwtException("HMAC-signed tokens are not accepted");
+      }
+      return hmacKey;
+    }
+    // Map.of rejects null lookups, and in HMAC mode without a key id there is no active public key
+    PublicKey active = activeKeyId != null ? publicKeys.get(activeKeyId) : null;
+    if (active == null) {
+      throw new UnsupportedJwtException("Token does not identify a signing key");
+    }
+    return active;
+  }
+
+  private Key keyIdMatches(String kid) {
+    return activeKeyId == null || activeKeyId.equals(kid) ? hmacKey : null;
+  }
+
+  private static byte[] decodePem(String encoded) {
+    String base64 = encoded.replaceAll("-----[A-Z ]+-----", "").replaceAll("\\s", "");
+    return Base64.getDecoder().decode(base64);
+  }
+
+  private static String blankToNull(String value) {
+    return value == null || value.isBlank() ? null : value.trim();
+  }
+}
@@ -0,0 +1,46 @@
+package com.yanapure.app.auth.token;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Random reference tokens: 32 bytes from {@link SecureRandom}, base64url-encoded without padding
+ * (43 characters). They carry no claims and are resolved through the session store.
+ */
+public final class OpaqueTokens {
+
+  public static final int BYTES = 32;
+  public static final int LENGTH = 43;
+
+  private static final SecureRandom RANDOM = new SecureRandom();
+  private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+  private OpaqueTokens() {}
+
+  /** Generate a new token */
+  public static String generate() {
+    byte[] bytes = new byte[BYTES];
+    RANDOM.nextBytes(bytes);
+    return ENCODER.encodeToString(bytes);
+  }
+
+  /** Cheap shape check: exact length and base64url alphabet only */
+  public static boolean isWellFormed(String token) {
+    if (token == null || token.length() != LENGTH) {
+      return false;
+    }
+    for (int i = 0; i < LENGTH; i++) {
+      char c = token.charAt(i);
+      boolean valid =
+          (c >= 'A' && c <= 'Z')
+              || (c >= 'a' && c <= 'z')
+              || (c >= '0' && c <= '9')
+              || c == '-'
+              || c == '_';
+      if (!valid) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
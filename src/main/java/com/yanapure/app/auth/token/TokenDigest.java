@@ -0,0 +1,65 @@
+package com.yanapure.app.auth.token;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * SHA-256 digest of a bearer token. Used as a fixed-size key for in-process caches so raw tokens
+ * are never held as map keys.
+ */
+public final class TokenDigest {
+
+  private static final ThreadLocal<MessageDigest> SHA_256 =
+      ThreadLocal.withInitial(
+          () -> {
+            try {
+              return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+              throw new IllegalStateException("SHA-256 not available", e);
+            }
+          });
+
+  private final byte[] bytes;
+  private final int hash;
+
+  private TokenDigest(byte[] bytes) {
+    this.bytes = bytes;
+    // The digest is uniformly distributed, so its leading bytes make a good hash code
+    this.hash =
+        (bytes[0] << 24) | ((bytes[1] & 0xff) << 16) | ((bytes[2] & 0xff) << 8) | (bytes[3] & 0xff);
+  }
+
+  /** Digest a token */
+  public static TokenDigest of(String token) {
+    return new TokenDigest(sha256(token));
+  }
+
+  /** Raw SHA-256 of the token's UTF-8 bytes */
+  public static byte[] sha256(String token) {
+    MessageDigest digest = SHA_256.get();
+    digest.reset();
+    return digest.digest(token.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /** Copy of the digest bytes */
+  public byte[] toByteArray() {
+    return bytes.clone();
+  }
+
+  /** Constant-time comparison against a stored digest */
+  public boolean matches(byte[] storedDigest) {
+    return storedDigest != null && MessageDigest.isEqual(bytes, storedDigest);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof TokenDigest other && Arrays.equals(bytes, other.bytes);
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+}
@@ -0,0 +1,144 @@
+package com.yanapure.app.auth.token;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Bounded in-process cache keyed by {@link TokenDigest}. Every entry carries its own expiry
+ * (normally the token's {@code exp}) and an approximate size, and the cache caps both the number of
+ * entries and their total size. When either cap is exceeded, expired entries are dropped first and
+ * then arbitrary entries until the cache is back under 90% of its limits.
+ */
+public class TokenDigestCache<V> {
+
+  private final Map<TokenDigest, Entry<V>> entries = new ConcurrentHashMap<>();
+  private final int maxEntries;
+  private final long maxBytes;
+  private final Clock clock;
+
+  private final AtomicLong bytes = new AtomicLong();
+  private final AtomicBoolean evicting = new AtomicBoolean();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  public TokenDigestCache(int maxEntries, long maxBytes) {
+    this(maxEntries, maxBytes, Clock.systemUTC());
+  }
+
+  public TokenDigestCache(int maxEntries, long maxBytes, Clock clock) {
+    if (maxEntries <= 0 || maxBytes <= 0) {
+      throw new IllegalArgumentException("Cache limits must be positive");
+    }
+    this.maxEntries = maxEntries;
+    this.maxBytes = maxBytes;
+    this.clock = clock;
+  }
+
+  /** Get a live entry, or null if absent or expired */
+  public V get(TokenDigest digest) {
+    Entry<V> entry = entries.get(digest);
+    if (entry == null) {
+      misses.increment();
+      return null;
+    }
+    if (entry.isExpired(clock.millis())) {
+      remove(digest, entry);
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+    return entry.value;
+  }
+
+  /** Store a value until {@code expiresAt}; {@code weight} is its approximate size in bytes */
+  public void put(TokenDigest digest, V value, Instant expiresAt, int weight) {
+    long expiresAtMillis = expiresAt.toEpochMilli();
+    if (expiresAtMillis <= clock.millis() || weight > maxBytes) {
+      return;
+    }
+    Entry<V> previous = entries.put(digest, new Entry<>(value, expiresAtMillis, weight));
+    bytes.addAndGet(previous != null ? weight - previous.weight : weight);
+    if (entries.size() > maxEntries || bytes.get() > maxBytes) {
+      evict();
+    }
+  }
+
+  /** Drop a single entry */
+  public void invalidate(TokenDigest digest) {
+    Entry<V> entry = entries.remove(digest);
+    if (entry != null) {
+      bytes.addAndGet(-entry.weight);
+    }
+  }
+
+  /** Drop every entry whose value matches (a full scan; meant for rare invalidations) */
+  public void invalidateIf(Predicate<? super V> predicate) {
+    for (Map.Entry<TokenDigest, Entry<V>> e : entries.entrySet()) {
+      Entry<V> entry = e.getValue();
+      if (predicate.test(entry.value) && entries.remove(e.getKey(), entry)) {
+        bytes.addAndGet(-entry.weight);
+      }
+    }
+  }
+
+  /** Drop every entry */
+  public void clear() {
+    entries.keySet().forEach(this::invalidate);
+  }
+
+  public Stats stats() {
+    return new Stats(
+        hits.sum(), misses.sum(), evictions.sum(), entries.size(), Math.max(bytes.get(), 0));
+  }
+
+  private void evict() {
+    // One evicting thread is enough; the others keep serving from the cache
+    if (!evicting.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      long now = clock.millis();
+      for (Iterator<Map.Entry<TokenDigest, Entry<V>>> it = entries.entrySet().iterator();
+          it.hasNext(); ) {
+        Map.Entry<TokenDigest, Entry<V>> e = it.next();
+        if (e.getValue().isExpired(now)) {
+          remove(e.getKey(), e.getValue());
+        }
+      }
+
+      int entryTarget = maxEntries - maxEntries / 10;
+      long byteTarget = maxBytes - maxBytes / 10;
+      for (Iterator<Map.Entry<TokenDigest, Entry<V>>> it = entries.entrySet().iterator();
+          it.hasNext() && (entries.size() > entryTarget || bytes.get() > byteTarget); ) {
+        Map.Entry<TokenDigest, Entry<V>> e = it.next();
+        remove(e.getKey(), e.getValue());
+      }
+    } finally {
+      evicting.set(false);
+    }
+  }
+
+  private void remove(TokenDigest digest, Entry<V> entry) {
+    if (entries.remove(digest, entry)) {
+      bytes.addAndGet(-entry.weight);
+      evictions.increment();
+    }
+  }
+
+  private record Entry<V>(V value, long expiresAtMillis, int weight) {
+    boolean isExpired(long nowMillis) {
+      return nowMillis >= expiresAtMillis;
+    }
+  }
+
+  /** Point-in-time cache counters */
+  public record Stats(long hits, long misses, long evictions, int size, long bytes) {}
+}
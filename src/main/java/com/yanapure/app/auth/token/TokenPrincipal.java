@@ -0,0 +1,42 @@
+package com.yanapure.app.auth.token;
+
+import com.yanapure.app.users.Role;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Immutable view of a verified token. Built from a single signature check so callers never need to
+ * parse the same token twice.
+ *
+ * @param userId subject of the token
+ * @param phone E.164 phone number (access tokens only, may be null)
+ * @param role user role at the time the token was minted (access tokens only, may be null)
+ * @param tokenType "access" or "refresh"
+ * @param expiresAt token expiry
+ * @param sessionId id of the session the token belongs to (may be null)
+ * @param issuedAt token issue time (may be null)
+ */
+public record TokenPrincipal(
+    UUID userId,
+    String phone,
+    Role role,
+    String tokenType,
+    Instant expiresAt,
+    UUID sessionId,
+    Instant issuedAt) {
+
+  public static final String ACCESS = "access";
+  public static final String REFRESH = "refresh";
+
+  public boolean isAccessToken() {
+    return ACCESS.equals(tokenType);
+  }
+
+  public boolean isRefreshToken() {
+    return REFRESH.equals(tokenType);
+  }
+
+  public boolean isAdmin() {
+    return role == Role.ADMIN;
+  }
+}
@@ -0,0 +1,134 @@
+package com.yanapure.app.auth.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yanapure.app.auth.service.AuthenticationService;
+import com.yanapure.app.auth.token.TokenPrincipal;
+import com.yanapure.app.common.ApiException;
+import com.yanapure.app.users.User;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.MethodParameter;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Authenticates requests to handlers that declare a {@link CurrentUser} parameter or carry {@link
+ * RequireAdmin}.
+ *
+ * <p>Runs after handler mapping but before argument resolution, so unauthenticated and non-admin
+ * calls are answered without reading the request body or entering the service layer. The token is
+ * validated once and the result is kept as a request attribute for {@link
+ * CurrentUserArgumentResolver}. Handlers that need neither are left untouched.
+ */
+public class AuthenticationInterceptor implements HandlerInterceptor {
+
+  private static final Logger log = LoggerFactory.getLogger(AuthenticationInterceptor.class);
+
+  static final String PRINCIPAL_ATTRIBUTE =
+      AuthenticationInterceptor.class.getName() + ".principal";
+  static final String USER_ATTRIBUTE = AuthenticationInterceptor.class.getName() + ".user";
+
+  private static final String BEARER_PREFIX = "Bearer ";
+
+  private final ObjectProvider<AuthenticationService> authenticationService;
+  private final ObjectMapper objectMapper;
+  private final Map<Method, Requirement> requirements = new ConcurrentHashMap<>();
+
+  public AuthenticationInterceptor(
+      ObjectProvider<AuthenticationService> authenticationService, ObjectMapper objectMapper) {
+    this.authenticationService = authenticationService;
+    this.objectMapper = objectMapper;
+  }
+
+  @Override
+  public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler)
+      throws IOException {
+    if (!(handler instanceof HandlerMethod handlerMethod)) {
+      return true;
+    }
+    if (request.getDispatcherType() == DispatcherType.ASYNC) {
+      // Completion of a streamed response; the caller was authenticated when it started, and the
+      // token may since have been revoked by the very event the stream delivered
+      return true;
+    }
+    Requirement requirement =
+        requirements.computeIfAbsent(handlerMethod.getMethod(), m -> Requirement.of(handlerMethod));
+    if (!requirement.authenticate()) {
+      return true;
+    }
+
+    boolean admin;
+    try {
+      String token = extractToken(request.getHeader(HttpHeaders.AUTHORIZATION));
+      if (requirement.loadUser()) {
+        User user = authenticationService.getObject().validateToken(token);
+        request.setAttribute(USER_ATTRIBUTE, user);
+        admin = user.isAdmin();
+      } else {
+        TokenPrincipal principal = authenticationService.getObject().authenticate(token);
+        request.setAttribute(PRINCIPAL_ATTRIBUTE, principal);
+        admin = principal.isAdmin();
+      }
+    } catch (ApiException e) {
+      log.warn("Authentication failed for {}: {}", request.getRequestURI(), e.getMessage());
+      reject(response, HttpStatus.UNAUTHORIZED, e.code(), e.getMessage());
+      return false;
+    }
+
+    if (requirement.admin() && !admin) {
+      reject(response, HttpStatus.FORBIDDEN, "INSUFFICIENT_PERMISSIONS", "Admin access required");
+      return false;
+    }
+    return true;
+  }
+
+  private static String extractToken(String authHeader) {
+    if (authHeader == null) {
+      throw new ApiException("MISSING_AUTH_HEADER", "Authorization header is required");
+    }
+    if (!authHeader.startsWith(BEARER_PREFIX)) {
+      throw new ApiException("INVALID_AUTH_HEADER", "Invalid authorization header");
+    }
+    return authHeader.substring(BEARER_PREFIX.length());
+  }
+
+  private void reject(HttpServletResponse response, HttpStatus status, String code, String message)
+      throws IOException {
+    response.setStatus(status.value());
+    response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+    objectMapper.writeValue(
+        response.getOutputStream(), Map.of("success", false, "error", code, "message", message));
+  }
+
+  /** What a handler needs from the caller, derived once per handler method */
+  private record Requirement(boolean authenticate, boolean loadUser, boolean admin) {
+
+    static Requirement of(HandlerMethod handlerMethod) {
+      boolean admin =
+          AnnotatedElementUtils.hasAnnotation(handlerMethod.getMethod(), RequireAdmin.class)
+              || AnnotatedElementUtils.hasAnnotation(
+                  handlerMethod.getBeanType(), RequireAdmin.class);
+      boolean currentUser = false;
+      boolean loadUser = false;
+      for (MethodParameter parameter : handlerMethod.getMethodParameters()) {
+        if (parameter.hasParameterAnnotation(CurrentUser.class)) {
+          currentUser = true;
+          loadUser |= User.class.isAssignableFrom(parameter.getParameterType());
+        }
+      }
+      return new Requirement(admin || currentUser, loadUser, admin);
+    }
+  }
+}
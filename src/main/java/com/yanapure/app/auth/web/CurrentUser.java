@@ -0,0 +1,18 @@
+package com.yanapure.app.auth.web;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Binds the authenticated caller to a controller parameter. Declare it as {@link
+ * com.yanapure.app.auth.token.TokenPrincipal} when the token's identity is enough, or as {@link
+ * com.yanapure.app.users.User} when the current user record is needed. The request is rejected with
+ * 401 before the handler runs when the bearer token is missing or invalid.
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface CurrentUser {}
@@ -0,0 +1,41 @@
+package com.yanapure.app.auth.web;
+
+import com.yanapure.app.auth.token.TokenPrincipal;
+import com.yanapure.app.users.User;
+import org.springframework.core.MethodParameter;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+/** Resolves {@link CurrentUser} parameters from what {@link AuthenticationInterceptor} stored */
+public class CurrentUserArgumentResolver implements HandlerMethodArgumentResolver {
+
+  @Override
+  public boolean supportsParameter(MethodParameter parameter) {
+    Class<?> type = parameter.getParameterType();
+    return parameter.hasParameterAnnotation(CurrentUser.class)
+        && (type == TokenPrincipal.class || type == User.class);
+  }
+
+  @Override
+  public Object resolveArgument(
+      MethodParameter parameter,
+      ModelAndViewContainer mavContainer,
+      NativeWebRequest webRequest,
+      WebDataBinderFactory binderFactory) {
+    String attribute =
+        parameter.getParameterType() == User.class
+            ? AuthenticationInterceptor.USER_ATTRIBUTE
+            : AuthenticationInterceptor.PRINCIPAL_ATTRIBUTE;
+    Object value = webRequest.getAttribute(attribute, RequestAttributes.SCOPE_REQUEST);
+    if (value == null) {
+      throw new IllegalStateException(
+          "No authenticated caller for "
+              + parameter
+              + "; is AuthenticationInterceptor registered?");
+    }
+    return value;
+  }
+}
@@ -0,0 +1,16 @@
+package com.yanapure.app.auth.web;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Restricts a handler method, or every handler of a controller, to authenticated admins. Other
+ * callers get 401 or 403 before the request body is read.
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RequireAdmin {}
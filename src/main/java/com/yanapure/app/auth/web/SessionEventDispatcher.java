@@ -0,0 +1,223 @@
+package com.yanapure.app.auth.web;
+
+import com.yanapure.app.auth.session.SessionInvalidation;
+import com.yanapure.app.auth.session.SessionInvalidationListener;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Pushes session revocations to the signed-in clients they affect over server-sent events, so
+ * clients no longer poll to find out they were logged out.
+ *
+ * <p>Every invalidation that reaches this node, from this node or another one, is matched against
+ * the open streams by session and by user. The affected streams get one event and are closed; the
+ * token behind them no longer works. All writes happen on a single dispatcher thread, so publishing
+ * a revocation never waits on a slow client, and an idle stream holds no thread at all (the request
+ * is async). A comment line keeps idle streams alive through proxies and finds dead ones.
+ */
+@Component
+public class SessionEventDispatcher implements SessionInvalidationListener, DisposableBean {
+
+  private static final Logger log = LoggerFactory.getLogger(SessionEventDispatcher.class);
+
+  /** Session logged out here or elsewhere, or revoked by an admin */
+  public static final String SESSION_REVOKED = "session-revoked";
+
+  /** Session deactivated by a newer login beyond the per-user limit */
+  public static final String SESSION_EVICTED = "session-evicted";
+
+  /** All of the user's sessions ended */
+  public static final String REVOKED = "revoked";
+
+  /** The user's role changed; a new login picks it up */
+  public static final String ROLE_CHANGED = "role-changed";
+
+  /** Invalidations may have been missed; the client should check its session once */
+  public static final String RESYNC = "resync";
+
+  private final ConcurrentHashMap<UUID, List<Subscription>> byUser = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<UUID, List<Subscription>> bySession = new ConcurrentHashMap<>();
+  private final ExecutorService sender =
+      Executors.newSingleThreadExecutor(
+          r -> {
+            Thread thread = new Thread(r, "session-events");
+            thread.setDaemon(true);
+            return thread;
+          });
+  private final Duration timeout;
+  private final int maxPerUser;
+
+  public SessionEventDispatcher(
+      @Value("${app.auth.events.timeout:30m}") Duration timeout,
+      @Value("${app.auth.events.max-per-user:5}") int maxPerUser) {
+    this.timeout = timeout;
+    this.maxPerUser = maxPerUser;
+  }
+
+  /**
+   * Open a stream for a signed-in client. Beyond {@code max-per-user} streams the user's oldest one
+   * is closed.
+   *
+   * @param sessionId session of the client's token, or null for tokens without one
+   */
+  public SseEmitter subscribe(UUID userId, UUID sessionId) {
+    SseEmitter emitter = new SseEmitter(timeout.toMillis());
+    Subscription subscription = new Subscription(userId, sessionId, emitter);
+    emitter.onCompletion(() -> remove(subscription));
+    emitter.onTimeout(() -> remove(subscription));
+    emitter.onError(e -> remove(subscription));
+
+    List<Subscription> streams = attach(byUser, userId, subscription);
+    if (sessionId != null) {
+      attach(bySession, sessionId, subscription);
+    }
+    if (streams.size() > maxPerUser) {
+      Subscription oldest = streams.get(0);
+      remove(oldest);
+      submit(() -> oldest.emitter().complete());
+    }
+    submit(() -> send(subscription, SseEmitter.event().comment("connected")));
+    return emitter;
+  }
+
+  @Override
+  public void onInvalidation(SessionInvalidation invalidation) {
+    switch (invalidation.kind()) {
+      case SESSION_REVOKED -> close(bySession, invalidation.id(), SESSION_REVOKED);
+      case SESSION_EVICTED -> close(bySession, invalidation.id(), SESSION_EVICTED);
+      case USER_REVOKED -> close(byUser, invalidation.id(), REVOKED);
+      case ROLE_CHANGED -> close(byUser, invalidation.id(), ROLE_CHANGED);
+      default -> {}
+    }
+  }
+
+  @Override
+  public void onReset() {
+    List<Subscription> all = subscriptions();
+    submit(() -> all.forEach(s -> send(s, event(RESYNC, s))));
+  }
+
+  /** Keep idle streams open through proxies and drop the ones whose client has gone */
+  @Scheduled(
+      initialDelayString = "${app.auth.events.heartbeat:30s}",
+      fixedDelayString = "${app.auth.events.heartbeat:30s}")
+  public void heartbeat() {
+    List<Subscription> all = subscriptions();
+    if (!all.isEmpty()) {
+      submit(() -> all.forEach(s -> send(s, SseEmitter.event().comment("ping"))));
+    }
+  }
+
+  /** Number of open streams on this node */
+  public int connectionCount() {
+    return byUser.values().stream().mapToInt(List::size).sum();
+  }
+
+  @Override
+  public void destroy() {
+    List<Subscription> all = subscriptions();
+    all.forEach(this::remove);
+    all.forEach(s -> s.emitter().complete());
+    sender.shutdownNow();
+  }
+
+  /** Detach the matching streams now, then send each its event and close it */
+  private void close(Map<UUID, List<Subscription>> index, UUID id, String type) {
+    List<Subscription> matching = index.get(id);
+    if (matching == null || matching.isEmpty()) {
+      return;
+    }
+    List<Subscription> closing = new ArrayList<>(matching);
+    closing.forEach(this::remove);
+    submit(
+        () -> {
+          for (Subscription subscription : closing) {
+            if (send(subscription, event(type, subscription))) {
+              subscription.emitter().complete();
+            }
+          }
+        });
+  }
+
+  private static SseEmitter.SseEventBuilder event(String type, Subscription subscription) {
+    Map<String, Object> data =
+        subscription.sessionId() != null
+            ? Map.of("type", type, "session_id", subscription.sessionId())
+            : Map.of("type", type);
+    return SseEmitter.event().name(type).data(data, MediaType.APPLICATION_JSON);
+  }
+
+  /** Write one event; a failed write ends the stream */
+  private boolean send(Subscription subscription, SseEmitter.SseEventBuilder event) {
+    try {
+      subscription.emitter().send(event);
+      return true;
+    } catch (IOException | IllegalStateException e) {
+      remove(subscription);
+      subscription.emitter().completeWithError(e);
+      return false;
+    }
+  }
+
+  private void submit(Runnable task) {
+    try {
+      sender.execute(task);
+    } catch (RejectedExecutionException e) {
+      log.debug("Session event dropped during shutdown");
+    }
+  }
+
+  private List<Subscription> subscriptions() {
+    List<Subscription> all = new ArrayList<>();
+    byUser.values().forEach(all::addAll);
+    return all;
+  }
+
+  private void remove(Subscription subscription) {
+    detach(byUser, subscription.userId(), subscription);
+    if (subscription.sessionId() != null) {
+      detach(bySession, subscription.sessionId(), subscription);
+    }
+  }
+
+  private static List<Subscription> attach(
+      ConcurrentHashMap<UUID, List<Subscription>> index, UUID key, Subscription subscription) {
+    return index.compute(
+        key,
+        (id, streams) -> {
+          List<Subscription> list = streams != null ? streams : new CopyOnWriteArrayList<>();
+          list.add(subscription);
+          return list;
+        });
+  }
+
+  private static void detach(
+      ConcurrentHashMap<UUID, List<Subscription>> index, UUID key, Subscription subscription) {
+    index.computeIfPresent(
+        key,
+        (id, streams) -> {
+          streams.remove(subscription);
+          return streams.isEmpty() ? null : streams;
+        });
+  }
+
+  /** One open stream */
+  private record Subscription(UUID userId, UUID sessionId, SseEmitter emitter) {}
+}
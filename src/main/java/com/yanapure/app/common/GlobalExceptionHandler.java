@@ -2,6 +2,7 @@ package com.yanapure.app.common;
 
 import jakarta.servlet.http.HttpServletRequest;
 import java.util.Map;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindException;
@@ -25,6 +26,19 @@ public class GlobalExceptionHandler {
     return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(body);
   }
 
+  /** Another request changed the same row first; repeating the request will see its change */
+  @ExceptionHandler(OptimisticLockingFailureException.class)
+  public ResponseEntity<ErrorResponse> handleConflict(
+      OptimisticLockingFailureException ex, HttpServletRequest req) {
+    var body =
+        ErrorResponse.of(
+            "CONCURRENT_UPDATE",
+            "The resource was changed by another request, please retry",
+            null,
+            req.getRequestURI());
+    return ResponseEntity.status(HttpStatus.CONFLICT).body(body);
+  }
+
   @ExceptionHandler(Exception.class)
   public ResponseEntity<ErrorResponse> handleGeneric(Exception ex, HttpServletRequest req) {
     var body =
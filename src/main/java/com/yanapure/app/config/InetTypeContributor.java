@@ -0,0 +1,29 @@
+package com.yanapure.app.config;
+
+import org.hibernate.boot.model.TypeContributions;
+import org.hibernate.boot.model.TypeContributor;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.jdbc.spi.JdbcServices;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.SqlTypes;
+import org.hibernate.type.descriptor.jdbc.VarcharJdbcType;
+
+/**
+ * Stores {@link SqlTypes#INET} attributes as text on databases without a native {@code inet} type,
+ * so IP columns keep their string form outside PostgreSQL (H2 in tests). Registered through {@code
+ * META-INF/services}.
+ */
+public class InetTypeContributor implements TypeContributor {
+
+  @Override
+  public void contribute(TypeContributions typeContributions, ServiceRegistry serviceRegistry) {
+    if (serviceRegistry.requireService(JdbcServices.class).getDialect()
+        instanceof PostgreSQLDialect) {
+      return;
+    }
+    typeContributions
+        .getTypeConfiguration()
+        .getJdbcTypeRegistry()
+        .addDescriptor(SqlTypes.INET, VarcharJdbcType.INSTANCE);
+  }
+}
@@ -0,0 +1,9 @@
+package com.yanapure.app.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/** Enables {@code @Scheduled} background jobs (session activity flushes, cleanup) */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {}
@@ -0,0 +1,82 @@
+package com.yanapure.app.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import com.yanapure.app.auth.session.SessionInvalidationListener;
+import com.yanapure.app.users.User;
+import jakarta.persistence.EntityManagerFactory;
+import java.time.Duration;
+import java.util.OptionalLong;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+
+/**
+ * Hibernate second-level cache for {@link User}, backed by a bounded Caffeine JCache region.
+ * Hibernate keeps the local region current on writes (the entity is versioned); other nodes evict
+ * their copy when a user invalidation arrives over the session invalidation bus.
+ *
+ * <p>Hibernate turns the cache on by itself whenever a region factory is on the classpath, so it is
+ * switched off explicitly when {@code app.user-cache.enabled} is false.
+ */
+@Configuration
+public class SecondLevelCacheConfig {
+
+  public static final String USER_REGION = "users";
+
+  @Bean(destroyMethod = "close")
+  @ConditionalOnProperty(name = "app.user-cache.enabled", havingValue = "true")
+  public CacheManager secondLevelCacheManager(
+      @Value("${app.user-cache.max-entries:10000}") long maxEntries,
+      @Value("${app.user-cache.ttl:10m}") Duration ttl) {
+    CachingProvider provider = Caching.getCachingProvider(CaffeineCachingProvider.class.getName());
+    CacheManager cacheManager =
+        provider.getCacheManager(provider.getDefaultURI(), getClass().getClassLoader());
+
+    CaffeineConfiguration<Object, Object> users = new CaffeineConfiguration<>();
+    users.setMaximumSize(OptionalLong.of(maxEntries));
+    users.setExpireAfterWrite(OptionalLong.of(ttl.toNanos()));
+    users.setStatisticsEnabled(true);
+    if (cacheManager.getCache(USER_REGION) == null) {
+      cacheManager.createCache(USER_REGION, users);
+    }
+    return cacheManager;
+  }
+
+  @Bean
+  public HibernatePropertiesCustomizer secondLevelCacheProperties(
+      ObjectProvider<CacheManager> secondLevelCacheManager) {
+    CacheManager cacheManager = secondLevelCacheManager.getIfAvailable();
+    return properties -> {
+      properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, cacheManager != null);
+      if (cacheManager == null) {
+        return;
+      }
+      properties.put(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+      properties.put(ConfigSettings.CACHE_MANAGER, cacheManager);
+      properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "create-warn");
+      properties.put(AvailableSettings.GENERATE_STATISTICS, true);
+    };
+  }
+
+  /** Drop users changed on another node from this node's region */
+  @Bean
+  @ConditionalOnProperty(name = "app.user-cache.enabled", havingValue = "true")
+  public SessionInvalidationListener userCacheEvictor(
+      @Lazy EntityManagerFactory entityManagerFactory) {
+    return invalidation -> {
+      if (!invalidation.isSessionEvent()) {
+        entityManagerFactory.getCache().evict(User.class, invalidation.id());
+      }
+    };
+  }
+}
@@ -0,0 +1,57 @@
+package com.yanapure.app.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.persistence.EntityManagerFactory;
+import java.util.function.ToDoubleFunction;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/** Publishes Hibernate second-level cache region statistics using Micrometer's cache meter names */
+@Component
+@ConditionalOnProperty(name = "app.user-cache.enabled", havingValue = "true")
+public class SecondLevelCacheMetrics implements MeterBinder {
+
+  private final EntityManagerFactory entityManagerFactory;
+
+  public SecondLevelCacheMetrics(EntityManagerFactory entityManagerFactory) {
+    this.entityManagerFactory = entityManagerFactory;
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    if (!statistics.isStatisticsEnabled()) {
+      return;
+    }
+    String region = SecondLevelCacheConfig.USER_REGION;
+
+    FunctionCounter.builder(
+            "cache.gets", statistics, stat(region, CacheRegionStatistics::getHitCount))
+        .tags("cache", region, "result", "hit")
+        .description("Second-level cache hits")
+        .register(registry);
+    FunctionCounter.builder(
+            "cache.gets", statistics, stat(region, CacheRegionStatistics::getMissCount))
+        .tags("cache", region, "result", "miss")
+        .description("Second-level cache misses")
+        .register(registry);
+    FunctionCounter.builder(
+            "cache.puts", statistics, stat(region, CacheRegionStatistics::getPutCount))
+        .tags("cache", region)
+        .description("Second-level cache puts")
+        .register(registry);
+  }
+
+  private static ToDoubleFunction<Statistics> stat(
+      String region, ToDoubleFunction<CacheRegionStatistics> f) {
+    return statistics -> {
+      CacheRegionStatistics regionStatistics = statistics.getDomainDataRegionStatistics(region);
+      return regionStatistics != null ? f.applyAsDouble(regionStatistics) : 0;
+    };
+  }
+}
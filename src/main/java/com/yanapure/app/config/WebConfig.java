@@ -0,0 +1,36 @@
+package com.yanapure.app.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yanapure.app.auth.service.AuthenticationService;
+import com.yanapure.app.auth.web.AuthenticationInterceptor;
+import com.yanapure.app.auth.web.CurrentUserArgumentResolver;
+import java.util.List;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/** Request authentication for {@code @CurrentUser} / {@code @RequireAdmin} handlers */
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+  private final ObjectProvider<AuthenticationService> authenticationService;
+  private final ObjectMapper objectMapper;
+
+  public WebConfig(
+      ObjectProvider<AuthenticationService> authenticationService, ObjectMapper objectMapper) {
+    this.authenticationService = authenticationService;
+    this.objectMapper = objectMapper;
+  }
+
+  @Override
+  public void addInterceptors(InterceptorRegistry registry) {
+    registry.addInterceptor(new AuthenticationInterceptor(authenticationService, objectMapper));
+  }
+
+  @Override
+  public void addArgumentResolvers(List<HandlerMethodArgumentResolver> resolvers) {
+    resolvers.add(new CurrentUserArgumentResolver());
+  }
+}
@@ -3,8 +3,15 @@ package com.yanapure.app.users;
 import jakarta.persistence.*;
 import java.time.Instant;
 import java.util.UUID;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.OptimisticLock;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "users")
+@DynamicUpdate
 @Table(
     name = "users",
     indexes = {
@@ -27,6 +34,9 @@ public class User {
   @Column(nullable = false, length = 20)
   private Role role = Role.USER;
 
+  // Written on every login: it must not bump the version, or parallel logins and a login racing
+  // a profile change fail each other's optimistic check. Updates write only the changed columns
+  @OptimisticLock(excluded = true)
   private Instant lastLoginAt;
 
   @Column(nullable = false)
@@ -35,6 +45,8 @@ public class User {
   @Column(nullable = false)
   private Instant updatedAt = Instant.now();
 
+  @Version private Long version;
+
   public boolean isAdmin() {
     return role == Role.ADMIN;
   }
@@ -112,4 +124,12 @@ public class User {
   public boolean isUser() {
     return this.role == Role.USER;
   }
+
+  public Long getVersion() {
+    return version;
+  }
+
+  public void setVersion(Long version) {
+    this.version = version;
+  }
 }
@@ -0,0 +1,223 @@
+package com.yanapure.app.util;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+
+/**
+ * An IPv4 or IPv6 CIDR block such as {@code 203.0.113.0/24} or {@code 2001:db8::/32}. A bare
+ * address is a block of one. Only address literals are accepted, so parsing never does a DNS
+ * lookup.
+ */
+public final class IpRange {
+
+  private final byte[] network;
+  private final int prefixLength;
+  private final String text;
+
+  private IpRange(byte[] network, int prefixLength, String text) {
+    this.network = network;
+    this.prefixLength = prefixLength;
+    this.text = text;
+  }
+
+  /**
+   * @throws IllegalArgumentException if {@code cidr} is not an address literal with an optional
+   *     prefix length that fits the address family
+   */
+  public static IpRange parse(String cidr) {
+    if (cidr == null || cidr.isBlank()) {
+      throw new IllegalArgumentException("IP range required");
+    }
+    String trimmed = cidr.trim();
+    int slash = trimmed.indexOf('/');
+    byte[] address = toBytes(slash < 0 ? trimmed : trimmed.substring(0, slash));
+    if (address == null) {
+      throw new IllegalArgumentException("Not an IP address: " + trimmed);
+    }
+    int bits = address.length * 8;
+    int prefix = bits;
+    if (slash >= 0) {
+      try {
+        prefix = Integer.parseInt(trimmed.substring(slash + 1));
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid prefix length: " + trimmed);
+      }
+      if (prefix < 0 || prefix > bits) {
+        throw new IllegalArgumentException("Invalid prefix length: " + trimmed);
+      }
+    }
+    return new IpRange(mask(address, prefix), prefix, trimmed);
+  }
+
+  /**
+   * The block of the given prefix length around {@code address}, picked by address family (for
+   * example /24 for IPv4 and /64 for IPv6); null if {@code address} is not an address literal
+   */
+  public static IpRange around(String address, int ipv4Prefix, int ipv6Prefix) {
+    byte[] bytes = toBytes(address);
+    if (bytes == null) {
+      return null;
+    }
+    int prefix = Math.min(bytes.length == 4 ? ipv4Prefix : ipv6Prefix, bytes.length * 8);
+    byte[] network = mask(bytes, prefix);
+    return new IpRange(network, prefix, format(network) + "/" + prefix);
+  }
+
+  /** Whether {@code address} is an IPv4 or IPv6 literal */
+  public static boolean isAddress(String address) {
+    return toBytes(address) != null;
+  }
+
+  /** Network address and prefix length, e.g. {@code 203.0.113.0/24}; a valid PostgreSQL cidr */
+  public String cidr() {
+    return format(network) + "/" + prefixLength;
+  }
+
+  /** Whether {@code address} is a literal of the same family inside this block */
+  public boolean contains(String address) {
+    byte[] bytes = toBytes(address);
+    return bytes != null
+        && bytes.length == network.length
+        && Arrays.equals(mask(bytes, prefixLength), network);
+  }
+
+  @Override
+  public String toString() {
+    return text;
+  }
+
+  private static byte[] mask(byte[] address, int prefix) {
+    byte[] masked = address.clone();
+    for (int i = 0; i < masked.length; i++) {
+      int keep = Math.max(0, Math.min(8, prefix - i * 8));
+      masked[i] &= (byte) (0xFF << (8 - keep));
+    }
+    return masked;
+  }
+
+  private static String format(byte[] address) {
+    try {
+      return InetAddress.getByAddress(address).getHostAddress();
+    } catch (UnknownHostException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Bytes of an address literal, null for anything else (including host names). The literal is
+   * parsed here rather than by {@link InetAddress#getByName}, which falls back to a resolver lookup
+   * for anything it does not take as a literal, such as {@code 999.1.1.1}. IPv4-mapped IPv6
+   * addresses come back as their four IPv4 bytes, like {@code InetAddress} returns them.
+   */
+  private static byte[] toBytes(String literal) {
+    if (literal == null || literal.isEmpty()) {
+      return null;
+    }
+    byte[] bytes = literal.indexOf(':') >= 0 ? parseIpv6(literal) : parseIpv4(literal);
+    if (bytes != null && bytes.length == 16 && isIpv4Mapped(bytes)) {
+      return Arrays.copyOfRange(bytes, 12, 16);
+    }
+    return bytes;
+  }
+
+  /** Dotted quad of decimal octets, e.g. {@code 192.0.2.1} */
+  private static byte[] parseIpv4(String s) {
+    String[] parts = s.split("\\.", -1);
+    if (parts.length != 4) {
+      return null;
+    }
+    byte[] bytes = new byte[4];
+    for (int i = 0; i < 4; i++) {
+      int octet = parseNumber(parts[i], 10, 3);
+      if (octet < 0 || octet > 255) {
+        return null;
+      }
+      bytes[i] = (byte) octet;
+    }
+    return bytes;
+  }
+
+  /** Up to eight hextets, at most one {@code ::} run, optionally ending in a dotted quad */
+  private static byte[] parseIpv6(String s) {
+    int gap = s.indexOf("::");
+    if (gap >= 0 && s.indexOf("::", gap + 1) >= 0) {
+      return null;
+    }
+    int[] head = gap >= 0 ? hextets(s.substring(0, gap), false) : hextets(s, true);
+    int[] tail = gap >= 0 ? hextets(s.substring(gap + 2), true) : new int[0];
+    if (head == null || tail == null) {
+      return null;
+    }
+    int groups = head.length + tail.length;
+    if (gap < 0 ? groups != 8 : groups > 7) {
+      return null;
+    }
+    byte[] bytes = new byte[16];
+    for (int i = 0; i < head.length; i++) {
+      bytes[2 * i] = (byte) (head[i] >> 8);
+      bytes[2 * i + 1] = (byte) head[i];
+    }
+    for (int i = 0; i < tail.length; i++) {
+      int at = 16 - 2 * (tail.length - i);
+      bytes[at] = (byte) (tail[i] >> 8);
+      bytes[at + 1] = (byte) tail[i];
+    }
+    return bytes;
+  }
+
+  /**
+   * Colon-separated hextets; an empty string is none. With {@code ipv4Tail} the last group may be a
+   * dotted quad, which counts as two hextets. Null if any group is malformed.
+   */
+  private static int[] hextets(String s, boolean ipv4Tail) {
+    if (s.isEmpty()) {
+      return new int[0];
+    }
+    String[] parts = s.split(":", -1);
+    String last = parts[parts.length - 1];
+    boolean quad = ipv4Tail && last.indexOf('.') >= 0;
+    int[] groups = new int[parts.length + (quad ? 1 : 0)];
+    for (int i = 0; i < parts.length - (quad ? 1 : 0); i++) {
+      groups[i] = parseNumber(parts[i], 16, 4);
+      if (groups[i] < 0) {
+        return null;
+      }
+    }
+    if (quad) {
+      byte[] v4 = parseIpv4(last);
+      if (v4 == null) {
+        return null;
+      }
+      groups[parts.length - 1] = (v4[0] & 0xFF) << 8 | (v4[1] & 0xFF);
+      groups[parts.length] = (v4[2] & 0xFF) << 8 | (v4[3] & 0xFF);
+    }
+    return groups;
+  }
+
+  /** Value of 1 to {@code maxDigits} digits in {@code radix}; -1 for anything else */
+  private static int parseNumber(String s, int radix, int maxDigits) {
+    if (s.isEmpty() || s.length() > maxDigits) {
+      return -1;
+    }
+    int value = 0;
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      int digit = c < 0x80 ? Character.digit(c, radix) : -1;
+      if (digit < 0) {
+        return -1;
+      }
+      value = value * radix + digit;
+    }
+    return value;
+  }
+
+  private static boolean isIpv4Mapped(byte[] bytes) {
+    for (int i = 0; i < 10; i++) {
+      if (bytes[i] != 0) {
+        return false;
+      }
+    }
+    return bytes[10] == (byte) 0xFF && bytes[11] == (byte) 0xFF;
+  }
+}
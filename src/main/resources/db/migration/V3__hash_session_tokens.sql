@@ -0,0 +1,24 @@
+-- Keep SHA-256 digests of session tokens instead of the bearer tokens themselves.
+-- Tokens now carry the session id in a "sid" claim, so validation is a primary-key lookup;
+-- the digest indexes remain for opaque tokens and tokens issued before this migration.
+ALTER TABLE user_sessions
+  ADD COLUMN access_token_hash  BYTEA,
+  ADD COLUMN refresh_token_hash BYTEA;
+
+UPDATE user_sessions
+   SET access_token_hash  = sha256(convert_to(access_token, 'UTF8')),
+       refresh_token_hash = sha256(convert_to(refresh_token, 'UTF8'));
+
+ALTER TABLE user_sessions
+  ALTER COLUMN access_token_hash SET NOT NULL,
+  ALTER COLUMN refresh_token_hash SET NOT NULL;
+
+DROP INDEX IF EXISTS idx_sessions_token;
+DROP INDEX IF EXISTS idx_sessions_refresh;
+
+ALTER TABLE user_sessions
+  DROP COLUMN access_token,
+  DROP COLUMN refresh_token;
+
+CREATE INDEX IF NOT EXISTS idx_sessions_token_hash ON user_sessions (access_token_hash);
+CREATE INDEX IF NOT EXISTS idx_sessions_refresh_hash ON user_sessions (refresh_token_hash);
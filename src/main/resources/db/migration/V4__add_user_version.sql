@@ -0,0 +1,2 @@
+-- Optimistic-locking version for users; also guards second-level cache entries
+ALTER TABLE users ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,3 @@
+-- Let the expiry cleanup find expired rows without scanning the tables
+CREATE INDEX IF NOT EXISTS idx_sessions_refresh_expires ON user_sessions (refresh_expires_at);
+CREATE INDEX IF NOT EXISTS idx_otp_expires ON otp_challenges (expires_at);
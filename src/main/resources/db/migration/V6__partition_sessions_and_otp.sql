@@ -0,0 +1,105 @@
+-- Range-partition the short-lived auth tables by created_at: daily for OTP challenges, weekly for
+-- sessions. Expired partitions are dropped by PartitionMaintenance instead of deleting rows, and
+-- upcoming partitions are created ahead of time by the same job. The primary key has to include
+-- the partition key; lookups by id still use its leading column.
+
+-- Creates the partition of `parent` covering `at` (UTC-aligned day/week) and returns its name
+CREATE OR REPLACE FUNCTION ensure_time_partition(parent TEXT, period TEXT, at TIMESTAMPTZ)
+RETURNS TEXT AS $$
+DECLARE
+  lower_bound TIMESTAMPTZ := date_trunc(period, at AT TIME ZONE 'UTC') AT TIME ZONE 'UTC';
+  upper_bound TIMESTAMPTZ := lower_bound + ('1 ' || period)::INTERVAL;
+  partition   TEXT := parent || '_p' || to_char(lower_bound AT TIME ZONE 'UTC', 'YYYYMMDD');
+BEGIN
+  EXECUTE format(
+    'CREATE TABLE IF NOT EXISTS %I PARTITION OF %I FOR VALUES FROM (%L) TO (%L)',
+    partition, parent, lower_bound, upper_bound);
+  RETURN partition;
+END;
+$$ LANGUAGE plpgsql;
+
+-- OTP CHALLENGES (daily)
+ALTER TABLE otp_challenges RENAME TO otp_challenges_unpartitioned;
+DROP INDEX IF EXISTS idx_otp_active;
+DROP INDEX IF EXISTS idx_otp_expires;
+
+CREATE TABLE otp_challenges (
+  id             UUID         NOT NULL,
+  phone          VARCHAR(16)  NOT NULL,
+  code_hash      VARCHAR(100) NOT NULL,
+  expires_at     TIMESTAMPTZ  NOT NULL,
+  consumed_at    TIMESTAMPTZ,
+  request_ip     VARCHAR(45),
+  attempt_count  INT          NOT NULL DEFAULT 0,
+  verified       BOOLEAN      NOT NULL DEFAULT FALSE,
+  created_at     TIMESTAMPTZ  NOT NULL DEFAULT now(),
+  PRIMARY KEY (id, created_at)
+) PARTITION BY RANGE (created_at);
+
+CREATE INDEX idx_otp_active ON otp_challenges (phone, consumed_at, expires_at);
+CREATE INDEX idx_otp_expires ON otp_challenges (expires_at);
+
+-- USER SESSIONS (weekly)
+ALTER TABLE user_sessions RENAME TO user_sessions_unpartitioned;
+DROP INDEX IF EXISTS idx_sessions_user;
+DROP INDEX IF EXISTS idx_sessions_expires;
+DROP INDEX IF EXISTS idx_sessions_token_hash;
+DROP INDEX IF EXISTS idx_sessions_refresh_hash;
+DROP INDEX IF EXISTS idx_sessions_refresh_expires;
+
+CREATE TABLE user_sessions (
+  id                 UUID         NOT NULL,
+  user_id            UUID         NOT NULL,
+  access_token_hash  BYTEA        NOT NULL,
+  refresh_token_hash BYTEA        NOT NULL,
+  expires_at         TIMESTAMPTZ  NOT NULL,
+  refresh_expires_at TIMESTAMPTZ  NOT NULL,
+  client_ip          VARCHAR(45),
+  user_agent         VARCHAR(500),
+  active             BOOLEAN      NOT NULL DEFAULT TRUE,
+  created_at         TIMESTAMPTZ  NOT NULL DEFAULT now(),
+  last_used_at       TIMESTAMPTZ,
+  PRIMARY KEY (id, created_at)
+) PARTITION BY RANGE (created_at);
+
+CREATE INDEX idx_sessions_user ON user_sessions (user_id);
+CREATE INDEX idx_sessions_expires ON user_sessions (expires_at);
+CREATE INDEX idx_sessions_token_hash ON user_sessions (access_token_hash);
+CREATE INDEX idx_sessions_refresh_hash ON user_sessions (refresh_token_hash);
+CREATE INDEX idx_sessions_refresh_expires ON user_sessions (refresh_expires_at);
+
+-- Partitions for the rows still alive, plus the next few periods
+DO $$
+DECLARE
+  at TIMESTAMPTZ;
+BEGIN
+  at := now() - INTERVAL '1 day';
+  WHILE at < now() + INTERVAL '7 days' LOOP
+    PERFORM ensure_time_partition('otp_challenges', 'day', at);
+    at := at + INTERVAL '1 day';
+  END LOOP;
+
+  at := LEAST(
+    now(),
+    COALESCE((SELECT min(created_at) FROM user_sessions_unpartitioned
+               WHERE refresh_expires_at > now()), now()));
+  WHILE at < now() + INTERVAL '4 weeks' LOOP
+    PERFORM ensure_time_partition('user_sessions', 'week', at);
+    at := at + INTERVAL '1 week';
+  END LOOP;
+END $$;
+
+-- Carry over the rows that are still needed (live sessions, OTPs within the rate-limit window)
+INSERT INTO otp_challenges
+SELECT id, phone, code_hash, expires_at, consumed_at, request_ip, attempt_count, verified, created_at
+  FROM otp_challenges_unpartitioned
+ WHERE created_at >= date_trunc('day', (now() - INTERVAL '1 day') AT TIME ZONE 'UTC') AT TIME ZONE 'UTC';
+
+INSERT INTO user_sessions
+SELECT id, user_id, access_token_hash, refresh_token_hash, expires_at, refresh_expires_at,
+       client_ip, user_agent, active, created_at, last_used_at
+  FROM user_sessions_unpartitioned
+ WHERE refresh_expires_at > now();
+
+DROP TABLE otp_challenges_unpartitioned;
+DROP TABLE user_sessions_unpartitioned;
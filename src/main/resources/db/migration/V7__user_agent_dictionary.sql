@@ -0,0 +1,20 @@
+-- Distinct User-Agent headers, referenced from user_sessions by a small integer instead of
+-- repeating the text in every row. Only ever appended to, by UserAgentDictionary.
+CREATE TABLE user_agents (
+  id         INTEGER      GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  user_agent VARCHAR(500) NOT NULL UNIQUE
+);
+
+INSERT INTO user_agents (user_agent)
+SELECT DISTINCT user_agent FROM user_sessions WHERE user_agent IS NOT NULL;
+
+ALTER TABLE user_sessions ADD COLUMN user_agent_id INTEGER REFERENCES user_agents (id);
+
+UPDATE user_sessions s
+   SET user_agent_id = a.id
+  FROM user_agents a
+ WHERE a.user_agent = s.user_agent;
+
+-- Dropping the column frees no space in existing rows; it is reclaimed as the weekly session
+-- partitions expire and are dropped
+ALTER TABLE user_sessions DROP COLUMN user_agent;
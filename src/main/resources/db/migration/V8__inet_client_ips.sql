@@ -0,0 +1,20 @@
+-- Client addresses as inet, so rate limits and bulk revocation can match whole blocks
+-- (request_ip <<= '203.0.113.0/24') in SQL. GiST indexes with inet_ops serve the <<= operator.
+
+-- Values that are not an address (empty strings, stray header text) become NULL
+CREATE OR REPLACE FUNCTION try_inet(value TEXT)
+RETURNS INET AS $$
+BEGIN
+  RETURN NULLIF(btrim(value), '')::INET;
+EXCEPTION WHEN invalid_text_representation THEN
+  RETURN NULL;
+END;
+$$ LANGUAGE plpgsql IMMUTABLE;
+
+ALTER TABLE otp_challenges ALTER COLUMN request_ip TYPE INET USING try_inet(request_ip);
+ALTER TABLE user_sessions ALTER COLUMN client_ip TYPE INET USING try_inet(client_ip);
+
+DROP FUNCTION try_inet(TEXT);
+
+CREATE INDEX idx_otp_request_ip ON otp_challenges USING gist (request_ip inet_ops);
+CREATE INDEX idx_sessions_client_ip ON user_sessions USING gist (client_ip inet_ops);
@@ -0,0 +1,40 @@
+-- Default partitions, so an insert outside every dated partition (partition maintenance disabled,
+-- failing or behind) is stored instead of failing every OTP send and login. PartitionMaintenance
+-- reports rows that land here and moves them out when it creates the partition for their range.
+
+CREATE TABLE IF NOT EXISTS otp_challenges_default PARTITION OF otp_challenges DEFAULT;
+CREATE TABLE IF NOT EXISTS user_sessions_default PARTITION OF user_sessions DEFAULT;
+
+-- With a default partition, CREATE TABLE ... PARTITION OF fails if the default already holds rows
+-- of the new range. The partition is therefore created detached, those rows are moved into it, and
+-- then it is attached. Concurrent callers for the same partition are serialised.
+CREATE OR REPLACE FUNCTION ensure_time_partition(parent TEXT, period TEXT, at TIMESTAMPTZ)
+RETURNS TEXT AS $$
+DECLARE
+  lower_bound TIMESTAMPTZ := date_trunc(period, at AT TIME ZONE 'UTC') AT TIME ZONE 'UTC';
+  upper_bound TIMESTAMPTZ := lower_bound + ('1 ' || period)::INTERVAL;
+  partition   TEXT := parent || '_p' || to_char(lower_bound AT TIME ZONE 'UTC', 'YYYYMMDD');
+  fallback    TEXT := parent || '_default';
+BEGIN
+  IF to_regclass(partition) IS NOT NULL THEN
+    RETURN partition;
+  END IF;
+  PERFORM pg_advisory_xact_lock(hashtext(partition));
+  IF to_regclass(partition) IS NOT NULL THEN
+    RETURN partition;
+  END IF;
+
+  EXECUTE format(
+    'CREATE TABLE %I (LIKE %I INCLUDING DEFAULTS INCLUDING CONSTRAINTS)', partition, parent);
+  IF to_regclass(fallback) IS NOT NULL THEN
+    EXECUTE format(
+      'WITH moved AS (DELETE FROM %I WHERE created_at >= %L AND created_at < %L RETURNING *) '
+      'INSERT INTO %I SELECT * FROM moved',
+      fallback, lower_bound, upper_bound, partition);
+  END IF;
+  EXECUTE format(
+    'ALTER TABLE %I ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)',
+    parent, partition, lower_bound, upper_bound);
+  RETURN partition;
+END;
+$$ LANGUAGE plpgsql;
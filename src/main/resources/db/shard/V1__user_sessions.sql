@@ -0,0 +1,18 @@
+-- Session shard schema. Shards hold only user_sessions; users stay on the primary database, so
+-- there is no foreign key. Applied to every configured shard on startup.
+CREATE TABLE IF NOT EXISTS user_sessions (
+  id                 UUID         PRIMARY KEY,
+  user_id            UUID         NOT NULL,
+  access_token_hash  BYTEA        NOT NULL,
+  refresh_token_hash BYTEA        NOT NULL,
+  expires_at         TIMESTAMP WITH TIME ZONE NOT NULL,
+  refresh_expires_at TIMESTAMP WITH TIME ZONE NOT NULL,
+  client_ip          VARCHAR(45),
+  user_agent         VARCHAR(500),
+  active             BOOLEAN      NOT NULL DEFAULT TRUE,
+  created_at         TIMESTAMP WITH TIME ZONE NOT NULL,
+  last_used_at       TIMESTAMP WITH TIME ZONE
+);
+
+CREATE INDEX IF NOT EXISTS idx_sessions_user ON user_sessions (user_id);
+CREATE INDEX IF NOT EXISTS idx_sessions_refresh_expires ON user_sessions (refresh_expires_at);
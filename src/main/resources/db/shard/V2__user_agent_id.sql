@@ -0,0 +1,4 @@
+-- Sessions refer to the primary database's user_agents dictionary by id. No foreign key: the
+-- dictionary does not live on the shard. Header text already stored on a shard is dropped.
+ALTER TABLE user_sessions ADD COLUMN user_agent_id INTEGER;
+ALTER TABLE user_sessions DROP COLUMN user_agent;
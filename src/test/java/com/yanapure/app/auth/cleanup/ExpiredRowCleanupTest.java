@@ -0,0 +1,179 @@
+package com.yanapure.app.auth.cleanup;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.yanapure.app.auth.otp.OtpChallenge;
+import com.yanapure.app.auth.session.UserSession;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.test.context.TestPropertySource;
+
+@DataJpaTest
+@TestPropertySource(
+    properties = {
+      "spring.datasource.url=jdbc:h2:mem:testdb",
+      "spring.jpa.hibernate.ddl-auto=create-drop",
+      "spring.flyway.enabled=false"
+    })
+public class ExpiredRowCleanupTest {
+
+  @Autowired private TestEntityManager entityManager;
+
+  @Autowired private JdbcTemplate jdbcTemplate;
+
+  private SimpleMeterRegistry meterRegistry;
+  private ExpiredRowCleanup cleanup;
+
+  @BeforeEach
+  void setUp() {
+    meterRegistry = new SimpleMeterRegistry();
+    cleanup =
+        new ExpiredRowCleanup(
+            jdbcTemplate, meterRegistry, List::of, true, 2, Duration.ZERO, Duration.ofMinutes(1));
+  }
+
+  @Test
+  void testDeletesExpiredRowsInBatches() {
+    // Given
+    for (int i = 0; i < 5; i++) {
+      persistSession(Instant.now().minusSeconds(60));
+    }
+    UserSession live = persistSession(Instant.now().plusSeconds(3600));
+    persistChallenge(Instant.now().minusSeconds(60));
+    OtpChallenge pending = persistChallenge(Instant.now().plusSeconds(300));
+
+    // When
+    List<ExpiredRowCleanup.Result> results = cleanup.run();
+
+    // Then
+    assertEquals(2, results.size());
+    assertEquals(5, results.get(0).deleted());
+    assertEquals(3, results.get(0).batches());
+    assertEquals(1, results.get(1).deleted());
+    assertEquals(1, results.get(1).batches());
+
+    entityManager.clear();
+    assertNotNull(entityManager.find(UserSession.class, live.getId()));
+    assertNotNull(entityManager.find(OtpChallenge.class, pending.getId()));
+    assertEquals(1, count("user_sessions"));
+    assertEquals(1, count("otp_challenges"));
+    assertEquals(
+        5.0,
+        meterRegistry.get("auth.cleanup.deleted").tag("table", "user_sessions").counter().count());
+  }
+
+  @Test
+  void testSessionWithExpiredAccessTokenIsKeptUntilRefreshExpiry() {
+    // Given
+    UserSession session = persistSession(Instant.now().plusSeconds(3600));
+    session.setExpiresAt(Instant.now().minusSeconds(60));
+    entityManager.flush();
+
+    // When
+    cleanup.run();
+
+    // Then
+    assertEquals(1, count("user_sessions"));
+  }
+
+  @Test
+  void testCleansSessionShardsAfterPrimary() {
+    // Given
+    EmbeddedDatabase shard =
+        new EmbeddedDatabaseBuilder()
+            .setType(EmbeddedDatabaseType.H2)
+            .generateUniqueName(true)
+            .build();
+    try {
+      Flyway.configure().dataSource(shard).locations("classpath:db/shard").load().migrate();
+      JdbcTemplate shardJdbc = new JdbcTemplate(shard);
+      for (int i = 0; i < 3; i++) {
+        insertShardSession(shardJdbc, Instant.now().minusSeconds(60));
+      }
+      insertShardSession(shardJdbc, Instant.now().plusSeconds(3600));
+      cleanup =
+          new ExpiredRowCleanup(
+              jdbcTemplate,
+              meterRegistry,
+              () -> List.of(shard),
+              true,
+              2,
+              Duration.ZERO,
+              Duration.ofMinutes(1));
+
+      // When
+      List<ExpiredRowCleanup.Result> results = cleanup.run();
+
+      // Then
+      ExpiredRowCleanup.Result shardResult = results.get(results.size() - 1);
+      assertEquals("shard-0", shardResult.database());
+      assertEquals(ExpiredRowCleanup.Target.SESSIONS, shardResult.target());
+      assertEquals(3, shardResult.deleted());
+      assertEquals(2, shardResult.batches());
+      assertEquals(
+          1, shardJdbc.queryForObject("SELECT COUNT(*) FROM user_sessions", Integer.class));
+      assertEquals(
+          3.0,
+          meterRegistry
+              .get("auth.cleanup.deleted")
+              .tag("database", "shard-0")
+              .tag("table", "user_sessions")
+              .counter()
+              .count());
+    } finally {
+      shard.shutdown();
+    }
+  }
+
+  private long count(String table) {
+    return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+  }
+
+  private UserSession persistSession(Instant refreshExpiresAt) {
+    UserSession session =
+        new UserSession(
+            UUID.randomUUID(),
+            "access-" + UUID.randomUUID(),
+            "refresh-" + UUID.randomUUID(),
+            refreshExpiresAt.minusSeconds(60),
+            refreshExpiresAt,
+            "192.168.1.1",
+            null);
+    return entityManager.persistAndFlush(session);
+  }
+
+  private static void insertShardSession(JdbcTemplate shard, Instant refreshExpiresAt) {
+    shard.update(
+        "INSERT INTO user_sessions (id, user_id, access_token_hash, refresh_token_hash, "
+            + "expires_at, refresh_expires_at, created_at) VALUES (?, ?, ?, ?, ?, ?, ?)",
+        UUID.randomUUID(),
+        UUID.randomUUID(),
+        new byte[32],
+        new byte[32],
+        Timestamp.from(refreshExpiresAt.minusSeconds(60)),
+        Timestamp.from(refreshExpiresAt),
+        Timestamp.from(Instant.now()));
+  }
+
+  private OtpChallenge persistChallenge(Instant expiresAt) {
+    OtpChallenge challenge = new OtpChallenge();
+    challenge.setPhone("+14155552671");
+    challenge.setCodeHash("hash");
+    challenge.setExpiresAt(expiresAt);
+    return entityManager.persistAndFlush(challenge);
+  }
+}
@@ -0,0 +1,42 @@
+package com.yanapure.app.auth.cleanup;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.yanapure.app.auth.cleanup.PartitionMaintenance.Table;
+import java.time.Duration;
+import java.time.Instant;
+import org.junit.jupiter.api.Test;
+
+public class PartitionMaintenanceTest {
+
+  @Test
+  void testPartitionStartIsParsedFromName() {
+    // When & Then
+    assertEquals(
+        Instant.parse("2026-10-12T00:00:00Z"),
+        Table.SESSIONS.partitionStart("user_sessions_p20261012"));
+    assertNull(Table.SESSIONS.partitionStart("otp_challenges_p20261012"));
+    assertNull(Table.SESSIONS.partitionStart("user_sessions_default"));
+  }
+
+  @Test
+  void testPartitionIsPastRetentionOnlyAfterItsRangeEnds() {
+    // Given
+    Instant now = Instant.parse("2026-10-17T12:00:00Z");
+
+    // When & Then
+    assertTrue(
+        Table.OTP_CHALLENGES.isPastRetention("otp_challenges_p20261016", now, Duration.ZERO));
+    assertFalse(
+        Table.OTP_CHALLENGES.isPastRetention("otp_challenges_p20261017", now, Duration.ZERO));
+    assertFalse(
+        Table.OTP_CHALLENGES.isPastRetention("otp_challenges_p20261016", now, Duration.ofDays(2)));
+    assertTrue(
+        Table.OTP_CHALLENGES.isPastRetention("otp_challenges_p20261014", now, Duration.ofDays(2)));
+    assertFalse(Table.SESSIONS.isPastRetention("user_sessions_p20261012", now, Duration.ZERO));
+    assertTrue(Table.SESSIONS.isPastRetention("user_sessions_p20261005", now, Duration.ZERO));
+    assertFalse(
+        Table.SESSIONS.isPastRetention(
+            Table.SESSIONS.defaultPartition(), now.plus(Duration.ofDays(365)), Duration.ZERO));
+  }
+}
@@ -1,7 +1,10 @@
 package com.yanapure.app.auth.controller;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -9,6 +12,8 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.yanapure.app.auth.service.AdminService;
 import com.yanapure.app.auth.service.AuthenticationService;
+import com.yanapure.app.auth.session.SessionFilter;
+import com.yanapure.app.auth.token.TokenPrincipal;
 import com.yanapure.app.common.ApiException;
 import com.yanapure.app.common.GlobalExceptionHandler;
 import com.yanapure.app.users.Role;
@@ -16,6 +21,7 @@ import com.yanapure.app.users.User;
 import java.time.Instant;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
@@ -25,6 +31,7 @@ import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 @WebMvcTest(controllers = AdminController.class)
 @AutoConfigureMockMvc(addFilters = false)
@@ -50,7 +57,7 @@ public class AdminControllerTest {
   void testCreateAdminUserSuccess() throws Exception {
     // Given
     User adminUser = createTestAdminUser();
-    when(authenticationService.validateToken(anyString())).thenReturn(adminUser);
+    when(authenticationService.authenticate(anyString())).thenReturn(principal(adminUser));
     when(adminService.createAdminUser(anyString(), anyString(), anyString())).thenReturn(adminUser);
 
     // When & Then
@@ -74,7 +81,7 @@ public class AdminControllerTest {
   void testCreateAdminUserWithInsufficientPermissions() throws Exception {
     // Given
     User regularUser = createTestUser();
-    when(authenticationService.validateToken(anyString())).thenReturn(regularUser);
+    when(authenticationService.authenticate(anyString())).thenReturn(principal(regularUser));
 
     // When & Then
     mockMvc
@@ -96,7 +103,7 @@ public class AdminControllerTest {
   void testCreateAdminUserWithApiException() throws Exception {
     // Given
     User adminUser = createTestAdminUser();
-    when(authenticationService.validateToken(anyString())).thenReturn(adminUser);
+    when(authenticationService.authenticate(anyString())).thenReturn(principal(adminUser));
     when(adminService.createAdminUser(anyString(), anyString(), anyString()))
         .thenThrow(
             new ApiException("USER_ALREADY_EXISTS", "User with this phone number already exists"));
@@ -124,7 +131,7 @@ public class AdminControllerTest {
     User promotedUser = createTestUser();
     promotedUser.setRole(Role.ADMIN);
 
-    when(authenticationService.validateToken(anyString())).thenReturn(adminUser);
+    when(authenticationService.authenticate(anyString())).thenReturn(principal(adminUser));
     when(adminService.promoteToAdmin(any(UUID.class))).thenReturn(promotedUser);
 
     // When & Then
@@ -145,7 +152,7 @@ public class AdminControllerTest {
     User demotedUser = createTestAdminUser();
     demotedUser.setRole(Role.USER);
 
-    when(authenticationService.validateToken(anyString())).thenReturn(adminUser);
+    when(authenticationService.authenticate(anyString())).thenReturn(principal(adminUser));
     when(adminService.demoteFromAdmin(any(UUID.class))).thenReturn(demotedUser);
 
     // When & Then
@@ -165,7 +172,7 @@ public class AdminControllerTest {
     User adminUser = createTestAdminUser();
     List<User> admins = List.of(adminUser, createTestAdminUser());
 
-    when(authenticationService.validateToken(anyString())).thenReturn(adminUser);
+    when(authenticationService.authenticate(anyString())).thenReturn(principal(adminUser));
     when(adminService.getAllAdmins()).thenReturn(admins);
 
     // When & Then
@@ -183,7 +190,7 @@ public class AdminControllerTest {
     User adminUser = createTestAdminUser();
     AdminService.AdminStats stats = new AdminService.AdminStats(100, 5, 95, 80, 10);
 
-    when(authenticationService.validateToken(anyString())).thenReturn(adminUser);
+    when(authenticationService.authenticate(anyString())).thenReturn(principal(adminUser));
     when(adminService.getAdminStats()).thenReturn(stats);
 
     // When & Then
@@ -201,7 +208,7 @@ public class AdminControllerTest {
   void testGetAdminStatsWithInsufficientPermissions() throws Exception {
     // Given
     User regularUser = createTestUser();
-    when(authenticationService.validateToken(anyString())).thenReturn(regularUser);
+    when(authenticationService.authenticate(anyString())).thenReturn(principal(regularUser));
 
     // When & Then
     mockMvc
@@ -212,6 +219,86 @@ public class AdminControllerTest {
         .andExpect(jsonPath("$.message").value("Admin access required"));
   }
 
+  @Test
+  void testRevokeSessionsStreamsProgressAndCount() throws Exception {
+    // Given
+    User adminUser = createTestAdminUser();
+    when(authenticationService.authenticate(anyString())).thenReturn(principal(adminUser));
+    when(adminService.revokeSessions(any(SessionFilter.class), any()))
+        .thenAnswer(
+            invocation -> {
+              Consumer<AdminService.BulkRevokeProgress> progress = invocation.getArgument(1);
+              progress.accept(new AdminService.BulkRevokeProgress(1, 1000));
+              progress.accept(new AdminService.BulkRevokeProgress(2, 1500));
+              return 1500L;
+            });
+
+    // When
+    MvcResult started =
+        mockMvc
+            .perform(
+                post("/api/admin/sessions/revoke")
+                    .header("Authorization", "Bearer valid-token")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(
+                        """
+                        {"ipRange": "203.0.113.0/24", "createdFrom": "2026-01-01T00:00:00Z"}
+                        """))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+    // Then
+    String body =
+        mockMvc
+            .perform(asyncDispatch(started))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+            .andReturn()
+            .getResponse()
+            .getContentAsString();
+    List<String> lines = body.lines().toList();
+    assertEquals(3, lines.size());
+    assertEquals(1500, objectMapper.readTree(lines.get(1)).get("revoked").asLong());
+    assertTrue(objectMapper.readTree(lines.get(2)).get("done").asBoolean());
+    assertEquals(1500, objectMapper.readTree(lines.get(2)).get("revoked").asLong());
+  }
+
+  @Test
+  void testRevokeSessionsWithoutCriteriaIsRejected() throws Exception {
+    // Given
+    User adminUser = createTestAdminUser();
+    when(authenticationService.authenticate(anyString())).thenReturn(principal(adminUser));
+
+    // When & Then
+    mockMvc
+        .perform(
+            post("/api/admin/sessions/revoke")
+                .header("Authorization", "Bearer valid-token")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"ipRange\": \"\"}"))
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.code").value("INVALID_FILTER"));
+    verifyNoInteractions(adminService);
+  }
+
+  @Test
+  void testRevokeSessionsWithNullUserIdIsRejected() throws Exception {
+    // Given
+    User adminUser = createTestAdminUser();
+    when(authenticationService.authenticate(anyString())).thenReturn(principal(adminUser));
+
+    // When & Then
+    mockMvc
+        .perform(
+            post("/api/admin/sessions/revoke")
+                .header("Authorization", "Bearer valid-token")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"userIds\": [null]}"))
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.code").value("INVALID_FILTER"));
+    verifyNoInteractions(adminService);
+  }
+
   private User createTestUser() {
     User user = new User();
     user.setId(UUID.randomUUID());
@@ -235,4 +322,15 @@ public class AdminControllerTest {
     user.setUpdatedAt(Instant.now());
     return user;
   }
+
+  private TokenPrincipal principal(User user) {
+    return new TokenPrincipal(
+        user.getId(),
+        user.getPhone(),
+        user.getRole(),
+        TokenPrincipal.ACCESS,
+        Instant.now().plusSeconds(3600),
+        UUID.randomUUID(),
+        Instant.now());
+  }
 }
@@ -1,5 +1,7 @@
 package com.yanapure.app.auth.controller;
 
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.when;
@@ -9,6 +11,11 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.yanapure.app.auth.dto.AuthRequest;
 import com.yanapure.app.auth.service.AuthenticationService;
+import com.yanapure.app.auth.service.RefreshCoalescer;
+import com.yanapure.app.auth.session.SessionInvalidation;
+import com.yanapure.app.auth.session.UserAgentDictionary;
+import com.yanapure.app.auth.token.TokenPrincipal;
+import com.yanapure.app.auth.web.SessionEventDispatcher;
 import com.yanapure.app.common.ApiException;
 import com.yanapure.app.common.GlobalExceptionHandler;
 import com.yanapure.app.users.Role;
@@ -22,12 +29,14 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 @WebMvcTest(controllers = AuthController.class)
 @AutoConfigureMockMvc(addFilters = false)
-@Import(GlobalExceptionHandler.class)
+@Import({GlobalExceptionHandler.class, SessionEventDispatcher.class})
 @TestPropertySource(
     properties = {
       "app.jwt.secret=test-secret-key-for-testing-only",
@@ -41,6 +50,12 @@ public class AuthControllerTest {
 
   @MockBean private AuthenticationService authenticationService;
 
+  @MockBean private RefreshCoalescer refreshCoalescer;
+
+  @MockBean private UserAgentDictionary userAgents;
+
+  @Autowired private SessionEventDispatcher sessionEvents;
+
   @Autowired private ObjectMapper objectMapper;
 
   @Test
@@ -156,6 +171,28 @@ public class AuthControllerTest {
         .andExpect(jsonPath("$.message").value("Invalid verification code"));
   }
 
+  @Test
+  void testVerifyOtpRacingAnotherUpdateIsConflict() throws Exception {
+    // Given
+    when(authenticationService.verifyPhoneAndLogin(
+            anyString(), anyString(), anyString(), anyString()))
+        .thenThrow(new ObjectOptimisticLockingFailureException(User.class, UUID.randomUUID()));
+
+    // When & Then
+    mockMvc
+        .perform(
+            post("/api/auth/verify-otp")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(
+                    """
+                            {"phone": "+14155552671", "otp": "123456"}
+                        """)
+                .header("X-Forwarded-For", "127.0.0.1")
+                .header("User-Agent", "test-agent"))
+        .andExpect(status().isConflict())
+        .andExpect(jsonPath("$.code").value("CONCURRENT_UPDATE"));
+  }
+
   @Test
   void testRefreshTokenSuccess() throws Exception {
     // Given
@@ -166,7 +203,7 @@ public class AuthControllerTest {
         new AuthenticationService.AuthResult(
             user, "new-access-token", "new-refresh-token", UUID.randomUUID());
 
-    when(authenticationService.refreshToken(anyString(), anyString())).thenReturn(result);
+    when(refreshCoalescer.refresh(anyString(), anyString())).thenReturn(result);
 
     // When & Then
     mockMvc
@@ -184,7 +221,7 @@ public class AuthControllerTest {
     // Given
     AuthRequest request = new AuthRequest();
     request.setRefreshToken("invalid-refresh-token");
-    when(authenticationService.refreshToken(anyString(), anyString()))
+    when(refreshCoalescer.refresh(anyString(), anyString()))
         .thenThrow(new ApiException("INVALID_REFRESH_TOKEN", "Invalid refresh token"));
 
     // When & Then
@@ -266,6 +303,40 @@ public class AuthControllerTest {
         .andExpect(jsonPath("$.error").value("MISSING_AUTH_HEADER"));
   }
 
+  @Test
+  void testEventsStreamDeliversSessionRevocation() throws Exception {
+    // Given
+    User user = createTestUser();
+    UUID sessionId = UUID.randomUUID();
+    when(authenticationService.authenticate(anyString()))
+        .thenReturn(
+            new TokenPrincipal(
+                user.getId(),
+                user.getPhone(),
+                user.getRole(),
+                TokenPrincipal.ACCESS,
+                Instant.now().plusSeconds(3600),
+                sessionId,
+                Instant.now()));
+    MvcResult started =
+        mockMvc
+            .perform(get("/api/auth/events").header("Authorization", "Bearer valid-token"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+    assertEquals(1, sessionEvents.connectionCount());
+
+    // When
+    sessionEvents.onInvalidation(SessionInvalidation.sessionRevoked(sessionId));
+
+    // Then
+    mockMvc
+        .perform(asyncDispatch(started))
+        .andExpect(status().isOk())
+        .andExpect(content().string(containsString("event:session-revoked")))
+        .andExpect(content().string(containsString(sessionId.toString())));
+    assertEquals(0, sessionEvents.connectionCount());
+  }
+
   private User createTestUser() {
     User user = new User();
     user.setId(UUID.randomUUID());
@@ -0,0 +1,46 @@
+package com.yanapure.app.auth.controller;
+
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import com.yanapure.app.auth.service.JwtService;
+import com.yanapure.app.auth.token.JwtKeyRing;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+@WebMvcTest(controllers = JwksController.class)
+public class JwksControllerTest {
+
+  @Autowired private MockMvc mockMvc;
+
+  @MockBean private JwtService jwtService;
+
+  @Test
+  void testJwksPublishesPublicKeysWithCacheHeaders() throws Exception {
+    // Given
+    JwtKeyRing keyRing =
+        JwtKeyRing.asymmetric(
+            JwtKeyRing.Mode.ES256,
+            "key-1",
+            JwtKeyRing.generateKeyPair(JwtKeyRing.Mode.ES256),
+            Map.of(),
+            null);
+    when(jwtService.getKeyRing()).thenReturn(keyRing);
+
+    // When & Then
+    mockMvc
+        .perform(get("/.well-known/jwks.json"))
+        .andExpect(status().isOk())
+        .andExpect(header().string("Cache-Control", "max-age=900, public"))
+        .andExpect(jsonPath("$.keys[0].kid").value("key-1"))
+        .andExpect(jsonPath("$.keys[0].kty").value("EC"))
+        .andExpect(jsonPath("$.keys[0].alg").value("ES256"))
+        .andExpect(jsonPath("$.keys[0].use").value("sig"))
+        .andExpect(jsonPath("$.keys[0].d").doesNotExist());
+  }
+}
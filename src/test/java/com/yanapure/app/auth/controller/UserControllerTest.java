@@ -2,6 +2,9 @@ package com.yanapure.app.auth.controller;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -10,6 +13,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.yanapure.app.auth.dto.UserUpdateRequest;
 import com.yanapure.app.auth.service.AuthenticationService;
 import com.yanapure.app.auth.service.UserService;
+import com.yanapure.app.auth.token.TokenPrincipal;
 import com.yanapure.app.common.ApiException;
 import com.yanapure.app.users.Role;
 import com.yanapure.app.users.User;
@@ -59,7 +63,7 @@ public class UserControllerTest {
 
     UserUpdateRequest request = new UserUpdateRequest("Updated Name", "updated@example.com");
 
-    when(authenticationService.validateToken(anyString())).thenReturn(currentUser);
+    when(authenticationService.authenticate(anyString())).thenReturn(principal(currentUser));
     when(userService.updateUserProfile(any(UUID.class), anyString(), anyString()))
         .thenReturn(updatedUser);
 
@@ -79,7 +83,7 @@ public class UserControllerTest {
   void testUpdateCurrentUserWithInvalidEmail() throws Exception {
     // Given
     User currentUser = createTestUser();
-    when(authenticationService.validateToken(anyString())).thenReturn(currentUser);
+    when(authenticationService.authenticate(anyString())).thenReturn(principal(currentUser));
     when(userService.updateUserProfile(any(UUID.class), anyString(), anyString()))
         .thenThrow(new ApiException("INVALID_EMAIL", "Invalid email format"));
 
@@ -106,7 +110,7 @@ public class UserControllerTest {
     adminUser.setRole(Role.ADMIN);
     List<User> users = List.of(createTestUser(), createTestUser());
 
-    when(authenticationService.validateToken(anyString())).thenReturn(adminUser);
+    when(authenticationService.authenticate(anyString())).thenReturn(principal(adminUser));
     when(userService.getAllUsers()).thenReturn(users);
 
     // When & Then
@@ -123,7 +127,7 @@ public class UserControllerTest {
     User regularUser = createTestUser();
     regularUser.setRole(Role.USER);
 
-    when(authenticationService.validateToken(anyString())).thenReturn(regularUser);
+    when(authenticationService.authenticate(anyString())).thenReturn(principal(regularUser));
 
     // When & Then
     mockMvc
@@ -141,7 +145,7 @@ public class UserControllerTest {
     User targetUser = createTestUser();
     targetUser.setId(UUID.randomUUID());
 
-    when(authenticationService.validateToken(anyString())).thenReturn(adminUser);
+    when(authenticationService.authenticate(anyString())).thenReturn(principal(adminUser));
     when(userService.getUserById(any(UUID.class))).thenReturn(targetUser);
 
     // When & Then
@@ -160,7 +164,7 @@ public class UserControllerTest {
     User targetUser = createTestUser();
     targetUser.setRole(Role.ADMIN);
 
-    when(authenticationService.validateToken(anyString())).thenReturn(adminUser);
+    when(authenticationService.authenticate(anyString())).thenReturn(principal(adminUser));
     when(userService.updateUserRole(any(UUID.class), any(Role.class))).thenReturn(targetUser);
 
     // When & Then
@@ -181,7 +185,7 @@ public class UserControllerTest {
     adminUser.setRole(Role.ADMIN);
     User targetUser = createTestUser();
 
-    when(authenticationService.validateToken(anyString())).thenReturn(adminUser);
+    when(authenticationService.authenticate(anyString())).thenReturn(principal(adminUser));
 
     // When & Then
     mockMvc
@@ -203,7 +207,7 @@ public class UserControllerTest {
     User targetUser = createTestUser();
     targetUser.setId(UUID.randomUUID());
 
-    when(authenticationService.validateToken(anyString())).thenReturn(adminUser);
+    when(authenticationService.authenticate(anyString())).thenReturn(principal(adminUser));
 
     // When & Then
     mockMvc
@@ -221,7 +225,7 @@ public class UserControllerTest {
     User adminUser = createTestUser();
     adminUser.setRole(Role.ADMIN);
 
-    when(authenticationService.validateToken(anyString())).thenReturn(adminUser);
+    when(authenticationService.authenticate(anyString())).thenReturn(principal(adminUser));
 
     // When & Then
     mockMvc
@@ -239,7 +243,7 @@ public class UserControllerTest {
     adminUser.setRole(Role.ADMIN);
     UserService.UserStats stats = new UserService.UserStats(100, 5, 95, 80);
 
-    when(authenticationService.validateToken(anyString())).thenReturn(adminUser);
+    when(authenticationService.authenticate(anyString())).thenReturn(principal(adminUser));
     when(userService.getUserStats()).thenReturn(stats);
 
     // When & Then
@@ -258,7 +262,7 @@ public class UserControllerTest {
     User regularUser = createTestUser();
     regularUser.setRole(Role.USER);
 
-    when(authenticationService.validateToken(anyString())).thenReturn(regularUser);
+    when(authenticationService.authenticate(anyString())).thenReturn(principal(regularUser));
 
     // When & Then
     mockMvc
@@ -268,6 +272,51 @@ public class UserControllerTest {
         .andExpect(jsonPath("$.error").value("INSUFFICIENT_PERMISSIONS"));
   }
 
+  @Test
+  void testAdminEndpointWithoutAuthHeader() throws Exception {
+    // When & Then
+    mockMvc
+        .perform(get("/api/users"))
+        .andExpect(status().isUnauthorized())
+        .andExpect(jsonPath("$.success").value(false))
+        .andExpect(jsonPath("$.error").value("MISSING_AUTH_HEADER"));
+
+    verifyNoInteractions(authenticationService, userService);
+  }
+
+  @Test
+  void testGetCurrentUserWithInvalidToken() throws Exception {
+    // Given
+    when(authenticationService.validateToken(anyString()))
+        .thenThrow(new ApiException("INVALID_TOKEN", "Invalid token"));
+
+    // When & Then
+    mockMvc
+        .perform(get("/api/users/me").header("Authorization", "Bearer invalid-token"))
+        .andExpect(status().isUnauthorized())
+        .andExpect(jsonPath("$.error").value("INVALID_TOKEN"));
+  }
+
+  @Test
+  void testNonAdminIsRejectedBeforeBodyIsRead() throws Exception {
+    // Given
+    User regularUser = createTestUser();
+    when(authenticationService.authenticate(anyString())).thenReturn(principal(regularUser));
+
+    // When & Then
+    mockMvc
+        .perform(
+            put("/api/users/" + UUID.randomUUID() + "/role")
+                .header("Authorization", "Bearer valid-token")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("not json"))
+        .andExpect(status().isForbidden())
+        .andExpect(jsonPath("$.error").value("INSUFFICIENT_PERMISSIONS"));
+
+    verify(authenticationService, times(1)).authenticate("valid-token");
+    verifyNoInteractions(userService);
+  }
+
   private User createTestUser() {
     User user = new User();
     user.setId(UUID.randomUUID());
@@ -279,4 +328,15 @@ public class UserControllerTest {
     user.setUpdatedAt(Instant.now());
     return user;
   }
+
+  private TokenPrincipal principal(User user) {
+    return new TokenPrincipal(
+        user.getId(),
+        user.getPhone(),
+        user.getRole(),
+        TokenPrincipal.ACCESS,
+        Instant.now().plusSeconds(3600),
+        UUID.randomUUID(),
+        Instant.now());
+  }
 }
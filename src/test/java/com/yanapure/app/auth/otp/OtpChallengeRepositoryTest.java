@@ -2,6 +2,7 @@ package com.yanapure.app.auth.otp;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.yanapure.app.util.IpRange;
 import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
@@ -160,4 +161,36 @@ public class OtpChallengeRepositoryTest {
     // Then
     assertEquals(1, count);
   }
+
+  @Test
+  void testCountByRequestIpInRangeSince() {
+    // Given
+    Instant now = Instant.now();
+    persistFromIp("198.51.100.5", now.minusSeconds(10));
+    persistFromIp("198.51.100.77", now.minusSeconds(20));
+    persistFromIp("198.51.101.5", now.minusSeconds(10));
+    persistFromIp("198.51.100.9", now.minusSeconds(600));
+    Instant since = now.minusSeconds(60);
+
+    // When
+    long subnet =
+        otpChallengeRepository.countByRequestIpInRangeSince(
+            IpRange.around("198.51.100.200", 24, 64), since);
+    long single =
+        otpChallengeRepository.countByRequestIpInRangeSince(IpRange.parse("198.51.100.5"), since);
+
+    // Then
+    assertEquals(2, subnet);
+    assertEquals(1, single);
+  }
+
+  private void persistFromIp(String requestIp, Instant createdAt) {
+    OtpChallenge challenge = new OtpChallenge();
+    challenge.setPhone("+14155552677");
+    challenge.setCodeHash("hash");
+    challenge.setExpiresAt(createdAt.plusSeconds(300));
+    challenge.setRequestIp(requestIp);
+    challenge.setCreatedAt(createdAt);
+    entityManager.persistAndFlush(challenge);
+  }
 }
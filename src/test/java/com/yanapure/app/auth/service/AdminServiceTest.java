@@ -2,16 +2,27 @@ package com.yanapure.app.auth.service;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
+import com.yanapure.app.auth.session.SessionFilter;
+import com.yanapure.app.auth.session.SessionInvalidation;
+import com.yanapure.app.auth.session.SessionInvalidationBus;
+import com.yanapure.app.auth.session.SessionStore;
+import com.yanapure.app.auth.session.UserSessionRepositoryCustom;
 import com.yanapure.app.common.ApiException;
 import com.yanapure.app.users.Role;
 import com.yanapure.app.users.User;
 import com.yanapure.app.users.UserRepository;
+import com.yanapure.app.util.IpRange;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Consumer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -26,6 +37,10 @@ class AdminServiceTest {
 
   @Mock private UserService userService;
 
+  @Mock private SessionInvalidationBus invalidationBus;
+
+  @Mock private SessionStore sessionStore;
+
   @InjectMocks private AdminService adminService;
 
   private User testUser;
@@ -126,6 +141,7 @@ class AdminServiceTest {
     assertNotNull(result);
     assertEquals(Role.ADMIN, result.getRole());
     verify(userRepository).save(testUser);
+    verify(invalidationBus).publishAll(SessionInvalidation.forRoleChange(testUser.getId()));
   }
 
   @Test
@@ -239,6 +255,64 @@ class AdminServiceTest {
     assertEquals(10L, stats.getRecentUsers());
   }
 
+  @Test
+  void testRevokeSessionsInvalidatesEachChunkAndReportsProgress() {
+    // Given
+    UUID first = UUID.randomUUID();
+    UUID second = UUID.randomUUID();
+    UUID owner = UUID.randomUUID();
+    SessionFilter filter = new SessionFilter(null, IpRange.parse("10.0.0.0/8"), null, null);
+    when(sessionStore.revokeMatching(eq(filter), anyInt(), any()))
+        .thenAnswer(
+            invocation -> {
+              Consumer<UserSessionRepositoryCustom.RevokedChunk> onChunk =
+                  invocation.getArgument(2);
+              onChunk.accept(
+                  new UserSessionRepositoryCustom.RevokedChunk(List.of(first), List.of(owner), 1));
+              onChunk.accept(
+                  new UserSessionRepositoryCustom.RevokedChunk(List.of(second), List.of(owner), 1));
+              return 2L;
+            });
+    List<AdminService.BulkRevokeProgress> progress = new ArrayList<>();
+
+    // When
+    long revoked = adminService.revokeSessions(filter, progress::add);
+
+    // Then
+    assertEquals(2, revoked);
+    assertEquals(
+        List.of(
+            new AdminService.BulkRevokeProgress(1, 1), new AdminService.BulkRevokeProgress(2, 2)),
+        progress);
+    verify(invalidationBus).publishAll(List.of(SessionInvalidation.sessionRevoked(first)));
+    verify(invalidationBus).publishAll(List.of(SessionInvalidation.sessionRevoked(second)));
+  }
+
+  @Test
+  void testRevokeSessionsOfWholeUsersPublishesPerUser() {
+    // Given
+    UUID user = UUID.randomUUID();
+    SessionFilter filter = new SessionFilter(Set.of(user), null, null, null);
+    when(sessionStore.revokeMatching(eq(filter), anyInt(), any()))
+        .thenAnswer(
+            invocation -> {
+              Consumer<UserSessionRepositoryCustom.RevokedChunk> onChunk =
+                  invocation.getArgument(2);
+              onChunk.accept(
+                  new UserSessionRepositoryCustom.RevokedChunk(
+                      List.of(UUID.randomUUID(), UUID.randomUUID()), List.of(user), 2));
+              return 2L;
+            });
+
+    // When
+    long revoked = adminService.revokeSessions(filter, progress -> {});
+
+    // Then
+    assertEquals(2, revoked);
+    verify(invalidationBus).publishAll(List.of(SessionInvalidation.userRevoked(user)));
+    verifyNoMoreInteractions(invalidationBus);
+  }
+
   private User createTestUser() {
     User user = new User();
     user.setId(UUID.randomUUID());
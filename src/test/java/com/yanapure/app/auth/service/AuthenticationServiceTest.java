@@ -0,0 +1,573 @@
+package com.yanapure.app.auth.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import com.yanapure.app.auth.session.DatabaseSessionStore;
+import com.yanapure.app.auth.session.LocalSessionInvalidationBus;
+import com.yanapure.app.auth.session.SessionActivityRecorder;
+import com.yanapure.app.auth.session.SessionCache;
+import com.yanapure.app.auth.session.SessionLookup;
+import com.yanapure.app.auth.session.SessionRevocations;
+import com.yanapure.app.auth.session.UserAgentDictionary;
+import com.yanapure.app.auth.session.UserSession;
+import com.yanapure.app.auth.session.UserSessionRepository;
+import com.yanapure.app.auth.session.UserSessionRepositoryCustom;
+import com.yanapure.app.auth.token.OpaqueTokens;
+import com.yanapure.app.auth.token.TokenDigest;
+import com.yanapure.app.auth.token.TokenPrincipal;
+import com.yanapure.app.common.ApiException;
+import com.yanapure.app.users.Role;
+import com.yanapure.app.users.User;
+import com.yanapure.app.users.UserRepository;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@ExtendWith(MockitoExtension.class)
+public class AuthenticationServiceTest {
+
+  @Mock private UserRepository userRepository;
+  @Mock private UserSessionRepository userSessionRepository;
+  @Mock private OtpService otpService;
+  @Mock private SessionActivityRecorder sessionActivity;
+  @Mock private SessionLookup sessionLookup;
+  @Mock private UserAgentDictionary userAgents;
+
+  private JwtService jwtService;
+  private SessionRevocations revocations;
+  private SessionCache sessionCache;
+  private AuthenticationService authenticationService;
+  private User testUser;
+
+  @BeforeEach
+  void setUp() {
+    jwtService = new JwtService();
+    ReflectionTestUtils.setField(
+        jwtService, "jwtSecret", "test-secret-key-very-long-and-secure-for-testing-purposes");
+    ReflectionTestUtils.setField(jwtService, "accessTokenExpiryHours", 1);
+    ReflectionTestUtils.setField(jwtService, "refreshTokenExpiryDays", 7);
+    jwtService.init();
+
+    revocations = new SessionRevocations(1);
+    sessionCache = new SessionCache(true, 100, Duration.ofMinutes(1));
+    authenticationService =
+        new AuthenticationService(
+            userRepository,
+            otpService,
+            jwtService,
+            revocations,
+            sessionActivity,
+            sessionCache,
+            new LocalSessionInvalidationBus(List.of(revocations, sessionCache)),
+            new DatabaseSessionStore(userSessionRepository, sessionLookup),
+            userAgents);
+    ReflectionTestUtils.setField(authenticationService, "accessTokenExpiryHours", 1);
+    ReflectionTestUtils.setField(authenticationService, "refreshTokenExpiryDays", 7);
+    ReflectionTestUtils.setField(authenticationService, "maxSessionsPerUser", 5);
+    authenticationService.init();
+
+    testUser = new User();
+    testUser.setId(UUID.randomUUID());
+    testUser.setName("Test User");
+    testUser.setPhone("+14155552671");
+    testUser.setRole(Role.USER);
+  }
+
+  @Test
+  void testValidateTokenSuccess() {
+    // Given
+    UUID sessionId = UUID.randomUUID();
+    String accessToken = jwtService.generateAccessToken(testUser, sessionId);
+    when(userSessionRepository.findById(sessionId))
+        .thenReturn(Optional.of(session(sessionId, accessToken, "refresh")));
+    when(userRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
+
+    // When
+    User user = authenticationService.validateToken(accessToken);
+
+    // Then
+    assertEquals(testUser.getId(), user.getId());
+    verify(userSessionRepository, never()).findByAccessTokenHashAndActiveTrue(any());
+    verify(userSessionRepository, never()).save(any());
+    verify(sessionActivity).touch(any());
+  }
+
+  @Test
+  void testSessionBoundTokenMustMatchStoredDigest() {
+    // Given
+    UUID sessionId = UUID.randomUUID();
+    String accessToken = jwtService.generateAccessToken(testUser, sessionId);
+    String otherToken = jwtService.generateAccessToken(testUser, UUID.randomUUID());
+    when(userSessionRepository.findById(sessionId))
+        .thenReturn(Optional.of(session(sessionId, otherToken, "refresh")));
+
+    // When
+    ApiException e =
+        assertThrows(ApiException.class, () -> authenticationService.validateToken(accessToken));
+
+    // Then
+    assertEquals("INVALID_TOKEN", e.code());
+  }
+
+  @Test
+  void testTokenWithoutSessionIdFallsBackToDigestLookup() {
+    // Given
+    String accessToken = jwtService.generateAccessToken(testUser);
+    when(userSessionRepository.findByAccessTokenHashAndActiveTrue(any()))
+        .thenReturn(Optional.of(session(UUID.randomUUID(), accessToken, "refresh")));
+    when(userRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
+
+    // When
+    User user = authenticationService.validateToken(accessToken);
+
+    // Then
+    assertEquals(testUser.getId(), user.getId());
+    verify(userSessionRepository, never()).findById(any());
+  }
+
+  @Test
+  void testLoginBindsTokensToSession() {
+    // Given
+    when(otpService.verifyOtp(anyString(), anyString(), anyString())).thenReturn(true);
+    when(userRepository.findByPhone(testUser.getPhone())).thenReturn(Optional.of(testUser));
+
+    // When
+    AuthenticationService.AuthResult result =
+        authenticationService.verifyPhoneAndLogin(
+            testUser.getPhone(), "123456", "127.0.0.1", "JUnit");
+
+    // Then
+    assertEquals(result.getSessionId(), jwtService.verify(result.getAccessToken()).sessionId());
+    assertEquals(result.getSessionId(), jwtService.verify(result.getRefreshToken()).sessionId());
+  }
+
+  @Test
+  void testLoginPublishesUserChange() {
+    // Given
+    String accessToken = jwtService.generateAccessToken(testUser, UUID.randomUUID());
+    TokenDigest digest = TokenDigest.of(accessToken);
+    sessionCache.put(digest, session(UUID.randomUUID(), accessToken, "refresh"), testUser);
+    when(otpService.verifyOtp(anyString(), anyString(), anyString())).thenReturn(true);
+    when(userRepository.findByPhone(testUser.getPhone())).thenReturn(Optional.of(testUser));
+
+    // When
+    authenticationService.verifyPhoneAndLogin(testUser.getPhone(), "123456", "127.0.0.1", "JUnit");
+
+    // Then
+    assertNull(sessionCache.get(digest));
+  }
+
+  @Test
+  void testLoginRevokesSessionsBeyondLimit() {
+    // Given
+    UUID evicted = UUID.randomUUID();
+    when(otpService.verifyOtp(anyString(), anyString(), anyString())).thenReturn(true);
+    when(userRepository.findByPhone(testUser.getPhone())).thenReturn(Optional.of(testUser));
+    when(userSessionRepository.insertWithinLimit(any(), eq(5))).thenReturn(List.of(evicted));
+
+    // When
+    authenticationService.verifyPhoneAndLogin(testUser.getPhone(), "123456", "127.0.0.1", "JUnit");
+
+    // Then
+    verify(userSessionRepository, never()).countByUserIdAndActiveTrue(any());
+    assertEquals(1, revocations.size());
+  }
+
+  @Test
+  void testForgedTokenRejectedWithoutDatabaseLookup() {
+    // Given
+    String accessToken = jwtService.generateAccessToken(testUser);
+    String forged = accessToken.substring(0, accessToken.length() - 4) + "AAAA";
+
+    // When & Then
+    ApiException first =
+        assertThrows(ApiException.class, () -> authenticationService.validateToken(forged));
+    ApiException second =
+        assertThrows(ApiException.class, () -> authenticationService.validateToken(forged));
+    assertEquals("INVALID_TOKEN", first.code());
+    assertEquals("INVALID_TOKEN", second.code());
+    verifyNoInteractions(userSessionRepository, userRepository);
+  }
+
+  @Test
+  void testGarbageTokenRejectedWithoutDatabaseLookup() {
+    ApiException e =
+        assertThrows(ApiException.class, () -> authenticationService.validateToken("not-a-token"));
+
+    assertEquals("INVALID_TOKEN", e.code());
+    verifyNoInteractions(userSessionRepository);
+  }
+
+  @Test
+  void testRefreshTokenCannotBeUsedAsAccessToken() {
+    // Given
+    String refreshToken = jwtService.generateRefreshToken(testUser);
+
+    // When & Then
+    assertThrows(ApiException.class, () -> authenticationService.validateToken(refreshToken));
+    verifyNoInteractions(userSessionRepository);
+  }
+
+  @Test
+  void testAccessTokenCannotBeUsedAsRefreshToken() {
+    // Given
+    String accessToken = jwtService.generateAccessToken(testUser);
+
+    // When
+    ApiException e =
+        assertThrows(
+            ApiException.class, () -> authenticationService.refreshToken(accessToken, "1.2.3.4"));
+
+    // Then
+    assertEquals("INVALID_REFRESH_TOKEN", e.code());
+    verifyNoInteractions(userSessionRepository);
+  }
+
+  @Test
+  void testExpiredTokenRejectedWithoutDatabaseLookup() {
+    // Given
+    ReflectionTestUtils.setField(jwtService, "accessTokenExpiryHours", -1);
+    String expired = jwtService.generateAccessToken(testUser);
+
+    // When
+    ApiException e =
+        assertThrows(ApiException.class, () -> authenticationService.validateToken(expired));
+
+    // Then
+    assertEquals("TOKEN_EXPIRED", e.code());
+    verifyNoInteractions(userSessionRepository);
+  }
+
+  @Test
+  void testRevokedTokenIsRememberedAfterOneLookup() {
+    // Given
+    String accessToken = jwtService.generateAccessToken(testUser);
+    when(userSessionRepository.findByAccessTokenHashAndActiveTrue(any()))
+        .thenReturn(Optional.empty());
+
+    // When
+    assertThrows(ApiException.class, () -> authenticationService.validateToken(accessToken));
+    assertThrows(ApiException.class, () -> authenticationService.validateToken(accessToken));
+
+    // Then
+    verify(userSessionRepository, times(1)).findByAccessTokenHashAndActiveTrue(any());
+    verify(userSessionRepository, never()).save(any());
+  }
+
+  @Test
+  void testOpaqueModeIssuesReferenceTokens() {
+    // Given
+    ReflectionTestUtils.setField(authenticationService, "tokenMode", "opaque");
+    authenticationService.init();
+    when(otpService.verifyOtp(anyString(), anyString(), anyString())).thenReturn(true);
+    when(userRepository.findByPhone(testUser.getPhone())).thenReturn(Optional.of(testUser));
+
+    // When
+    AuthenticationService.AuthResult result =
+        authenticationService.verifyPhoneAndLogin(
+            testUser.getPhone(), "123456", "127.0.0.1", "JUnit");
+
+    // Then
+    assertEquals(OpaqueTokens.LENGTH, result.getAccessToken().length());
+    assertEquals(OpaqueTokens.LENGTH, result.getRefreshToken().length());
+    assertTrue(OpaqueTokens.isWellFormed(result.getAccessToken()));
+    assertNotEquals(result.getAccessToken(), result.getRefreshToken());
+  }
+
+  @Test
+  void testOpaqueTokenResolvedThroughSessionStore() {
+    // Given
+    ReflectionTestUtils.setField(authenticationService, "tokenMode", "opaque");
+    authenticationService.init();
+    String accessToken = OpaqueTokens.generate();
+    when(userSessionRepository.findByAccessTokenHashAndActiveTrue(any()))
+        .thenReturn(Optional.of(session(UUID.randomUUID(), accessToken, OpaqueTokens.generate())));
+    when(userRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
+
+    // When
+    User user = authenticationService.validateToken(accessToken);
+
+    // Then
+    assertEquals(testUser.getId(), user.getId());
+  }
+
+  @Test
+  void testOpaqueModeStillAcceptsIssuedJwts() {
+    // Given
+    ReflectionTestUtils.setField(authenticationService, "tokenMode", "opaque");
+    authenticationService.init();
+    UUID sessionId = UUID.randomUUID();
+    String accessToken = jwtService.generateAccessToken(testUser, sessionId);
+    when(userSessionRepository.findById(sessionId))
+        .thenReturn(Optional.of(session(sessionId, accessToken, "refresh")));
+    when(userRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
+
+    // When & Then
+    assertEquals(testUser.getId(), authenticationService.validateToken(accessToken).getId());
+  }
+
+  @Test
+  void testOpaqueModeRejectsMalformedTokenWithoutDatabaseLookup() {
+    ReflectionTestUtils.setField(authenticationService, "tokenMode", "opaque");
+    authenticationService.init();
+
+    assertThrows(
+        ApiException.class, () -> authenticationService.validateToken("short+token/with=junk"));
+    verifyNoInteractions(userSessionRepository);
+  }
+
+  @Test
+  void testAuthenticateLoadsSessionByDefault() {
+    // Given
+    UUID sessionId = UUID.randomUUID();
+    String accessToken = jwtService.generateAccessToken(testUser, sessionId);
+    when(userSessionRepository.findById(sessionId))
+        .thenReturn(Optional.of(session(sessionId, accessToken, "refresh")));
+    when(userRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
+
+    // When
+    TokenPrincipal principal = authenticationService.authenticate(accessToken);
+
+    // Then
+    assertEquals(testUser.getId(), principal.userId());
+    assertEquals(sessionId, principal.sessionId());
+    verify(sessionActivity).touch(any());
+  }
+
+  @Test
+  void testAuthenticateWithoutSessionCacheUsesSessionLookup() {
+    // Given
+    ReflectionTestUtils.setField(
+        authenticationService, "sessionCache", new SessionCache(false, 100, Duration.ofMinutes(1)));
+    UUID sessionId = UUID.randomUUID();
+    String accessToken = jwtService.generateAccessToken(testUser, sessionId);
+    when(sessionLookup.findActiveByAccessToken(eq(sessionId), any()))
+        .thenReturn(
+            Optional.of(
+                new SessionLookup.ActiveSession(
+                    sessionId,
+                    testUser.getId(),
+                    TokenDigest.sha256(accessToken),
+                    Instant.now().plusSeconds(3600),
+                    null,
+                    testUser.getPhone(),
+                    Role.USER)));
+
+    // When
+    TokenPrincipal principal = authenticationService.authenticate(accessToken);
+
+    // Then
+    assertEquals(testUser.getId(), principal.userId());
+    assertEquals(Role.USER, principal.role());
+    assertEquals(sessionId, principal.sessionId());
+    verify(sessionActivity).touch(sessionId, null);
+    verifyNoInteractions(userSessionRepository, userRepository);
+  }
+
+  @Test
+  void testAuthenticateWithoutSessionCacheRejectsUnknownSession() {
+    // Given
+    ReflectionTestUtils.setField(
+        authenticationService, "sessionCache", new SessionCache(false, 100, Duration.ofMinutes(1)));
+    String accessToken = jwtService.generateAccessToken(testUser, UUID.randomUUID());
+    when(sessionLookup.findActiveByAccessToken(any(), any())).thenReturn(Optional.empty());
+
+    // When
+    ApiException e =
+        assertThrows(ApiException.class, () -> authenticationService.authenticate(accessToken));
+
+    // Then
+    assertEquals("INVALID_TOKEN", e.code());
+  }
+
+  @Test
+  void testStatelessAuthenticateSkipsDatabase() {
+    // Given
+    ReflectionTestUtils.setField(authenticationService, "statelessValidation", true);
+    UUID sessionId = UUID.randomUUID();
+    String accessToken = jwtService.generateAccessToken(testUser, sessionId);
+
+    // When
+    TokenPrincipal principal = authenticationService.authenticate(accessToken);
+
+    // Then
+    assertEquals(testUser.getId(), principal.userId());
+    assertEquals(Role.USER, principal.role());
+    assertEquals(sessionId, principal.sessionId());
+    verifyNoInteractions(userSessionRepository, userRepository);
+  }
+
+  @Test
+  void testStatelessValidateTokenLoadsOnlyUser() {
+    // Given
+    ReflectionTestUtils.setField(authenticationService, "statelessValidation", true);
+    String accessToken = jwtService.generateAccessToken(testUser, UUID.randomUUID());
+    when(userRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
+
+    // When
+    User user = authenticationService.validateToken(accessToken);
+
+    // Then
+    assertEquals(testUser.getId(), user.getId());
+    verifyNoInteractions(userSessionRepository);
+  }
+
+  @Test
+  void testRefreshRotatesSessionInOneUpdate() {
+    // Given
+    UUID sessionId = UUID.randomUUID();
+    String refreshToken = jwtService.generateRefreshToken(testUser, sessionId);
+    when(userRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
+    when(userSessionRepository.rotateTokens(
+            eq(sessionId), any(), anyString(), anyString(), any(), any()))
+        .thenReturn(
+            Optional.of(new UserSessionRepositoryCustom.SessionKey(sessionId, testUser.getId())));
+
+    // When
+    AuthenticationService.AuthResult result =
+        authenticationService.refreshToken(refreshToken, "1.2.3.4");
+
+    // Then
+    assertEquals(sessionId, result.getSessionId());
+    assertEquals(sessionId, jwtService.verify(result.getAccessToken()).sessionId());
+    assertEquals(sessionId, jwtService.verify(result.getRefreshToken()).sessionId());
+    verify(userSessionRepository, never()).findById(any());
+    verify(userSessionRepository, never()).save(any());
+  }
+
+  @Test
+  void testRefreshOfEndedSessionIsReportedAsExpired() {
+    // Given
+    UUID sessionId = UUID.randomUUID();
+    String refreshToken = jwtService.generateRefreshToken(testUser, sessionId);
+    UserSession ended = session(sessionId, "access", refreshToken);
+    ended.deactivate();
+    when(userRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
+    when(userSessionRepository.rotateTokens(
+            eq(sessionId), any(), anyString(), anyString(), any(), any()))
+        .thenReturn(Optional.empty());
+    when(userSessionRepository.findById(sessionId)).thenReturn(Optional.of(ended));
+
+    // When
+    ApiException e =
+        assertThrows(
+            ApiException.class, () -> authenticationService.refreshToken(refreshToken, "1.2.3.4"));
+
+    // Then
+    assertEquals("REFRESH_TOKEN_EXPIRED", e.code());
+  }
+
+  @Test
+  void testLogoutOfUnknownSessionIsRejected() {
+    // Given
+    String accessToken = jwtService.generateAccessToken(testUser, UUID.randomUUID());
+    when(userSessionRepository.revokeByAccessToken(any(), any())).thenReturn(Optional.empty());
+
+    // When
+    ApiException e =
+        assertThrows(ApiException.class, () -> authenticationService.logout(accessToken));
+
+    // Then
+    assertEquals("INVALID_TOKEN", e.code());
+  }
+
+  @Test
+  void testStatelessAuthenticateRejectsLoggedOutSession() {
+    // Given
+    ReflectionTestUtils.setField(authenticationService, "statelessValidation", true);
+    UUID sessionId = UUID.randomUUID();
+    String accessToken = jwtService.generateAccessToken(testUser, sessionId);
+    when(userSessionRepository.revokeByAccessToken(eq(sessionId), any()))
+        .thenReturn(
+            Optional.of(new UserSessionRepositoryCustom.SessionKey(sessionId, testUser.getId())));
+
+    // When
+    authenticationService.logout(accessToken);
+
+    // Then
+    ApiException e =
+        assertThrows(ApiException.class, () -> authenticationService.authenticate(accessToken));
+    assertEquals("INVALID_TOKEN", e.code());
+  }
+
+  @Test
+  void testStatelessAuthenticateRejectsTokensIssuedBeforeLogoutAll() {
+    // Given
+    ReflectionTestUtils.setField(authenticationService, "statelessValidation", true);
+    String accessToken = jwtService.generateAccessToken(testUser, UUID.randomUUID());
+
+    // When
+    authenticationService.logoutAllDevices(testUser.getId());
+
+    // Then
+    assertThrows(ApiException.class, () -> authenticationService.authenticate(accessToken));
+  }
+
+  @Test
+  void testCachedSessionIsNotReloaded() {
+    // Given
+    UUID sessionId = UUID.randomUUID();
+    String accessToken = jwtService.generateAccessToken(testUser, sessionId);
+    when(userSessionRepository.findById(sessionId))
+        .thenReturn(Optional.of(session(sessionId, accessToken, "refresh")));
+    when(userRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
+
+    // When
+    authenticationService.validateToken(accessToken);
+    authenticationService.validateToken(accessToken);
+    authenticationService.authenticate(accessToken);
+
+    // Then
+    verify(userSessionRepository, times(1)).findById(sessionId);
+    verify(userRepository, times(1)).findById(testUser.getId());
+  }
+
+  @Test
+  void testLogoutEvictsCachedSession() {
+    // Given
+    UUID sessionId = UUID.randomUUID();
+    String accessToken = jwtService.generateAccessToken(testUser, sessionId);
+    UserSession session = session(sessionId, accessToken, "refresh");
+    when(userSessionRepository.findById(sessionId)).thenReturn(Optional.of(session));
+    when(userRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
+    when(userSessionRepository.revokeByAccessToken(eq(sessionId), any()))
+        .thenAnswer(
+            invocation -> {
+              session.deactivate();
+              return Optional.of(
+                  new UserSessionRepositoryCustom.SessionKey(sessionId, testUser.getId()));
+            });
+    authenticationService.validateToken(accessToken);
+
+    // When
+    authenticationService.logout(accessToken);
+
+    // Then
+    assertThrows(ApiException.class, () -> authenticationService.validateToken(accessToken));
+    assertEquals(0, sessionCache.stats().size());
+  }
+
+  private UserSession session(UUID sessionId, String accessToken, String refreshToken) {
+    return new UserSession(
+        sessionId,
+        testUser.getId(),
+        accessToken,
+        refreshToken,
+        Instant.now().plusSeconds(3600),
+        Instant.now().plusSeconds(7200),
+        "127.0.0.1",
+        null);
+  }
+}
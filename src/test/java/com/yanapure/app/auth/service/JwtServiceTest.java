@@ -2,10 +2,19 @@ package com.yanapure.app.auth.service;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yanapure.app.auth.token.JwtKeyRing;
+import com.yanapure.app.auth.token.TokenPrincipal;
+import com.yanapure.app.common.ApiException;
 import com.yanapure.app.users.Role;
 import com.yanapure.app.users.User;
 import io.jsonwebtoken.Claims;
+import java.io.IOException;
+import java.security.KeyPair;
 import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -25,6 +34,7 @@ public class JwtServiceTest {
         jwtService, "jwtSecret", "test-secret-key-very-long-and-secure-for-testing-purposes");
     ReflectionTestUtils.setField(jwtService, "accessTokenExpiryHours", 1);
     ReflectionTestUtils.setField(jwtService, "refreshTokenExpiryDays", 7);
+    jwtService.init();
 
     // Create test user
     testUser = new User();
@@ -192,4 +202,260 @@ public class JwtServiceTest {
     long refreshExpirySeconds = refreshExpiration.getEpochSecond() - Instant.now().getEpochSecond();
     assertTrue(refreshExpirySeconds > 604700 && refreshExpirySeconds < 605000); // ~7 days
   }
+
+  @Test
+  void testVerifyAccessToken() {
+    // Given
+    String token = jwtService.generateAccessToken(testUser);
+
+    // When
+    TokenPrincipal principal = jwtService.verify(token);
+
+    // Then
+    assertEquals(testUser.getId(), principal.userId());
+    assertEquals(testUser.getPhone(), principal.phone());
+    assertEquals(Role.USER, principal.role());
+    assertTrue(principal.isAccessToken());
+    assertTrue(principal.expiresAt().isAfter(Instant.now()));
+  }
+
+  @Test
+  void testVerifyRefreshToken() {
+    // Given
+    String token = jwtService.generateRefreshToken(testUser);
+
+    // When
+    TokenPrincipal principal = jwtService.verify(token);
+
+    // Then
+    assertEquals(testUser.getId(), principal.userId());
+    assertNull(principal.role());
+    assertTrue(principal.isRefreshToken());
+  }
+
+  @Test
+  void testVerifyRejectsTamperedSignature() {
+    // Given
+    String token = jwtService.generateAccessToken(testUser);
+    String tampered = token.substring(0, token.length() - 4) + "AAAA";
+
+    // When & Then
+    assertThrows(RuntimeException.class, () -> jwtService.verify(tampered));
+    assertFalse(jwtService.isAccessToken(tampered));
+  }
+
+  @Test
+  void testVerifyRejectsForgedAsymmetricHeaderWithoutKeyId() {
+    // Given
+    String token = jwtService.generateAccessToken(testUser);
+    String header =
+        Base64.getUrlEncoder().withoutPadding().encodeToString("{\"alg\":\"ES256\"}".getBytes());
+    String forged = header + token.substring(token.indexOf('.'));
+
+    // When & Then
+    ApiException e = assertThrows(ApiException.class, () -> jwtService.verify(forged));
+    assertEquals("INVALID_TOKEN", e.code());
+  }
+
+  @Test
+  void testVerifiedTokenCacheServesRepeatedTokens() {
+    // Given
+    JwtService cachingService = new JwtService();
+    ReflectionTestUtils.setField(
+        cachingService, "jwtSecret", "test-secret-key-very-long-and-secure-for-testing-purposes");
+    ReflectionTestUtils.setField(cachingService, "accessTokenExpiryHours", 1);
+    ReflectionTestUtils.setField(cachingService, "cacheEnabled", true);
+    ReflectionTestUtils.setField(cachingService, "cacheMaxEntries", 100);
+    cachingService.init();
+    String token = cachingService.generateAccessToken(testUser);
+
+    // When
+    Claims first = cachingService.validateAndParseToken(token);
+    Claims second = cachingService.validateAndParseToken(token);
+
+    // Then
+    assertSame(first, second);
+    assertEquals(1, cachingService.getVerifiedTokenCacheStats().hits());
+    assertEquals(1, cachingService.getVerifiedTokenCacheStats().misses());
+    assertThrows(RuntimeException.class, () -> cachingService.validateAndParseToken("a.b.c"));
+  }
+
+  @Test
+  void testVerifiedTokenCacheDisabledByDefault() {
+    assertNull(jwtService.getVerifiedTokenCacheStats());
+  }
+
+  @Test
+  void testEs256TokensCarryKeyIdAndVerify() {
+    // Given
+    JwtService es256Service = asymmetricService("ES256", "key-2025", null, "");
+
+    // When
+    String token = es256Service.generateAccessToken(testUser);
+
+    // Then
+    assertEquals("key-2025", readHeader(token).get("kid"));
+    assertEquals("ES256", readHeader(token).get("alg"));
+    assertEquals(testUser.getId(), es256Service.verify(token).userId());
+    assertThrows(RuntimeException.class, () -> jwtService.verify(token));
+  }
+
+  @Test
+  void testEdDsaTokensVerify() {
+    // Given
+    JwtService edDsaService = asymmetricService("EdDSA", "ed-1", null, "");
+
+    // When
+    String token = edDsaService.generateRefreshToken(testUser);
+
+    // Then
+    assertEquals("EdDSA", readHeader(token).get("alg"));
+    assertTrue(edDsaService.verify(token).isRefreshToken());
+  }
+
+  @Test
+  void testRotatedKeyStillVerifiesDuringRotation() {
+    // Given
+    KeyPair oldKeys = JwtKeyRing.generateKeyPair(JwtKeyRing.Mode.ES256);
+    KeyPair newKeys = JwtKeyRing.generateKeyPair(JwtKeyRing.Mode.ES256);
+    JwtService oldService = asymmetricService("ES256", "old", oldKeys, "");
+    String oldToken = oldService.generateAccessToken(testUser);
+
+    // When
+    JwtService rotatedService =
+        asymmetricService("ES256", "new", newKeys, "old=" + encode(oldKeys));
+    JwtService retiredService = asymmetricService("ES256", "new", newKeys, "");
+
+    // Then
+    assertEquals(testUser.getId(), rotatedService.verify(oldToken).userId());
+    assertThrows(RuntimeException.class, () -> retiredService.verify(oldToken));
+
+    List<?> keys = (List<?>) rotatedService.getKeyRing().toJwks().get("keys");
+    assertEquals(2, keys.size());
+    assertEquals("new", ((Map<?, ?>) keys.get(0)).get("kid"));
+    assertEquals("EC", ((Map<?, ?>) keys.get(0)).get("kty"));
+    assertNull(((Map<?, ?>) keys.get(0)).get("d"));
+  }
+
+  @Test
+  void testLegacyHmacTokensAcceptedAfterSwitchToAsymmetric() {
+    // Given
+    String hmacToken = jwtService.generateAccessToken(testUser);
+
+    // When
+    JwtService es256Service = asymmetricService("ES256", "k1", null, "");
+
+    // Then
+    assertEquals(testUser.getId(), es256Service.verify(hmacToken).userId());
+  }
+
+  @Test
+  void testHmacModePublishesNoKeys() {
+    assertTrue(((List<?>) jwtService.getKeyRing().toJwks().get("keys")).isEmpty());
+  }
+
+  private JwtService asymmetricService(
+      String algorithm, String keyId, KeyPair keyPair, String previousKeys) {
+    JwtService service = new JwtService();
+    ReflectionTestUtils.setField(
+        service, "jwtSecret", "test-secret-key-very-long-and-secure-for-testing-purposes");
+    ReflectionTestUtils.setField(service, "accessTokenExpiryHours", 1);
+    ReflectionTestUtils.setField(service, "refreshTokenExpiryDays", 7);
+    ReflectionTestUtils.setField(service, "algorithm", algorithm);
+    ReflectionTestUtils.setField(service, "keyId", keyId);
+    ReflectionTestUtils.setField(service, "previousPublicKeys", previousKeys);
+    if (keyPair != null) {
+      ReflectionTestUtils.setField(
+          service,
+          "privateKey",
+          Base64.getEncoder().encodeToString(keyPair.getPrivate().getEncoded()));
+      ReflectionTestUtils.setField(service, "publicKey", encode(keyPair));
+    }
+    service.init();
+    return service;
+  }
+
+  private static String encode(KeyPair keyPair) {
+    return Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded());
+  }
+
+  private static Map<?, ?> readHeader(String token) {
+    try {
+      byte[] json = Base64.getUrlDecoder().decode(token.substring(0, token.indexOf('.')));
+      return new ObjectMapper().readValue(json, Map.class);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Test
+  void testFastMintedTokensMatchBuilderTokens() {
+    // Given
+    JwtService builderService = new JwtService();
+    ReflectionTestUtils.setField(
+        builderService, "jwtSecret", "test-secret-key-very-long-and-secure-for-testing-purposes");
+    ReflectionTestUtils.setField(builderService, "accessTokenExpiryHours", 1);
+    ReflectionTestUtils.setField(builderService, "refreshTokenExpiryDays", 7);
+    ReflectionTestUtils.setField(builderService, "fastMinting", false);
+    builderService.init();
+
+    // When
+    String fastAccess = jwtService.generateAccessToken(testUser);
+    String builderAccess = builderService.generateAccessToken(testUser);
+    String fastRefresh = jwtService.generateRefreshToken(testUser);
+
+    // Then
+    assertEquals(readHeader(builderAccess).get("alg"), readHeader(fastAccess).get("alg"));
+    Claims fast = builderService.validateAndParseToken(fastAccess);
+    Claims built = jwtService.validateAndParseToken(builderAccess);
+    for (String claim : List.of("userId", "phone", "role", "tokenType", "sub")) {
+      assertEquals(built.get(claim), fast.get(claim), claim);
+    }
+    assertTrue(Math.abs(built.getExpiration().getTime() - fast.getExpiration().getTime()) < 2000);
+    assertEquals("refresh", builderService.validateAndParseToken(fastRefresh).get("tokenType"));
+  }
+
+  @Test
+  void testSessionIdClaim() {
+    // Given
+    JwtService builderService = new JwtService();
+    ReflectionTestUtils.setField(
+        builderService, "jwtSecret", "test-secret-key-very-long-and-secure-for-testing-purposes");
+    ReflectionTestUtils.setField(builderService, "accessTokenExpiryHours", 1);
+    ReflectionTestUtils.setField(builderService, "refreshTokenExpiryDays", 7);
+    ReflectionTestUtils.setField(builderService, "fastMinting", false);
+    builderService.init();
+    UUID sessionId = UUID.randomUUID();
+
+    // When & Then
+    assertEquals(
+        sessionId,
+        jwtService.verify(jwtService.generateAccessToken(testUser, sessionId)).sessionId());
+    assertEquals(
+        sessionId,
+        jwtService.verify(jwtService.generateRefreshToken(testUser, sessionId)).sessionId());
+    assertEquals(
+        sessionId,
+        jwtService.verify(builderService.generateAccessToken(testUser, sessionId)).sessionId());
+    assertNull(jwtService.verify(jwtService.generateAccessToken(testUser)).sessionId());
+  }
+
+  @Test
+  void testFastMintingPicksAlgorithmFromKeyLength() {
+    // Given
+    JwtService shortKeyService = new JwtService();
+    ReflectionTestUtils.setField(shortKeyService, "jwtSecret", "exactly-32-bytes-of-secret-key!!");
+    ReflectionTestUtils.setField(shortKeyService, "accessTokenExpiryHours", 1);
+    ReflectionTestUtils.setField(shortKeyService, "keyId", "hmac-1");
+    shortKeyService.init();
+
+    // When
+    String token = shortKeyService.generateAccessToken(testUser);
+
+    // Then
+    assertEquals("HS256", readHeader(token).get("alg"));
+    assertEquals("hmac-1", readHeader(token).get("kid"));
+    assertEquals(testUser.getId(), shortKeyService.verify(token).userId());
+    assertEquals("HS384", readHeader(jwtService.generateAccessToken(testUser)).get("alg"));
+  }
 }
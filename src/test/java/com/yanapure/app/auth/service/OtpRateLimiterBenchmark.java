@@ -0,0 +1,67 @@
+package com.yanapure.app.auth.service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * OTP rate limiter under contention: 16 threads requesting codes for {@code clients} distinct
+ * phones and addresses (1 is a flood on a single key), with one lock or {@code stripes} locks.
+ *
+ * <p>With the default limits most calls are rejections once the windows fill, which is the load an
+ * abusive client produces. Run with {@code ./mvnw -Pbench test-compile exec:exec
+ * -Dbench=OtpRateLimiterBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+public class OtpRateLimiterBenchmark {
+
+  @Param({"1", "64"})
+  private int stripes;
+
+  @Param({"1", "10000"})
+  private int clients;
+
+  private OtpRateLimiter limiter;
+  private String[] phones;
+  private String[] ips;
+  private String[] subnets;
+
+  @Setup
+  public void setUp() {
+    limiter =
+        new OtpRateLimiter(5, Duration.ofMinutes(1), 3, 10, 100_000, stripes, Clock.systemUTC());
+    phones = new String[clients];
+    ips = new String[clients];
+    subnets = new String[clients];
+    for (int i = 0; i < clients; i++) {
+      phones[i] = "+1415" + (5_000_000 + i);
+      ips[i] = "10." + (i >> 16 & 0xFF) + "." + (i >> 8 & 0xFF) + "." + (i & 0xFF);
+      subnets[i] = "10." + (i >> 16 & 0xFF) + "." + (i >> 8 & 0xFF) + ".0/24";
+    }
+  }
+
+  @Benchmark
+  public OtpRateLimiter.Rejection tryAcquire() {
+    int i = ThreadLocalRandom.current().nextInt(clients);
+    return limiter.tryAcquire(phones[i], ips[i], subnets[i]);
+  }
+}
@@ -0,0 +1,158 @@
+package com.yanapure.app.auth.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class OtpRateLimiterTest {
+
+  private static final String PHONE = "+14155552671";
+
+  private MutableClock clock;
+  private OtpRateLimiter limiter;
+
+  @BeforeEach
+  void setUp() {
+    clock = new MutableClock(Instant.parse("2025-01-01T00:00:00Z"));
+    limiter = new OtpRateLimiter(5, Duration.ofMinutes(1), 3, 10, 1000, 16, clock);
+  }
+
+  @Test
+  void testPhoneCooldownAndHourlyWindowSlide() {
+    // Given
+    assertNull(limiter.tryAcquire(PHONE, null, null));
+    clock.advanceSeconds(59);
+    assertEquals(OtpRateLimiter.Rejection.PHONE_COOLDOWN, limiter.tryAcquire(PHONE, null, null));
+    clock.advanceSeconds(2);
+    for (int i = 0; i < 4; i++) {
+      assertNull(limiter.tryAcquire(PHONE, null, null));
+      clock.advanceSeconds(61);
+    }
+
+    // When & Then
+    assertEquals(OtpRateLimiter.Rejection.PHONE_HOURLY, limiter.tryAcquire(PHONE, null, null));
+    clock.advanceSeconds(3600 - 5 * 61 - 1);
+    assertEquals(OtpRateLimiter.Rejection.PHONE_HOURLY, limiter.tryAcquire(PHONE, null, null));
+    clock.advanceSeconds(1);
+    assertNull(limiter.tryAcquire(PHONE, null, null));
+  }
+
+  @Test
+  void testRejectedRequestConsumesNoSlot() {
+    // Given
+    for (int i = 0; i < 3; i++) {
+      assertNull(limiter.tryAcquire("+1415555000" + i, "192.0.2.1", "192.0.2.0/24"));
+    }
+
+    // When
+    OtpRateLimiter.Rejection rejection = limiter.tryAcquire(PHONE, "192.0.2.1", "192.0.2.0/24");
+
+    // Then
+    assertEquals(OtpRateLimiter.Rejection.IP, rejection);
+    assertNull(limiter.tryAcquire(PHONE, "192.0.2.2", "192.0.2.0/24"));
+  }
+
+  @Test
+  void testIdleKeysEvicted() {
+    // Given
+    limiter.tryAcquire(PHONE, "192.0.2.1", "192.0.2.0/24");
+    assertEquals(3, limiter.size());
+
+    // When
+    clock.advanceSeconds(60);
+    limiter.evictIdle();
+
+    // Then
+    assertEquals(1, limiter.size());
+    clock.advanceSeconds(3600);
+    limiter.evictIdle();
+    assertEquals(0, limiter.size());
+  }
+
+  @Test
+  void testFullStripeKeepsActiveKeysAndRejectsNewOnes() {
+    // Given
+    OtpRateLimiter small = new OtpRateLimiter(5, Duration.ofMinutes(1), 3, 10, 2, 1, clock);
+    assertNull(small.tryAcquire("+14155550001", null, null));
+    assertNull(small.tryAcquire("+14155550002", null, null));
+
+    // When
+    OtpRateLimiter.Rejection rejection = small.tryAcquire("+14155550003", null, null);
+
+    // Then
+    assertEquals(OtpRateLimiter.Rejection.CAPACITY, rejection);
+    assertEquals(
+        OtpRateLimiter.Rejection.PHONE_COOLDOWN, small.tryAcquire("+14155550001", null, null));
+    clock.advanceSeconds(3600);
+    assertNull(small.tryAcquire("+14155550003", null, null));
+    assertEquals(1, small.size());
+  }
+
+  @Test
+  void testConcurrentRequestsCannotExceedLimit() throws Exception {
+    // Given
+    int threads = 16;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    AtomicInteger accepted = new AtomicInteger();
+
+    // When
+    for (int i = 0; i < threads; i++) {
+      String phone = "+1415555" + (1000 + i);
+      executor.execute(
+          () -> {
+            try {
+              start.await();
+              if (limiter.tryAcquire(phone, "192.0.2.1", "192.0.2.0/24") == null) {
+                accepted.incrementAndGet();
+              }
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          });
+    }
+    start.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+    // Then
+    assertEquals(3, accepted.get());
+  }
+
+  private static final class MutableClock extends Clock {
+    private Instant now;
+
+    MutableClock(Instant now) {
+      this.now = now;
+    }
+
+    void advanceSeconds(long seconds) {
+      now = now.plusSeconds(seconds);
+    }
+
+    @Override
+    public ZoneOffset getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(java.time.ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+  }
+}
@@ -2,13 +2,16 @@ package com.yanapure.app.auth.service;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 import com.yanapure.app.auth.otp.OtpChallenge;
 import com.yanapure.app.auth.otp.OtpChallengeRepository;
 import com.yanapure.app.common.ApiException;
 import com.yanapure.app.sms.InMemorySmsProvider;
+import com.yanapure.app.util.IpRange;
+import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Optional;
 import org.junit.jupiter.api.BeforeEach;
@@ -24,19 +27,19 @@ public class OtpServiceTest {
   @Mock private OtpChallengeRepository otpChallengeRepository;
 
   private InMemorySmsProvider smsProvider;
+  private OtpRateLimiter rateLimiter;
   private OtpService otpService;
 
   @BeforeEach
   void setUp() {
     smsProvider = new InMemorySmsProvider();
-    otpService = new OtpService(otpChallengeRepository, smsProvider);
+    rateLimiter = new OtpRateLimiter(5, Duration.ofMinutes(1), 3, 2, 1000, 16, Clock.systemUTC());
+    otpService = new OtpService(otpChallengeRepository, smsProvider, rateLimiter);
 
     // Set test configuration
     ReflectionTestUtils.setField(otpService, "otpLength", 6);
     ReflectionTestUtils.setField(otpService, "otpExpiryMinutes", 5);
     ReflectionTestUtils.setField(otpService, "maxAttempts", 3);
-    ReflectionTestUtils.setField(otpService, "rateLimitMinutes", 1);
-    ReflectionTestUtils.setField(otpService, "maxPerHour", 5);
   }
 
   @Test
@@ -45,10 +48,6 @@ public class OtpServiceTest {
     String phoneNumber = "+14155552671";
     String clientIp = "192.168.1.1";
 
-    when(otpChallengeRepository.countByPhoneAndCreatedAtAfter(anyString(), any(Instant.class)))
-        .thenReturn(0L);
-    when(otpChallengeRepository.findByRequestIpAndCreatedAtAfter(anyString(), any(Instant.class)))
-        .thenReturn(java.util.Collections.emptyList());
     when(otpChallengeRepository.save(any(OtpChallenge.class)))
         .thenAnswer(invocation -> invocation.getArgument(0));
 
@@ -61,6 +60,95 @@ public class OtpServiceTest {
     assertTrue(smsProvider.getLastMessage(phoneNumber).contains("Your Yana verification code is:"));
   }
 
+  @Test
+  void testSendOtpRateLimitedBySubnet() {
+    // Given
+    when(otpChallengeRepository.save(any(OtpChallenge.class)))
+        .thenAnswer(invocation -> invocation.getArgument(0));
+    otpService.sendOtp("+14155552671", "203.0.113.9");
+    otpService.sendOtp("+14155552672", "203.0.113.10");
+
+    // When
+    ApiException e =
+        assertThrows(ApiException.class, () -> otpService.sendOtp("+14155552673", "203.0.113.200"));
+
+    // Then
+    assertEquals("RATE_LIMIT_EXCEEDED", e.code());
+    assertEquals("Too many requests from this network. Please try again later.", e.getMessage());
+    verify(otpChallengeRepository, times(2)).save(any(OtpChallenge.class));
+    assertDoesNotThrow(() -> otpService.sendOtp("+14155552673", "198.51.100.7"));
+  }
+
+  @Test
+  void testSendOtpLimitedBySubnetRequestsFromAllNodes() {
+    // Given
+    when(otpChallengeRepository.countByRequestIpInRangeSince(
+            any(IpRange.class), any(Instant.class)))
+        .thenAnswer(
+            invocation -> invocation.<IpRange>getArgument(0).cidr().endsWith("/24") ? 10L : 0L);
+
+    // When
+    ApiException e =
+        assertThrows(ApiException.class, () -> otpService.sendOtp("+14155552671", "203.0.113.9"));
+
+    // Then
+    assertEquals("Too many requests from this network. Please try again later.", e.getMessage());
+    verify(otpChallengeRepository, never()).save(any(OtpChallenge.class));
+  }
+
+  @Test
+  void testSendOtpRateLimitedByRawValueWhenNotAnAddress() {
+    // Given
+    when(otpChallengeRepository.save(any(OtpChallenge.class)))
+        .thenAnswer(invocation -> invocation.getArgument(0));
+    for (int i = 0; i < 3; i++) {
+      otpService.sendOtp("+1415555260" + i, "999.1.1.1");
+    }
+
+    // When
+    ApiException e =
+        assertThrows(ApiException.class, () -> otpService.sendOtp("+14155552609", "999.1.1.1"));
+
+    // Then
+    assertEquals("Too many requests from this IP. Please try again later.", e.getMessage());
+    assertDoesNotThrow(() -> otpService.sendOtp("+14155552609", "not-an-address"));
+  }
+
+  @Test
+  void testSendOtpCooldownPerPhone() {
+    // Given
+    String phoneNumber = "+14155552671";
+    when(otpChallengeRepository.save(any(OtpChallenge.class)))
+        .thenAnswer(invocation -> invocation.getArgument(0));
+    otpService.sendOtp(phoneNumber, "192.168.1.1");
+
+    // When
+    ApiException e =
+        assertThrows(ApiException.class, () -> otpService.sendOtp(phoneNumber, "192.168.1.2"));
+
+    // Then
+    assertEquals("RATE_LIMIT_EXCEEDED", e.code());
+    assertEquals("Please wait before requesting another verification code.", e.getMessage());
+    assertEquals(1, smsProvider.getMessageCount(phoneNumber));
+  }
+
+  @Test
+  void testSendOtpLimitedByChallengesFromAllNodes() {
+    // Given
+    String phoneNumber = "+14155552671";
+    when(otpChallengeRepository.countByPhoneAndCreatedAtAfter(eq(phoneNumber), any(Instant.class)))
+        .thenReturn(5L);
+
+    // When
+    ApiException e =
+        assertThrows(ApiException.class, () -> otpService.sendOtp(phoneNumber, "192.168.1.1"));
+
+    // Then
+    assertEquals("RATE_LIMIT_EXCEEDED", e.code());
+    assertEquals(0, smsProvider.getMessageCount(phoneNumber));
+    verify(otpChallengeRepository, never()).save(any(OtpChallenge.class));
+  }
+
   @Test
   void testSendOtpWithInvalidPhone() {
     // Given
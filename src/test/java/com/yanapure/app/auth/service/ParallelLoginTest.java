@@ -0,0 +1,121 @@
+package com.yanapure.app.auth.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+import com.yanapure.app.users.Role;
+import com.yanapure.app.users.User;
+import com.yanapure.app.users.UserRepository;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+/** Logins for one phone number running at the same time, each in its own transaction */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE)
+@TestPropertySource(
+    properties = {
+      "spring.datasource.url=jdbc:h2:mem:parallellogin",
+      "spring.jpa.hibernate.ddl-auto=create-drop",
+      "spring.flyway.enabled=false",
+      "twilio.account-sid=",
+      "twilio.auth-token=",
+      "twilio.phone-number=",
+      "app.auth.max-sessions-per-user=3"
+    })
+public class ParallelLoginTest {
+
+  private static final String PHONE = "+14155554101";
+  private static final int LOGINS = 16;
+  private static final int MAX_SESSIONS = 3;
+
+  @MockBean private OtpService otpService;
+
+  @Autowired private AuthenticationService authenticationService;
+
+  @Autowired private UserRepository userRepository;
+
+  @Autowired private JdbcTemplate jdbcTemplate;
+
+  private User user;
+
+  @BeforeEach
+  void setUp() {
+    when(otpService.verifyOtp(anyString(), anyString(), anyString())).thenReturn(true);
+    user = new User();
+    user.setName("Busy User");
+    user.setPhone(PHONE);
+    user.setRole(Role.USER);
+    user = userRepository.save(user);
+  }
+
+  @AfterEach
+  void tearDown() {
+    jdbcTemplate.update("DELETE FROM user_sessions WHERE user_id = ?", user.getId());
+    userRepository.deleteById(user.getId());
+  }
+
+  @Test
+  void testParallelLoginsForOnePhoneAllSucceed() throws Exception {
+    // When
+    List<AuthenticationService.AuthResult> results = loginInParallel();
+
+    // Then
+    assertEquals(LOGINS, results.size());
+    results.forEach(result -> assertEquals(user.getId(), result.getUser().getId()));
+    assertNotNull(userRepository.findById(user.getId()).orElseThrow().getLastLoginAt());
+  }
+
+  @Test
+  void testParallelLoginsKeepSessionLimit() throws Exception {
+    // When
+    List<AuthenticationService.AuthResult> results = loginInParallel();
+
+    // Then
+    assertEquals(
+        LOGINS,
+        results.stream().map(AuthenticationService.AuthResult::getSessionId).distinct().count());
+    Integer active =
+        jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM user_sessions WHERE user_id = ? AND active = TRUE",
+            Integer.class,
+            user.getId());
+    assertEquals(MAX_SESSIONS, active);
+  }
+
+  private List<AuthenticationService.AuthResult> loginInParallel() throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<AuthenticationService.AuthResult>> logins = new ArrayList<>();
+    for (int i = 0; i < LOGINS; i++) {
+      String userAgent = "JUnit/" + i;
+      logins.add(
+          pool.submit(
+              () -> {
+                start.await();
+                return authenticationService.verifyPhoneAndLogin(
+                    PHONE, "123456", "127.0.0.1", userAgent);
+              }));
+    }
+    start.countDown();
+    List<AuthenticationService.AuthResult> results = new ArrayList<>();
+    for (Future<AuthenticationService.AuthResult> login : logins) {
+      results.add(login.get(30, TimeUnit.SECONDS));
+    }
+    pool.shutdown();
+    assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+    return results;
+  }
+}
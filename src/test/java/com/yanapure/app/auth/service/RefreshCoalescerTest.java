@@ -0,0 +1,134 @@
+package com.yanapure.app.auth.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+import com.yanapure.app.auth.session.SessionInvalidation;
+import com.yanapure.app.common.ApiException;
+import com.yanapure.app.users.User;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class RefreshCoalescerTest {
+
+  @Mock private AuthenticationService authenticationService;
+
+  private RefreshCoalescer coalescer;
+  private AuthenticationService.AuthResult rotated;
+
+  @BeforeEach
+  void setUp() {
+    coalescer = new RefreshCoalescer(authenticationService, Duration.ofSeconds(10), 100);
+    User user = new User();
+    user.setId(UUID.randomUUID());
+    rotated =
+        new AuthenticationService.AuthResult(user, "access-2", "refresh-2", UUID.randomUUID());
+  }
+
+  @Test
+  void testConcurrentRefreshesShareOneRotation() throws Exception {
+    // Given
+    int callers = 8;
+    CountDownLatch entered = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    when(authenticationService.refreshToken("refresh-1", "127.0.0.1"))
+        .thenAnswer(
+            invocation -> {
+              entered.countDown();
+              release.await(5, TimeUnit.SECONDS);
+              return rotated;
+            });
+
+    // When
+    ExecutorService pool = Executors.newFixedThreadPool(callers);
+    List<Future<AuthenticationService.AuthResult>> results = new ArrayList<>();
+    try {
+      results.add(pool.submit(() -> coalescer.refresh("refresh-1", "127.0.0.1")));
+      assertTrue(entered.await(5, TimeUnit.SECONDS));
+      for (int i = 1; i < callers; i++) {
+        results.add(pool.submit(() -> coalescer.refresh("refresh-1", "127.0.0.1")));
+      }
+      Thread.sleep(100);
+      release.countDown();
+
+      // Then
+      for (Future<AuthenticationService.AuthResult> result : results) {
+        assertSame(rotated, result.get(5, TimeUnit.SECONDS));
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+    verify(authenticationService, times(1)).refreshToken(anyString(), anyString());
+  }
+
+  @Test
+  void testRepeatWithinGraceWindowReturnsSamePair() {
+    // Given
+    when(authenticationService.refreshToken("refresh-1", "127.0.0.1")).thenReturn(rotated);
+    coalescer.refresh("refresh-1", "127.0.0.1");
+
+    // When
+    AuthenticationService.AuthResult repeat = coalescer.refresh("refresh-1", "10.0.0.2");
+
+    // Then
+    assertEquals("access-2", repeat.getAccessToken());
+    assertEquals("refresh-2", repeat.getRefreshToken());
+    verify(authenticationService, times(1)).refreshToken(anyString(), anyString());
+  }
+
+  @Test
+  void testFailureIsNotRemembered() {
+    // Given
+    when(authenticationService.refreshToken("refresh-1", "127.0.0.1"))
+        .thenThrow(new ApiException("INVALID_REFRESH_TOKEN", "Invalid refresh token"))
+        .thenReturn(rotated);
+
+    // When & Then
+    ApiException e =
+        assertThrows(ApiException.class, () -> coalescer.refresh("refresh-1", "127.0.0.1"));
+    assertEquals("INVALID_REFRESH_TOKEN", e.code());
+    assertSame(rotated, coalescer.refresh("refresh-1", "127.0.0.1"));
+  }
+
+  @Test
+  void testRevocationDropsSharedResult() {
+    // Given
+    when(authenticationService.refreshToken("refresh-1", "127.0.0.1")).thenReturn(rotated);
+    coalescer.refresh("refresh-1", "127.0.0.1");
+
+    // When
+    coalescer.onInvalidation(SessionInvalidation.sessionRevoked(rotated.getSessionId()));
+    coalescer.refresh("refresh-1", "127.0.0.1");
+
+    // Then
+    verify(authenticationService, times(2)).refreshToken("refresh-1", "127.0.0.1");
+  }
+
+  @Test
+  void testRotationEventKeepsSharedResult() {
+    // Given
+    when(authenticationService.refreshToken("refresh-1", "127.0.0.1")).thenReturn(rotated);
+    coalescer.refresh("refresh-1", "127.0.0.1");
+
+    // When
+    coalescer.onInvalidation(SessionInvalidation.sessionChanged(rotated.getSessionId()));
+    coalescer.refresh("refresh-1", "127.0.0.1");
+
+    // Then
+    verify(authenticationService, times(1)).refreshToken("refresh-1", "127.0.0.1");
+  }
+}
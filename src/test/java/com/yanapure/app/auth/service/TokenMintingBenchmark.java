@@ -0,0 +1,82 @@
+package com.yanapure.app.auth.service;
+
+import com.yanapure.app.users.Role;
+import com.yanapure.app.users.User;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Token minting throughput: the specialised HMAC minter against the generic jjwt builder.
+ *
+ * <p>Run with {@code make bench} or {@code ./mvnw -Pbench test-compile exec:exec
+ * -Dbench=TokenMintingBenchmark}. The {@code gc} profiler reports {@code gc.alloc.rate.norm}, the
+ * bytes allocated per token.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class TokenMintingBenchmark {
+
+  private JwtService fastMinting;
+  private JwtService builder;
+  private User user;
+
+  @Setup
+  public void setUp() {
+    fastMinting = jwtService(true);
+    builder = jwtService(false);
+
+    user = new User();
+    user.setId(UUID.randomUUID());
+    user.setName("Bench User");
+    user.setPhone("+14155552671");
+    user.setRole(Role.USER);
+  }
+
+  @Benchmark
+  public String accessTokenFastMinting() {
+    return fastMinting.generateAccessToken(user);
+  }
+
+  @Benchmark
+  public String accessTokenBuilder() {
+    return builder.generateAccessToken(user);
+  }
+
+  @Benchmark
+  public String refreshTokenFastMinting() {
+    return fastMinting.generateRefreshToken(user);
+  }
+
+  @Benchmark
+  public String refreshTokenBuilder() {
+    return builder.generateRefreshToken(user);
+  }
+
+  private static JwtService jwtService(boolean fastMinting) {
+    JwtService service = new JwtService();
+    ReflectionTestUtils.setField(
+        service, "jwtSecret", "bench-secret-key-very-long-and-secure-for-benchmark-purposes");
+    ReflectionTestUtils.setField(service, "accessTokenExpiryHours", 1);
+    ReflectionTestUtils.setField(service, "refreshTokenExpiryDays", 7);
+    ReflectionTestUtils.setField(service, "fastMinting", fastMinting);
+    service.init();
+    return service;
+  }
+}
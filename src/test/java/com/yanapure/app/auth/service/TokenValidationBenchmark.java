@@ -0,0 +1,108 @@
+package com.yanapure.app.auth.service;
+
+import com.yanapure.app.YanaBackendApplication;
+import com.yanapure.app.auth.session.UserSession;
+import com.yanapure.app.auth.session.UserSessionRepository;
+import com.yanapure.app.auth.token.TokenPrincipal;
+import com.yanapure.app.users.Role;
+import com.yanapure.app.users.User;
+import com.yanapure.app.users.UserRepository;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Access token validation against an in-memory H2 database: {@code validateToken}, which loads the
+ * session and user entities through JPA, against {@code authenticate}, which reads the same data
+ * through the single-statement JDBC join of {@code SessionLookup}.
+ *
+ * <p>Both go through the full service (signature check included, with the verified-token cache on)
+ * and the session cache is off, so every call reaches the database. Run with {@code ./mvnw -Pbench
+ * test-compile exec:exec -Dbench=TokenValidationBenchmark}; compare {@code gc.alloc.rate.norm} as
+ * well as throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class TokenValidationBenchmark {
+
+  private ConfigurableApplicationContext context;
+  private AuthenticationService authenticationService;
+  private String accessToken;
+
+  @Setup
+  public void setUp() {
+    context =
+        new SpringApplicationBuilder(YanaBackendApplication.class)
+            .web(WebApplicationType.NONE)
+            .run(
+                "--spring.datasource.url=jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1",
+                "--spring.jpa.hibernate.ddl-auto=create-drop",
+                "--spring.flyway.enabled=false",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=WARN",
+                "--twilio.account-sid=",
+                "--twilio.auth-token=",
+                "--twilio.phone-number=",
+                "--app.jwt.cache.enabled=true",
+                "--app.auth.session-cache.enabled=false",
+                "--app.auth.cleanup.enabled=false",
+                "--app.auth.partitions.enabled=false");
+    authenticationService = context.getBean(AuthenticationService.class);
+
+    User user = new User();
+    user.setName("Bench User");
+    user.setPhone("+14155552671");
+    user.setRole(Role.USER);
+    user = context.getBean(UserRepository.class).save(user);
+
+    UUID sessionId = UUID.randomUUID();
+    accessToken = context.getBean(JwtService.class).generateAccessToken(user, sessionId);
+    context
+        .getBean(UserSessionRepository.class)
+        .save(
+            new UserSession(
+                sessionId,
+                user.getId(),
+                accessToken,
+                "bench-refresh-token",
+                Instant.now().plusSeconds(3600),
+                Instant.now().plusSeconds(7200),
+                "127.0.0.1",
+                null));
+  }
+
+  @TearDown
+  public void tearDown() {
+    context.close();
+  }
+
+  @Benchmark
+  public User validateTokenEntities() {
+    return authenticationService.validateToken(accessToken);
+  }
+
+  @Benchmark
+  public TokenPrincipal authenticateSessionLookup() {
+    return authenticationService.authenticate(accessToken);
+  }
+}
@@ -0,0 +1,272 @@
+package com.yanapure.app.auth.session;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.yanapure.app.auth.token.TokenDigest;
+import com.yanapure.app.users.Role;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedSessionIndexTest {
+
+  @TempDir Path dir;
+
+  private Path file;
+  private MappedSessionIndex index;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    file = dir.resolve("sessions.idx");
+    index = MappedSessionIndex.open(file, 700, Duration.ofHours(1));
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    index.close();
+  }
+
+  @Test
+  void testPutAndFind() {
+    // Given
+    SessionLookup.ActiveSession session = session(Instant.now().plusSeconds(3600));
+    byte[] digest = digest("access-1");
+
+    // When
+    assertTrue(index.put(index.removals(), digest, session, System.currentTimeMillis()));
+    SessionLookup.ActiveSession found = index.find(digest);
+
+    // Then
+    assertNotNull(found);
+    assertEquals(session.sessionId(), found.sessionId());
+    assertEquals(session.userId(), found.userId());
+    assertEquals(session.phone(), found.phone());
+    assertEquals(Role.ADMIN, found.role());
+    assertEquals(session.expiresAt().toEpochMilli(), found.expiresAt().toEpochMilli());
+    assertNull(index.find(digest("access-2")));
+    assertEquals(1, index.size());
+  }
+
+  @Test
+  void testPutReplacesPreviousTokenOfSameSession() {
+    // Given
+    SessionLookup.ActiveSession session = session(Instant.now().plusSeconds(3600));
+    index.put(index.removals(), digest("access-1"), session, System.currentTimeMillis());
+
+    // When
+    index.put(index.removals(), digest("access-2"), session, System.currentTimeMillis());
+
+    // Then
+    assertNull(index.find(digest("access-1")));
+    assertNotNull(index.find(digest("access-2")));
+    assertEquals(1, index.size());
+  }
+
+  @Test
+  void testPutIsRefusedAfterConcurrentRemoval() {
+    // Given
+    long removals = index.removals();
+    SessionLookup.ActiveSession session = session(Instant.now().plusSeconds(3600));
+
+    // When
+    index.removeSession(session.sessionId());
+
+    // Then
+    assertFalse(index.put(removals, digest("access-1"), session, System.currentTimeMillis()));
+    assertNull(index.find(digest("access-1")));
+  }
+
+  @Test
+  void testRandomPutsAndRemovalsMatchModel() {
+    // Given
+    Random random = new Random(42);
+    List<UUID> sessions = new ArrayList<>();
+    Map<UUID, String> model = new HashMap<>();
+    for (int i = 0; i < 900; i++) {
+      sessions.add(UUID.randomUUID());
+    }
+
+    // When
+    for (int op = 0; op < 20_000; op++) {
+      UUID sessionId = sessions.get(random.nextInt(sessions.size()));
+      if (random.nextInt(3) == 0) {
+        index.removeSession(sessionId);
+        model.remove(sessionId);
+      } else {
+        String token = "token-" + op;
+        SessionLookup.ActiveSession session =
+            new SessionLookup.ActiveSession(
+                sessionId,
+                UUID.randomUUID(),
+                null,
+                Instant.now().plusSeconds(3600),
+                null,
+                "+14155550100",
+                Role.USER);
+        if (index.put(index.removals(), digest(token), session, System.currentTimeMillis())) {
+          model.put(sessionId, token);
+        } else {
+          model.remove(sessionId);
+        }
+      }
+    }
+
+    // Then
+    assertEquals(model.size(), index.size());
+    model.forEach(
+        (sessionId, token) -> {
+          SessionLookup.ActiveSession found = index.find(digest(token));
+          assertNotNull(found, token);
+          assertEquals(sessionId, found.sessionId());
+        });
+  }
+
+  @Test
+  void testInvalidatedUserEntriesAreStale() {
+    // Given
+    SessionLookup.ActiveSession session = session(Instant.now().plusSeconds(3600));
+    long indexedAt = System.currentTimeMillis() - 1000;
+    index.put(index.removals(), digest("access-1"), session, indexedAt);
+
+    // When
+    index.invalidateUser(session.userId(), indexedAt + 1);
+
+    // Then
+    assertNull(index.find(digest("access-1")));
+    index.put(index.removals(), digest("access-1"), session, indexedAt + 2);
+    assertNotNull(index.find(digest("access-1")));
+  }
+
+  @Test
+  void testPurgeExpiredRemovesOnlyExpiredEntries() {
+    // Given
+    index.put(
+        index.removals(),
+        digest("expired"),
+        session(Instant.now().minusSeconds(1)),
+        System.currentTimeMillis());
+    index.put(
+        index.removals(),
+        digest("live"),
+        session(Instant.now().plusSeconds(3600)),
+        System.currentTimeMillis());
+
+    // When
+    int purged = index.purgeExpired(System.currentTimeMillis());
+
+    // Then
+    assertEquals(1, purged);
+    assertNull(index.find(digest("expired")));
+    assertNotNull(index.find(digest("live")));
+  }
+
+  @Test
+  void testClearDropsEverything() {
+    // Given
+    index.put(
+        index.removals(),
+        digest("access-1"),
+        session(Instant.now().plusSeconds(3600)),
+        System.currentTimeMillis());
+
+    // When
+    index.clear();
+
+    // Then
+    assertNull(index.find(digest("access-1")));
+    assertEquals(0, index.size());
+  }
+
+  @Test
+  void testCleanlyClosedIndexIsReopened() throws Exception {
+    // Given
+    SessionLookup.ActiveSession session = session(Instant.now().plusSeconds(3600));
+    index.put(index.removals(), digest("access-1"), session, System.currentTimeMillis());
+    index.close();
+
+    // When
+    index = MappedSessionIndex.open(file, 700, Duration.ofHours(1));
+
+    // Then
+    assertNotNull(index.reopenedFrom());
+    assertEquals(1, index.size());
+    assertEquals(session.sessionId(), index.find(digest("access-1")).sessionId());
+  }
+
+  @Test
+  void testUserInvalidationSurvivesReopen() throws Exception {
+    // Given
+    SessionLookup.ActiveSession demoted = session(Instant.now().plusSeconds(3600));
+    SessionLookup.ActiveSession other = session(Instant.now().plusSeconds(3600));
+    long indexedAt = System.currentTimeMillis() - 1000;
+    index.put(index.removals(), digest("access-1"), demoted, indexedAt);
+    index.put(index.removals(), digest("access-2"), other, indexedAt);
+    index.invalidateUser(demoted.userId(), indexedAt + 1);
+
+    // When
+    index.close();
+    index = MappedSessionIndex.open(file, 700, Duration.ofHours(1));
+
+    // Then
+    assertNull(index.find(digest("access-1")));
+    assertNotNull(index.find(digest("access-2")));
+    assertEquals(1, index.size());
+  }
+
+  @Test
+  void testPurgeDeletesInvalidatedUserEntries() {
+    // Given
+    SessionLookup.ActiveSession session = session(Instant.now().plusSeconds(3600));
+    long indexedAt = System.currentTimeMillis() - 1000;
+    index.put(index.removals(), digest("access-1"), session, indexedAt);
+    index.invalidateUser(session.userId(), indexedAt + 1);
+
+    // When
+    int purged = index.purgeExpired(System.currentTimeMillis());
+
+    // Then
+    assertEquals(1, purged);
+    assertEquals(0, index.size());
+  }
+
+  @Test
+  void testIndexLeftOpenStartsEmpty() throws Exception {
+    // Given
+    index.put(
+        index.removals(),
+        digest("access-1"),
+        session(Instant.now().plusSeconds(3600)),
+        System.currentTimeMillis());
+
+    // When
+    MappedSessionIndex reopened = MappedSessionIndex.open(file, 700, Duration.ofHours(1));
+
+    // Then
+    try {
+      assertNull(reopened.reopenedFrom());
+      assertEquals(0, reopened.size());
+      assertNull(reopened.find(digest("access-1")));
+    } finally {
+      reopened.close();
+    }
+  }
+
+  private static SessionLookup.ActiveSession session(Instant expiresAt) {
+    return new SessionLookup.ActiveSession(
+        UUID.randomUUID(), UUID.randomUUID(), null, expiresAt, null, "+14155553001", Role.ADMIN);
+  }
+
+  private static byte[] digest(String token) {
+    return TokenDigest.sha256(token);
+  }
+}
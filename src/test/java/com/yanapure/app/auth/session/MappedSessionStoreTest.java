@@ -0,0 +1,139 @@
+package com.yanapure.app.auth.session;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.yanapure.app.auth.token.TokenDigest;
+import com.yanapure.app.users.Role;
+import com.yanapure.app.users.User;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+@DataJpaTest
+@Import(SessionLookup.class)
+@TestPropertySource(
+    properties = {
+      "spring.datasource.url=jdbc:h2:mem:testdb",
+      "spring.jpa.hibernate.ddl-auto=create-drop",
+      "spring.flyway.enabled=false"
+    })
+public class MappedSessionStoreTest {
+
+  @TempDir Path dir;
+
+  @Autowired private TestEntityManager entityManager;
+
+  @Autowired private UserSessionRepository userSessionRepository;
+
+  @Autowired private SessionLookup sessionLookup;
+
+  @Autowired private JdbcTemplate jdbcTemplate;
+
+  private MappedSessionStore store;
+  private User user;
+
+  @BeforeEach
+  void setUp() {
+    user = new User();
+    user.setName("Indexed User");
+    user.setPhone("+14155553101");
+    user.setRole(Role.USER);
+    user.setCreatedAt(Instant.now().minus(Duration.ofDays(1)));
+    user.setUpdatedAt(Instant.now().minus(Duration.ofHours(1)));
+    user = entityManager.persistAndFlush(user);
+    store = openStore();
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    store.close();
+  }
+
+  @Test
+  void testRepeatedLookupIsServedFromIndex() {
+    // Given
+    UserSession session = persistSession("access-1");
+    assertTrue(
+        store.findActiveByAccessToken(session.getId(), TokenDigest.of("access-1")).isPresent());
+
+    // When
+    jdbcTemplate.update("DELETE FROM user_sessions WHERE id = ?", session.getId());
+
+    // Then
+    assertEquals(
+        user.getId(),
+        store
+            .findActiveByAccessToken(session.getId(), TokenDigest.of("access-1"))
+            .orElseThrow()
+            .userId());
+  }
+
+  @Test
+  void testRevokeGoesThroughToDatabaseAndIndex() {
+    // Given
+    UserSession session = persistSession("access-1");
+    store.findActiveByAccessToken(null, TokenDigest.of("access-1"));
+
+    // When
+    assertTrue(store.revoke(session.getId(), TokenDigest.of("access-1")).isPresent());
+
+    // Then
+    assertTrue(store.findActiveByAccessToken(null, TokenDigest.of("access-1")).isEmpty());
+    assertEquals(0, store.size());
+  }
+
+  @Test
+  void testReopenedIndexDropsSessionsChangedWhileClosed() throws Exception {
+    // Given
+    UserSession ended = persistSession("access-ended");
+    UserSession untouched = persistSession("access-untouched");
+    store.findActiveByAccessToken(ended.getId(), TokenDigest.of("access-ended"));
+    store.findActiveByAccessToken(untouched.getId(), TokenDigest.of("access-untouched"));
+    store.close();
+
+    // When
+    jdbcTemplate.update("UPDATE user_sessions SET active = FALSE WHERE id = ?", ended.getId());
+    store = openStore();
+    jdbcTemplate.update("DELETE FROM user_sessions WHERE id = ?", untouched.getId());
+
+    // Then
+    assertTrue(
+        store.findActiveByAccessToken(ended.getId(), TokenDigest.of("access-ended")).isEmpty());
+    assertTrue(
+        store
+            .findActiveByAccessToken(untouched.getId(), TokenDigest.of("access-untouched"))
+            .isPresent());
+  }
+
+  private MappedSessionStore openStore() {
+    return new MappedSessionStore(
+        new DatabaseSessionStore(userSessionRepository, sessionLookup),
+        jdbcTemplate,
+        dir.resolve("sessions.idx"),
+        1000,
+        Duration.ofHours(1));
+  }
+
+  private UserSession persistSession(String accessToken) {
+    UserSession session =
+        new UserSession(
+            user.getId(),
+            accessToken,
+            "refresh-" + accessToken,
+            Instant.now().plusSeconds(3600),
+            Instant.now().plusSeconds(7200),
+            "192.168.1.1",
+            null);
+    return entityManager.persistAndFlush(session);
+  }
+}
@@ -0,0 +1,92 @@
+package com.yanapure.app.auth.session;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Instant;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+
+@DataJpaTest
+@Import({SessionActivityRecorder.class, SessionStoreConfig.class, SessionLookup.class})
+@TestPropertySource(
+    properties = {
+      "spring.datasource.url=jdbc:h2:mem:testdb",
+      "spring.jpa.hibernate.ddl-auto=create-drop",
+      "spring.flyway.enabled=false",
+      "app.auth.last-used.granularity=1m"
+    })
+public class SessionActivityRecorderTest {
+
+  @Autowired private TestEntityManager entityManager;
+
+  @Autowired private SessionActivityRecorder recorder;
+
+  @Test
+  void testTouchIsWrittenOnFlush() {
+    // Given
+    UserSession session = persistSession(null);
+
+    // When
+    recorder.touch(session);
+    recorder.touch(session);
+
+    // Then
+    assertEquals(1, recorder.pendingCount());
+    assertEquals(1, recorder.flush());
+    assertEquals(0, recorder.pendingCount());
+
+    entityManager.clear();
+    UserSession reloaded = entityManager.find(UserSession.class, session.getId());
+    assertNotNull(reloaded.getLastUsedAt());
+  }
+
+  @Test
+  void testRecentlyUsedSessionIsNotRecorded() {
+    // Given
+    UserSession session = persistSession(Instant.now().minusSeconds(10));
+
+    // When
+    recorder.touch(session);
+
+    // Then
+    assertEquals(0, recorder.pendingCount());
+    assertEquals(0, recorder.flush());
+  }
+
+  @Test
+  void testFlushNeverMovesLastUsedBackwards() {
+    // Given
+    UserSession stale = persistSession(Instant.now().minusSeconds(3600));
+    recorder.touch(stale);
+    Instant newer = Instant.now().plusSeconds(3600);
+    stale.setLastUsedAt(newer);
+    entityManager.persistAndFlush(stale);
+
+    // When
+    recorder.flush();
+
+    // Then
+    entityManager.clear();
+    UserSession reloaded = entityManager.find(UserSession.class, stale.getId());
+    assertEquals(newer.getEpochSecond(), reloaded.getLastUsedAt().getEpochSecond());
+  }
+
+  private UserSession persistSession(Instant lastUsedAt) {
+    UserSession session =
+        new UserSession(
+            UUID.randomUUID(),
+            "access-" + UUID.randomUUID(),
+            "refresh-" + UUID.randomUUID(),
+            Instant.now().plusSeconds(3600),
+            Instant.now().plusSeconds(7200),
+            "192.168.1.1",
+            null);
+    session.setLastUsedAt(lastUsedAt);
+    return entityManager.persistAndFlush(session);
+  }
+}
@@ -0,0 +1,58 @@
+package com.yanapure.app.auth.session;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+
+public class SessionInvalidationTest {
+
+  @Test
+  void testEncodeDecodeRoundTrip() {
+    for (SessionInvalidation.Kind kind : SessionInvalidation.Kind.values()) {
+      SessionInvalidation invalidation = new SessionInvalidation(kind, UUID.randomUUID());
+      assertEquals(invalidation, SessionInvalidation.decode(invalidation.encode()));
+    }
+  }
+
+  @Test
+  void testDecodeRejectsMalformedPayload() {
+    assertThrows(IllegalArgumentException.class, () -> SessionInvalidation.decode("X:nope"));
+    assertThrows(IllegalArgumentException.class, () -> SessionInvalidation.decode("garbage"));
+    assertThrows(IllegalArgumentException.class, () -> SessionInvalidation.decode(null));
+  }
+
+  @Test
+  void testNewKindsAreFollowedByOnesOlderNodesDecode() {
+    UUID id = UUID.randomUUID();
+    assertEquals(
+        List.of("E:" + id, "S:" + id),
+        SessionInvalidation.forEviction(id).stream().map(SessionInvalidation::encode).toList());
+    assertEquals(
+        List.of("R:" + id, "U:" + id),
+        SessionInvalidation.forRoleChange(id).stream().map(SessionInvalidation::encode).toList());
+  }
+
+  @Test
+  void testLocalBusNotifiesEveryListener() {
+    // Given
+    List<SessionInvalidation> first = new ArrayList<>();
+    List<SessionInvalidation> second = new ArrayList<>();
+    SessionInvalidationListener failing =
+        invalidation -> {
+          throw new IllegalStateException("boom");
+        };
+    LocalSessionInvalidationBus bus =
+        new LocalSessionInvalidationBus(List.of(first::add, failing, second::add));
+    SessionInvalidation invalidation = SessionInvalidation.userRevoked(UUID.randomUUID());
+
+    // When
+    bus.publish(invalidation);
+
+    // Then
+    assertEquals(List.of(invalidation), first);
+    assertEquals(List.of(invalidation), second);
+  }
+}
@@ -0,0 +1,137 @@
+package com.yanapure.app.auth.session;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.yanapure.app.users.Role;
+import com.yanapure.app.users.User;
+import com.yanapure.app.users.UserRepository;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@DataJpaTest
+@TestPropertySource(
+    properties = {
+      "spring.datasource.url=jdbc:h2:mem:testdb",
+      "spring.jpa.hibernate.ddl-auto=create-drop",
+      "spring.flyway.enabled=false"
+    })
+// Each login commits in its own transaction, as in production
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class SessionLimitConcurrencyTest {
+
+  private static final int MAX_SESSIONS = 3;
+  private static final int LOGINS = 24;
+
+  @Autowired private UserSessionRepository userSessionRepository;
+
+  @Autowired private UserRepository userRepository;
+
+  @Autowired private JdbcTemplate jdbcTemplate;
+
+  @Autowired private PlatformTransactionManager transactionManager;
+
+  private User user;
+
+  @BeforeEach
+  void setUp() {
+    user = new User();
+    user.setName("Busy User");
+    user.setPhone("+14155554001");
+    user.setRole(Role.USER);
+    user = userRepository.save(user);
+  }
+
+  @AfterEach
+  void tearDown() {
+    jdbcTemplate.update("DELETE FROM user_sessions WHERE user_id = ?", user.getId());
+    userRepository.deleteById(user.getId());
+  }
+
+  @Test
+  void testSessionLimitHoldsUnderParallelLogins() throws Exception {
+    // Given
+    TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<List<UUID>>> logins = new ArrayList<>();
+
+    // When
+    for (int i = 0; i < LOGINS; i++) {
+      logins.add(
+          pool.submit(
+              () -> {
+                start.await();
+                return transaction.execute(
+                    status -> userSessionRepository.insertWithinLimit(newSession(), MAX_SESSIONS));
+              }));
+    }
+    start.countDown();
+    int evicted = 0;
+    for (Future<List<UUID>> login : logins) {
+      evicted += login.get(30, TimeUnit.SECONDS).size();
+    }
+    pool.shutdown();
+
+    // Then
+    assertEquals(LOGINS, count("SELECT COUNT(*) FROM user_sessions WHERE user_id = ?"));
+    assertEquals(
+        MAX_SESSIONS, count("SELECT COUNT(*) FROM user_sessions WHERE user_id = ? AND active"));
+    assertEquals(LOGINS - MAX_SESSIONS, evicted);
+  }
+
+  @Test
+  void testOldestSessionsAreDeactivated() {
+    // Given
+    TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+    List<UserSession> sessions = new ArrayList<>();
+    for (int i = 0; i < MAX_SESSIONS; i++) {
+      UserSession session = newSession();
+      session.setCreatedAt(Instant.now().minusSeconds(60 - i));
+      sessions.add(session);
+      transaction.execute(status -> userSessionRepository.insertWithinLimit(session, MAX_SESSIONS));
+    }
+
+    // When
+    List<UUID> evicted =
+        transaction.execute(
+            status -> userSessionRepository.insertWithinLimit(newSession(), MAX_SESSIONS));
+
+    // Then
+    assertEquals(List.of(sessions.get(0).getId()), evicted);
+    assertFalse(userSessionRepository.findById(sessions.get(0).getId()).orElseThrow().isActive());
+    assertTrue(userSessionRepository.findById(sessions.get(1).getId()).orElseThrow().isActive());
+  }
+
+  private long count(String sql) {
+    return jdbcTemplate.queryForObject(sql, Long.class, user.getId());
+  }
+
+  private UserSession newSession() {
+    return new UserSession(
+        user.getId(),
+        "access-" + UUID.randomUUID(),
+        "refresh-" + UUID.randomUUID(),
+        Instant.now().plusSeconds(3600),
+        Instant.now().plusSeconds(7200),
+        "192.168.1.1",
+        null);
+  }
+}
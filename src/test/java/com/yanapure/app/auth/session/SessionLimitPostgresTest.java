@@ -0,0 +1,22 @@
+package com.yanapure.app.auth.session;
+
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.test.context.TestPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+/**
+ * The session limit tests against PostgreSQL, where logins take the single-statement insert and
+ * evict path instead of the fallback used on H2. The schema comes from the Flyway migrations.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@TestPropertySource(
+    properties = {"spring.flyway.enabled=true", "spring.jpa.hibernate.ddl-auto=none"})
+public class SessionLimitPostgresTest extends SessionLimitConcurrencyTest {
+
+  @Container @ServiceConnection
+  static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine");
+}
@@ -0,0 +1,114 @@
+package com.yanapure.app.auth.session;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.yanapure.app.auth.token.TokenDigest;
+import com.yanapure.app.users.Role;
+import com.yanapure.app.users.User;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+
+@DataJpaTest
+@Import(SessionLookup.class)
+@TestPropertySource(
+    properties = {
+      "spring.datasource.url=jdbc:h2:mem:testdb",
+      "spring.jpa.hibernate.ddl-auto=create-drop",
+      "spring.flyway.enabled=false"
+    })
+public class SessionLookupTest {
+
+  @Autowired private TestEntityManager entityManager;
+
+  @Autowired private SessionLookup sessionLookup;
+
+  private User user;
+
+  @BeforeEach
+  void setUp() {
+    user = new User();
+    user.setName("Lookup User");
+    user.setPhone("+14155553001");
+    user.setRole(Role.ADMIN);
+    user = entityManager.persistAndFlush(user);
+  }
+
+  @Test
+  void testFindBySessionIdJoinsUser() {
+    // Given
+    UserSession session = persistSession("access-1");
+
+    // When
+    Optional<SessionLookup.ActiveSession> found =
+        sessionLookup.findActiveByAccessToken(session.getId(), TokenDigest.of("access-1"));
+
+    // Then
+    assertTrue(found.isPresent());
+    assertEquals(session.getId(), found.get().sessionId());
+    assertEquals(user.getId(), found.get().userId());
+    assertEquals("+14155553001", found.get().phone());
+    assertEquals(Role.ADMIN, found.get().role());
+    assertFalse(found.get().isExpired());
+  }
+
+  @Test
+  void testFindBySessionIdRequiresMatchingDigest() {
+    // Given
+    UserSession session = persistSession("access-1");
+
+    // When & Then
+    assertTrue(
+        sessionLookup
+            .findActiveByAccessToken(session.getId(), TokenDigest.of("access-2"))
+            .isEmpty());
+  }
+
+  @Test
+  void testFindByDigestWithoutSessionId() {
+    // Given
+    UserSession session = persistSession("access-1");
+
+    // When
+    Optional<SessionLookup.ActiveSession> found =
+        sessionLookup.findActiveByAccessToken(null, TokenDigest.of("access-1"));
+
+    // Then
+    assertEquals(session.getId(), found.map(SessionLookup.ActiveSession::sessionId).orElse(null));
+  }
+
+  @Test
+  void testInactiveSessionIsNotFound() {
+    // Given
+    UserSession session = persistSession("access-1");
+    session.deactivate();
+    entityManager.persistAndFlush(session);
+
+    // When & Then
+    assertTrue(
+        sessionLookup
+            .findActiveByAccessToken(session.getId(), TokenDigest.of("access-1"))
+            .isEmpty());
+    assertTrue(sessionLookup.findActiveByAccessToken(null, TokenDigest.of("access-1")).isEmpty());
+  }
+
+  private UserSession persistSession(String accessToken) {
+    UserSession session =
+        new UserSession(
+            user.getId(),
+            accessToken,
+            "refresh-" + UUID.randomUUID(),
+            Instant.now().plusSeconds(3600),
+            Instant.now().plusSeconds(7200),
+            "192.168.1.1",
+            null);
+    return entityManager.persistAndFlush(session);
+  }
+}
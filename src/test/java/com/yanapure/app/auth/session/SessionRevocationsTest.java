@@ -0,0 +1,88 @@
+package com.yanapure.app.auth.session;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.yanapure.app.auth.token.TokenPrincipal;
+import com.yanapure.app.users.Role;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+
+public class SessionRevocationsTest {
+
+  private final AtomicReference<Instant> now =
+      new AtomicReference<>(Instant.parse("2025-01-01T00:00:00Z"));
+
+  private final Clock clock =
+      new Clock() {
+        @Override
+        public ZoneOffset getZone() {
+          return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+          return this;
+        }
+
+        @Override
+        public Instant instant() {
+          return now.get();
+        }
+      };
+
+  private final SessionRevocations revocations = new SessionRevocations(Duration.ofHours(1), clock);
+
+  @Test
+  void testRevokedSession() {
+    UUID userId = UUID.randomUUID();
+    UUID sessionId = UUID.randomUUID();
+
+    revocations.revokeSession(sessionId);
+
+    assertTrue(revocations.isRevoked(principal(userId, sessionId, now.get())));
+    assertFalse(revocations.isRevoked(principal(userId, UUID.randomUUID(), now.get())));
+  }
+
+  @Test
+  void testNotBeforeAppliesToEarlierTokensOnly() {
+    UUID userId = UUID.randomUUID();
+    Instant issuedBefore = now.get().minusSeconds(30);
+
+    revocations.revokeUser(userId);
+
+    assertTrue(revocations.isRevoked(principal(userId, UUID.randomUUID(), issuedBefore)));
+    assertFalse(
+        revocations.isRevoked(principal(userId, UUID.randomUUID(), now.get().plusSeconds(1))));
+    assertFalse(
+        revocations.isRevoked(principal(UUID.randomUUID(), UUID.randomUUID(), issuedBefore)));
+  }
+
+  @Test
+  void testEntriesAreForgottenOnceTokensHaveExpired() {
+    revocations.revokeSession(UUID.randomUUID());
+    revocations.revokeUser(UUID.randomUUID());
+    assertEquals(2, revocations.size());
+
+    now.set(now.get().plus(Duration.ofHours(2)));
+    revocations.revokeSession(UUID.randomUUID());
+
+    assertEquals(1, revocations.size());
+  }
+
+  private TokenPrincipal principal(UUID userId, UUID sessionId, Instant issuedAt) {
+    return new TokenPrincipal(
+        userId,
+        "+14155552671",
+        Role.USER,
+        TokenPrincipal.ACCESS,
+        issuedAt.plusSeconds(3600),
+        sessionId,
+        issuedAt);
+  }
+}
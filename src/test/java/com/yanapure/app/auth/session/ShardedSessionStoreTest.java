@@ -0,0 +1,202 @@
+package com.yanapure.app.auth.session;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import com.yanapure.app.auth.token.TokenDigest;
+import com.yanapure.app.users.Role;
+import com.yanapure.app.users.User;
+import com.yanapure.app.users.UserRepository;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+class ShardedSessionStoreTest {
+
+  private static final int SHARDS = 3;
+  private static final Integer USER_AGENT_ID = 42;
+
+  private final List<EmbeddedDatabase> databases = new ArrayList<>();
+  private UserRepository userRepository;
+  private ShardedSessionStore store;
+
+  @BeforeEach
+  void setUp() {
+    for (int i = 0; i < SHARDS; i++) {
+      databases.add(
+          new EmbeddedDatabaseBuilder()
+              .setType(EmbeddedDatabaseType.H2)
+              .generateUniqueName(true)
+              .build());
+    }
+    userRepository = mock(UserRepository.class);
+    store = new ShardedSessionStore(List.<DataSource>copyOf(databases), userRepository);
+  }
+
+  @AfterEach
+  void tearDown() {
+    databases.forEach(EmbeddedDatabase::shutdown);
+  }
+
+  @Test
+  void testSessionIdsCarryTheShardOfTheirUser() {
+    // Given
+    SessionShards shards = new SessionShards(SHARDS);
+    Set<Integer> used = new HashSet<>();
+
+    // When / Then
+    for (int i = 0; i < 200; i++) {
+      UUID userId = UUID.randomUUID();
+      UUID sessionId = shards.newSessionId(userId);
+      assertEquals(shards.shardOfUser(userId), shards.shardOfSession(sessionId));
+      assertEquals(4, sessionId.version());
+      assertEquals(2, sessionId.variant());
+      used.add(shards.shardOfUser(userId));
+    }
+    assertEquals(SHARDS, used.size());
+  }
+
+  @Test
+  void testSessionIsStoredOnlyOnItsUsersShard() {
+    // Given
+    User user = user();
+    UserSession session = newSession(user.getId(), "access-1");
+
+    // When
+    assertTrue(store.create(session, 5).isEmpty());
+
+    // Then
+    int shard = new SessionShards(SHARDS).shardOfUser(user.getId());
+    for (int i = 0; i < SHARDS; i++) {
+      assertEquals(i == shard ? 1 : 0, rows(i));
+    }
+    UserSession found = store.findById(session.getId()).orElseThrow();
+    assertEquals(user.getId(), found.getUserId());
+    assertEquals(USER_AGENT_ID, found.getUserAgentId());
+    assertTrue(found.matchesAccessToken(TokenDigest.of("access-1")));
+    SessionLookup.ActiveSession active =
+        store.findActiveByAccessToken(session.getId(), TokenDigest.of("access-1")).orElseThrow();
+    assertEquals(user.getPhone(), active.phone());
+    assertEquals(Role.USER, active.role());
+  }
+
+  @Test
+  void testSessionLimitIsEnforcedOnTheShard() throws Exception {
+    // Given
+    User user = user();
+    UserSession oldest = newSession(user.getId(), "access-1");
+    store.create(oldest, 2);
+    Thread.sleep(5);
+    store.create(newSession(user.getId(), "access-2"), 2);
+    Thread.sleep(5);
+
+    // When
+    List<UUID> evicted = store.create(newSession(user.getId(), "access-3"), 2);
+
+    // Then
+    assertEquals(List.of(oldest.getId()), evicted);
+    assertEquals(2, store.findActiveByUser(user.getId()).size());
+  }
+
+  @Test
+  void testRotateRevokeAndRevokeAllAreRoutedToTheShard() {
+    // Given
+    User user = user();
+    UserSession first = newSession(user.getId(), "access-1");
+    UserSession second = newSession(user.getId(), "access-2");
+    store.create(first, 5);
+    store.create(second, 5);
+
+    // When
+    Optional<UserSessionRepositoryCustom.SessionKey> rotated =
+        store.rotate(
+            first.getId(),
+            TokenDigest.of("refresh-access-1"),
+            "access-1b",
+            "refresh-access-1b",
+            Instant.now().plusSeconds(3600),
+            Instant.now().plusSeconds(7200));
+    Optional<UserSessionRepositoryCustom.SessionKey> revoked =
+        store.revoke(second.getId(), TokenDigest.of("access-2"));
+
+    // Then
+    assertEquals(first.getId(), rotated.orElseThrow().sessionId());
+    assertEquals(user.getId(), revoked.orElseThrow().userId());
+    assertTrue(store.findActiveByAccessToken(first.getId(), TokenDigest.of("access-1")).isEmpty());
+    assertTrue(
+        store.findActiveByAccessToken(first.getId(), TokenDigest.of("access-1b")).isPresent());
+    assertEquals(1, store.revokeAll(user.getId()));
+    assertTrue(store.findActiveByUser(user.getId()).isEmpty());
+  }
+
+  @Test
+  void testLastUsedIsWrittenToEachSessionsShard() {
+    // Given
+    User a = user();
+    User b = user();
+    UserSession sessionA = newSession(a.getId(), "access-a");
+    UserSession sessionB = newSession(b.getId(), "access-b");
+    store.create(sessionA, 5);
+    store.create(sessionB, 5);
+    Instant usedAt = Instant.now();
+
+    // When
+    int written = store.updateLastUsed(Map.of(sessionA.getId(), usedAt, sessionB.getId(), usedAt));
+
+    // Then
+    assertEquals(2, written);
+    assertNotNull(store.findById(sessionA.getId()).orElseThrow().getLastUsedAt());
+    assertNotNull(store.findById(sessionB.getId()).orElseThrow().getLastUsedAt());
+  }
+
+  @Test
+  void testTokensWithoutSessionIdAreNotRouted() {
+    // Given
+    User user = user();
+    store.create(newSession(user.getId(), "access-1"), 5);
+
+    // When / Then
+    assertTrue(store.findActiveByAccessToken(null, TokenDigest.of("access-1")).isEmpty());
+    assertTrue(store.findByAccessTokenDigest(TokenDigest.of("access-1")).isEmpty());
+    assertTrue(store.revoke(null, TokenDigest.of("access-1")).isEmpty());
+  }
+
+  private User user() {
+    User user = new User();
+    user.setId(UUID.randomUUID());
+    user.setPhone("+14155556001");
+    user.setRole(Role.USER);
+    when(userRepository.findById(user.getId())).thenReturn(Optional.of(user));
+    return user;
+  }
+
+  private UserSession newSession(UUID userId, String accessToken) {
+    return new UserSession(
+        store.newSessionId(userId),
+        userId,
+        accessToken,
+        "refresh-" + accessToken,
+        Instant.now().plusSeconds(3600),
+        Instant.now().plusSeconds(7200),
+        "192.168.1.1",
+        USER_AGENT_ID);
+  }
+
+  private int rows(int shard) {
+    return new JdbcTemplate(databases.get(shard))
+        .queryForObject("SELECT COUNT(*) FROM user_sessions", Integer.class);
+  }
+}
@@ -0,0 +1,102 @@
+package com.yanapure.app.auth.session;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.UUID;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.transaction.TestTransaction;
+
+@DataJpaTest
+@Import(UserAgentDictionary.class)
+@TestPropertySource(
+    properties = {
+      "spring.datasource.url=jdbc:h2:mem:testdb",
+      "spring.jpa.hibernate.ddl-auto=create-drop",
+      "spring.flyway.enabled=false"
+    })
+public class UserAgentDictionaryTest {
+
+  @Autowired private UserAgentDictionary userAgents;
+
+  @Autowired private JdbcTemplate jdbcTemplate;
+
+  @Autowired private DataSource dataSource;
+
+  @Test
+  void testSameHeaderIsStoredOnce() {
+    // Given
+    String header = "Mozilla/5.0 " + UUID.randomUUID();
+
+    // When
+    Integer first = userAgents.intern(header);
+    Integer second = userAgents.intern(header);
+
+    // Then
+    assertNotNull(first);
+    assertEquals(first, second);
+    assertEquals(1, rows(header));
+    assertEquals(header, userAgents.resolve(first));
+  }
+
+  @Test
+  void testIdsResolveWithoutTheCache() {
+    // Given
+    String header = "curl/8.4.0 " + UUID.randomUUID();
+    Integer id = userAgents.intern(header);
+    UserAgentDictionary fresh = new UserAgentDictionary(jdbcTemplate, dataSource, 0);
+
+    // When / Then
+    assertEquals(header, fresh.resolve(id));
+    assertEquals(id, fresh.intern(header));
+    assertEquals(0, fresh.size());
+    assertNull(fresh.resolve(Integer.MAX_VALUE));
+  }
+
+  @Test
+  void testMissingHeaderHasNoId() {
+    assertNull(userAgents.intern(null));
+    assertNull(userAgents.intern("  "));
+    assertNull(userAgents.resolve(null));
+  }
+
+  @Test
+  void testLongHeaderIsTruncated() {
+    // Given
+    String header = UUID.randomUUID() + "x".repeat(UserAgent.MAX_LENGTH);
+
+    // When
+    Integer id = userAgents.intern(header);
+
+    // Then
+    assertEquals(header.substring(0, UserAgent.MAX_LENGTH), userAgents.resolve(id));
+    assertEquals(id, userAgents.intern(header.substring(0, UserAgent.MAX_LENGTH)));
+  }
+
+  @Test
+  void testHeaderInternedInRolledBackTransactionIsNotCached() {
+    // Given
+    String header = "okhttp/4.12.0 " + UUID.randomUUID();
+    int cached = userAgents.size();
+
+    // When
+    Integer id = userAgents.intern(header);
+    TestTransaction.flagForRollback();
+    TestTransaction.end();
+
+    // Then
+    assertNotNull(id);
+    assertEquals(cached, userAgents.size());
+    assertEquals(0, rows(header));
+  }
+
+  private int rows(String header) {
+    return jdbcTemplate.queryForObject(
+        "SELECT COUNT(*) FROM user_agents WHERE user_agent = ?", Integer.class, header);
+  }
+}
@@ -2,10 +2,15 @@ package com.yanapure.app.auth.session;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import com.yanapure.app.auth.token.TokenDigest;
+import com.yanapure.app.util.IpRange;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Collectors;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
@@ -21,6 +26,8 @@ import org.springframework.test.context.TestPropertySource;
     })
 public class UserSessionRepositoryTest {
 
+  private static final Integer USER_AGENT_ID = 42;
+
   @Autowired private TestEntityManager entityManager;
 
   @Autowired private UserSessionRepository userSessionRepository;
@@ -42,7 +49,7 @@ public class UserSessionRepositoryTest {
             expiresAt,
             refreshExpiresAt,
             "192.168.1.1",
-            "Mozilla/5.0");
+            USER_AGENT_ID);
     entityManager.persistAndFlush(session);
 
     // When
@@ -51,7 +58,34 @@ public class UserSessionRepositoryTest {
     // Then
     assertTrue(found.isPresent());
     assertEquals(userId, found.get().getUserId());
-    assertEquals(accessToken, found.get().getAccessToken());
+    assertTrue(found.get().matchesAccessToken(TokenDigest.of(accessToken)));
+  }
+
+  @Test
+  void testSaveWithAssignedIdAndFindById() {
+    // Given
+    UUID sessionId = UUID.randomUUID();
+    UserSession session =
+        new UserSession(
+            sessionId,
+            UUID.randomUUID(),
+            "access_token_sid",
+            "refresh_token_sid",
+            Instant.now().plusSeconds(3600),
+            Instant.now().plusSeconds(7200),
+            "192.168.1.3",
+            USER_AGENT_ID);
+
+    // When
+    userSessionRepository.saveAndFlush(session);
+    entityManager.clear();
+    Optional<UserSession> found = userSessionRepository.findById(sessionId);
+
+    // Then
+    assertTrue(found.isPresent());
+    assertEquals(32, found.get().getAccessTokenHash().length);
+    assertTrue(found.get().matchesAccessToken(TokenDigest.of("access_token_sid")));
+    assertFalse(found.get().matchesAccessToken(TokenDigest.of("refresh_token_sid")));
   }
 
   @Test
@@ -71,7 +105,7 @@ public class UserSessionRepositoryTest {
             expiresAt,
             refreshExpiresAt,
             "192.168.1.2",
-            "Mozilla/5.0");
+            USER_AGENT_ID);
     entityManager.persistAndFlush(session);
 
     // When
@@ -80,7 +114,7 @@ public class UserSessionRepositoryTest {
     // Then
     assertTrue(found.isPresent());
     assertEquals(userId, found.get().getUserId());
-    assertEquals(refreshToken, found.get().getRefreshToken());
+    assertTrue(found.get().matchesRefreshToken(TokenDigest.of(refreshToken)));
   }
 
   @Test
@@ -97,7 +131,7 @@ public class UserSessionRepositoryTest {
             now.plusSeconds(3600),
             now.plusSeconds(7200),
             "192.168.1.1",
-            "Mozilla/5.0");
+            USER_AGENT_ID);
     session1.setCreatedAt(now.minusSeconds(100));
     entityManager.persistAndFlush(session1);
 
@@ -109,7 +143,7 @@ public class UserSessionRepositoryTest {
             now.plusSeconds(3600),
             now.plusSeconds(7200),
             "192.168.1.2",
-            "Mozilla/5.0");
+            USER_AGENT_ID);
     session2.setCreatedAt(now);
     entityManager.persistAndFlush(session2);
 
@@ -119,8 +153,8 @@ public class UserSessionRepositoryTest {
 
     // Then
     assertEquals(2, sessions.size());
-    assertEquals("token2", sessions.get(0).getAccessToken()); // Most recent first
-    assertEquals("token1", sessions.get(1).getAccessToken());
+    assertTrue(sessions.get(0).matchesAccessToken(TokenDigest.of("token2"))); // Most recent first
+    assertTrue(sessions.get(1).matchesAccessToken(TokenDigest.of("token1")));
   }
 
   @Test
@@ -136,7 +170,7 @@ public class UserSessionRepositoryTest {
             now.minusSeconds(100),
             now.plusSeconds(7200),
             "192.168.1.1",
-            "Mozilla/5.0");
+            USER_AGENT_ID);
     entityManager.persistAndFlush(expiredSession);
 
     UserSession activeSession =
@@ -147,7 +181,7 @@ public class UserSessionRepositoryTest {
             now.plusSeconds(3600),
             now.plusSeconds(7200),
             "192.168.1.2",
-            "Mozilla/5.0");
+            USER_AGENT_ID);
     entityManager.persistAndFlush(activeSession);
 
     // When
@@ -155,7 +189,7 @@ public class UserSessionRepositoryTest {
 
     // Then
     assertEquals(1, expired.size());
-    assertEquals("token1", expired.get(0).getAccessToken());
+    assertTrue(expired.get(0).matchesAccessToken(TokenDigest.of("token1")));
   }
 
   @Test
@@ -172,7 +206,7 @@ public class UserSessionRepositoryTest {
             now.plusSeconds(3600),
             now.plusSeconds(7200),
             "192.168.1.1",
-            "Mozilla/5.0");
+            USER_AGENT_ID);
     entityManager.persistAndFlush(activeSession1);
 
     UserSession activeSession2 =
@@ -183,7 +217,7 @@ public class UserSessionRepositoryTest {
             now.plusSeconds(3600),
             now.plusSeconds(7200),
             "192.168.1.2",
-            "Mozilla/5.0");
+            USER_AGENT_ID);
     entityManager.persistAndFlush(activeSession2);
 
     UserSession inactiveSession =
@@ -194,7 +228,7 @@ public class UserSessionRepositoryTest {
             now.plusSeconds(3600),
             now.plusSeconds(7200),
             "192.168.1.3",
-            "Mozilla/5.0");
+            USER_AGENT_ID);
     inactiveSession.setActive(false);
     entityManager.persistAndFlush(inactiveSession);
 
@@ -220,7 +254,7 @@ public class UserSessionRepositoryTest {
             now.plusSeconds(3600),
             now.plusSeconds(7200),
             clientIp,
-            "Mozilla/5.0");
+            USER_AGENT_ID);
     recentSession.setCreatedAt(now.minusSeconds(100));
     entityManager.persistAndFlush(recentSession);
 
@@ -232,7 +266,7 @@ public class UserSessionRepositoryTest {
             now.plusSeconds(3600),
             now.plusSeconds(7200),
             clientIp,
-            "Mozilla/5.0");
+            USER_AGENT_ID);
     oldSession.setCreatedAt(now.minusSeconds(300));
     entityManager.persistAndFlush(oldSession);
 
@@ -242,6 +276,175 @@ public class UserSessionRepositoryTest {
 
     // Then
     assertEquals(1, sessions.size());
-    assertEquals("token1", sessions.get(0).getAccessToken());
+    assertTrue(sessions.get(0).matchesAccessToken(TokenDigest.of("token1")));
+  }
+
+  @Test
+  void testRevokeByAccessTokenDeactivatesOnlyMatchingSession() {
+    // Given
+    UserSession session = persistActiveSession("access_revoke", "refresh_revoke", 7200);
+
+    // When
+    Optional<UserSessionRepositoryCustom.SessionKey> wrongToken =
+        userSessionRepository.revokeByAccessToken(
+            session.getId(), TokenDigest.sha256("access_other"));
+    Optional<UserSessionRepositoryCustom.SessionKey> revoked =
+        userSessionRepository.revokeByAccessToken(
+            session.getId(), TokenDigest.sha256("access_revoke"));
+    Optional<UserSessionRepositoryCustom.SessionKey> again =
+        userSessionRepository.revokeByAccessToken(null, TokenDigest.sha256("access_revoke"));
+
+    // Then
+    assertTrue(wrongToken.isEmpty());
+    assertEquals(session.getId(), revoked.map(k -> k.sessionId()).orElse(null));
+    assertEquals(session.getUserId(), revoked.get().userId());
+    assertTrue(again.isEmpty());
+    entityManager.clear();
+    assertFalse(userSessionRepository.findById(session.getId()).orElseThrow().getActive());
+  }
+
+  @Test
+  void testRotateTokensReplacesDigestsAndKeepsOtherColumns() {
+    // Given
+    UserSession session = persistActiveSession("access_old", "refresh_old", 7200);
+    Instant expiresAt = Instant.now().plusSeconds(1800);
+
+    // When
+    Optional<UserSessionRepositoryCustom.SessionKey> rotated =
+        userSessionRepository.rotateTokens(
+            session.getId(),
+            TokenDigest.sha256("refresh_old"),
+            "access_new",
+            "refresh_new",
+            expiresAt,
+            expiresAt.plusSeconds(3600));
+
+    // Then
+    assertEquals(session.getId(), rotated.map(k -> k.sessionId()).orElse(null));
+    entityManager.clear();
+    UserSession reloaded = userSessionRepository.findById(session.getId()).orElseThrow();
+    assertTrue(reloaded.matchesAccessToken(TokenDigest.of("access_new")));
+    assertTrue(reloaded.matchesRefreshToken(TokenDigest.of("refresh_new")));
+    assertEquals(expiresAt.getEpochSecond(), reloaded.getExpiresAt().getEpochSecond());
+    assertNotNull(reloaded.getLastUsedAt());
+    assertEquals(USER_AGENT_ID, reloaded.getUserAgentId());
+  }
+
+  @Test
+  void testRotateTokensRejectsReusedOrExpiredRefreshToken() {
+    // Given
+    UserSession session = persistActiveSession("access_a", "refresh_a", 7200);
+    UserSession expired = persistActiveSession("access_b", "refresh_b", -60);
+    userSessionRepository.rotateTokens(
+        null,
+        TokenDigest.sha256("refresh_a"),
+        "access_a2",
+        "refresh_a2",
+        Instant.now().plusSeconds(3600),
+        Instant.now().plusSeconds(7200));
+
+    // When & Then
+    assertTrue(
+        userSessionRepository
+            .rotateTokens(
+                session.getId(),
+                TokenDigest.sha256("refresh_a"),
+                "access_a3",
+                "refresh_a3",
+                Instant.now().plusSeconds(3600),
+                Instant.now().plusSeconds(7200))
+            .isEmpty());
+    assertTrue(
+        userSessionRepository
+            .rotateTokens(
+                expired.getId(),
+                TokenDigest.sha256("refresh_b"),
+                "access_b2",
+                "refresh_b2",
+                Instant.now().plusSeconds(3600),
+                Instant.now().plusSeconds(7200))
+            .isEmpty());
+  }
+
+  private UserSession persistActiveSession(
+      String accessToken, String refreshToken, long refreshExpiresInSeconds) {
+    UserSession session =
+        new UserSession(
+            UUID.randomUUID(),
+            UUID.randomUUID(),
+            accessToken,
+            refreshToken,
+            Instant.now().plusSeconds(600),
+            Instant.now().plusSeconds(refreshExpiresInSeconds),
+            "192.168.1.9",
+            USER_AGENT_ID);
+    return entityManager.persistAndFlush(session);
+  }
+
+  @Test
+  void testRevokeMatchingByUsersAndCreationWindow() {
+    // Given
+    UUID target = UUID.randomUUID();
+    UUID other = UUID.randomUUID();
+    Instant now = Instant.now();
+    UserSession recent = persistSession(target, "10.0.0.1", now.minusSeconds(60));
+    UserSession old = persistSession(target, "10.0.0.2", now.minusSeconds(7200));
+    UserSession otherUsers = persistSession(other, "10.0.0.3", now.minusSeconds(60));
+    List<UserSessionRepositoryCustom.RevokedChunk> chunks = new ArrayList<>();
+
+    // When
+    long revoked =
+        userSessionRepository.revokeMatching(
+            new SessionFilter(Set.of(target), null, now.minusSeconds(3600), null),
+            100,
+            chunks::add);
+
+    // Then
+    assertEquals(1, revoked);
+    assertEquals(List.of(recent.getId()), chunks.get(0).sessionIds());
+    assertEquals(List.of(target), chunks.get(0).userIds());
+    entityManager.clear();
+    assertFalse(userSessionRepository.findById(recent.getId()).orElseThrow().getActive());
+    assertTrue(userSessionRepository.findById(old.getId()).orElseThrow().getActive());
+    assertTrue(userSessionRepository.findById(otherUsers.getId()).orElseThrow().getActive());
+  }
+
+  @Test
+  void testRevokeMatchingByIpRangeWalksAllSessionsInChunks() {
+    // Given
+    List<UUID> inRange = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      inRange.add(persistSession(UUID.randomUUID(), "203.0.113." + (i + 1), Instant.now()).getId());
+    }
+    UserSession outside = persistSession(UUID.randomUUID(), "198.51.100.7", Instant.now());
+    List<UserSessionRepositoryCustom.RevokedChunk> chunks = new ArrayList<>();
+
+    // When
+    long revoked =
+        userSessionRepository.revokeMatching(
+            new SessionFilter(null, IpRange.parse("203.0.113.0/24"), null, null), 2, chunks::add);
+
+    // Then
+    assertEquals(5, revoked);
+    assertTrue(chunks.size() >= 3);
+    assertEquals(
+        Set.copyOf(inRange),
+        chunks.stream().flatMap(c -> c.sessionIds().stream()).collect(Collectors.toSet()));
+    entityManager.clear();
+    assertTrue(userSessionRepository.findById(outside.getId()).orElseThrow().getActive());
+  }
+
+  private UserSession persistSession(UUID userId, String clientIp, Instant createdAt) {
+    UserSession session =
+        new UserSession(
+            userId,
+            "access-" + UUID.randomUUID(),
+            "refresh-" + UUID.randomUUID(),
+            Instant.now().plusSeconds(3600),
+            Instant.now().plusSeconds(7200),
+            clientIp,
+            USER_AGENT_ID);
+    session.setCreatedAt(createdAt);
+    return entityManager.persistAndFlush(session);
   }
 }
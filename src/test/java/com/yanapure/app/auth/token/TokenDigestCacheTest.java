@@ -0,0 +1,148 @@
+package com.yanapure.app.auth.token;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class TokenDigestCacheTest {
+
+  private MutableClock clock;
+
+  @BeforeEach
+  void setUp() {
+    clock = new MutableClock(Instant.parse("2025-01-01T00:00:00Z"));
+  }
+
+  @Test
+  void testHitAndMiss() {
+    // Given
+    TokenDigestCache<String> cache = new TokenDigestCache<>(10, 10_000, clock);
+    TokenDigest digest = TokenDigest.of("token-a");
+
+    // When
+    assertNull(cache.get(digest));
+    cache.put(digest, "claims-a", clock.instant().plusSeconds(60), 100);
+
+    // Then
+    assertEquals("claims-a", cache.get(TokenDigest.of("token-a")));
+    TokenDigestCache.Stats stats = cache.stats();
+    assertEquals(1, stats.hits());
+    assertEquals(1, stats.misses());
+    assertEquals(1, stats.size());
+    assertEquals(100, stats.bytes());
+  }
+
+  @Test
+  void testEntryExpiresAtTokenExpiry() {
+    // Given
+    TokenDigestCache<String> cache = new TokenDigestCache<>(10, 10_000, clock);
+    TokenDigest digest = TokenDigest.of("token-a");
+    cache.put(digest, "claims-a", clock.instant().plusSeconds(60), 100);
+
+    // When
+    clock.advanceSeconds(60);
+
+    // Then
+    assertNull(cache.get(digest));
+    assertEquals(0, cache.stats().size());
+    assertEquals(0, cache.stats().bytes());
+  }
+
+  @Test
+  void testAlreadyExpiredEntryIsNotStored() {
+    // Given
+    TokenDigestCache<String> cache = new TokenDigestCache<>(10, 10_000, clock);
+
+    // When
+    cache.put(TokenDigest.of("token-a"), "claims-a", clock.instant().minusSeconds(1), 100);
+
+    // Then
+    assertEquals(0, cache.stats().size());
+  }
+
+  @Test
+  void testEntryCapEvicts() {
+    // Given
+    TokenDigestCache<String> cache = new TokenDigestCache<>(10, 1_000_000, clock);
+
+    // When
+    for (int i = 0; i < 25; i++) {
+      cache.put(TokenDigest.of("token-" + i), "claims", clock.instant().plusSeconds(60), 10);
+    }
+
+    // Then
+    assertTrue(cache.stats().size() <= 10);
+    assertTrue(cache.stats().evictions() >= 15);
+  }
+
+  @Test
+  void testMemoryCapEvicts() {
+    // Given
+    TokenDigestCache<String> cache = new TokenDigestCache<>(1_000, 1_000, clock);
+
+    // When
+    for (int i = 0; i < 20; i++) {
+      cache.put(TokenDigest.of("token-" + i), "claims", clock.instant().plusSeconds(60), 100);
+    }
+
+    // Then
+    assertTrue(cache.stats().bytes() <= 1_000);
+    assertTrue(cache.stats().evictions() > 0);
+  }
+
+  @Test
+  void testInvalidate() {
+    // Given
+    TokenDigestCache<String> cache = new TokenDigestCache<>(10, 10_000, clock);
+    TokenDigest digest = TokenDigest.of("token-a");
+    cache.put(digest, "claims-a", clock.instant().plusSeconds(60), 100);
+
+    // When
+    cache.invalidate(digest);
+
+    // Then
+    assertNull(cache.get(digest));
+    assertEquals(0, cache.stats().bytes());
+  }
+
+  @Test
+  void testDigestMatchesIsConstantTimeEquality() {
+    TokenDigest digest = TokenDigest.of("token-a");
+
+    assertTrue(digest.matches(TokenDigest.sha256("token-a")));
+    assertFalse(digest.matches(TokenDigest.sha256("token-b")));
+    assertFalse(digest.matches(null));
+    assertEquals(32, digest.toByteArray().length);
+  }
+
+  private static final class MutableClock extends Clock {
+    private Instant now;
+
+    MutableClock(Instant now) {
+      this.now = now;
+    }
+
+    void advanceSeconds(long seconds) {
+      now = now.plusSeconds(seconds);
+    }
+
+    @Override
+    public ZoneOffset getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(java.time.ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+  }
+}
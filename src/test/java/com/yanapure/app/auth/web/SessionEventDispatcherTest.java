@@ -0,0 +1,64 @@
+package com.yanapure.app.auth.web;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.yanapure.app.auth.session.SessionInvalidation;
+import java.time.Duration;
+import java.util.UUID;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class SessionEventDispatcherTest {
+
+  private final SessionEventDispatcher dispatcher =
+      new SessionEventDispatcher(Duration.ofMinutes(1), 2);
+
+  @AfterEach
+  void tearDown() {
+    dispatcher.destroy();
+  }
+
+  @Test
+  void testOldestStreamClosedBeyondPerUserLimit() {
+    // Given
+    UUID userId = UUID.randomUUID();
+    dispatcher.subscribe(userId, UUID.randomUUID());
+    dispatcher.subscribe(userId, UUID.randomUUID());
+
+    // When
+    dispatcher.subscribe(userId, UUID.randomUUID());
+
+    // Then
+    assertEquals(2, dispatcher.connectionCount());
+  }
+
+  @Test
+  void testUserEventsCloseOnlyThatUsersStreams() {
+    // Given
+    UUID userId = UUID.randomUUID();
+    dispatcher.subscribe(userId, UUID.randomUUID());
+    dispatcher.subscribe(userId, null);
+    dispatcher.subscribe(UUID.randomUUID(), UUID.randomUUID());
+
+    // When
+    dispatcher.onInvalidation(SessionInvalidation.roleChanged(userId));
+
+    // Then
+    assertEquals(1, dispatcher.connectionCount());
+  }
+
+  @Test
+  void testSessionEventClosesOnlyThatSessionsStream() {
+    // Given
+    UUID userId = UUID.randomUUID();
+    UUID evicted = UUID.randomUUID();
+    dispatcher.subscribe(userId, evicted);
+    dispatcher.subscribe(userId, UUID.randomUUID());
+
+    // When
+    dispatcher.onInvalidation(SessionInvalidation.sessionEvicted(evicted));
+
+    // Then
+    assertEquals(1, dispatcher.connectionCount());
+  }
+}
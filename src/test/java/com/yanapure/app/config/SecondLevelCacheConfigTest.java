@@ -0,0 +1,85 @@
+package com.yanapure.app.config;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.yanapure.app.auth.session.SessionInvalidation;
+import com.yanapure.app.auth.session.SessionInvalidationListener;
+import com.yanapure.app.users.Role;
+import com.yanapure.app.users.User;
+import com.yanapure.app.users.UserRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+@DataJpaTest
+@Import(SecondLevelCacheConfig.class)
+@TestPropertySource(
+    properties = {
+      "spring.datasource.url=jdbc:h2:mem:testdb",
+      "spring.jpa.hibernate.ddl-auto=create-drop",
+      "spring.flyway.enabled=false",
+      "app.user-cache.enabled=true"
+    })
+// Cache entries are written once the inserting transaction commits
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class SecondLevelCacheConfigTest {
+
+  @Autowired private UserRepository userRepository;
+
+  @Autowired private EntityManagerFactory entityManagerFactory;
+
+  @Autowired private SessionInvalidationListener userCacheEvictor;
+
+  @Test
+  void testLoadedUserIsCached() {
+    // Given
+    User user = persistUser("+14155553001");
+    entityManagerFactory.getCache().evictAll();
+
+    // When
+    userRepository.findById(user.getId());
+
+    // Then
+    assertTrue(entityManagerFactory.getCache().contains(User.class, user.getId()));
+    assertEquals(0L, user.getVersion());
+  }
+
+  @Test
+  void testUserInvalidationEvictsCachedUser() {
+    // Given
+    User user = persistUser("+14155553002");
+    userRepository.findById(user.getId());
+
+    // When
+    userCacheEvictor.onInvalidation(SessionInvalidation.userChanged(user.getId()));
+
+    // Then
+    assertFalse(entityManagerFactory.getCache().contains(User.class, user.getId()));
+  }
+
+  @Test
+  void testSessionInvalidationKeepsCachedUser() {
+    // Given
+    User user = persistUser("+14155553003");
+    userRepository.findById(user.getId());
+
+    // When
+    userCacheEvictor.onInvalidation(SessionInvalidation.sessionRevoked(user.getId()));
+
+    // Then
+    assertTrue(entityManagerFactory.getCache().contains(User.class, user.getId()));
+  }
+
+  private User persistUser(String phone) {
+    User user = new User();
+    user.setName("Cached User");
+    user.setPhone(phone);
+    user.setRole(Role.USER);
+    return userRepository.save(user);
+  }
+}
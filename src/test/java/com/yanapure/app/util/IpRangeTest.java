@@ -0,0 +1,91 @@
+package com.yanapure.app.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+public class IpRangeTest {
+
+  @Test
+  void ipv4Blocks() {
+    IpRange range = IpRange.parse("203.0.113.0/24");
+    assertTrue(range.contains("203.0.113.0"));
+    assertTrue(range.contains("203.0.113.255"));
+    assertFalse(range.contains("203.0.114.1"));
+    assertTrue(IpRange.parse("10.1.2.3/8").contains("10.200.0.1"));
+    assertTrue(IpRange.parse("0.0.0.0/0").contains("192.0.2.1"));
+    assertTrue(IpRange.parse("192.0.2.7").contains("192.0.2.7"));
+    assertFalse(IpRange.parse("192.0.2.7").contains("192.0.2.8"));
+  }
+
+  @Test
+  void ipv6Blocks() {
+    IpRange range = IpRange.parse("2001:db8::/32");
+    assertTrue(range.contains("2001:db8:1::42"));
+    assertFalse(range.contains("2001:db9::1"));
+    assertFalse(range.contains("192.0.2.1"));
+  }
+
+  @Test
+  void blocksAroundAnAddress() {
+    IpRange v4 = IpRange.around("203.0.113.77", 24, 64);
+    assertEquals("203.0.113.0/24", v4.cidr());
+    assertTrue(v4.contains("203.0.113.1"));
+    IpRange v6 = IpRange.around("2001:db8:1:2:3:4:5:6", 24, 64);
+    assertEquals("2001:db8:1:2:0:0:0:0/64", v6.cidr());
+    assertTrue(v6.contains("2001:db8:1:2::9"));
+    assertFalse(v6.contains("2001:db8:1:3::9"));
+    assertNull(IpRange.around("unknown", 24, 64));
+  }
+
+  @Test
+  void rejectsNonLiterals() {
+    assertThrows(IllegalArgumentException.class, () -> IpRange.parse("example.com/24"));
+    assertThrows(IllegalArgumentException.class, () -> IpRange.parse("10.0.0.0/33"));
+    assertThrows(IllegalArgumentException.class, () -> IpRange.parse("10.0.0/8"));
+    assertThrows(IllegalArgumentException.class, () -> IpRange.parse(""));
+    assertFalse(IpRange.parse("10.0.0.0/8").contains("localhost"));
+    assertFalse(IpRange.parse("10.0.0.0/8").contains(null));
+  }
+
+  @Test
+  void rejectsMalformedLiteralsWithoutLookup() {
+    for (String value :
+        new String[] {
+          "999.1.1.1",
+          "1..2.3",
+          "1.2.3.",
+          "1.2.3.4.5",
+          "256.0.0.1",
+          "1.2.3.0x1",
+          "1::2::3",
+          "12345::1",
+          "1:2:3:4:5:6:7:8:9",
+          "1:2:3:4:5:6:7",
+          "::1.2.3.999",
+          "fe80::1%eth0"
+        }) {
+      assertFalse(IpRange.isAddress(value), value);
+    }
+    assertTimeoutPreemptively(
+        Duration.ofMillis(500),
+        () -> {
+          for (int i = 0; i < 50; i++) {
+            assertFalse(IpRange.isAddress("999.1.1." + i));
+          }
+        });
+  }
+
+  @Test
+  void parsesLiteralForms() {
+    assertTrue(IpRange.isAddress("::"));
+    assertTrue(IpRange.isAddress("::1"));
+    assertTrue(IpRange.isAddress("1:2:3:4:5:6:7::"));
+    assertTrue(IpRange.isAddress("64:ff9b::192.0.2.33"));
+    assertEquals("0:0:0:0:0:0:0:1/128", IpRange.parse("::1").cidr());
+    assertEquals("64:ff9b:0:0:0:0:c000:221/128", IpRange.parse("64:ff9b::192.0.2.33").cidr());
+    assertEquals("192.0.2.1/32", IpRange.parse("::ffff:192.0.2.1").cidr());
+    assertTrue(IpRange.parse("192.0.2.0/24").contains("::ffff:c000:201"));
+  }
+}